@@ -0,0 +1,48 @@
+package com.shopping.config;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.shopping.utils.ExponentialBackoffRetryPolicy;
+import com.shopping.utils.RetryExecutor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/** 重试配置类 */
+@Configuration
+public class RetryConfig {
+
+    /** 异步重试的调度线程池, 只负责重试前的延迟, 到期后把尝试交给工作线程池 */
+    @Bean(destroyMethod = "shutdown")
+    public ScheduledExecutorService retryScheduler(@Value("${retry.scheduler-threads:2}") int threads) {
+        return new ScheduledThreadPoolExecutor(threads, new NamedThreadFactory("retry-scheduler-", true));
+    }
+
+    /** 异步重试的工作线程池, 执行可能阻塞的数据库尝试; 队列有界, 满时拒绝 */
+    @Bean(destroyMethod = "shutdown")
+    public ThreadPoolExecutor retryWorkers(@Value("${retry.worker-threads:8}") int threads,
+                                           @Value("${retry.worker-queue-capacity:1000}") int queueCapacity) {
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new NamedThreadFactory("retry-worker-", true),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /** 库存写入的重试执行器: 下单写入阶段遇到行锁等待超时或死锁时整体重试, 乐观锁扣减版本冲突时重试 */
+    @Bean
+    public RetryExecutor stockRetryExecutor(ScheduledExecutorService retryScheduler,
+                                            ThreadPoolExecutor retryWorkers,
+                                            @Value("${stock.retry.max-attempts:3}") int maxAttempts,
+                                            @Value("${stock.retry.initial-delay-ms:50}") long initialDelayMillis,
+                                            @Value("${stock.retry.multiplier:2.0}") double multiplier,
+                                            @Value("${stock.retry.max-delay-ms:500}") long maxDelayMillis,
+                                            @Value("${stock.retry.jitter:0.5}") double jitter) {
+        return new RetryExecutor("stockWrite",
+                new ExponentialBackoffRetryPolicy(maxAttempts, initialDelayMillis, multiplier, maxDelayMillis, jitter),
+                retryScheduler, retryWorkers);
+    }
+}
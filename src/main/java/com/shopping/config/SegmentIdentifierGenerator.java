@@ -0,0 +1,25 @@
+package com.shopping.config;
+
+import com.baomidou.mybatisplus.core.incrementer.IdentifierGenerator;
+import com.shopping.service.SegmentIdAllocator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * MybatisPlus主键生成器
+ * IdType.ASSIGN_ID的实体在insert前从号段分配器取得主键;
+ * 分配器依赖的Mapper又依赖SqlSessionFactory, 这里延迟注入避免循环依赖
+ */
+@Component
+public class SegmentIdentifierGenerator implements IdentifierGenerator {
+
+    @Lazy
+    @Autowired
+    private SegmentIdAllocator segmentIdAllocator;
+
+    @Override
+    public Number nextId(Object entity) {
+        return segmentIdAllocator.nextId(entity.getClass());
+    }
+}
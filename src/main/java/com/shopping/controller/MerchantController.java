@@ -52,7 +52,7 @@ public class MerchantController {
         response.setMerchantCode(merchant.getMerchantCode());
         response.setContactPerson(merchant.getContactPerson());
         response.setContactPhone(merchant.getContactPhone());
-        response.setAccountBalance(merchant.getAccountBalance());
+        response.setAccountBalance(merchantService.getAvailableBalance(merchant));
         response.setStatus(merchant.getStatus());
         response.setCreatedTime(merchant.getCreatedTime());
         response.setUpdatedTime(merchant.getUpdatedTime());
@@ -0,0 +1,44 @@
+package com.shopping.controller;
+
+import com.shopping.dto.response.ApiResponse;
+import com.shopping.service.SkuCache;
+import com.shopping.utils.RetryExecutor;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** 运行指标控制器 */
+@RestController
+@RequestMapping("/monitor")
+@Api(tags = "运行监控")
+public class MonitorController {
+
+    @Autowired
+    private List<RetryExecutor> retryExecutors;
+
+    @Autowired
+    private SkuCache skuCache;
+
+    @GetMapping("/retry")
+    @ApiOperation("查询重试统计")
+    public ApiResponse<Map<String, Map<String, Long>>> retryMetrics() {
+        Map<String, Map<String, Long>> metrics = new TreeMap<>();
+        for (RetryExecutor executor : retryExecutors) {
+            metrics.put(executor.getName(), executor.getMetrics().snapshot());
+        }
+        return ApiResponse.success(metrics);
+    }
+
+    @GetMapping("/sku-cache")
+    @ApiOperation("查询SKU缓存统计")
+    public ApiResponse<Map<String, Long>> skuCacheStats() {
+        return ApiResponse.success(skuCache.stats());
+    }
+}
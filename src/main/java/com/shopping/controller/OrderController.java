@@ -9,8 +9,10 @@ import com.shopping.dto.response.ApiResponse;
 import com.shopping.dto.response.OrderResponse;
 import com.shopping.dto.response.OrderSimpleResponse;
 import com.shopping.dto.response.PageResponse;
+import com.shopping.dto.response.RefundResult;
 import com.shopping.entity.Order;
 import com.shopping.service.OrderItemService;
+import com.shopping.service.OrderRefundService;
 import com.shopping.service.OrderService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -22,6 +24,7 @@ import javax.validation.Valid;
 import javax.validation.constraints.Min;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /** 订单控制器 */
@@ -35,6 +38,8 @@ public class OrderController {
     private OrderService orderService;
     @Autowired
     private OrderItemService orderItemService;
+    @Autowired
+    private OrderRefundService orderRefundService;
     @PostMapping
     @ApiOperation("创建订单")
     public ApiResponse<OrderResponse> createOrder(@Valid @RequestBody OrderCreateRequest request) {
@@ -49,6 +54,30 @@ public class OrderController {
         OrderResponse response = orderService.payOrder(request);
         return ApiResponse.success(response);
     }
+    @PostMapping("/refund")
+    @ApiOperation("订单退款(整单)")
+    public ApiResponse<OrderResponse> refundOrder(@Valid @RequestBody OrderRefundRequest request) {
+        log.info("订单退款请求: {}", request);
+        OrderResponse response = orderRefundService.refundOrder(request);
+        return ApiResponse.success(response);
+    }
+
+    @PostMapping("/refund/batch")
+    @ApiOperation("批量订单退款(整单)")
+    public ApiResponse<RefundResult> refundOrders(@RequestBody List<@Valid OrderRefundRequest> requests) {
+        log.info("批量订单退款请求, 订单数: {}", requests.size());
+        RefundResult result = orderRefundService.refundOrders(requests);
+        return ApiResponse.success(result);
+    }
+
+    @PostMapping("/refund/merchant/{merchantId}")
+    @ApiOperation("商家订单召回: 退款商家全部已支付订单")
+    public ApiResponse<RefundResult> refundMerchantOrders(@PathVariable Long merchantId, @RequestParam String reason) {
+        log.info("商家订单召回: merchantId={}, reason={}", merchantId, reason);
+        RefundResult result = orderRefundService.refundMerchantOrders(merchantId, reason);
+        return ApiResponse.success(result);
+    }
+
     @GetMapping("/{id}")
     @ApiOperation("根据ID查询订单")
     public ApiResponse<OrderResponse> findById(@PathVariable Long id) {
@@ -57,6 +86,14 @@ public class OrderController {
         return ApiResponse.success(response);
     }
 
+    @GetMapping("/details")
+    @ApiOperation("批量查询订单详情")
+    public ApiResponse<List<OrderResponse>> findDetailsByIds(@RequestParam List<Long> ids) {
+        log.info("批量查询订单详情: ids={}", ids);
+        List<OrderResponse> responses = orderService.findDetailsByIds(ids);
+        return ApiResponse.success(responses);
+    }
+
     @DeleteMapping("/{id}")
     @ApiOperation("删除订单")
     public ApiResponse<Boolean> deleteOrder(@PathVariable Long id) {
@@ -78,11 +115,13 @@ public class OrderController {
         
         Page<Order> page = orderService.findPage(pageNum, pageSize, userId, merchantId, status);
         
+        // 一次分组查询统计当前页所有订单的明细数量
+        List<Long> orderIds = page.getRecords().stream().map(Order::getOrderId).collect(Collectors.toList());
+        Map<Long, Integer> itemCountMap = orderItemService.countByOrderIds(orderIds);
         // 转换为简化响应
-        List<OrderSimpleResponse> simpleResponses = page.getRecords().stream().map(order -> {
-            List<com.shopping.entity.OrderItem> items = orderItemService.findByOrderId(order.getOrderId());
-            return buildSimpleOrderResponse(order, items.size());
-        }).collect(Collectors.toList());
+        List<OrderSimpleResponse> simpleResponses = page.getRecords().stream()
+                .map(order -> buildSimpleOrderResponse(order, itemCountMap.getOrDefault(order.getOrderId(), 0)))
+                .collect(Collectors.toList());
         
         PageResponse<OrderSimpleResponse> response = PageResponse.of(
                 page.getCurrent(),
@@ -94,6 +133,26 @@ public class OrderController {
         return ApiResponse.success(response);
     }
 
+    @GetMapping("/scroll")
+    @ApiOperation("游标分页查询订单(首页不传cursor, 之后传上一页返回的nextCursor)")
+    public ApiResponse<PageResponse<OrderSimpleResponse>> scroll(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") @Min(1) int size,
+            @RequestParam(required = false) Long userId,
+            @RequestParam(required = false) Long merchantId,
+            @RequestParam(required = false) Integer status,
+            @RequestParam(defaultValue = "false") boolean withTotal) {
+        log.info("游标分页查询订单: cursor={}, size={}, userId={}, merchantId={}, status={}",
+                cursor, size, userId, merchantId, status);
+        PageResponse<Order> page = orderService.scroll(cursor, size, userId, merchantId, status, withTotal);
+        List<Long> orderIds = page.getRecords().stream().map(Order::getOrderId).collect(Collectors.toList());
+        Map<Long, Integer> itemCountMap = orderItemService.countByOrderIds(orderIds);
+        List<OrderSimpleResponse> simpleResponses = page.getRecords().stream()
+                .map(order -> buildSimpleOrderResponse(order, itemCountMap.getOrDefault(order.getOrderId(), 0)))
+                .collect(Collectors.toList());
+        return ApiResponse.success(page.withRecords(simpleResponses));
+    }
+
     /** 构建简化订单响应 */
     private OrderSimpleResponse buildSimpleOrderResponse(Order order, int itemCount) {
         OrderSimpleResponse response = new OrderSimpleResponse();
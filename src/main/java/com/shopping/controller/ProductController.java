@@ -111,6 +111,17 @@ public class ProductController {
         return ApiResponse.success(response);
     }
 
+    @GetMapping("/scroll")
+    @ApiOperation("游标分页查询商品(首页不传cursor, 之后传上一页返回的nextCursor)")
+    public ApiResponse<PageResponse<Product>> scroll(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") @Min(1) int size,
+            @RequestParam(required = false) Long merchantId,
+            @RequestParam(defaultValue = "false") boolean withTotal) {
+        log.info("游标分页查询商品: cursor={}, size={}, merchantId={}", cursor, size, merchantId);
+        return ApiResponse.success(productService.scroll(cursor, size, merchantId, withTotal));
+    }
+
     @PostMapping("/{productId}/enable")
     @ApiOperation("上架商品")
     public ApiResponse<Boolean> enableProduct(@PathVariable Long productId) {
@@ -210,6 +221,17 @@ public class ProductController {
         return ApiResponse.success(response);
     }
 
+    @GetMapping("/skus/scroll")
+    @ApiOperation("游标分页查询SKU(首页不传cursor, 之后传上一页返回的nextCursor)")
+    public ApiResponse<PageResponse<ProductSku>> scrollSku(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") @Min(1) int size,
+            @RequestParam(required = false) Long productId,
+            @RequestParam(defaultValue = "false") boolean withTotal) {
+        log.info("游标分页查询SKU: cursor={}, size={}, productId={}", cursor, size, productId);
+        return ApiResponse.success(productSkuService.scroll(cursor, size, productId, withTotal));
+    }
+
     @PostMapping("/skus/{skuId}/enable")
     @ApiOperation("启用SKU")
     public ApiResponse<Boolean> enableSku(@PathVariable Long skuId) {
@@ -5,11 +5,14 @@ import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.shopping.dto.response.ApiResponse;
 import com.shopping.dto.response.PageResponse;
+import com.shopping.dto.response.ReconciliationResult;
 import com.shopping.dto.response.SettlementDetail;
 import com.shopping.dto.response.SettlementResult;
 import com.shopping.entity.DailySettlement;
+import com.shopping.entity.MerchantDailyLedger;
 import com.shopping.exception.BusinessException;
 import com.shopping.exception.ErrorCode;
+import com.shopping.service.MerchantLedgerService;
 import com.shopping.service.SettlementService;
 import com.shopping.task.SettlementTask;
 import io.swagger.annotations.Api;
@@ -35,6 +38,8 @@ public class SettlementController {
     private SettlementService settlementService;
     @Autowired
     private SettlementTask settlementTask;
+    @Autowired
+    private MerchantLedgerService merchantLedgerService;
     @PostMapping("/daily")
     @ApiOperation("执行每日结算(所有商家)")
     public ApiResponse<SettlementResult> executeDailySettlement(
@@ -124,6 +129,20 @@ public class SettlementController {
         return ApiResponse.success(response);
     }
 
+    @GetMapping("/scroll")
+    @ApiOperation("游标分页查询结算记录(首页不传cursor, 之后传上一页返回的nextCursor)")
+    public ApiResponse<PageResponse<DailySettlement>> scroll(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") @Min(1) int size,
+            @RequestParam(required = false) Long merchantId,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate endDate,
+            @RequestParam(defaultValue = "false") boolean withTotal) {
+        log.info("游标分页查询结算记录: cursor={}, size={}, merchantId={}, startDate={}, endDate={}",
+                cursor, size, merchantId, startDate, endDate);
+        return ApiResponse.success(settlementService.scroll(cursor, size, merchantId, startDate, endDate, withTotal));
+    }
+
     @GetMapping("/merchant/{merchantId}/date/{date}/sales")
     @ApiOperation("计算指定日期的销售额")
     public ApiResponse<BigDecimal> calculateSalesAmount(
@@ -135,6 +154,27 @@ public class SettlementController {
     }
 
 
+    @GetMapping("/merchant/{merchantId}/ledger")
+    @ApiOperation(value = "查询商家实时账本", notes = "不传日期时查询当天, 支付和退款时实时累加")
+    public ApiResponse<MerchantDailyLedger> findLedger(
+            @PathVariable Long merchantId,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate date) {
+        log.info("查询商家实时账本: merchantId={}, date={}", merchantId, date);
+        if (date == null) {
+            date = LocalDate.now();
+        }
+        return ApiResponse.success(merchantLedgerService.findDaily(merchantId, date));
+    }
+
+    @GetMapping("/merchant/{merchantId}/date/{date}/reconcile")
+    @ApiOperation(value = "逐笔对账", notes = "流式比对当日支付的订单和商家收入流水、当日退款的订单和退款流水, 返回不一致的订单明细")
+    public ApiResponse<ReconciliationResult> reconcile(
+            @PathVariable Long merchantId,
+            @PathVariable @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate date) {
+        log.info("逐笔对账: merchantId={}, date={}", merchantId, date);
+        return ApiResponse.success(settlementService.reconcile(merchantId, date));
+    }
+
     @PostMapping("/test")
     @ApiOperation("测试结算任务")
     public ApiResponse<String> testSettlementTask(
@@ -0,0 +1,22 @@
+package com.shopping.dto.request;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/** 批量增加用户余额的单笔入账明细 */
+@Data
+public class UserBalanceCredit {
+    /** 用户ID */
+    private Long userId;
+    /** 增加金额 */
+    private BigDecimal amount;
+    /** 交易类型: 1-充值, 2-消费, 3-收入, 4-退款 */
+    private Integer transactionType;
+    /** 关联ID(订单ID、退款ID等) */
+    private Long relatedId;
+    /** 关联类型 */
+    private String relatedType;
+    /** 备注 */
+    private String remark;
+}
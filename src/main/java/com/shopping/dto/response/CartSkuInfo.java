@@ -0,0 +1,35 @@
+package com.shopping.dto.response;
+
+import lombok.Data;
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/** 下单校验用的SKU信息, 由product_sku关联product一次查出 */
+@Data
+public class CartSkuInfo implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** SKU ID */
+    private Long skuId;
+
+    /** 商品ID */
+    private Long productId;
+
+    /** 商品所属商家ID */
+    private Long merchantId;
+
+    /** 单价 */
+    private BigDecimal price;
+
+    /** SKU状态: 0-不可用, 1-可用 */
+    private Integer skuStatus;
+
+    /** 商品状态: 0-下架, 1-上架 */
+    private Integer productStatus;
+
+    /** 库存数量 */
+    private Integer stockQuantity;
+
+    /** 库存版本 */
+    private Long stockVersion;
+}
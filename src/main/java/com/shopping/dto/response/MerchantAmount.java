@@ -0,0 +1,20 @@
+package com.shopping.dto.response;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/** 按商家分组的金额统计结果 */
+@Data
+@ApiModel(description = "商家金额统计")
+public class MerchantAmount implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @ApiModelProperty(value = "商家ID")
+    private Long merchantId;
+
+    @ApiModelProperty(value = "金额")
+    private BigDecimal amount;
+}
@@ -0,0 +1,30 @@
+package com.shopping.dto.response;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/** 对账不一致的订单 */
+@Data
+@ApiModel(description = "对账不一致的订单")
+public class OrderMismatch implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @ApiModelProperty(value = "订单ID, 收入流水未关联订单时为流水的关联ID")
+    private Long orderId;
+
+    @ApiModelProperty(value = "订单号")
+    private String orderNo;
+
+    @ApiModelProperty(value = "订单金额, 没有对应的已支付或已退款订单时为空")
+    private BigDecimal orderAmount;
+
+    @ApiModelProperty(value = "商家收入或退款流水金额(退款取正数), 没有对应的流水时为空")
+    private BigDecimal incomeAmount;
+
+    @ApiModelProperty(value = "不一致类型: MISSING_INCOME-缺少收入流水, MISSING_ORDER-缺少已支付订单, AMOUNT_MISMATCH-金额不一致, "
+            + "MISSING_REFUND-缺少退款流水, MISSING_REFUND_ORDER-缺少已退款订单, REFUND_AMOUNT_MISMATCH-退款金额不一致")
+    private String mismatchType;
+}
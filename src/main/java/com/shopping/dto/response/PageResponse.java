@@ -5,7 +5,9 @@ import io.swagger.annotations.ApiModelProperty;
 import lombok.Data;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
 
 /**
  * 分页响应DTO
@@ -22,12 +24,18 @@ public class PageResponse<T> implements Serializable {
     @ApiModelProperty(value = "每页大小")
     private Long size;
 
-    @ApiModelProperty(value = "总记录数")
+    @ApiModelProperty(value = "总记录数, 游标分页未要求统计时为空")
     private Long total;
 
-    @ApiModelProperty(value = "总页数")
+    @ApiModelProperty(value = "总页数, 未统计总记录数时为空")
     private Long pages;
 
+    @ApiModelProperty(value = "游标分页: 下一页游标, 没有更多数据时为空")
+    private String nextCursor;
+
+    @ApiModelProperty(value = "游标分页: 是否还有更多数据")
+    private Boolean hasMore;
+
     @ApiModelProperty(value = "数据列表")
     private List<T> records;
 
@@ -39,8 +47,42 @@ public class PageResponse<T> implements Serializable {
         response.setCurrent(current);
         response.setSize(size);
         response.setTotal(total);
-        response.setPages((total + size - 1) / size); // 计算总页数
+        if (total != null) {
+            response.setPages((total + size - 1) / size); // 计算总页数
+        }
         response.setRecords(records);
         return response;
     }
+
+    /**
+     * 构建游标分页响应
+     * @param fetched 按 size+1 条查询到的数据, 多出的一条用于判断是否还有下一页
+     * @param total 总记录数, 未统计时传null
+     * @param cursorOf 根据当前页最后一条数据生成下一页游标
+     */
+    public static <T> PageResponse<T> ofCursor(List<T> fetched, int size, Long total, Function<T, String> cursorOf) {
+        boolean hasMore = fetched.size() > size;
+        List<T> records = hasMore ? new ArrayList<>(fetched.subList(0, size)) : fetched;
+        PageResponse<T> response = of(null, (long) size, total, records);
+        response.setHasMore(hasMore);
+        if (hasMore) {
+            response.setNextCursor(cursorOf.apply(records.get(records.size() - 1)));
+        }
+        return response;
+    }
+
+    /**
+     * 替换数据列表, 保留分页信息
+     */
+    public <R> PageResponse<R> withRecords(List<R> newRecords) {
+        PageResponse<R> response = new PageResponse<>();
+        response.setCurrent(current);
+        response.setSize(size);
+        response.setTotal(total);
+        response.setPages(pages);
+        response.setNextCursor(nextCursor);
+        response.setHasMore(hasMore);
+        response.setRecords(newRecords);
+        return response;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,62 @@
+package com.shopping.dto.response;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/** 商家逐笔对账结果 */
+@Data
+@ApiModel(description = "商家逐笔对账结果")
+public class ReconciliationResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @ApiModelProperty(value = "商家ID")
+    private Long merchantId;
+
+    @ApiModelProperty(value = "对账日期")
+    private LocalDate settlementDate;
+
+    @ApiModelProperty(value = "当日支付的订单数, 包括之后已发货、已完成和已退款的订单")
+    private long orderCount;
+
+    @ApiModelProperty(value = "收入流水数")
+    private long transactionCount;
+
+    @ApiModelProperty(value = "一致的订单数")
+    private long matchedCount;
+
+    @ApiModelProperty(value = "不一致的订单数, 包括支付和退款两部分")
+    private long mismatchCount;
+
+    @ApiModelProperty(value = "当日支付的订单总金额")
+    private BigDecimal orderAmount = new BigDecimal("0.00");
+
+    @ApiModelProperty(value = "收入流水总金额")
+    private BigDecimal incomeAmount = new BigDecimal("0.00");
+
+    @ApiModelProperty(value = "当日退款的订单数")
+    private long refundOrderCount;
+
+    @ApiModelProperty(value = "退款流水数")
+    private long refundTransactionCount;
+
+    @ApiModelProperty(value = "退款一致的订单数")
+    private long refundMatchedCount;
+
+    @ApiModelProperty(value = "当日退款的订单总金额")
+    private BigDecimal refundOrderAmount = new BigDecimal("0.00");
+
+    @ApiModelProperty(value = "退款流水总金额(正数)")
+    private BigDecimal refundAmount = new BigDecimal("0.00");
+
+    @ApiModelProperty(value = "不一致的订单明细, 最多返回配置的条数")
+    private List<OrderMismatch> mismatches = new ArrayList<>();
+
+    @ApiModelProperty(value = "不一致的订单明细是否被截断")
+    private boolean truncated;
+}
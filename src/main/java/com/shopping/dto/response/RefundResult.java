@@ -0,0 +1,37 @@
+package com.shopping.dto.response;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/** 批量退款结果汇总 */
+@Data
+@ApiModel(description = "批量退款结果汇总")
+public class RefundResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @ApiModelProperty(value = "请求退款的订单数")
+    private Integer requestedCount = 0;
+
+    @ApiModelProperty(value = "退款成功的订单数")
+    private Integer refundedCount = 0;
+
+    @ApiModelProperty(value = "退款总金额")
+    private BigDecimal refundedAmount = new BigDecimal("0.00");
+
+    @ApiModelProperty(value = "退款成功的订单ID")
+    private List<Long> refundedOrderIds = new ArrayList<>();
+
+    @ApiModelProperty(value = "不是已支付状态而跳过的订单ID")
+    private List<Long> skippedOrderIds = new ArrayList<>();
+
+    @ApiModelProperty(value = "退款失败的订单ID(不满足退款条件或退款过程出错)")
+    private List<Long> failedOrderIds = new ArrayList<>();
+
+    @ApiModelProperty(value = "执行总耗时(毫秒)")
+    private Long executionMillis;
+}
@@ -35,6 +35,9 @@ public class SettlementResult implements Serializable {
     @ApiModelProperty(value = "是否全部成功")
     private Boolean allSuccess;
 
+    @ApiModelProperty(value = "多实例分区结算时本实例结束时仍未完成的分区号(其他实例持有、等待重试或已失败)")
+    private List<Integer> unfinishedShards;
+
     @ApiModelProperty(value = "执行总耗时(秒)")
     private String executionTime;
 
@@ -21,7 +21,7 @@ public class AccountTransaction implements Serializable {
     private static final long serialVersionUID = 1L;
 
     /** 交易记录ID */
-    @TableId(value = "transaction_id", type = IdType.AUTO)
+    @TableId(value = "transaction_id", type = IdType.ASSIGN_ID)
     private Long transactionId;
 
     /** 交易流水号 */
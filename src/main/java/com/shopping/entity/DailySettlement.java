@@ -22,7 +22,7 @@ public class DailySettlement implements Serializable {
     private static final long serialVersionUID = 1L;
 
     /** 结算ID */
-    @TableId(value = "settlement_id", type = IdType.AUTO)
+    @TableId(value = "settlement_id", type = IdType.ASSIGN_ID)
     private Long settlementId;
 
     /** 结算单号 */
@@ -0,0 +1,33 @@
+package com.shopping.entity;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * ID号段实体类
+ * 每个业务(表)一行, 每次把max_id增加step, 取得(max_id - step, max_id]区间内的ID在本地分配
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("id_segment")
+public class IdSegment implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** 业务标识, 使用表名 */
+    private String bizTag;
+
+    /** 已分配出去的最大ID */
+    private Long maxId;
+
+    /** 每次分配的号段长度 */
+    private Integer step;
+
+    /** 更新时间 */
+    private LocalDateTime updatedTime;
+}
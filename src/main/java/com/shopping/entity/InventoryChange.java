@@ -1,6 +1,7 @@
 package com.shopping.entity;
 
 import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
 import lombok.Data;
@@ -20,7 +21,7 @@ public class InventoryChange implements Serializable {
     private static final long serialVersionUID = 1L;
 
     /** 库存变更ID */
-    @TableId(value = "change_id", type = IdType.AUTO)
+    @TableId(value = "change_id", type = IdType.ASSIGN_ID)
     private Long changeId;
 
     /** SKU ID */
@@ -49,4 +50,8 @@ public class InventoryChange implements Serializable {
 
     /** 创建时间 */
     private LocalDateTime createdTime;
+
+    /** 本次更新后的库存版本号, 不入库; 库存变更日志据此判断提交过程中崩溃的事务是否已提交 */
+    @TableField(exist = false)
+    private Long stockVersion;
 }
\ No newline at end of file
@@ -0,0 +1,64 @@
+package com.shopping.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 商家入账发件箱实体类
+ * 支付事务中只写入一条待入账记录, 由后台任务按商家合并后更新商家余额并批量写入交易流水
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("merchant_credit_outbox")
+public class MerchantCreditOutbox implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** 发件箱记录ID */
+    @TableId(value = "outbox_id", type = IdType.AUTO)
+    private Long outboxId;
+
+    /** 商家ID */
+    private Long merchantId;
+
+    /** 入账金额 */
+    private BigDecimal amount;
+
+    /** 交易类型: 3-收入 */
+    private Integer transactionType;
+
+    /** 关联ID(订单ID) */
+    private Long relatedId;
+
+    /** 备注 */
+    private String remark;
+
+    /** 状态: 0-待入账, 1-已入账, 2-入账失败 */
+    private Integer status;
+
+    /** 入账失败次数 */
+    private Integer attempts;
+
+    /** 认领记录的租约标识 */
+    private String leaseToken;
+
+    /** 租约过期时间, 入账失败后为下次重试时间 */
+    private LocalDateTime leaseUntil;
+
+    /** 最近一次入账失败的原因 */
+    private String lastError;
+
+    /** 创建时间, 即支付时间, 入账后作为交易流水的创建时间 */
+    private LocalDateTime createdTime;
+
+    /** 入账时间 */
+    private LocalDateTime postedTime;
+}
@@ -0,0 +1,44 @@
+package com.shopping.entity;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 商家每日实时账本实体类
+ * 同一商家同一天拆分为多个分条(stripe)累加, 减少热点商家对同一行的锁竞争, 查询时按商家和日期求和
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("merchant_daily_ledger")
+public class MerchantDailyLedger implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** 商家ID */
+    private Long merchantId;
+
+    /** 账本日期 */
+    private LocalDate ledgerDate;
+
+    /** 分条序号 */
+    private Integer stripe;
+
+    /** 当日支付的订单金额, 不论之后是否发货、完成或退款; 退款不扣回, 记在退款日的已退款金额中 */
+    private BigDecimal paidAmount;
+
+    /** 当日退款的订单金额 */
+    private BigDecimal refundAmount;
+
+    /** 商家账户当日净收入 */
+    private BigDecimal netIncome;
+
+    /** 更新时间 */
+    private LocalDateTime updatedTime;
+}
@@ -0,0 +1,34 @@
+package com.shopping.entity;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 商家子账户实体类
+ * 商家收入按订单ID分散记入多个子账户(slot), 不再争抢merchant表的同一行锁; 定时归集到商家主账户余额
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("merchant_sub_account")
+public class MerchantSubAccount implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** 商家ID */
+    private Long merchantId;
+
+    /** 子账户序号 */
+    private Integer slot;
+
+    /** 尚未归集到主账户的余额 */
+    private BigDecimal balance;
+
+    /** 更新时间 */
+    private LocalDateTime updatedTime;
+}
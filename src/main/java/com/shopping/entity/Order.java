@@ -21,7 +21,7 @@ public class Order implements Serializable {
     private static final long serialVersionUID = 1L;
 
     /** 订单ID */
-    @TableId(value = "order_id", type = IdType.AUTO)
+    @TableId(value = "order_id", type = IdType.ASSIGN_ID)
     private Long orderId;
 
     /** 订单号 */
@@ -42,6 +42,9 @@ public class Order implements Serializable {
     /** 支付时间 */
     private LocalDateTime paymentTime;
 
+    /** 退款时间 */
+    private LocalDateTime refundTime;
+
     /** 创建时间 */
     private LocalDateTime createdTime;
 
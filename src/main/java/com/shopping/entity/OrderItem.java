@@ -21,7 +21,7 @@ public class OrderItem implements Serializable {
     private static final long serialVersionUID = 1L;
 
     /** 订单明细ID */
-    @TableId(value = "item_id", type = IdType.AUTO)
+    @TableId(value = "item_id", type = IdType.ASSIGN_ID)
     private Long itemId;
 
     /** 订单ID */
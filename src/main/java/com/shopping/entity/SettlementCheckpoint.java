@@ -0,0 +1,52 @@
+package com.shopping.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/** 结算分片检查点实体类, 记录已完成的商家分片, 结算中断后重新执行时跳过 */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("settlement_checkpoint")
+public class SettlementCheckpoint implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** 检查点ID */
+    @TableId(value = "checkpoint_id", type = IdType.AUTO)
+    private Long checkpointId;
+
+    /** 结算日期 */
+    private LocalDate settlementDate;
+
+    /** 分区序号, 不分区结算时为0 */
+    private Integer shardNo;
+
+    /** 分区总数, 不分区结算时为1 */
+    private Integer shardCount;
+
+    /** 分片起始商家ID(包含) */
+    private Long startMerchantId;
+
+    /** 分片结束商家ID(包含) */
+    private Long endMerchantId;
+
+    /** 分片商家数 */
+    private Integer merchantCount;
+
+    /** 成功结算商家数 */
+    private Integer successCount;
+
+    /** 失败结算商家数 */
+    private Integer failedCount;
+
+    /** 创建时间 */
+    private LocalDateTime createdTime;
+}
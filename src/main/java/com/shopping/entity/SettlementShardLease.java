@@ -0,0 +1,40 @@
+package com.shopping.entity;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/** 结算分区租约实体类, 多实例部署时每个分区同一时间只由持有租约的实例结算 */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("settlement_shard_lease")
+public class SettlementShardLease implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** 结算日期 */
+    private LocalDate settlementDate;
+
+    /** 分区序号 */
+    private Integer shardNo;
+
+    /** 分区总数 */
+    private Integer shardCount;
+
+    /** 持有租约的实例 */
+    private String owner;
+
+    /** 租约到期时间 */
+    private LocalDateTime leaseUntil;
+
+    /** 状态: 0-未完成, 1-已完成, 2-失败 */
+    private Integer status;
+
+    /** 更新时间 */
+    private LocalDateTime updatedTime;
+}
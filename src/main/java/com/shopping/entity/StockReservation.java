@@ -0,0 +1,48 @@
+package com.shopping.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 库存预留记录实体类
+ * 内存预留的扣减量随调用方事务写入一条记录, 回写数据库库存时在同一事务中标记为已回写, 进程崩溃后据此恢复未回写的扣减量
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("stock_reservation")
+public class StockReservation implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** 预留记录ID */
+    @TableId(value = "reservation_id", type = IdType.AUTO)
+    private Long reservationId;
+
+    /** SKU ID */
+    private Long skuId;
+
+    /** 预留数量 */
+    private Integer quantity;
+
+    /** 关联ID(订单ID) */
+    private Long relatedId;
+
+    /** 关联类型 */
+    private String relatedType;
+
+    /** 状态: 0-待回写, 1-已回写, 2-回写失败 */
+    private Integer status;
+
+    /** 创建时间 */
+    private LocalDateTime createdTime;
+
+    /** 回写时间 */
+    private LocalDateTime appliedTime;
+}
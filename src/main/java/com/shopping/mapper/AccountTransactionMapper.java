@@ -1,13 +1,15 @@
 package com.shopping.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.shopping.dto.response.MerchantAmount;
 import com.shopping.entity.AccountTransaction;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.stereotype.Repository;
-import org.springframework.web.bind.annotation.RequestBody;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.List;
 
 /**
  * 账户交易记录Mapper接口
@@ -18,4 +20,17 @@ public interface AccountTransactionMapper extends BaseMapper<AccountTransaction>
             @Param("accountId") Long accountId,
             @Param("date") LocalDate date
     );
+
+    /** 按商家分组统计指定日期的账户净收入(收入和退款), shardCount大于1时只统计account_id % shardCount == shardNo的商家 */
+    List<MerchantAmount> sumMerchantNetIncomeGroupByMerchant(@Param("date") LocalDate date,
+                                                             @Param("shardNo") int shardNo, @Param("shardCount") int shardCount);
+
+    /** 流式查询商家账户指定日期的订单收入流水, 按关联订单ID升序; 遍历期间需保持SqlSession打开 */
+    Cursor<AccountTransaction> streamMerchantIncomeByDate(@Param("accountId") Long accountId, @Param("date") LocalDate date);
+
+    /** 流式查询商家账户指定日期的订单退款流水, 按关联订单ID升序; 遍历期间需保持SqlSession打开 */
+    Cursor<AccountTransaction> streamMerchantRefundByDate(@Param("accountId") Long accountId, @Param("date") LocalDate date);
+
+    /** 多行insert批量保存交易记录, transaction_id需预先分配 */
+    int insertBatch(@Param("list") List<AccountTransaction> list);
 }
\ No newline at end of file
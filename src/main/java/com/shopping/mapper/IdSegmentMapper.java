@@ -0,0 +1,21 @@
+package com.shopping.mapper;
+
+import com.shopping.entity.IdSegment;
+import org.apache.ibatis.annotations.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/** ID号段Mapper接口 */
+@Repository
+public interface IdSegmentMapper {
+
+    /** 把max_id增加一个步长, 业务标识不存在时返回0 */
+    int increaseMaxId(@Param("bizTag") String bizTag);
+
+    /** 查询业务标识当前的号段 */
+    IdSegment findByTag(@Param("bizTag") String bizTag);
+
+    /** 查询已配置号段的全部业务标识, 启动检查使用 */
+    List<String> findAllTags();
+}
@@ -2,9 +2,18 @@ package com.shopping.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.shopping.entity.InventoryChange;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * 库存变更记录Mapper接口
  */
 public interface InventoryChangeMapper extends BaseMapper<InventoryChange> {
-}
\ No newline at end of file
+
+    /** 多行insert批量保存库存变更记录 */
+    Integer insertBatch(@Param("list") List<InventoryChange> list);
+
+    /** 多行insert批量保存库存变更记录, change_id已存在的记录忽略, 用于重放库存变更日志 */
+    Integer insertBatchIgnore(@Param("list") List<InventoryChange> list);
+}
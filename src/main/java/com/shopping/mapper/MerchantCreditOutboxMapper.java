@@ -0,0 +1,52 @@
+package com.shopping.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.shopping.entity.MerchantCreditOutbox;
+import org.apache.ibatis.annotations.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/** 商家入账发件箱Mapper接口 */
+@Repository
+public interface MerchantCreditOutboxMapper extends BaseMapper<MerchantCreditOutbox> {
+
+    /** 按ID顺序查询没有被认领(或租约已过期)的待入账记录(不加锁) */
+    List<MerchantCreditOutbox> findClaimable(@Param("limit") int limit);
+
+    /** 按主键认领待入账记录, 写入租约标识和过期时间, 返回认领成功的行数 */
+    int claim(@Param("outboxIds") Collection<Long> outboxIds,
+              @Param("leaseToken") String leaseToken,
+              @Param("leaseSeconds") int leaseSeconds);
+
+    /** 查询指定记录中本次认领成功且仍待入账的记录 */
+    List<MerchantCreditOutbox> findClaimed(@Param("outboxIds") Collection<Long> outboxIds,
+                                           @Param("leaseToken") String leaseToken);
+
+    /** 查询商家的待入账记录, 不论是否被认领 */
+    List<MerchantCreditOutbox> findPendingByMerchant(@Param("merchantId") Long merchantId, @Param("limit") int limit);
+
+    /** 汇总商家的待入账金额, 不论是否被认领 */
+    BigDecimal sumPendingByMerchant(@Param("merchantId") Long merchantId);
+
+    /** 把待入账记录标记为已入账, 返回实际标记的行数; 小于记录数说明部分记录已被其他事务处理 */
+    int markPosted(@Param("outboxIds") Collection<Long> outboxIds);
+
+    /** 累计尝试次数并延后重试, 尝试次数达到maxAttempts的记录标记为入账失败 */
+    int markFailed(@Param("outboxIds") Collection<Long> outboxIds,
+                   @Param("maxAttempts") int maxAttempts,
+                   @Param("retryDelaySeconds") int retryDelaySeconds,
+                   @Param("lastError") String lastError);
+
+    /** 统计指定时间之前创建的待入账记录数, 不含入账失败的记录 */
+    long countPendingBefore(@Param("before") LocalDateTime before);
+
+    /** 查询[from, before)内创建且未入账(待入账或入账失败)的记录所属的商家ID */
+    List<Long> findUnpostedMerchantIds(@Param("from") LocalDateTime from, @Param("before") LocalDateTime before);
+
+    /** 删除指定时间之前已入账的记录 */
+    int deletePostedBefore(@Param("before") LocalDateTime before, @Param("limit") int limit);
+}
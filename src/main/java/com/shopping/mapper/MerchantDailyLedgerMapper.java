@@ -0,0 +1,32 @@
+package com.shopping.mapper;
+
+import com.shopping.entity.MerchantDailyLedger;
+import org.apache.ibatis.annotations.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/** 商家每日实时账本Mapper接口 */
+@Repository
+public interface MerchantDailyLedgerMapper {
+
+    /** 累加一个分条的金额, 分条不存在时插入 */
+    int upsert(MerchantDailyLedger ledger);
+
+    /** 汇总商家指定日期所有分条的金额, 没有记录时返回null */
+    MerchantDailyLedger sumByMerchantAndDate(@Param("merchantId") Long merchantId, @Param("date") LocalDate date);
+
+    /**
+     * 锁定商家指定日期的所有分条并汇总金额, 没有记录时返回null; 需在事务中调用.
+     * 唯一索引上的临键锁同时阻止其他事务插入新的分条, 事务结束前该商家当天的账本不会再变化
+     */
+    MerchantDailyLedger sumByMerchantAndDateForUpdate(@Param("merchantId") Long merchantId, @Param("date") LocalDate date);
+
+    /** 按商家分组汇总指定日期的金额, shardCount大于1时只汇总merchant_id % shardCount == shardNo的商家 */
+    List<MerchantDailyLedger> sumGroupByMerchant(@Param("date") LocalDate date,
+                                                 @Param("shardNo") int shardNo, @Param("shardCount") int shardCount);
+
+    /** 删除商家指定日期的所有分条 */
+    int deleteByMerchantAndDate(@Param("merchantId") Long merchantId, @Param("date") LocalDate date);
+}
@@ -5,10 +5,15 @@ import com.shopping.entity.Merchant;
 import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+
 /**
  * 商家Mapper接口
  */
 @Repository
 public interface MerchantMapper extends BaseMapper<Merchant> {
     Merchant selectMerchantForUpdate(@Param("merchantId") Long merchantId);
+
+    /** 商家余额增加amount */
+    int addMerchantBalance(@Param("merchantId") Long merchantId, @Param("amount") BigDecimal amount);
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package com.shopping.mapper;
+
+import com.shopping.entity.MerchantSubAccount;
+import org.apache.ibatis.annotations.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/** 商家子账户Mapper接口 */
+@Repository
+public interface MerchantSubAccountMapper {
+
+    /** 子账户余额增加amount, 子账户不存在时插入 */
+    int credit(@Param("merchantId") Long merchantId, @Param("slot") int slot, @Param("amount") BigDecimal amount);
+
+    /** 查询单个子账户余额 */
+    BigDecimal findBalance(@Param("merchantId") Long merchantId, @Param("slot") int slot);
+
+    /** 汇总商家所有子账户余额, 没有子账户时返回0 */
+    BigDecimal sumBalance(@Param("merchantId") Long merchantId);
+
+    /** 锁定商家余额不为0的子账户 */
+    List<MerchantSubAccount> selectNonZeroForUpdate(@Param("merchantId") Long merchantId);
+
+    /** 子账户余额减少amount */
+    int deduct(@Param("merchantId") Long merchantId, @Param("slot") int slot, @Param("amount") BigDecimal amount);
+
+    /** 查询有待归集余额的商家 */
+    List<Long> findMerchantIdsToFold(@Param("limit") int limit);
+}
@@ -3,14 +3,22 @@ package com.shopping.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.shopping.entity.OrderItem;
 import org.apache.ibatis.annotations.Param;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /** 订单明细Mapper接口 */
 public interface OrderItemMapper extends BaseMapper<OrderItem> {
 
+    /** 多行insert批量保存订单明细, item_id需预先分配 */
+    int insertBatch(@Param("list") List<OrderItem> list);
+
     /** 根据订单ID查询明细 */
     List<OrderItem> findByOrderId(@Param("orderId") Long orderId);
 
     /** 根据SKU ID查询已支付的订单明细 */
     List<OrderItem> findPaidItemsBySkuId(@Param("skuId") Long skuId);
+
+    /** 按订单ID分组统计明细数量, 每行包含orderId和itemCount */
+    List<Map<String, Object>> countByOrderIds(@Param("orderIds") Collection<Long> orderIds);
 }
\ No newline at end of file
@@ -1,29 +1,67 @@
 package com.shopping.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.shopping.dto.response.MerchantAmount;
 import com.shopping.entity.Order;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /** 订单Mapper接口 */
 @Repository
 public interface OrdersMapper extends BaseMapper<Order> {
-    /** 将订单状态由未支付0, 改为已支付1 */
-    Integer updateOrderPaid(@Param("orderId") Long orderId);
+    /** 将订单状态由未支付0, 改为已支付1, 支付时间由调用方传入, 与实时账本的日期一致 */
+    Integer updateOrderPaid(@Param("orderId") Long orderId, @Param("paymentTime") LocalDateTime paymentTime);
+
+    /** 锁定仍为待支付的订单, 返回锁定的订单ID; 按订单ID顺序加锁 */
+    List<Long> selectPendingIdsForUpdate(@Param("orderIds") Collection<Long> orderIds);
+
+    /** 批量将待支付订单改为已取消, 只更新状态仍为0的订单 */
+    int cancelPendingOrders(@Param("orderIds") Collection<Long> orderIds);
+
+    /** 按(created_time, order_id)游标分页查询待支付订单的ID和创建时间, afterTime为空时从头开始 */
+    List<Order> findPendingOrders(@Param("afterTime") LocalDateTime afterTime, @Param("afterId") Long afterId,
+                                  @Param("limit") int limit);
+
+    /** 锁定仍为已支付的订单, 返回订单ID、用户、商家、金额和支付时间; 按订单ID顺序加锁 */
+    List<Order> selectPaidOrdersForUpdate(@Param("orderIds") Collection<Long> orderIds);
+
+    /** 批量将已支付订单改为已退款, 只更新状态仍为1的订单; refund_time由调用方传入, 与实时账本的日期一致 */
+    int refundPaidOrders(@Param("orderIds") Collection<Long> orderIds, @Param("refundTime") LocalDateTime refundTime);
+
+    /** 按(payment_time, order_id)游标分页查询商家已支付订单的ID和支付时间, afterTime为空时从头开始 */
+    List<Order> findPaidOrdersByMerchant(@Param("merchantId") Long merchantId, @Param("afterTime") LocalDateTime afterTime,
+                                         @Param("afterId") Long afterId, @Param("limit") int limit);
 
     /** 统计商家指定日期的销售额 */
     BigDecimal sumMerchantSalesByDate(@Param("merchantId") Long merchantId, @Param("date") LocalDate date);
 
-    /** 统计商家指定日期的已支付订单金额 */
+    /** 统计商家指定日期支付的订单金额, 包括之后已发货、已完成和已退款的订单 */
     BigDecimal sumMerchantPaidSalesByDate(@Param("merchantId") Long merchantId, @Param("date") LocalDate date);
 
     /** 统计商家指定日期的已退款订单金额 */
     BigDecimal sumMerchantRefundSalesByDate(@Param("merchantId") Long merchantId, @Param("date") LocalDate date);
 
+    /** 按商家分组统计指定商家指定日期支付的订单金额, 口径同sumMerchantPaidSalesByDate, merchantIds不能为空 */
+    List<MerchantAmount> sumPaidSalesGroupByMerchant(@Param("date") LocalDate date,
+                                                     @Param("merchantIds") Collection<Long> merchantIds);
+
+    /** 按商家分组统计指定日期的已退款订单金额, shardCount大于1时只统计merchant_id % shardCount == shardNo的商家 */
+    List<MerchantAmount> sumRefundSalesGroupByMerchant(@Param("date") LocalDate date,
+                                                       @Param("shardNo") int shardNo, @Param("shardCount") int shardCount);
+
     /** 查询商家指定日期的订单 */
     List<Order> findMerchantOrdersByDate(@Param("merchantId") Long merchantId, @Param("date") LocalDate date);
+
+    /** 流式查询商家指定日期支付的订单(不论之后的状态), 按订单ID升序; 遍历期间需保持SqlSession打开 */
+    Cursor<Order> streamPaidOrdersByDate(@Param("merchantId") Long merchantId, @Param("date") LocalDate date);
+
+    /** 流式查询商家指定日期退款的订单, 按订单ID升序; 遍历期间需保持SqlSession打开 */
+    Cursor<Order> streamRefundedOrdersByDate(@Param("merchantId") Long merchantId, @Param("date") LocalDate date);
 }
\ No newline at end of file
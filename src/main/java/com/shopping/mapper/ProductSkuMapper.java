@@ -1,12 +1,17 @@
 package com.shopping.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.shopping.dto.response.CartSkuInfo;
 import com.shopping.entity.ProductSku;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Update;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 /**
  * 商品SKU Mapper接口
  */
@@ -19,4 +24,19 @@ public interface ProductSkuMapper extends BaseMapper<ProductSku> {
                                       @Param("quantity") Integer quantity,
                                       @Param("version") Long version);
 
+    /** 按sku_id顺序加锁查询库存和版本号, 保证多SKU扣减的加锁顺序一致, 避免死锁 */
+    List<ProductSku> selectStocksForUpdate(@Param("skuIds") Collection<Long> skuIds);
+
+    /** 一条语句批量扣减多个SKU的库存, key为SKU ID, value为扣减数量 */
+    Integer subtractStockBatch(@Param("skuQuantities") Map<Long, Integer> skuQuantities);
+
+    /** 一条语句批量增加多个SKU的库存, key为SKU ID, value为增加数量 */
+    Integer increaseStockBatch(@Param("skuQuantities") Map<Long, Integer> skuQuantities);
+
+    /** 关联商品表一次查询购物车中所有SKU的价格、状态、库存和所属商家 */
+    List<CartSkuInfo> selectCartSkus(@Param("skuIds") Collection<Long> skuIds);
+
+    /** 查询SKU当前的库存版本号, 用于库存变更日志重放时判断提交过程中崩溃的事务是否已提交 */
+    List<ProductSku> selectStockVersions(@Param("skuIds") Collection<Long> skuIds);
+
 }
\ No newline at end of file
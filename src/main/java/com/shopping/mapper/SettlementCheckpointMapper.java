@@ -0,0 +1,10 @@
+package com.shopping.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.shopping.entity.SettlementCheckpoint;
+
+/**
+ * 结算分片检查点Mapper接口
+ */
+public interface SettlementCheckpointMapper extends BaseMapper<SettlementCheckpoint> {
+}
@@ -0,0 +1,40 @@
+package com.shopping.mapper;
+
+import com.shopping.entity.SettlementShardLease;
+import org.apache.ibatis.annotations.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/** 结算分区租约Mapper接口, 租约时间统一使用数据库时间, 不依赖各实例的本地时钟 */
+@Repository
+public interface SettlementShardLeaseMapper {
+
+    /** 创建指定日期的全部分区, 已存在的分区忽略 */
+    int insertShards(@Param("date") LocalDate date, @Param("shardCount") int shardCount,
+                     @Param("shardNos") List<Integer> shardNos);
+
+    /** 查询指定日期的全部分区 */
+    List<SettlementShardLease> findByDate(@Param("date") LocalDate date);
+
+    /** 认领未完成且无人持有或租约已过期的分区, 返回1表示认领成功 */
+    int claim(@Param("date") LocalDate date, @Param("shardNo") int shardNo,
+              @Param("owner") String owner, @Param("leaseSeconds") int leaseSeconds);
+
+    /** 续约, 返回0表示租约已被其他实例接管 */
+    int renew(@Param("date") LocalDate date, @Param("shardNo") int shardNo,
+              @Param("owner") String owner, @Param("leaseSeconds") int leaseSeconds);
+
+    /** 标记分区已完成, 只在分区内全部商家结算成功后调用 */
+    int complete(@Param("date") LocalDate date, @Param("shardNo") int shardNo, @Param("owner") String owner);
+
+    /** 释放租约, 分区结算失败时让其他实例尽快接管 */
+    int release(@Param("date") LocalDate date, @Param("shardNo") int shardNo, @Param("owner") String owner);
+
+    /** 标记分区失败, 重试次数用完后调用, 不再被本轮认领 */
+    int fail(@Param("date") LocalDate date, @Param("shardNo") int shardNo, @Param("owner") String owner);
+
+    /** 失败的分区恢复为未完成, 重新执行结算时调用 */
+    int resetFailed(@Param("date") LocalDate date);
+}
@@ -0,0 +1,34 @@
+package com.shopping.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.shopping.entity.ProductSku;
+import com.shopping.entity.StockReservation;
+import org.apache.ibatis.annotations.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/** 库存预留记录Mapper接口 */
+@Repository
+public interface StockReservationMapper extends BaseMapper<StockReservation> {
+
+    /** 查询可用SKU扣除待回写预留量后的库存, skuId为空时查询全部可用SKU; 一条语句读取, 两者来自同一快照 */
+    List<ProductSku> selectAvailableStocks(@Param("skuId") Long skuId, @Param("status") Integer status);
+
+    /** 查询有待回写记录的SKU */
+    List<Long> findPendingSkuIds();
+
+    /** 按ID顺序查询指定SKU的待回写记录(不加锁) */
+    List<StockReservation> findPendingBySku(@Param("skuId") Long skuId, @Param("limit") int limit);
+
+    /** 标记为已回写, 返回实际标记的行数; 小于记录数说明部分记录已被处理 */
+    int markApplied(@Param("reservationIds") Collection<Long> reservationIds);
+
+    /** 标记为回写失败, 返回实际标记的行数 */
+    int markFailed(@Param("reservationIds") Collection<Long> reservationIds);
+
+    /** 删除指定时间之前已回写的记录 */
+    int deleteAppliedBefore(@Param("before") LocalDateTime before, @Param("limit") int limit);
+}
@@ -7,6 +7,7 @@ import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.util.Map;
 
 /**
  * 用户Mapper接口
@@ -17,6 +18,12 @@ public interface UserMapper extends BaseMapper<User> {
     /** 扣减用户账户余额 */
     Integer deductUserBalance(@Param("userId") Long userId, @Param("amount") BigDecimal amount);
 
-    /** 使用存储过程更新用户余额, 并返回更新后的余额 */
+    /**
+     * 使用存储过程更新用户余额, 并返回更新后的用户; 用户不存在时返回null,
+     * resultMessage为success/failure(余额不足)/disabled(用户已禁用)
+     */
     User updateBalanceAndReturn(Long userId, BigDecimal amount, String operationType);
+
+    /** 批量增加用户余额, key为用户ID, value为增加金额; 返回实际更新的用户数 */
+    int increaseBalances(@Param("amounts") Map<Long, BigDecimal> amounts);
 }
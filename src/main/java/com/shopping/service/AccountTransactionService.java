@@ -3,6 +3,7 @@ package com.shopping.service;
 import com.shopping.entity.AccountTransaction;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 /**
  * 账户交易记录服务接口
@@ -14,6 +15,11 @@ public interface AccountTransactionService {
      */
     boolean saveTransaction(AccountTransaction transaction);
 
+    /**
+     * 一条多行insert批量保存交易记录
+     */
+    boolean saveTransactions(List<AccountTransaction> transactions);
+
     /**
      * 创建交易记录
      */
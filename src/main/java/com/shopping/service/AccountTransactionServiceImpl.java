@@ -1,13 +1,15 @@
 package com.shopping.service;
 
-import cn.hutool.core.util.IdUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.shopping.entity.AccountTransaction;
 import com.shopping.mapper.AccountTransactionMapper;
+import com.shopping.utils.IdGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * 账户交易记录服务实现
@@ -15,6 +17,10 @@ import java.time.LocalDateTime;
 @Service
 public class AccountTransactionServiceImpl extends ServiceImpl<AccountTransactionMapper, AccountTransaction> 
     implements AccountTransactionService {
+    @Autowired
+    private IdGenerator idGenerator;
+    @Autowired
+    private SegmentIdAllocator segmentIdAllocator;
 
     @Override
     public boolean saveTransaction(AccountTransaction transaction) {
@@ -30,6 +36,23 @@ public class AccountTransactionServiceImpl extends ServiceImpl<AccountTransactio
         return this.save(transaction);
     }
 
+    @Override
+    public boolean saveTransactions(List<AccountTransaction> transactions) {
+        if (transactions == null || transactions.isEmpty()) {
+            return true;
+        }
+        // 多行insert不经过MybatisPlus的主键填充, 入库前先分配transaction_id
+        for (AccountTransaction transaction : transactions) {
+            if (transaction.getTransactionId() == null) {
+                transaction.setTransactionId(segmentIdAllocator.nextId(AccountTransaction.class));
+            }
+            if (transaction.getCreatedTime() == null) {
+                transaction.setCreatedTime(LocalDateTime.now());
+            }
+        }
+        return baseMapper.insertBatch(transactions) == transactions.size();
+    }
+
     @Override
     public AccountTransaction createTransaction(Integer accountType, Long accountId, 
                                               Integer transactionType, BigDecimal balanceBefore,
@@ -37,7 +60,7 @@ public class AccountTransactionServiceImpl extends ServiceImpl<AccountTransactio
                                               Long relatedId, String relatedType, String remark) {
         
         AccountTransaction transaction = new AccountTransaction();
-        transaction.setTransactionNo("TRX" + IdUtil.getSnowflakeNextId());
+        transaction.setTransactionNo(idGenerator.generateTransactionNo());
         transaction.setAccountType(accountType);
         transaction.setAccountId(accountId);
         transaction.setTransactionType(transactionType);
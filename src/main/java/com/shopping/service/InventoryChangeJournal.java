@@ -0,0 +1,678 @@
+package com.shopping.service;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.shopping.entity.InventoryChange;
+import com.shopping.entity.ProductSku;
+import com.shopping.mapper.InventoryChangeMapper;
+import com.shopping.mapper.ProductSkuMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 库存变更日志(write-behind)
+ * 事务中的库存变更记录不随事务insert, 而是登记到当前事务: 提交前把本事务的记录作为一组PREPARE写入本地内存映射段文件并等待落盘,
+ * 落盘按组进行: 一个窗口内写入的记录由后台线程force一次, 同一窗口的提交线程等待同一个结果,
+ * 事务完成后追加COMMIT或ROLLBACK标记, 已提交的组放入有界缓冲区, 由后台线程按数量或时间阈值批量多行insert入库, 入库后追加DONE标记.
+ * 事务外的记录直接作为已提交的组写入.
+ * 重启时重放全部段文件: 有DONE或ROLLBACK标记的组跳过, 有COMMIT标记的组入库; 没有标记的组说明进程在提交过程中崩溃,
+ * 按记录中更新后的库存版本号判断: 同一SKU的版本号被之后的组再次使用说明本组已回滚, 否则数据库中的版本号不小于记录的版本号即视为已提交.
+ * 只有带版本号的记录(乐观锁扣减和加锁更新库存的路径)经过本日志, 其他记录仍随事务入库
+ */
+@Slf4j
+@Component
+public class InventoryChangeJournal {
+    private static final String SEGMENT_PREFIX = "inventory-change-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    /** 段文件头部(保留) */
+    private static final int HEADER_SIZE = 8;
+    /** 记录类型: 事务中登记的组(待定)、事务外的组(已提交)、提交标记、回滚标记、已入库标记 */
+    private static final byte PREPARE = 1;
+    private static final byte DIRECT = 2;
+    private static final byte COMMIT = 3;
+    private static final byte ROLLBACK = 4;
+    private static final byte DONE = 5;
+    /** 在MyBatis的SqlSession同步(999)之前执行, 写日志失败时还能在本事务中直接入库 */
+    private static final int SYNCHRONIZATION_ORDER = DataSourceUtils.CONNECTION_SYNCHRONIZATION_ORDER - 100;
+
+    @Autowired
+    private InventoryChangeMapper inventoryChangeMapper;
+    @Autowired
+    private ProductSkuMapper skuMapper;
+
+    @Value("${inventory.journal.enabled:false}")
+    private boolean enabled;
+
+    /** 段文件目录 */
+    @Value("${inventory.journal.dir:./data/inventory-journal}")
+    private String dir;
+
+    /** 单个段文件大小(字节) */
+    @Value("${inventory.journal.segment-size:67108864}")
+    private int segmentSize;
+
+    /** 缓冲区容量(记录数), 包括已落盘待提交和已提交待入库的记录 */
+    @Value("${inventory.journal.buffer-capacity:65536}")
+    private int bufferCapacity;
+
+    /** 缓冲区满时提交前等待的最长时间(毫秒), 超时后本事务的记录直接随事务入库 */
+    @Value("${inventory.journal.buffer-wait-ms:100}")
+    private long bufferWaitMillis;
+
+    /** 每批入库的最大记录数, 缓冲区积压达到该数量时立即入库 */
+    @Value("${inventory.journal.batch-size:500}")
+    private int batchSize;
+
+    /** 定时入库间隔(毫秒) */
+    @Value("${inventory.journal.flush-interval-ms:200}")
+    private long flushIntervalMillis;
+
+    /** 组落盘窗口(毫秒), 窗口内写入的记录只force一次; 为0时上一次force完成后立即落盘期间积累的记录 */
+    @Value("${inventory.journal.force-window-ms:1}")
+    private long forceWindowMillis;
+
+    private Semaphore capacity;
+    private final ConcurrentLinkedQueue<Group> buffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger buffered = new AtomicInteger();
+    private ScheduledExecutorService flusher;
+    /** 落盘线程, 与入库线程分开, 入库慢时不拖慢提交 */
+    private ScheduledExecutorService forcer;
+    /** 当前窗口的落盘结果, 为null时表示还没有等待落盘的记录; 与写入段文件共用this锁 */
+    private CompletableFuture<Void> pendingForce;
+    /** 当前窗口中写入过记录的段, 窗口内换段时包含多个 */
+    private final Set<Segment> dirtySegments = new HashSet<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    /** 上次入库失败而保留的批次 */
+    private final List<Group> pendingBatch = new ArrayList<>();
+    private final Object flushLock = new Object();
+    private final AtomicLong groupIds = new AtomicLong(System.currentTimeMillis() * 1000);
+    /** 未删除的段文件, 按顺序排列, 最后一个为当前写入的段 */
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private Segment current;
+    private long nextSegmentSeq;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Path directory = Paths.get(dir);
+        Files.createDirectories(directory);
+        TreeMap<Long, Path> existing = listSegments(directory);
+        replay(existing.values());
+        nextSegmentSeq = existing.isEmpty() ? 1 : existing.lastKey() + 1;
+        current = openSegment();
+        segments.add(current);
+        capacity = new Semaphore(bufferCapacity);
+        flusher = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("inventory-journal-", true));
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        forcer = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("inventory-journal-force-", true));
+        log.info("库存变更日志已启用, 目录: {}", directory.toAbsolutePath());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (!enabled) {
+            return;
+        }
+        forcer.shutdown();
+        flusher.shutdown();
+        try {
+            forcer.awaitTermination(5, TimeUnit.SECONDS);
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 把事务中的库存变更记录登记到当前事务, 提交前写入日志, 提交后异步入库; 必须在事务中调用.
+     * 记录按事务登记, 嵌套事务的保存点回滚不会撤销已登记的记录, 调用方不应在保存点中登记
+     */
+    public void stage(List<InventoryChange> changes) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("库存变更记录只能登记到事务中");
+        }
+        TransactionGroup group = null;
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof TransactionGroup && ((TransactionGroup) synchronization).owner() == this) {
+                group = (TransactionGroup) synchronization;
+                break;
+            }
+        }
+        if (group == null) {
+            group = new TransactionGroup();
+            TransactionSynchronizationManager.registerSynchronization(group);
+        }
+        group.changes.addAll(changes);
+    }
+
+    /**
+     * 记录事务外的库存变更, 记录写入段文件并落盘后返回; 不能在事务中调用.
+     * 写文件失败或缓冲区已满时抛出异常, 本批记录不会进入缓冲区, 由调用方直接入库
+     */
+    public void append(List<InventoryChange> changes) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("事务中的库存变更记录应登记到事务");
+        }
+        Group group = write(DIRECT, changes);
+        enqueue(group);
+    }
+
+    /** 把缓冲区中已提交的记录批量入库, 并在日志中标记已入库 */
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (flushLock) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() {
+        while (true) {
+            if (pendingBatch.isEmpty()) {
+                int size = 0;
+                Group group;
+                while (size < batchSize && (group = buffer.poll()) != null) {
+                    buffered.addAndGet(-group.changes.size());
+                    pendingBatch.add(group);
+                    size += group.changes.size();
+                }
+            }
+            if (pendingBatch.isEmpty()) {
+                return;
+            }
+            List<InventoryChange> changes = new ArrayList<>();
+            pendingBatch.forEach(g -> changes.addAll(g.changes));
+            try {
+                // 入库已在服务端提交但客户端收到异常(如提交后socket超时)时, 重试会遇到主键冲突, 按change_id忽略已入库的记录
+                inventoryChangeMapper.insertBatchIgnore(changes);
+            } catch (Exception e) {
+                log.error("库存变更批量入库失败, 记录数: {}, 稍后重试", changes.size(), e);
+                return;
+            }
+            for (Group group : pendingBatch) {
+                finish(group, DONE);
+            }
+            pendingBatch.clear();
+        }
+    }
+
+    /**
+     * 把一组记录写入段文件并等待所在窗口落盘, 占用缓冲区容量; 缓冲区满时最多等待bufferWaitMillis, 形成背压.
+     * 写文件或落盘失败时归还容量并抛出异常, 已写入文件的部分在重放时没有标记, 按版本号判断或按change_id去重
+     */
+    private Group write(byte type, List<InventoryChange> changes) {
+        if (changes.size() > bufferCapacity) {
+            throw new IllegalStateException("库存变更记录数超过缓冲区容量");
+        }
+        boolean acquired;
+        try {
+            acquired = capacity.tryAcquire(changes.size(), bufferWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            throw new IllegalStateException("库存变更日志缓冲区已满");
+        }
+        Group group = new Group(groupIds.incrementAndGet(), new ArrayList<>(changes));
+        try {
+            CompletableFuture<Void> forced;
+            synchronized (this) {
+                Segment segment = writeRecord(encodeGroup(type, group));
+                segment.pendingGroups++;
+                group.segment = segment;
+                forced = scheduleForce(segment);
+            }
+            awaitForce(forced);
+            return group;
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                if (group.segment != null) {
+                    group.segment.pendingGroups--;
+                }
+            }
+            capacity.release(changes.size());
+            throw e;
+        }
+    }
+
+    /** 登记等待落盘的段, 返回当前窗口的落盘结果; 窗口中第一条记录负责安排落盘. 调用方持有this锁 */
+    private CompletableFuture<Void> scheduleForce(Segment segment) {
+        dirtySegments.add(segment);
+        if (pendingForce == null) {
+            // 先安排落盘再建立窗口, 落盘线程已关闭时不会留下永远不完成的窗口
+            forcer.schedule(this::forceWindow, forceWindowMillis, TimeUnit.MILLISECONDS);
+            pendingForce = new CompletableFuture<>();
+        }
+        return pendingForce;
+    }
+
+    /** 结束当前窗口并force窗口中写入过的段; 之后写入的记录进入下一个窗口, 由下一次落盘覆盖 */
+    private void forceWindow() {
+        CompletableFuture<Void> forced;
+        List<Segment> dirty;
+        synchronized (this) {
+            forced = pendingForce;
+            dirty = new ArrayList<>(dirtySegments);
+            pendingForce = null;
+            dirtySegments.clear();
+        }
+        try {
+            for (Segment segment : dirty) {
+                segment.buffer.force();
+            }
+            forced.complete(null);
+        } catch (RuntimeException | Error e) {
+            log.error("库存变更日志落盘失败, 段文件数: {}", dirty.size(), e);
+            forced.completeExceptionally(e);
+        }
+    }
+
+    private static void awaitForce(CompletableFuture<Void> forced) {
+        try {
+            forced.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待库存变更日志落盘被中断", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("库存变更日志落盘失败", e.getCause());
+        }
+    }
+
+    private void enqueue(Group group) {
+        buffer.add(group);
+        if (buffered.addAndGet(group.changes.size()) >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushScheduled.set(false);
+                flush();
+            });
+        }
+    }
+
+    /** 组已入库或已回滚: 追加标记, 归还容量, 删除开头已全部处理完的段文件 */
+    private void finish(Group group, byte marker) {
+        synchronized (this) {
+            writeMarkerQuietly(marker, group.id);
+            group.segment.pendingGroups--;
+            // 标记只引用同一段或之前段中的组, 只有从最早的段开始按顺序删除才不会丢失仍需要的标记
+            while (segments.size() > 1 && segments.peekFirst().pendingGroups == 0) {
+                deleteQuietly(segments.pollFirst().path);
+            }
+        }
+        capacity.release(group.changes.size());
+    }
+
+    /** 标记不单独落盘: 进程崩溃时仍在页缓存中, 只有操作系统崩溃才会丢失, 此时按版本号判断或按change_id去重 */
+    private void writeMarkerQuietly(byte marker, long groupId) {
+        try {
+            ByteBuffer payload = ByteBuffer.allocate(9);
+            payload.put(marker).putLong(groupId);
+            writeRecord(payload.array());
+        } catch (RuntimeException e) {
+            log.warn("写库存变更日志标记失败, 组: {}, 标记: {}", groupId, marker, e);
+        }
+    }
+
+    private Segment writeRecord(byte[] payload) {
+        int recordSize = 4 + payload.length;
+        if (recordSize > segmentSize - HEADER_SIZE) {
+            throw new IllegalStateException("库存变更记录超过段文件大小");
+        }
+        if (current.writePos + recordSize > segmentSize) {
+            current = openSegment();
+            segments.add(current);
+        }
+        Segment segment = current;
+        int pos = segment.writePos;
+        // 先写内容再写长度, 长度非0即表示记录完整
+        ByteBuffer slice = segment.buffer.duplicate();
+        slice.position(pos + 4);
+        slice.put(payload);
+        segment.buffer.putInt(pos, payload.length);
+        segment.writePos = pos + recordSize;
+        return segment;
+    }
+
+    private Segment openSegment() {
+        Path path = Paths.get(dir, SEGMENT_PREFIX + String.format("%019d", nextSegmentSeq++) + SEGMENT_SUFFIX);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            return new Segment(path, buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("创建库存变更日志段文件失败: " + path, e);
+        }
+    }
+
+    /** 重放全部段文件中已提交但未入库的记录, 全部入库后删除段文件 */
+    private void replay(Iterable<Path> paths) throws IOException {
+        Map<Long, ReplayGroup> groups = new LinkedHashMap<>();
+        Map<Long, Byte> markers = new HashMap<>();
+        List<Path> replayed = new ArrayList<>();
+        for (Path path : paths) {
+            readSegment(path, groups, markers);
+            replayed.add(path);
+        }
+        List<ReplayGroup> ordered = new ArrayList<>(groups.values());
+        List<InventoryChange> changes = new ArrayList<>();
+        int unresolved = 0;
+        for (int i = 0; i < ordered.size(); i++) {
+            ReplayGroup group = ordered.get(i);
+            Byte marker = markers.get(group.id);
+            boolean committed;
+            if (marker != null) {
+                committed = marker == COMMIT;
+            } else if (group.type == DIRECT) {
+                committed = true;
+            } else {
+                unresolved++;
+                committed = isCommitted(group, ordered.subList(i + 1, ordered.size()));
+            }
+            if (committed) {
+                changes.addAll(group.changes);
+            }
+        }
+        // 入库成功但未来得及写DONE标记时崩溃, 这些记录会再次重放, 按change_id忽略已入库的记录
+        for (int from = 0; from < changes.size(); from += batchSize) {
+            inventoryChangeMapper.insertBatchIgnore(changes.subList(from, Math.min(from + batchSize, changes.size())));
+        }
+        replayed.forEach(this::deleteQuietly);
+        if (!replayed.isEmpty()) {
+            log.info("重放库存变更日志, 段文件数: {}, 入库记录数: {}, 提交中断的组: {}", replayed.size(), changes.size(), unresolved);
+        }
+    }
+
+    /** 判断提交过程中崩溃的组是否已提交, 组内的记录都带有更新后的版本号 */
+    private boolean isCommitted(ReplayGroup group, List<ReplayGroup> later) {
+        Map<Long, Long> versions = new HashMap<>();
+        for (InventoryChange change : group.changes) {
+            if (change.getStockVersion() == null) {
+                // 没有版本号无法判断, 保留记录, 宁可多一条变更记录也不丢失
+                return true;
+            }
+            versions.merge(change.getSkuId(), change.getStockVersion(), Math::max);
+        }
+        // 本组提交后同一SKU的版本号只会更大, 之后的组用到不大于本组的版本号说明本组已回滚
+        for (ReplayGroup next : later) {
+            for (InventoryChange change : next.changes) {
+                Long version = versions.get(change.getSkuId());
+                if (version != null && change.getStockVersion() != null && change.getStockVersion() <= version) {
+                    return false;
+                }
+            }
+        }
+        Set<Long> found = new HashSet<>();
+        for (ProductSku sku : skuMapper.selectStockVersions(versions.keySet())) {
+            found.add(sku.getSkuId());
+            if (sku.getStockVersion() == null || sku.getStockVersion() < versions.get(sku.getSkuId())) {
+                return false;
+            }
+        }
+        if (found.size() < versions.size()) {
+            log.warn("提交中断的库存变更组中有SKU已删除, 按已提交处理, 组: {}", group.id);
+        }
+        return true;
+    }
+
+    private void readSegment(Path path, Map<Long, ReplayGroup> groups, Map<Long, Byte> markers) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int pos = HEADER_SIZE;
+            while (pos + 4 <= buffer.limit()) {
+                int length = buffer.getInt(pos);
+                if (length <= 0 || pos + 4 + length > buffer.limit()) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                ByteBuffer slice = buffer.duplicate();
+                slice.position(pos + 4);
+                slice.get(payload);
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+                byte type = in.readByte();
+                long groupId = in.readLong();
+                if (type == PREPARE || type == DIRECT) {
+                    int count = in.readInt();
+                    List<InventoryChange> changes = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        changes.add(decode(in));
+                    }
+                    groups.put(groupId, new ReplayGroup(groupId, type, changes));
+                } else if (type == COMMIT) {
+                    markers.putIfAbsent(groupId, type);
+                } else if (type == ROLLBACK || type == DONE) {
+                    // 组已处理完, 覆盖之前的COMMIT标记, 不需要重放
+                    markers.put(groupId, type);
+                }
+                pos += 4 + length;
+            }
+        }
+    }
+
+    private TreeMap<Long, Path> listSegments(Path directory) throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                String seq = name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length());
+                segments.put(Long.parseLong(seq), path);
+            }
+        }
+        return segments;
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("删除库存变更日志段文件失败: {}", path, e);
+        }
+    }
+
+    private static byte[] encodeGroup(byte type, Group group) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128 * group.changes.size() + 16);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(type);
+            out.writeLong(group.id);
+            out.writeInt(group.changes.size());
+            for (InventoryChange change : group.changes) {
+                encode(out, change);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void encode(DataOutputStream out, InventoryChange change) throws IOException {
+        out.writeLong(change.getChangeId());
+        out.writeLong(change.getSkuId());
+        out.writeInt(change.getChangeType());
+        out.writeInt(change.getStockBefore());
+        out.writeInt(change.getChangeQuantity());
+        out.writeInt(change.getStockAfter());
+        writeNullableLong(out, change.getRelatedId());
+        writeNullableString(out, change.getRelatedType());
+        writeNullableString(out, change.getRemark());
+        LocalDateTime createdTime = change.getCreatedTime() != null ? change.getCreatedTime() : LocalDateTime.now();
+        out.writeLong(createdTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        writeNullableLong(out, change.getStockVersion());
+    }
+
+    private static InventoryChange decode(DataInputStream in) throws IOException {
+        InventoryChange change = new InventoryChange();
+        change.setChangeId(in.readLong());
+        change.setSkuId(in.readLong());
+        change.setChangeType(in.readInt());
+        change.setStockBefore(in.readInt());
+        change.setChangeQuantity(in.readInt());
+        change.setStockAfter(in.readInt());
+        change.setRelatedId(readNullableLong(in));
+        change.setRelatedType(readNullableString(in));
+        change.setRemark(readNullableString(in));
+        change.setCreatedTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(in.readLong()), ZoneId.systemDefault()));
+        change.setStockVersion(readNullableLong(in));
+        return change;
+    }
+
+    private static void writeNullableLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static Long readNullableLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /** 登记在一个事务上的库存变更记录, 提交前写入日志, 事务完成后追加标记 */
+    private final class TransactionGroup implements TransactionSynchronization {
+        final List<InventoryChange> changes = new ArrayList<>();
+        /** 已写入日志的组, 为null时表示记录已随事务直接入库 */
+        Group written;
+
+        InventoryChangeJournal owner() {
+            return InventoryChangeJournal.this;
+        }
+
+        @Override
+        public int getOrder() {
+            return SYNCHRONIZATION_ORDER;
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            if (changes.isEmpty()) {
+                return;
+            }
+            try {
+                written = write(PREPARE, changes);
+            } catch (RuntimeException e) {
+                // 写日志失败或缓冲区已满, 仍在事务中, 直接入库; 入库失败时异常使事务回滚
+                log.warn("写库存变更日志失败, 随事务直接入库, 记录数: {}, 原因: {}", changes.size(), e.getMessage());
+                inventoryChangeMapper.insertBatch(changes);
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (written == null) {
+                return;
+            }
+            if (status == STATUS_COMMITTED) {
+                synchronized (InventoryChangeJournal.this) {
+                    writeMarkerQuietly(COMMIT, written.id);
+                }
+                enqueue(written);
+            } else if (status == STATUS_ROLLED_BACK) {
+                finish(written, ROLLBACK);
+            } else {
+                // 提交结果未知, 保留PREPARE记录和所在段文件, 重启重放时按版本号判断
+                log.error("事务提交结果未知, 库存变更组留待重启时判断, 组: {}, 记录数: {}", written.id, changes.size());
+            }
+        }
+    }
+
+    /** 内存映射的段文件 */
+    private static final class Segment {
+        final Path path;
+        final MappedByteBuffer buffer;
+        int writePos = HEADER_SIZE;
+        /** 本段中尚未入库或回滚的组数 */
+        int pendingGroups;
+
+        Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    /** 写入日志的一组记录 */
+    private static final class Group {
+        final long id;
+        final List<InventoryChange> changes;
+        Segment segment;
+
+        Group(long id, List<InventoryChange> changes) {
+            this.id = id;
+            this.changes = changes;
+        }
+    }
+
+    /** 重放时读出的一组记录 */
+    private static final class ReplayGroup {
+        final long id;
+        final byte type;
+        final List<InventoryChange> changes;
+
+        ReplayGroup(long id, byte type, List<InventoryChange> changes) {
+            this.id = id;
+            this.type = type;
+            this.changes = changes;
+        }
+    }
+}
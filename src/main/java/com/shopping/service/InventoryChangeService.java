@@ -3,6 +3,14 @@ package com.shopping.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.shopping.entity.InventoryChange;
 
+import java.util.List;
+
 /** 库存变更服务接口 */
 public interface InventoryChangeService extends IService<InventoryChange> {
+
+    /** 记录一条库存变更, 启用变更日志时写日志后异步批量入库 */
+    void record(InventoryChange change);
+
+    /** 记录多条库存变更, 启用变更日志时写日志后异步批量入库(事务中的记录提交前写日志), 否则一条多行insert写入 */
+    void recordBatch(List<InventoryChange> changes);
 }
\ No newline at end of file
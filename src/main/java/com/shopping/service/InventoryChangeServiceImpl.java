@@ -3,10 +3,82 @@ package com.shopping.service;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.shopping.entity.InventoryChange;
 import com.shopping.mapper.InventoryChangeMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /** 库存变更服务实现 */
+@Slf4j
 @Service
 public class InventoryChangeServiceImpl extends ServiceImpl<InventoryChangeMapper, InventoryChange> 
     implements InventoryChangeService {
-}
\ No newline at end of file
+
+    @Autowired
+    private InventoryChangeJournal inventoryChangeJournal;
+    @Autowired
+    private SegmentIdAllocator segmentIdAllocator;
+
+    @Override
+    public void record(InventoryChange change) {
+        recordBatch(Collections.singletonList(change));
+    }
+
+    @Override
+    public void recordBatch(List<InventoryChange> changes) {
+        if (changes == null || changes.isEmpty()) {
+            return;
+        }
+        // 多行insert不经过MybatisPlus的主键填充, 入库前先分配change_id
+        changes.forEach(this::assignId);
+        if (!inventoryChangeJournal.isEnabled()) {
+            insert(changes);
+            return;
+        }
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            if (!appendToJournal(changes)) {
+                insert(changes);
+            }
+            return;
+        }
+        // 事务中带版本号的记录登记到事务, 提交前写日志; 没有版本号的记录在崩溃重放时无法判断是否已提交, 随事务入库
+        List<InventoryChange> staged = new ArrayList<>(changes.size());
+        List<InventoryChange> direct = new ArrayList<>();
+        for (InventoryChange change : changes) {
+            (change.getStockVersion() != null ? staged : direct).add(change);
+        }
+        if (!staged.isEmpty()) {
+            inventoryChangeJournal.stage(staged);
+        }
+        insert(direct);
+    }
+
+    private void insert(List<InventoryChange> changes) {
+        if (changes.size() == 1) {
+            this.save(changes.get(0));
+        } else if (!changes.isEmpty()) {
+            baseMapper.insertBatch(changes);
+        }
+    }
+
+    /** 写日志失败时返回false, 由调用方直接入库, 避免库存已更新而变更记录丢失 */
+    private boolean appendToJournal(List<InventoryChange> changes) {
+        try {
+            inventoryChangeJournal.append(changes);
+            return true;
+        } catch (RuntimeException e) {
+            log.error("写库存变更日志失败, 直接入库, 记录数: {}", changes.size(), e);
+            return false;
+        }
+    }
+
+    private void assignId(InventoryChange change) {
+        if (change.getChangeId() == null) {
+            change.setChangeId(segmentIdAllocator.nextId(InventoryChange.class));
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.shopping.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Set;
+
+/** 商家入账发件箱服务接口 */
+public interface MerchantCreditOutboxService {
+
+    /** 是否启用发件箱异步入账 */
+    boolean isEnabled();
+
+    /** 写入一条待入账记录, 在调用方(支付)事务中执行; createdTime为支付时间, 入账流水的时间取该时间, 为空时取当前时间 */
+    void enqueue(Long merchantId, BigDecimal amount, Long relatedId, Integer transactionType, String remark,
+                 LocalDateTime createdTime);
+
+    /** 认领并处理一批待入账记录: 每个商家一个事务更新余额并写入交易流水; 返回本批认领的记录数 */
+    int postBatch();
+
+    /**
+     * 把商家的待入账记录在当前事务中入账并写入交易流水, 返回入账总额, 扣减商家余额前调用.
+     * 调用方必须已锁定商家行, balance为锁定后的余额, 并负责把总额加到商家余额
+     */
+    BigDecimal postLocked(Long merchantId, BigDecimal balance);
+
+    /** 汇总商家的待入账金额, 不含已标记为入账失败的记录; 未启用时返回0 */
+    BigDecimal sumPending(Long merchantId);
+
+    /**
+     * 把before之前创建的待入账记录尽量全部入账, 结算前调用; 已标记为入账失败的记录不再等待.
+     * 返回[from, before)内仍有未入账(待入账或入账失败)记录的商家ID, 这些商家的当日收入不完整
+     */
+    Set<Long> drainBefore(LocalDateTime from, LocalDateTime before);
+}
@@ -0,0 +1,310 @@
+package com.shopping.service;
+
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import com.shopping.constant.AccountType;
+import com.shopping.entity.AccountTransaction;
+import com.shopping.entity.Merchant;
+import com.shopping.entity.MerchantCreditOutbox;
+import com.shopping.exception.BusinessException;
+import com.shopping.exception.ErrorCode;
+import com.shopping.mapper.MerchantCreditOutboxMapper;
+import com.shopping.mapper.MerchantMapper;
+import com.shopping.utils.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 商家入账发件箱服务实现
+ * 各实例先按主键认领一批记录(写入租约), 其他实例读取时跳过租约未过期的记录; 认领的记录按商家分组, 每个商家一个事务入账.
+ * 商家入账失败时逐条重试, 失败的记录累计尝试次数并延后重试, 达到最大次数后标记为入账失败, 不再阻塞其他记录
+ */
+@Slf4j
+@Service
+public class MerchantCreditOutboxServiceImpl implements MerchantCreditOutboxService {
+    private static final String RELATED_TYPE = "merchant_credit_outbox";
+    /** 结算前等待发件箱清空时, 没有进展时每轮等待的时间 */
+    private static final long DRAIN_WAIT_MILLIS = 100L;
+    /** 等待租约或重试延后到期时额外等待的时间 */
+    private static final long DRAIN_MARGIN_MILLIS = 1000L;
+    /** 失败原因最大长度, 与last_error列一致 */
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    @Autowired
+    private MerchantCreditOutboxMapper outboxMapper;
+    @Autowired
+    private MerchantMapper merchantMapper;
+    @Autowired
+    private MerchantSubAccountService merchantSubAccountService;
+    @Autowired
+    private AccountTransactionService accountTransactionService;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${merchant.credit-outbox.enabled:true}")
+    private boolean enabled;
+
+    /** 每批处理的最大记录数 */
+    @Value("${merchant.credit-outbox.batch-size:1000}")
+    private int batchSize;
+
+    /** 已入账记录的保留时间(小时) */
+    @Value("${merchant.credit-outbox.retention-hours:72}")
+    private long retentionHours;
+
+    /** 认领记录的租约时长(秒), 实例在租约内未处理完时其他实例可重新认领 */
+    @Value("${merchant.credit-outbox.lease-seconds:60}")
+    private int leaseSeconds;
+
+    /** 单条记录的最大尝试次数, 达到后标记为入账失败 */
+    @Value("${merchant.credit-outbox.max-attempts:5}")
+    private int maxAttempts;
+
+    /** 入账失败后延后重试的时间(秒) */
+    @Value("${merchant.credit-outbox.retry-delay-seconds:30}")
+    private int retryDelaySeconds;
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void enqueue(Long merchantId, BigDecimal amount, Long relatedId, Integer transactionType, String remark,
+                        LocalDateTime createdTime) {
+        Validator.notNull(merchantId, "商家ID不能为空");
+        Validator.notNull(amount, "金额不能为空");
+        MerchantCreditOutbox outbox = new MerchantCreditOutbox();
+        outbox.setMerchantId(merchantId);
+        outbox.setAmount(amount);
+        outbox.setRelatedId(relatedId);
+        outbox.setTransactionType(transactionType);
+        outbox.setRemark(remark);
+        outbox.setStatus(0);
+        outbox.setAttempts(0);
+        outbox.setCreatedTime(createdTime != null ? createdTime : LocalDateTime.now());
+        outboxMapper.insert(outbox);
+    }
+
+    /** 定时处理待入账记录, 积压时连续处理多批 */
+    @Scheduled(fixedDelayString = "${merchant.credit-outbox.poll-interval-ms:200}")
+    public void postPending() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            int claimed;
+            do {
+                claimed = postBatch();
+            } while (claimed >= batchSize);
+            outboxMapper.deletePostedBefore(LocalDateTime.now().minusHours(retentionHours), batchSize);
+        } catch (Exception e) {
+            log.error("商家入账发件箱处理失败, 稍后重试", e);
+        }
+    }
+
+    @Override
+    public int postBatch() {
+        List<MerchantCreditOutbox> candidates = outboxMapper.findClaimable(batchSize);
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+        String leaseToken = IdUtil.fastSimpleUUID();
+        List<Long> candidateIds = candidates.stream().map(MerchantCreditOutbox::getOutboxId).collect(Collectors.toList());
+        if (outboxMapper.claim(candidateIds, leaseToken, leaseSeconds) == 0) {
+            return 0;
+        }
+        // 部分记录可能已被其他实例认领, 只处理本次认领成功的记录
+        List<MerchantCreditOutbox> records = outboxMapper.findClaimed(candidateIds, leaseToken);
+        Map<Long, List<MerchantCreditOutbox>> merchantRecords = records.stream()
+                .collect(Collectors.groupingBy(MerchantCreditOutbox::getMerchantId, TreeMap::new, Collectors.toList()));
+        int posted = 0;
+        for (Map.Entry<Long, List<MerchantCreditOutbox>> entry : merchantRecords.entrySet()) {
+            posted += postMerchantSafely(entry.getKey(), entry.getValue());
+        }
+        log.info("商家入账发件箱处理完成, 认领记录数: {}, 入账记录数: {}, 商家数: {}", records.size(), posted, merchantRecords.size());
+        return records.size();
+    }
+
+    @Override
+    public BigDecimal postLocked(Long merchantId, BigDecimal balance) {
+        if (!enabled) {
+            return new BigDecimal("0.00");
+        }
+        // 分批并入全部待入账记录, 已标记的记录在本事务中不再被查出
+        BigDecimal total = new BigDecimal("0.00");
+        while (true) {
+            List<MerchantCreditOutbox> records = outboxMapper.findPendingByMerchant(merchantId, batchSize);
+            if (records.isEmpty()) {
+                return total;
+            }
+            List<Long> outboxIds = records.stream().map(MerchantCreditOutbox::getOutboxId).collect(Collectors.toList());
+            if (outboxMapper.markPosted(outboxIds) != outboxIds.size()) {
+                throw new BusinessException(ErrorCode.OPERATION_FAILED, "商家待入账记录已变更, 请重试");
+            }
+            List<AccountTransaction> transactions = new ArrayList<>(records.size());
+            total = total.add(createTransactions(merchantId, records, balance.add(total), transactions));
+            if (!accountTransactionService.saveTransactions(transactions)) {
+                throw new BusinessException(ErrorCode.OPERATION_FAILED, "保存商家交易流水失败");
+            }
+            if (records.size() < batchSize) {
+                return total;
+            }
+        }
+    }
+
+    @Override
+    public BigDecimal sumPending(Long merchantId) {
+        if (!enabled) {
+            return new BigDecimal("0.00");
+        }
+        BigDecimal pending = outboxMapper.sumPendingByMerchant(merchantId);
+        return pending != null ? pending : new BigDecimal("0.00");
+    }
+
+    /**
+     * 剩余记录被其他实例认领或正在延后重试时, 等待租约或重试延后到期后重新认领; 失败的记录每次认领都累计尝试次数,
+     * 达到最大次数后标记为入账失败不再等待, 因此等待有上限. 连续一个租约或重试周期没有进展时停止等待
+     */
+    @Override
+    public Set<Long> drainBefore(LocalDateTime from, LocalDateTime before) {
+        long idleLimitMillis = TimeUnit.SECONDS.toMillis(Math.max(leaseSeconds, retryDelaySeconds)) + DRAIN_MARGIN_MILLIS;
+        long idleSince = System.currentTimeMillis();
+        while (enabled && outboxMapper.countPendingBefore(before) > 0) {
+            if (postBatch() > 0) {
+                idleSince = System.currentTimeMillis();
+                continue;
+            }
+            if (System.currentTimeMillis() - idleSince > idleLimitMillis || !sleep()) {
+                break;
+            }
+        }
+        Set<Long> merchantIds = new TreeSet<>(outboxMapper.findUnpostedMerchantIds(from, before));
+        if (!merchantIds.isEmpty()) {
+            log.warn("商家收入尚未全部入账, 商家数: {}, 商家ID: {}", merchantIds.size(), merchantIds);
+        }
+        return merchantIds;
+    }
+
+    /** 一个商家的记录在一个事务中入账, 失败时逐条入账, 避免单条记录阻塞同一商家的其他记录 */
+    private int postMerchantSafely(Long merchantId, List<MerchantCreditOutbox> records) {
+        try {
+            return postMerchant(merchantId, records);
+        } catch (Exception e) {
+            if (records.size() == 1) {
+                recordFailure(records, e);
+                return 0;
+            }
+            log.warn("商家批量入账失败, 改为逐条入账, 商家ID: {}, 记录数: {}", merchantId, records.size(), e);
+        }
+        int posted = 0;
+        for (MerchantCreditOutbox record : records) {
+            try {
+                posted += postMerchant(merchantId, Collections.singletonList(record));
+            } catch (Exception e) {
+                recordFailure(Collections.singletonList(record), e);
+            }
+        }
+        return posted;
+    }
+
+    /** 先锁定商家行再标记记录, 与扣减商家余额时并入待入账记录互斥; 标记行数不符说明记录已被并入, 放弃本次入账 */
+    private int postMerchant(Long merchantId, List<MerchantCreditOutbox> records) {
+        Integer posted = transactionTemplate.execute(status -> {
+            Merchant merchant = merchantMapper.selectMerchantForUpdate(merchantId);
+            if (merchant == null) {
+                throw new BusinessException(ErrorCode.NOT_FOUND_ERROR, "商家不存在: " + merchantId);
+            }
+            List<Long> outboxIds = records.stream().map(MerchantCreditOutbox::getOutboxId).collect(Collectors.toList());
+            if (outboxMapper.markPosted(outboxIds) != outboxIds.size()) {
+                status.setRollbackOnly();
+                return 0;
+            }
+            // 子账户中未归集的收入一并并入, 流水中的余额即商家完整余额
+            BigDecimal folded = merchantSubAccountService.isEnabled()
+                    ? merchantSubAccountService.foldLocked(merchantId) : new BigDecimal("0.00");
+            List<AccountTransaction> transactions = new ArrayList<>(records.size());
+            BigDecimal increase = createTransactions(merchantId, records, merchant.getAccountBalance().add(folded), transactions);
+            if (merchantMapper.addMerchantBalance(merchantId, folded.add(increase)) != 1) {
+                throw new BusinessException(ErrorCode.OPERATION_FAILED, "更新商家余额失败: " + merchantId);
+            }
+            if (!accountTransactionService.saveTransactions(transactions)) {
+                throw new BusinessException(ErrorCode.OPERATION_FAILED, "保存商家交易流水失败");
+            }
+            return records.size();
+        });
+        return posted != null ? posted : 0;
+    }
+
+    /** 按记录生成交易流水, 返回入账总额 */
+    private BigDecimal createTransactions(Long merchantId, List<MerchantCreditOutbox> records, BigDecimal balance,
+                                          List<AccountTransaction> transactions) {
+        BigDecimal increase = new BigDecimal("0.00");
+        for (MerchantCreditOutbox record : records) {
+            BigDecimal balanceAfter = balance.add(record.getAmount());
+            AccountTransaction transaction = accountTransactionService.createTransaction(
+                    AccountType.MERCHANT_ACCOUNT.getCode(),
+                    merchantId,
+                    record.getTransactionType(),
+                    balance,
+                    record.getAmount(),
+                    balanceAfter,
+                    record.getRelatedId(),
+                    RELATED_TYPE,
+                    record.getRemark()
+            );
+            // 流水时间取支付时间, 按日结算和对账与订单支付日期一致
+            transaction.setCreatedTime(record.getCreatedTime());
+            transactions.add(transaction);
+            balance = balanceAfter;
+            increase = increase.add(record.getAmount());
+        }
+        return increase;
+    }
+
+    /** 累计尝试次数并延后重试, 达到最大次数的记录标记为入账失败 */
+    private void recordFailure(List<MerchantCreditOutbox> records, Exception e) {
+        List<Long> outboxIds = records.stream().map(MerchantCreditOutbox::getOutboxId).collect(Collectors.toList());
+        String error = StrUtil.maxLength(String.valueOf(e.getMessage()), MAX_ERROR_LENGTH - 3);
+        try {
+            outboxMapper.markFailed(outboxIds, maxAttempts, retryDelaySeconds, error);
+        } catch (Exception ex) {
+            log.error("记录商家入账失败次数失败, 记录ID: {}", outboxIds, ex);
+        }
+        for (MerchantCreditOutbox record : records) {
+            if (record.getAttempts() + 1 >= maxAttempts) {
+                log.error("商家入账多次失败, 已标记为入账失败, 需人工处理, 记录ID: {}, 商家ID: {}, 金额: {}",
+                        record.getOutboxId(), record.getMerchantId(), record.getAmount(), e);
+            } else {
+                log.warn("商家入账失败, {}秒后重试, 记录ID: {}, 商家ID: {}, 已尝试次数: {}",
+                        retryDelaySeconds, record.getOutboxId(), record.getMerchantId(), record.getAttempts() + 1, e);
+            }
+        }
+    }
+
+    private boolean sleep() {
+        try {
+            Thread.sleep(DRAIN_WAIT_MILLIS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.shopping.service;
+
+import com.shopping.entity.MerchantDailyLedger;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.function.Function;
+
+/** 商家每日实时账本服务接口 */
+public interface MerchantLedgerService {
+
+    /** 记录订单支付: 支付日的已支付金额和净收入增加, paymentTime须与订单的payment_time一致, 在支付事务中调用 */
+    void recordPayment(Long merchantId, BigDecimal amount, LocalDateTime paymentTime);
+
+    /**
+     * 记录订单退款: 退款日的已退款金额增加、净收入减少, 支付日的已支付金额不变, 与源表按支付日统计已支付、按退款日统计退款的口径一致.
+     * refundTime须与订单退款时写入的refund_time一致, 在退款事务中调用
+     */
+    void recordRefund(Long merchantId, BigDecimal amount, LocalDateTime refundTime);
+
+    /** 查询商家指定日期的实时账本, 没有记录时金额均为0 */
+    MerchantDailyLedger findDaily(Long merchantId, LocalDate date);
+
+    /**
+     * 用源表统计结果核对指定日期、指定分区(merchant_id % shardCount == shardNo)的账本, 不一致的商家按源表数据修正;
+     * 返回不一致的商家数. expected为按商家分组的源表统计结果, 不在其中的商家视为金额均为0;
+     * sourceLoader按商家ID重新统计该商家当天的源表数据, 修正时在锁定账本后调用, 避免用过期的统计结果覆盖并发的支付和退款
+     */
+    int verify(LocalDate date, Map<Long, MerchantDailyLedger> expected, int shardNo, int shardCount,
+               Function<Long, MerchantDailyLedger> sourceLoader);
+}
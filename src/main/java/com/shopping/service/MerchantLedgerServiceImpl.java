@@ -0,0 +1,140 @@
+package com.shopping.service;
+
+import com.shopping.entity.MerchantDailyLedger;
+import com.shopping.mapper.MerchantDailyLedgerMapper;
+import com.shopping.utils.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/** 商家每日实时账本服务实现 */
+@Slf4j
+@Service
+public class MerchantLedgerServiceImpl implements MerchantLedgerService {
+    @Autowired
+    private MerchantDailyLedgerMapper ledgerMapper;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${settlement.ledger.enabled:true}")
+    private boolean enabled;
+
+    /** 每个商家每天的分条数, 热点商家的并发支付分散到不同行 */
+    @Value("${settlement.ledger.stripes:8}")
+    private int stripes;
+
+    @Override
+    public void recordPayment(Long merchantId, BigDecimal amount, LocalDateTime paymentTime) {
+        record(merchantId, paymentTime.toLocalDate(), amount, new BigDecimal("0.00"), amount);
+    }
+
+    @Override
+    public void recordRefund(Long merchantId, BigDecimal amount, LocalDateTime refundTime) {
+        record(merchantId, refundTime.toLocalDate(), new BigDecimal("0.00"), amount, amount.negate());
+    }
+
+    private void record(Long merchantId, LocalDate date, BigDecimal paidAmount, BigDecimal refundAmount, BigDecimal netIncome) {
+        if (!enabled) {
+            return;
+        }
+        MerchantDailyLedger ledger = new MerchantDailyLedger();
+        ledger.setMerchantId(merchantId);
+        ledger.setLedgerDate(date);
+        ledger.setStripe(ThreadLocalRandom.current().nextInt(Math.max(1, stripes)));
+        ledger.setPaidAmount(paidAmount);
+        ledger.setRefundAmount(refundAmount);
+        ledger.setNetIncome(netIncome);
+        ledgerMapper.upsert(ledger);
+    }
+
+    @Override
+    public MerchantDailyLedger findDaily(Long merchantId, LocalDate date) {
+        Validator.notNull(merchantId, "商家ID不能为空");
+        Validator.notNull(date, "日期不能为空");
+        MerchantDailyLedger ledger = ledgerMapper.sumByMerchantAndDate(merchantId, date);
+        return ledger != null ? ledger : emptyLedger(merchantId, date);
+    }
+
+    @Override
+    public int verify(LocalDate date, Map<Long, MerchantDailyLedger> expected, int shardNo, int shardCount,
+                      Function<Long, MerchantDailyLedger> sourceLoader) {
+        if (!enabled) {
+            return 0;
+        }
+        Map<Long, MerchantDailyLedger> actualMap = ledgerMapper.sumGroupByMerchant(date, shardNo, shardCount).stream()
+                .collect(Collectors.toMap(MerchantDailyLedger::getMerchantId, Function.identity()));
+        Set<Long> merchantIds = new HashSet<>(actualMap.keySet());
+        merchantIds.addAll(expected.keySet());
+        int mismatchCount = 0;
+        for (Long merchantId : merchantIds) {
+            MerchantDailyLedger actual = actualMap.getOrDefault(merchantId, emptyLedger(merchantId, date));
+            MerchantDailyLedger source = expected.getOrDefault(merchantId, emptyLedger(merchantId, date));
+            if (sameAmounts(actual, source)) {
+                continue;
+            }
+            try {
+                if (repair(merchantId, date, sourceLoader)) {
+                    mismatchCount++;
+                }
+            } catch (Exception e) {
+                mismatchCount++;
+                log.error("修正实时账本失败, 商家ID: {}, 日期: {}", merchantId, date, e);
+            }
+        }
+        log.info("实时账本核对完成, 日期: {}, 商家数: {}, 不一致商家数: {}", date, merchantIds.size(), mismatchCount);
+        return mismatchCount;
+    }
+
+    /**
+     * 锁定商家当天的所有分条后重新统计源表, 仍不一致时删除所有分条并写入一行源表数据, 返回是否修正.
+     * 支付和退款在同一事务中更新源表和账本: 锁定前已提交的在重新统计时可见, 之后的等待本事务提交后再累加, 不会被覆盖
+     */
+    private boolean repair(Long merchantId, LocalDate date, Function<Long, MerchantDailyLedger> sourceLoader) {
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            MerchantDailyLedger locked = ledgerMapper.sumByMerchantAndDateForUpdate(merchantId, date);
+            MerchantDailyLedger actual = locked != null ? locked : emptyLedger(merchantId, date);
+            // 锁定读不建立一致性快照, 重新统计时读到的是加锁之后的数据
+            MerchantDailyLedger source = sourceLoader.apply(merchantId);
+            if (sameAmounts(actual, source)) {
+                return false;
+            }
+            log.warn("实时账本与源表不一致, 按源表修正, 商家ID: {}, 日期: {}, 账本: {}/{}/{}, 源表: {}/{}/{}",
+                    merchantId, date, actual.getPaidAmount(), actual.getRefundAmount(), actual.getNetIncome(),
+                    source.getPaidAmount(), source.getRefundAmount(), source.getNetIncome());
+            ledgerMapper.deleteByMerchantAndDate(merchantId, date);
+            source.setMerchantId(merchantId);
+            source.setLedgerDate(date);
+            source.setStripe(0);
+            ledgerMapper.upsert(source);
+            return true;
+        }));
+    }
+
+    private static boolean sameAmounts(MerchantDailyLedger a, MerchantDailyLedger b) {
+        return a.getPaidAmount().compareTo(b.getPaidAmount()) == 0
+                && a.getRefundAmount().compareTo(b.getRefundAmount()) == 0
+                && a.getNetIncome().compareTo(b.getNetIncome()) == 0;
+    }
+
+    private static MerchantDailyLedger emptyLedger(Long merchantId, LocalDate date) {
+        MerchantDailyLedger ledger = new MerchantDailyLedger();
+        ledger.setMerchantId(merchantId);
+        ledger.setLedgerDate(date);
+        ledger.setPaidAmount(new BigDecimal("0.00"));
+        ledger.setRefundAmount(new BigDecimal("0.00"));
+        ledger.setNetIncome(new BigDecimal("0.00"));
+        return ledger;
+    }
+}
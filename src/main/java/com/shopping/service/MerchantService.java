@@ -8,7 +8,9 @@ import com.shopping.entity.Merchant;
 import com.shopping.entity.User;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 /** 商家服务接口 */
 public interface MerchantService extends IService<Merchant> {
@@ -35,6 +37,23 @@ public interface MerchantService extends IService<Merchant> {
     boolean updateBalance(Long merchantId, BigDecimal amount,
                           boolean isAdd, Long relatedId, Integer transactionType, String remark);
 
+
+    /**
+     * 增加商家余额: 启用发件箱时只写入待入账记录; 否则启用子账户时记入子账户, 不锁商家行; 都未启用时同updateBalance.
+     * transactionTime为业务发生时间(如支付时间), 作为待入账记录和子账户流水的时间
+     */
+    boolean creditBalance(Long merchantId, BigDecimal amount, Long relatedId, Integer transactionType, String remark,
+                          LocalDateTime transactionTime);
+
+    /**
+     * 按关联ID(如订单ID)批量扣减同一商家的余额: 锁定商家行并归集子账户和发件箱中的待入账收入后一条UPDATE扣减合计金额,
+     * 每个关联ID写一条交易流水; 在调用方事务中执行, 返回扣减后的余额
+     */
+    BigDecimal debitBalance(Long merchantId, Map<Long, BigDecimal> amountsByRelatedId,
+                            Integer transactionType, String relatedType, String remark);
+
+    /** 商家可用余额 = 主账户余额 + 子账户中尚未归集的余额 + 发件箱中的待入账收入 */
+    BigDecimal getAvailableBalance(Merchant merchant);
     
     /** 验证商家状态 */
     void validateMerchantStatus(Merchant merchant);
@@ -22,7 +22,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /** 商家服务实现 */
 @Slf4j
@@ -38,6 +41,12 @@ public class MerchantServiceImpl extends ServiceImpl<MerchantMapper, Merchant> i
     private InventoryChangeService inventoryChangeService;
     @Autowired
     private MerchantMapper merchantMapper;
+    @Autowired
+    private StockReservationEngine stockReservationEngine;
+    @Autowired
+    private MerchantSubAccountService merchantSubAccountService;
+    @Autowired
+    private MerchantCreditOutboxService merchantCreditOutboxService;
 
     @Override
     @Transactional(rollbackFor = Exception.class)
@@ -160,6 +169,12 @@ public class MerchantServiceImpl extends ServiceImpl<MerchantMapper, Merchant> i
         validateMerchantStatus(merchant);
         
         BigDecimal oldBalance = merchant.getAccountBalance();
+        if (merchantSubAccountService.isEnabled()) {
+            // 已锁定商家行, 先把子账户中未归集的收入并入主账户, 扣减时按完整余额校验
+            oldBalance = oldBalance.add(merchantSubAccountService.foldLocked(merchantId));
+        }
+        // 发件箱中的待入账收入同样先并入, 与debitBalance一致
+        oldBalance = oldBalance.add(merchantCreditOutboxService.postLocked(merchantId, oldBalance));
         BigDecimal newBalance;
         if (isAdd) {
             newBalance = oldBalance.add(amount);
@@ -193,6 +208,110 @@ public class MerchantServiceImpl extends ServiceImpl<MerchantMapper, Merchant> i
         return updateSuccess;
     }
 
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public BigDecimal debitBalance(Long merchantId, Map<Long, BigDecimal> amountsByRelatedId,
+                                   Integer transactionType, String relatedType, String remark) {
+        Validator.notNull(merchantId, "商家ID不能为空");
+        Validator.isTrue(amountsByRelatedId != null && !amountsByRelatedId.isEmpty(), "扣减明细不能为空");
+        BigDecimal total = new BigDecimal("0.00");
+        for (BigDecimal amount : amountsByRelatedId.values()) {
+            Validator.isTrue(MoneyUtil.isValid(amount), "金额必须大于0");
+            total = total.add(amount);
+        }
+        Merchant merchant = merchantMapper.selectMerchantForUpdate(merchantId);
+        if (merchant == null) {
+            throw new BusinessException(ErrorCode.NOT_FOUND_ERROR, "商家不存在");
+        }
+        // 已锁定商家行, 子账户中未归集的收入和发件箱中的待入账收入与扣减合并为一条UPDATE
+        BigDecimal folded = merchantSubAccountService.isEnabled()
+                ? merchantSubAccountService.foldLocked(merchantId) : new BigDecimal("0.00");
+        folded = folded.add(merchantCreditOutboxService.postLocked(merchantId, merchant.getAccountBalance().add(folded)));
+        BigDecimal balance = merchant.getAccountBalance().add(folded);
+        if (!MoneyUtil.isEnough(balance, total)) {
+            throw new BusinessException(ErrorCode.BALANCE_NOT_ENOUGH,
+                    "商家余额不足,当前余额:" + balance + ",需要金额:" + total);
+        }
+        if (merchantMapper.addMerchantBalance(merchantId, folded.subtract(total)) != 1) {
+            throw new BusinessException(ErrorCode.OPERATION_FAILED, "扣减商家余额失败");
+        }
+        List<AccountTransaction> transactions = new ArrayList<>(amountsByRelatedId.size());
+        for (Map.Entry<Long, BigDecimal> entry : new TreeMap<>(amountsByRelatedId).entrySet()) {
+            BigDecimal balanceAfter = balance.subtract(entry.getValue());
+            transactions.add(accountTransactionService.createTransaction(
+                AccountType.MERCHANT_ACCOUNT.getCode(),
+                merchantId,
+                transactionType,
+                balance,
+                entry.getValue().negate(),
+                balanceAfter,
+                entry.getKey(),
+                relatedType,
+                remark
+            ));
+            balance = balanceAfter;
+        }
+        if (!accountTransactionService.saveTransactions(transactions)) {
+            throw new BusinessException(ErrorCode.OPERATION_FAILED, "记录交易流水失败");
+        }
+        log.info("批量扣减商家余额成功，商家ID: {}, 笔数: {}, 金额: {}, 扣减后余额: {}",
+                merchantId, amountsByRelatedId.size(), total, balance);
+        return balance;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean creditBalance(Long merchantId, BigDecimal amount,
+                                 Long relatedId, Integer transactionType, String remark, LocalDateTime transactionTime) {
+        Validator.notNull(merchantId, "商家ID不能为空");
+        Validator.notNull(amount, "金额不能为空");
+        Validator.isTrue(MoneyUtil.isValid(amount), "金额必须大于0");
+        if (merchantCreditOutboxService.isEnabled()) {
+            // 只写发件箱, 由后台任务合并入账
+            merchantCreditOutboxService.enqueue(merchantId, amount, relatedId, transactionType, remark, transactionTime);
+            return true;
+        }
+        if (!merchantSubAccountService.isEnabled()) {
+            return updateBalance(merchantId, amount, true, relatedId, transactionType, remark);
+        }
+
+        // 只锁定按关联ID选中的子账户行, 不锁merchant行
+        merchantSubAccountService.credit(merchantId, amount, relatedId);
+        // 交易前后余额记录商家完整余额(主账户加全部子账户), 其他子账户上未提交的并发入账不计入
+        Merchant merchant = merchantMapper.selectById(merchantId);
+        if (merchant == null) {
+            throw new BusinessException(ErrorCode.NOT_FOUND_ERROR, "商家不存在");
+        }
+        BigDecimal balanceAfter = merchant.getAccountBalance().add(merchantSubAccountService.sumBalance(merchantId));
+        AccountTransaction transaction = accountTransactionService.createTransaction(
+            AccountType.MERCHANT_ACCOUNT.getCode(),
+            merchantId,
+            transactionType,
+            balanceAfter.subtract(amount),
+            amount,
+            balanceAfter,
+            relatedId,
+            "merchant_sub_account_credit",
+            remark
+        );
+        if (transactionTime != null) {
+            transaction.setCreatedTime(transactionTime);
+        }
+        accountTransactionService.saveTransaction(transaction);
+        log.info("商家子账户入账成功，商家ID: {}, 金额: {}, 关联ID: {}", merchantId, amount, relatedId);
+        return true;
+    }
+
+    @Override
+    public BigDecimal getAvailableBalance(Merchant merchant) {
+        Validator.notNull(merchant, "商家不能为空");
+        BigDecimal balance = merchant.getAccountBalance().add(merchantCreditOutboxService.sumPending(merchant.getMerchantId()));
+        if (!merchantSubAccountService.isEnabled()) {
+            return balance;
+        }
+        return balance.add(merchantSubAccountService.sumBalance(merchant.getMerchantId()));
+    }
+
     @Override
     public void validateMerchantStatus(Merchant merchant) {
         Validator.notNull(merchant, "商家不能为空");
@@ -208,8 +327,9 @@ public class MerchantServiceImpl extends ServiceImpl<MerchantMapper, Merchant> i
         Validator.notNull(quantity, "数量不能为空");
         Validator.isTrue(quantity > 0, "数量必须大于0");
         
-        // 获取SKU信息
-        ProductSku sku = productSkuService.findById(skuId);
+        // 内存计数器失效后按数据库库存重新加载; 加锁读取SKU, 避免整行更新覆盖并发提交的预留回写
+        stockReservationEngine.invalidate(skuId);
+        ProductSku sku = productSkuService.selectSkuForUpdate(skuId);
         if (sku == null) {
             throw new BusinessException(ErrorCode.NOT_FOUND_ERROR, "SKU不存在");
         }
@@ -239,7 +359,7 @@ public class MerchantServiceImpl extends ServiceImpl<MerchantMapper, Merchant> i
             inventoryChange.setRemark(remark != null ? remark : "商家增加库存");
             inventoryChange.setCreatedTime(LocalDateTime.now());
             
-            inventoryChangeService.save(inventoryChange);
+            inventoryChangeService.record(inventoryChange);
             
             log.info("增加库存成功，SKU ID: {}, 增加数量: {}, 原库存: {}, 新库存: {}",
                     skuId, quantity, oldStock, newStock);
@@ -0,0 +1,22 @@
+package com.shopping.service;
+
+import java.math.BigDecimal;
+
+/** 商家子账户服务接口 */
+public interface MerchantSubAccountService {
+
+    /** 是否启用子账户入账 */
+    boolean isEnabled();
+
+    /** 按关联ID(订单ID)选择子账户入账, 在调用方事务中执行, 返回该子账户入账后的余额(不是商家完整余额) */
+    BigDecimal credit(Long merchantId, BigDecimal amount, Long relatedId);
+
+    /** 汇总商家所有子账户中尚未归集的余额 */
+    BigDecimal sumBalance(Long merchantId);
+
+    /** 把商家子账户余额清零并返回清零的总额, 调用方必须已在当前事务中锁定商家行并负责把总额加到主账户 */
+    BigDecimal foldLocked(Long merchantId);
+
+    /** 把有待归集余额的商家子账户归集到主账户余额, 每个商家一个事务, 返回归集的商家数 */
+    int foldAll();
+}
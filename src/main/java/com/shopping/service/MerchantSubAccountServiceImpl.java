@@ -0,0 +1,124 @@
+package com.shopping.service;
+
+import com.shopping.entity.Merchant;
+import com.shopping.entity.MerchantSubAccount;
+import com.shopping.mapper.MerchantMapper;
+import com.shopping.mapper.MerchantSubAccountMapper;
+import com.shopping.utils.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/** 商家子账户服务实现, 与入账发件箱二选一: 发件箱未启用时支付收入记入子账户, 定时归集到主账户 */
+@Slf4j
+@Service
+public class MerchantSubAccountServiceImpl implements MerchantSubAccountService {
+    @Autowired
+    private MerchantSubAccountMapper subAccountMapper;
+    @Autowired
+    private MerchantMapper merchantMapper;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${merchant.sub-account.enabled:false}")
+    private boolean enabled;
+
+    /** 发件箱启用时支付收入由后台任务按商家合并入账, 不会经过子账户 */
+    @Value("${merchant.credit-outbox.enabled:true}")
+    private boolean creditOutboxEnabled;
+
+    /** 每个商家的子账户数, 同一商家最多这么多笔支付可以同时入账 */
+    @Value("${merchant.sub-account.slots:16}")
+    private int slots;
+
+    /** 每次归集最多处理的商家数 */
+    @Value("${merchant.sub-account.fold-batch-size:500}")
+    private int foldBatchSize;
+
+    @PostConstruct
+    public void init() {
+        Validator.isTrue(!enabled || !creditOutboxEnabled,
+                "商家子账户入账与入账发件箱不能同时启用, 请关闭merchant.sub-account.enabled或merchant.credit-outbox.enabled");
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public BigDecimal credit(Long merchantId, BigDecimal amount, Long relatedId) {
+        Validator.notNull(merchantId, "商家ID不能为空");
+        Validator.notNull(amount, "金额不能为空");
+        int slotCount = Math.max(1, slots);
+        int slot = relatedId != null
+                ? (int) Math.floorMod(relatedId, (long) slotCount)
+                : ThreadLocalRandom.current().nextInt(slotCount);
+        subAccountMapper.credit(merchantId, slot, amount);
+        // 子账户行已被当前事务锁定, 读到的就是本次入账后的余额
+        return subAccountMapper.findBalance(merchantId, slot);
+    }
+
+    @Override
+    public BigDecimal sumBalance(Long merchantId) {
+        Validator.notNull(merchantId, "商家ID不能为空");
+        BigDecimal balance = subAccountMapper.sumBalance(merchantId);
+        return balance != null ? balance : new BigDecimal("0.00");
+    }
+
+    @Override
+    public BigDecimal foldLocked(Long merchantId) {
+        BigDecimal total = new BigDecimal("0.00");
+        for (MerchantSubAccount subAccount : subAccountMapper.selectNonZeroForUpdate(merchantId)) {
+            subAccountMapper.deduct(merchantId, subAccount.getSlot(), subAccount.getBalance());
+            total = total.add(subAccount.getBalance());
+        }
+        return total;
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${merchant.sub-account.fold-interval-ms:60000}")
+    public int foldAll() {
+        if (!enabled) {
+            return 0;
+        }
+        List<Long> merchantIds = subAccountMapper.findMerchantIdsToFold(foldBatchSize);
+        int foldedCount = 0;
+        for (Long merchantId : merchantIds) {
+            try {
+                BigDecimal folded = transactionTemplate.execute(status -> foldMerchant(merchantId));
+                if (folded != null && folded.signum() != 0) {
+                    foldedCount++;
+                }
+            } catch (Exception e) {
+                log.error("归集商家子账户失败, 商家ID: {}", merchantId, e);
+            }
+        }
+        if (foldedCount > 0) {
+            log.info("归集商家子账户完成, 商家数: {}", foldedCount);
+        }
+        return foldedCount;
+    }
+
+    /** 先锁商家行再锁子账户, 与扣减商家余额的加锁顺序一致 */
+    private BigDecimal foldMerchant(Long merchantId) {
+        Merchant merchant = merchantMapper.selectMerchantForUpdate(merchantId);
+        if (merchant == null) {
+            log.warn("归集商家子账户时商家不存在, 商家ID: {}", merchantId);
+            return null;
+        }
+        BigDecimal folded = foldLocked(merchantId);
+        if (folded.signum() != 0) {
+            merchantMapper.addMerchantBalance(merchantId, folded);
+        }
+        return folded;
+    }
+}
@@ -2,13 +2,24 @@ package com.shopping.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.shopping.entity.OrderItem;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /** 订单明细服务接口 */
 public interface OrderItemService extends IService<OrderItem> {
 
+    /** 分配明细ID后一条多行insert保存订单明细 */
+    boolean saveItems(List<OrderItem> items);
+
     /** 根据订单ID查询明细 */
     List<OrderItem> findByOrderId(Long orderId);
+
+    /** 根据多个订单ID一次查询明细, 按订单ID分组 */
+    Map<Long, List<OrderItem>> findByOrderIds(Collection<Long> orderIds);
+
+    /** 一次分组查询统计多个订单的明细数量, 没有明细的订单不在结果中 */
+    Map<Long, Integer> countByOrderIds(Collection<Long> orderIds);
     
     /** 根据SKU ID查询订单明细 */
     List<OrderItem> findBySkuId(Long skuId);
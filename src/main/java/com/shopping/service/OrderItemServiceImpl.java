@@ -10,13 +10,35 @@ import com.shopping.utils.Validator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /** 订单明细服务实现 */
 @Service
 public class OrderItemServiceImpl extends ServiceImpl<OrderItemMapper, OrderItem> implements OrderItemService {
     @Autowired
     private OrderService orderService;
+    @Autowired
+    private SegmentIdAllocator segmentIdAllocator;
+
+    @Override
+    public boolean saveItems(List<OrderItem> items) {
+        if (items == null || items.isEmpty()) {
+            return true;
+        }
+        // 多行insert不经过MybatisPlus的主键填充, 入库前先分配item_id
+        for (OrderItem item : items) {
+            if (item.getItemId() == null) {
+                item.setItemId(segmentIdAllocator.nextId(OrderItem.class));
+            }
+        }
+        return baseMapper.insertBatch(items) == items.size();
+    }
+
     @Override
     public List<OrderItem> findByOrderId(Long orderId) {
         Validator.notNull(orderId, "订单ID不能为空");
@@ -28,6 +50,31 @@ public class OrderItemServiceImpl extends ServiceImpl<OrderItemMapper, OrderItem
         return this.list(queryWrapper);
     }
 
+    @Override
+    public Map<Long, List<OrderItem>> findByOrderIds(Collection<Long> orderIds) {
+        if (orderIds == null || orderIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        QueryWrapper<OrderItem> queryWrapper = new QueryWrapper<>();
+        queryWrapper.in("order_id", orderIds);
+        queryWrapper.orderByDesc("created_time");
+
+        return this.list(queryWrapper).stream()
+            .collect(Collectors.groupingBy(OrderItem::getOrderId));
+    }
+
+    @Override
+    public Map<Long, Integer> countByOrderIds(Collection<Long> orderIds) {
+        Map<Long, Integer> countMap = new HashMap<>();
+        if (orderIds == null || orderIds.isEmpty()) {
+            return countMap;
+        }
+        for (Map<String, Object> row : baseMapper.countByOrderIds(orderIds)) {
+            countMap.put(((Number) row.get("orderId")).longValue(), ((Number) row.get("itemCount")).intValue());
+        }
+        return countMap;
+    }
+
     @Override
     public List<OrderItem> findBySkuId(Long skuId) {
         Validator.notNull(skuId, "SKU ID不能为空");
@@ -58,7 +105,7 @@ public class OrderItemServiceImpl extends ServiceImpl<OrderItemMapper, OrderItem
         // 提取订单ID
         List<Long> orderIds = paidOrders.stream()
             .map(Order::getOrderId)
-            .collect(java.util.stream.Collectors.toList());
+            .collect(Collectors.toList());
         
         // 统计销量
         QueryWrapper<OrderItem> itemQuery = new QueryWrapper<>();
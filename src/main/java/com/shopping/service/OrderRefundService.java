@@ -0,0 +1,20 @@
+package com.shopping.service;
+
+import com.shopping.dto.request.OrderRefundRequest;
+import com.shopping.dto.response.OrderResponse;
+import com.shopping.dto.response.RefundResult;
+
+import java.util.List;
+
+/** 订单退款服务接口 */
+public interface OrderRefundService {
+
+    /** 单个订单整单退款 */
+    OrderResponse refundOrder(OrderRefundRequest request);
+
+    /** 批量整单退款, 按批次在一个短事务中完成; 不是已支付状态的订单跳过, 单个批次失败不影响其他批次 */
+    RefundResult refundOrders(List<OrderRefundRequest> requests);
+
+    /** 商家整体召回: 退款该商家全部已支付订单 */
+    RefundResult refundMerchantOrders(Long merchantId, String reason);
+}
@@ -0,0 +1,299 @@
+package com.shopping.service;
+
+import cn.hutool.core.collection.ListUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.shopping.constant.OrderStatus;
+import com.shopping.constant.StatusEnum;
+import com.shopping.constant.TransactionType;
+import com.shopping.dto.request.OrderRefundRequest;
+import com.shopping.dto.request.UserBalanceCredit;
+import com.shopping.dto.response.OrderResponse;
+import com.shopping.dto.response.RefundResult;
+import com.shopping.entity.Order;
+import com.shopping.entity.OrderItem;
+import com.shopping.entity.User;
+import com.shopping.exception.BusinessException;
+import com.shopping.exception.ErrorCode;
+import com.shopping.mapper.OrdersMapper;
+import com.shopping.utils.MoneyUtil;
+import com.shopping.utils.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 订单退款服务实现
+ * 退款请求按批次处理, 每批在一个短事务中完成: 锁定已支付订单并CAS改为已退款, 一条UPDATE退回全部买家余额,
+ * 每个商家一条UPDATE扣回收入, 一条UPDATE归还全部SKU库存, 交易流水和库存变更记录均为多行insert.
+ * 退款金额不符、买家已被禁用的订单在事务前逐单剔除; 批次事务失败时改为逐单退款, 单个订单失败不影响同批其他订单
+ */
+@Slf4j
+@Service
+public class OrderRefundServiceImpl implements OrderRefundService {
+    private static final String RELATED_TYPE = "order_refund";
+
+    @Autowired
+    private OrdersMapper ordersMapper;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private OrderItemService orderItemService;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private MerchantService merchantService;
+    @Autowired
+    private ProductSkuService productSkuService;
+    @Autowired
+    private MerchantLedgerService merchantLedgerService;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /** 每批退款的订单数 */
+    @Value("${order.refund.batch-size:500}")
+    private int batchSize;
+
+    @Override
+    public OrderResponse refundOrder(OrderRefundRequest request) {
+        log.info("订单退款: {}", request);
+        validateRequest(request);
+        Order order = orderService.findById(request.getOrderId());
+        if (!OrderStatus.PAID.getCode().equals(order.getOrderStatus())) {
+            throw new BusinessException(ErrorCode.ORDER_STATUS_ERROR, "只有已支付的订单可以退款");
+        }
+        String error = checkRefundAmount(request, order);
+        if (error != null) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, error);
+        }
+        // 单个订单不吞掉异常, 失败原因直接返回给调用方
+        if (refundBatch(Collections.singletonMap(request.getOrderId(), request)).isEmpty()) {
+            throw new BusinessException(ErrorCode.ORDER_STATUS_ERROR, "订单状态已变更, 退款失败");
+        }
+        return orderService.findDetailById(request.getOrderId());
+    }
+
+    @Override
+    public RefundResult refundOrders(List<OrderRefundRequest> requests) {
+        Validator.notEmpty(requests, "退款请求不能为空");
+        long start = System.currentTimeMillis();
+        // 同一订单只处理第一次出现的请求
+        Map<Long, OrderRefundRequest> requestMap = new LinkedHashMap<>();
+        for (OrderRefundRequest request : requests) {
+            validateRequest(request);
+            requestMap.putIfAbsent(request.getOrderId(), request);
+        }
+        RefundResult result = new RefundResult();
+        result.setRequestedCount(requestMap.size());
+        for (List<OrderRefundRequest> batch : ListUtil.partition(new ArrayList<>(requestMap.values()), Math.max(1, batchSize))) {
+            refundBatchSafely(batch, result);
+        }
+        result.setExecutionMillis(System.currentTimeMillis() - start);
+        log.info("批量退款完成, 请求订单数: {}, 退款订单数: {}, 跳过: {}, 失败: {}, 退款金额: {}, 耗时: {}ms",
+                result.getRequestedCount(), result.getRefundedCount(), result.getSkippedOrderIds().size(),
+                result.getFailedOrderIds().size(), result.getRefundedAmount(), result.getExecutionMillis());
+        return result;
+    }
+
+    @Override
+    public RefundResult refundMerchantOrders(Long merchantId, String reason) {
+        Validator.notBlank(reason, "退款原因不能为空");
+        merchantService.findById(merchantId);
+        long start = System.currentTimeMillis();
+        RefundResult result = new RefundResult();
+        LocalDateTime afterTime = null;
+        Long afterId = null;
+        while (true) {
+            List<Order> orders = ordersMapper.findPaidOrdersByMerchant(merchantId, afterTime, afterId, Math.max(1, batchSize));
+            if (orders.isEmpty()) {
+                break;
+            }
+            List<OrderRefundRequest> batch = orders.stream().map(order -> {
+                OrderRefundRequest request = new OrderRefundRequest();
+                request.setOrderId(order.getOrderId());
+                request.setReason(reason);
+                return request;
+            }).collect(Collectors.toList());
+            result.setRequestedCount(result.getRequestedCount() + batch.size());
+            refundBatchSafely(batch, result);
+            if (orders.size() < batchSize) {
+                break;
+            }
+            Order last = orders.get(orders.size() - 1);
+            afterTime = last.getPaymentTime();
+            afterId = last.getOrderId();
+        }
+        result.setExecutionMillis(System.currentTimeMillis() - start);
+        log.info("商家订单召回完成, 商家ID: {}, 退款订单数: {}, 失败: {}, 退款金额: {}, 耗时: {}ms",
+                merchantId, result.getRefundedCount(), result.getFailedOrderIds().size(),
+                result.getRefundedAmount(), result.getExecutionMillis());
+        return result;
+    }
+
+    private void validateRequest(OrderRefundRequest request) {
+        Validator.notNull(request, "退款请求不能为空");
+        Validator.notNull(request.getOrderId(), "订单ID不能为空");
+        Validator.notBlank(request.getReason(), "退款原因不能为空");
+        if (request.getRefundAmount() != null) {
+            Validator.isTrue(MoneyUtil.isValid(request.getRefundAmount()), "退款金额必须大于0");
+        }
+    }
+
+    /** 执行一批退款并汇总结果: 不是已支付状态的订单跳过, 不满足退款条件的订单和逐单退款仍失败的订单记为失败 */
+    private void refundBatchSafely(List<OrderRefundRequest> batch, RefundResult result) {
+        List<Long> orderIds = batch.stream().map(OrderRefundRequest::getOrderId).collect(Collectors.toList());
+        Map<Long, Order> paidOrders = findPaidOrders(orderIds);
+        Set<Long> enabledUserIds = findEnabledUserIds(paidOrders.values());
+        Set<Long> failedIds = new HashSet<>();
+        Map<Long, OrderRefundRequest> eligible = new TreeMap<>();
+        for (OrderRefundRequest request : batch) {
+            Order order = paidOrders.get(request.getOrderId());
+            if (order == null) {
+                continue;
+            }
+            String error = checkRefundAmount(request, order);
+            if (error == null && !enabledUserIds.contains(order.getUserId())) {
+                error = "买家不存在或已被禁用, 无法退回余额";
+            }
+            if (error != null) {
+                log.warn("订单不满足退款条件, 订单ID: {}, 原因: {}", order.getOrderId(), error);
+                failedIds.add(order.getOrderId());
+                continue;
+            }
+            eligible.put(request.getOrderId(), request);
+        }
+        List<Order> refunded = new ArrayList<>();
+        if (!eligible.isEmpty()) {
+            try {
+                refunded.addAll(refundBatch(eligible));
+            } catch (Exception e) {
+                log.warn("批次退款失败, 改为逐单退款, 订单数: {}, 首个订单ID: {}", eligible.size(), eligible.keySet().iterator().next(), e);
+                for (OrderRefundRequest request : eligible.values()) {
+                    try {
+                        refunded.addAll(refundBatch(Collections.singletonMap(request.getOrderId(), request)));
+                    } catch (Exception ex) {
+                        log.error("订单退款失败, 订单ID: {}", request.getOrderId(), ex);
+                        failedIds.add(request.getOrderId());
+                    }
+                }
+            }
+        }
+        Set<Long> refundedIds = refunded.stream().map(Order::getOrderId).collect(Collectors.toSet());
+        for (Long orderId : orderIds) {
+            if (refundedIds.contains(orderId)) {
+                result.getRefundedOrderIds().add(orderId);
+            } else if (failedIds.contains(orderId)) {
+                result.getFailedOrderIds().add(orderId);
+            } else {
+                result.getSkippedOrderIds().add(orderId);
+            }
+        }
+        result.setRefundedCount(result.getRefundedOrderIds().size());
+        for (Order order : refunded) {
+            result.setRefundedAmount(result.getRefundedAmount().add(order.getTotalAmount()));
+        }
+    }
+
+    /** 普通读查询仍为已支付的订单, 事务中只锁定这些订单, 避免锁住待支付订单与支付流程交叉等待 */
+    private Map<Long, Order> findPaidOrders(List<Long> orderIds) {
+        QueryWrapper<Order> queryWrapper = new QueryWrapper<>();
+        queryWrapper.select("order_id", "user_id", "total_amount");
+        queryWrapper.in("order_id", orderIds);
+        queryWrapper.eq("order_status", OrderStatus.PAID.getCode());
+        return ordersMapper.selectList(queryWrapper).stream()
+                .collect(Collectors.toMap(Order::getOrderId, Function.identity()));
+    }
+
+    /** 查询状态正常的买家, 被禁用的买家无法退回余额 */
+    private Set<Long> findEnabledUserIds(Collection<Order> orders) {
+        Set<Long> userIds = orders.stream().map(Order::getUserId).collect(Collectors.toSet());
+        if (userIds.isEmpty()) {
+            return Collections.emptySet();
+        }
+        QueryWrapper<User> queryWrapper = new QueryWrapper<>();
+        queryWrapper.select("user_id");
+        queryWrapper.in("user_id", userIds);
+        queryWrapper.eq("status", StatusEnum.ENABLED.getCode());
+        return userService.list(queryWrapper).stream().map(User::getUserId).collect(Collectors.toSet());
+    }
+
+    /** 只支持整单退款, 退款金额不符时返回失败原因; 订单金额创建后不再变化, 在事务外校验 */
+    private static String checkRefundAmount(OrderRefundRequest request, Order order) {
+        BigDecimal refundAmount = request.getRefundAmount();
+        if (refundAmount != null && !MoneyUtil.equals(refundAmount, order.getTotalAmount())) {
+            return "只支持整单退款, 订单" + order.getOrderId() + "的退款金额必须为" + order.getTotalAmount();
+        }
+        return null;
+    }
+
+    /** 在一个短事务中退款一批已校验的订单, 返回实际退款的订单; 期间状态已变更的订单跳过 */
+    private List<Order> refundBatch(Map<Long, OrderRefundRequest> requestMap) {
+        List<Long> candidateIds = new ArrayList<>(new TreeSet<>(requestMap.keySet()));
+        // 订单明细创建后不再变化, 在事务外查询
+        Map<Long, List<OrderItem>> itemsByOrder = orderItemService.findByOrderIds(candidateIds);
+        return transactionTemplate.execute(status -> {
+            List<Order> orders = ordersMapper.selectPaidOrdersForUpdate(candidateIds);
+            if (orders.isEmpty()) {
+                return orders;
+            }
+            List<Long> orderIds = orders.stream().map(Order::getOrderId).collect(Collectors.toList());
+            LocalDateTime refundTime = LocalDateTime.now();
+            if (ordersMapper.refundPaidOrders(orderIds, refundTime) != orderIds.size()) {
+                throw new BusinessException(ErrorCode.OPERATION_FAILED, "批量更新订单退款状态失败");
+            }
+            // 退回买家余额
+            List<UserBalanceCredit> credits = new ArrayList<>(orders.size());
+            for (Order order : orders) {
+                UserBalanceCredit credit = new UserBalanceCredit();
+                credit.setUserId(order.getUserId());
+                credit.setAmount(order.getTotalAmount());
+                credit.setTransactionType(TransactionType.REFUND.getCode());
+                credit.setRelatedId(order.getOrderId());
+                credit.setRelatedType(RELATED_TYPE);
+                credit.setRemark("订单退款: " + requestMap.get(order.getOrderId()).getReason());
+                credits.add(credit);
+            }
+            userService.creditUserBalances(credits);
+            // 扣回商家收入, 按商家ID顺序加锁
+            Map<Long, Map<Long, BigDecimal>> amountsByMerchant = new TreeMap<>();
+            for (Order order : orders) {
+                amountsByMerchant.computeIfAbsent(order.getMerchantId(), id -> new TreeMap<>())
+                        .put(order.getOrderId(), order.getTotalAmount());
+            }
+            amountsByMerchant.forEach((merchantId, amounts) ->
+                    merchantService.debitBalance(merchantId, amounts, TransactionType.REFUND.getCode(), RELATED_TYPE, "订单退款"));
+            // 实时账本: 退款金额记在退款日, 支付日的已支付金额不变
+            amountsByMerchant.forEach((merchantId, amounts) -> merchantLedgerService.recordRefund(merchantId,
+                    amounts.values().stream().reduce(new BigDecimal("0.00"), BigDecimal::add), refundTime));
+            // 归还库存
+            Map<Long, Map<Long, Integer>> quantitiesByOrder = new TreeMap<>();
+            for (Long orderId : orderIds) {
+                for (OrderItem item : itemsByOrder.getOrDefault(orderId, Collections.emptyList())) {
+                    quantitiesByOrder.computeIfAbsent(orderId, id -> new TreeMap<>())
+                            .merge(item.getSkuId(), item.getQuantity(), Integer::sum);
+                }
+            }
+            if (!quantitiesByOrder.isEmpty()) {
+                productSkuService.increaseStockBatch(quantitiesByOrder, RELATED_TYPE, "订单退款归还库存");
+            }
+            log.info("批次退款成功, 订单数: {}, 商家数: {}", orders.size(), amountsByMerchant.size());
+            return orders;
+        });
+    }
+}
@@ -7,6 +7,7 @@ import com.shopping.dto.request.OrderPayRequest;
 import com.shopping.dto.request.OrderRefundRequest;
 import com.shopping.dto.request.OrderUpdateRequest;
 import com.shopping.dto.response.OrderResponse;
+import com.shopping.dto.response.PageResponse;
 import com.shopping.entity.Order;
 
 import java.time.LocalDate;
@@ -26,12 +27,21 @@ public interface OrderService extends IService<Order> {
     /** 查询订单详情 */
     OrderResponse findDetailById(Long orderId);
 
+    /** 批量查询订单详情, 按传入顺序返回, 不存在的订单忽略 */
+    List<OrderResponse> findDetailsByIds(List<Long> orderIds);
+
+    /** 批量取消超时未支付的订单并归还库存, 只取消仍为待支付的订单, 返回取消的订单数 */
+    int cancelExpiredOrders(List<Long> orderIds);
+
     /** 删除订单 */
     boolean deleteOrder(Long orderId);
     
     /** 分页查询订单 */
     Page<Order> findPage(int pageNum, int pageSize, Long userId, Long merchantId, Integer status);
 
+    /** 游标分页查询订单, 按(created_time, order_id)倒序; withTotal为false时不统计总数 */
+    PageResponse<Order> scroll(String cursor, int size, Long userId, Long merchantId, Integer status, boolean withTotal);
+
     /** 计算订单金额 */
     java.math.BigDecimal calculateOrderAmount(Long orderId);
 }
\ No newline at end of file
@@ -1,32 +1,52 @@
 package com.shopping.service;
 import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.thread.NamedThreadFactory;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.shopping.constant.*;
 import com.shopping.dto.request.*;
+import com.shopping.dto.response.CartSkuInfo;
 import com.shopping.dto.response.OrderItemResponse;
 import com.shopping.dto.response.OrderResponse;
 import com.shopping.dto.response.OrderSimpleResponse;
+import com.shopping.dto.response.PageResponse;
 import com.shopping.entity.*;
 import com.shopping.exception.BusinessException;
 import com.shopping.exception.ErrorCode;
 import com.shopping.mapper.OrdersMapper;
+import com.shopping.utils.CursorUtil;
 import com.shopping.utils.IdGenerator;
 import com.shopping.utils.MoneyUtil;
+import com.shopping.utils.RetryExecutor;
 import com.shopping.utils.Validator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.PessimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 /** 订单服务实现 */
 @Slf4j
@@ -38,18 +58,57 @@ public class OrderServiceImpl extends ServiceImpl<OrdersMapper, Order> implement
     private MerchantService merchantService;
     @Autowired
     private ProductSkuService productSkuService;
-    @Autowired
-    private ProductService productService;
 
     @Autowired
     private OrderItemService orderItemService;
     @Autowired
     private IdGenerator idGenerator;
     @Autowired
+    private SegmentIdAllocator segmentIdAllocator;
+    @Autowired
     private OrdersMapper ordersMapper;
+    @Autowired
+    private MerchantLedgerService merchantLedgerService;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private OrderTimeoutManager orderTimeoutManager;
+    @Autowired
+    private RetryExecutor stockRetryExecutor;
+
+    /** 下单校验线程数 */
+    @Value("${order.validation.threads:16}")
+    private int validationThreads;
+
+    /** 下单校验队列容量, 队列满时由调用线程执行 */
+    @Value("${order.validation.queue-capacity:1000}")
+    private int validationQueueCapacity;
+
+    /** 批量查询订单详情一次最多的订单数 */
+    @Value("${order.details.max-ids:100}")
+    private int maxDetailIds;
 
+    /** 下单时并发执行只读校验的线程池 */
+    private Executor orderValidationExecutor;
+    private ThreadPoolExecutor validationPool;
+
+    @PostConstruct
+    public void init() {
+        validationPool = new ThreadPoolExecutor(validationThreads, validationThreads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(validationQueueCapacity), new NamedThreadFactory("order-validation-", true),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        orderValidationExecutor = validationPool;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (validationPool != null) {
+            validationPool.shutdown();
+        }
+    }
+
+    /** 校验阶段只读且不开启事务, 写入阶段在transactionTemplate的短事务中完成 */
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public OrderResponse createOrder(OrderCreateRequest request) {
         log.info("创建订单: {}", request);
         // 验证参数
@@ -57,29 +116,30 @@ public class OrderServiceImpl extends ServiceImpl<OrdersMapper, Order> implement
         Validator.notNull(request.getMerchantId(), "商家ID不能为空");
         Validator.notEmpty(request.getOrderItems(), "订单商品不能为空");
 
-        // 验证用户
-        User user = userService.getUserById(request.getUserId());
-        userService.validateUserStatus(user);
-        // 验证商家
-        Merchant merchant = merchantService.findById(request.getMerchantId());
-        merchantService.validateMerchantStatus(merchant);
-
-        // 验证商品SKU和库存
+        // 用户、商家和各商品的校验互不依赖, 在校验线程池中并发查询, 全部完成后再进入写入阶段
+        CompletableFuture<User> userFuture = CompletableFuture.supplyAsync(() -> {
+            User u = userService.getUserById(request.getUserId());
+            userService.validateUserStatus(u);
+            return u;
+        }, orderValidationExecutor);
+        CompletableFuture<Merchant> merchantFuture = CompletableFuture.supplyAsync(() -> {
+            Merchant m = merchantService.findById(request.getMerchantId());
+            merchantService.validateMerchantStatus(m);
+            return m;
+        }, orderValidationExecutor);
+        // 购物车中所有SKU的价格、状态、库存和所属商家关联商品表一次查出
         List<OrderItemRequest> reqItems = request.getOrderItems();
-        BigDecimal totalAmount = new BigDecimal("0.00");
+        CompletableFuture<Map<Long, CartSkuInfo>> cartFuture = CompletableFuture.supplyAsync(
+                () -> productSkuService.checkCart(reqItems, request.getMerchantId()), orderValidationExecutor);
+        // 按原来的校验顺序取结果, 多个校验失败时抛出的仍是第一个
+        User user = joinValidation(userFuture);
+        Merchant merchant = joinValidation(merchantFuture);
+        Map<Long, CartSkuInfo> skuMap = joinValidation(cartFuture);
 
+        BigDecimal totalAmount = new BigDecimal("0.00");
         List<OrderItem> orderItems = new ArrayList<>();
-        Map<Long, Long> skuVersionMap = new HashMap<>();
         for (OrderItemRequest item : reqItems) {
-            //todo 检查库存是否足够时,使用for update加锁来查询, 防止后面扣减库存时,出现超额/并发更新覆盖
-            //验证SKU和库存
-            ProductSku sku = productSkuService.validateStock(item.getSkuId(), item.getQuantity());
-            // 验证SKU是否属于该商家
-            Product product = productService.findById(sku.getProductId());
-            if (!merchant.getMerchantId().equals(product.getMerchantId())) {
-                throw new BusinessException(ErrorCode.PARAMS_ERROR, "商品不属于该商家");
-            }
-            skuVersionMap.put(sku.getSkuId(), sku.getStockVersion());
+            CartSkuInfo sku = skuMap.get(item.getSkuId());
             // 计算商品总价
             BigDecimal itemTotal = MoneyUtil.calculateTotal(sku.getPrice(), item.getQuantity());
             totalAmount = totalAmount.add(itemTotal);
@@ -96,10 +156,12 @@ public class OrderServiceImpl extends ServiceImpl<OrdersMapper, Order> implement
             orderItems.add(orderItem);
         }
 
-        // 生成订单号
+        // 插入前分配订单ID
+        Long orderId = segmentIdAllocator.nextId(Order.class);
         String orderNo = idGenerator.generateOrderNo();
         // 创建订单
         Order order = new Order();
+        order.setOrderId(orderId);
         order.setOrderNo(orderNo);
         order.setUserId(request.getUserId());
         order.setMerchantId(request.getMerchantId());
@@ -107,32 +169,48 @@ public class OrderServiceImpl extends ServiceImpl<OrdersMapper, Order> implement
         order.setTotalAmount(totalAmount);
         order.setCreatedTime(LocalDateTime.now());
         order.setUpdatedTime(LocalDateTime.now());
-        boolean saveOrderSuccess = this.save(order);
-        if (!saveOrderSuccess) {
-            throw new BusinessException(ErrorCode.OPERATION_FAILED, "保存订单失败");
-        }
+        // 同一SKU可能出现在多个明细中, 合并数量后按sku_id顺序一次性扣减
+        Map<Long, Integer> skuQuantities = new TreeMap<>();
         for (OrderItem orderItem : orderItems) {
-            orderItem.setOrderId(order.getOrderId());
-            Long skuId = orderItem.getSkuId();
-            Long skuVersion = skuVersionMap.get(skuId);
-            // 扣减库存
-            boolean reduceStockSuccess = productSkuService.subtractStock(
-                    skuId,
-                    orderItem.getQuantity(),
-                    skuVersion,
-                    order.getOrderId(),
-                    "createOrder",
-                    "下单时扣减库存"
-            );
+            orderItem.setOrderId(orderId);
+            skuQuantities.merge(orderItem.getSkuId(), orderItem.getQuantity(), Integer::sum);
+        }
+        Runnable saveOrder = () -> {
+            boolean saveOrderSuccess = this.save(order);
+            if (!saveOrderSuccess) {
+                throw new BusinessException(ErrorCode.OPERATION_FAILED, "保存订单失败");
+            }
+            boolean saveItemsSuccess = orderItemService.saveItems(orderItems);
+            if (!saveItemsSuccess) {
+                throw new BusinessException(ErrorCode.OPERATION_FAILED, "保存订单明细失败");
+            }
+        };
+        if (skuQuantities.size() == 1 && productSkuService.isGroupCommitApplicable()) {
+            // 单SKU订单走组提交: 与同一SKU窗口内的其他订单在一个批次事务中写入, 库存合并为一条UPDATE扣减
+            Map.Entry<Long, Integer> entry = skuQuantities.entrySet().iterator().next();
+            boolean reduceStockSuccess = productSkuService.subtractStockGrouped(entry.getKey(), entry.getValue(),
+                    orderId, "createOrder", "下单时扣减库存", saveOrder);
             if (!reduceStockSuccess) {
                 throw new BusinessException(ErrorCode.OPERATION_FAILED, "扣减库存失败");
             }
+        } else {
+            // 写入阶段使用短事务: 校验、组装均已在事务外完成, 热点SKU行锁最后获取, 持有到提交为止;
+            // 行锁等待超时或死锁时整个事务已回滚, 退避后在新事务中重新写入, 订单和明细ID沿用
+            stockRetryExecutor.execute(attempt -> {
+                transactionTemplate.executeWithoutResult(status -> {
+                    saveOrder.run();
+                    // 扣减库存
+                    boolean reduceStockSuccess = productSkuService.subtractStockBatch(
+                            skuQuantities, orderId, "createOrder", "下单时扣减库存");
+                    if (!reduceStockSuccess) {
+                        throw new BusinessException(ErrorCode.OPERATION_FAILED, "扣减库存失败");
+                    }
+                });
+                return null;
+            }, result -> false, e -> e instanceof PessimisticLockingFailureException);
         }
-
-        boolean saveItemsSuccess = orderItemService.saveBatch(orderItems);
-        if (!saveItemsSuccess) {
-            throw new BusinessException(ErrorCode.OPERATION_FAILED, "保存订单明细失败");
-        }
+        // 提交后开始跟踪支付超时
+        orderTimeoutManager.track(orderId, order.getCreatedTime());
         // 构建响应
         OrderResponse response = buildOrderResponse(order, orderItems);
         response.setUsername(user.getUsername());
@@ -159,21 +237,26 @@ public class OrderServiceImpl extends ServiceImpl<OrdersMapper, Order> implement
         User user = userService.updateUserBalance(order.getUserId(),
                 order.getTotalAmount(), "decrease", order.getOrderId(), 2, "用户消费");
 
+        // 支付时间与商家入账流水、实时账本使用同一个时间, 按日结算时三者落在同一天
+        LocalDateTime paymentTime = LocalDateTime.now();
         // 增加商家余额,并记录交易流水
-        boolean merchantBalanceSuccess = merchantService.updateBalance(merchant.getMerchantId(),
-                order.getTotalAmount(), true, order.getOrderId(), 3, "商家收入");
+        boolean merchantBalanceSuccess = merchantService.creditBalance(merchant.getMerchantId(),
+                order.getTotalAmount(), order.getOrderId(), 3, "商家收入", paymentTime);
         if (!merchantBalanceSuccess) {
             throw new BusinessException(ErrorCode.OPERATION_FAILED, "增加商家余额失败");
         }
 
         // 更新订单状态
-        Integer integer = ordersMapper.updateOrderPaid(order.getOrderId());
+        Integer integer = ordersMapper.updateOrderPaid(order.getOrderId(), paymentTime);
         if (integer != 1) {
             throw new BusinessException(ErrorCode.OPERATION_FAILED, "更新订单失败");
         }
+        orderTimeoutManager.untrack(order.getOrderId());
+        // 累加商家当日实时账本, 与支付在同一事务中提交
+        merchantLedgerService.recordPayment(merchant.getMerchantId(), order.getTotalAmount(), paymentTime);
         // 构建响应
         order.setOrderStatus(1);
-        order.setPaymentTime(LocalDateTime.now());
+        order.setPaymentTime(paymentTime);
         List<OrderItem> orderItems = orderItemService.findByOrderId(order.getOrderId());
         OrderResponse response = buildOrderResponse(order, orderItems);
         response.setUsername(user.getUsername());
@@ -207,6 +290,50 @@ public class OrderServiceImpl extends ServiceImpl<OrdersMapper, Order> implement
         return response;
     }
 
+    @Override
+    public List<OrderResponse> findDetailsByIds(List<Long> orderIds) {
+        Validator.notEmpty(orderIds, "订单ID不能为空");
+        Validator.isTrue(orderIds.size() <= maxDetailIds, "一次最多查询" + maxDetailIds + "个订单");
+        Map<Long, Order> orderMap = this.listByIds(orderIds).stream()
+                .collect(Collectors.toMap(Order::getOrderId, Function.identity()));
+        if (orderMap.isEmpty()) {
+            return new ArrayList<>();
+        }
+        // 明细、SKU、用户、商家各一次批量查询
+        Map<Long, List<OrderItem>> itemMap = orderItemService.findByOrderIds(orderMap.keySet());
+        Set<Long> skuIds = itemMap.values().stream()
+                .flatMap(List::stream)
+                .map(OrderItem::getSkuId)
+                .collect(Collectors.toSet());
+        Map<Long, ProductSku> skuMap = productSkuService.findCachedByIds(skuIds);
+        Set<Long> userIds = orderMap.values().stream().map(Order::getUserId).collect(Collectors.toSet());
+        Map<Long, User> userMap = userService.listByIds(userIds).stream()
+                .collect(Collectors.toMap(User::getUserId, Function.identity()));
+        Set<Long> merchantIds = orderMap.values().stream().map(Order::getMerchantId).collect(Collectors.toSet());
+        Map<Long, Merchant> merchantMap = merchantService.listByIds(merchantIds).stream()
+                .collect(Collectors.toMap(Merchant::getMerchantId, Function.identity()));
+
+        List<OrderResponse> responses = new ArrayList<>(orderMap.size());
+        for (Long orderId : new LinkedHashSet<>(orderIds)) {
+            Order order = orderMap.get(orderId);
+            if (order == null) {
+                continue;
+            }
+            List<OrderItem> orderItems = itemMap.getOrDefault(orderId, Collections.emptyList());
+            OrderResponse response = buildOrderResponse(order, orderItems, skuMap);
+            User user = userMap.get(order.getUserId());
+            if (user != null) {
+                response.setUsername(user.getUsername());
+            }
+            Merchant merchant = merchantMap.get(order.getMerchantId());
+            if (merchant != null) {
+                response.setMerchantName(merchant.getMerchantName());
+            }
+            responses.add(response);
+        }
+        return responses;
+    }
+
     @Override
     @Transactional(rollbackFor = Exception.class)
     public boolean deleteOrder(Long orderId) {
@@ -224,11 +351,39 @@ public class OrderServiceImpl extends ServiceImpl<OrdersMapper, Order> implement
         // 删除订单
         boolean deleteSuccess = this.removeById(orderId);
         if (deleteSuccess) {
+            orderTimeoutManager.untrack(orderId);
             log.info("删除订单成功，订单ID: {}", orderId);
         }
         return deleteSuccess;
     }
 
+    /** 先按主键锁定仍为待支付的订单再CAS改为已取消, 各订单明细按订单合并后一次归还库存 */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public int cancelExpiredOrders(List<Long> orderIds) {
+        if (orderIds == null || orderIds.isEmpty()) {
+            return 0;
+        }
+        List<Long> pendingIds = ordersMapper.selectPendingIdsForUpdate(orderIds);
+        if (pendingIds.isEmpty()) {
+            return 0;
+        }
+        int cancelled = ordersMapper.cancelPendingOrders(pendingIds);
+        if (cancelled != pendingIds.size()) {
+            throw new BusinessException(ErrorCode.OPERATION_FAILED, "批量取消订单失败");
+        }
+        Map<Long, Map<Long, Integer>> quantitiesByOrder = new TreeMap<>();
+        orderItemService.findByOrderIds(pendingIds).forEach((orderId, items) -> {
+            Map<Long, Integer> skuQuantities = quantitiesByOrder.computeIfAbsent(orderId, id -> new TreeMap<>());
+            items.forEach(item -> skuQuantities.merge(item.getSkuId(), item.getQuantity(), Integer::sum));
+        });
+        if (!quantitiesByOrder.isEmpty()) {
+            productSkuService.increaseStockBatch(quantitiesByOrder, "cancelOrder", "订单超时取消归还库存");
+        }
+        log.info("批量取消超时订单成功, 订单数: {}", cancelled);
+        return cancelled;
+    }
+
     @Override
     public Page<Order> findPage(int pageNum, int pageSize, Long userId, Long merchantId, Integer status) {
         QueryWrapper<Order> queryWrapper = new QueryWrapper<>();
@@ -246,6 +401,35 @@ public class OrderServiceImpl extends ServiceImpl<OrdersMapper, Order> implement
         return this.page(page, queryWrapper);
     }
 
+    @Override
+    public PageResponse<Order> scroll(String cursor, int size, Long userId, Long merchantId, Integer status,
+                                      boolean withTotal) {
+        QueryWrapper<Order> queryWrapper = new QueryWrapper<>();
+        if (userId != null) {
+            queryWrapper.eq("user_id", userId);
+        }
+        if (merchantId != null) {
+            queryWrapper.eq("merchant_id", merchantId);
+        }
+        if (status != null) {
+            queryWrapper.eq("order_status", status);
+        }
+        Long total = null;
+        if (withTotal) {
+            total = (long) this.count(queryWrapper);
+        }
+        if (cursor != null) {
+            CursorUtil.Cursor position = CursorUtil.decode(cursor);
+            LocalDateTime createdTime = position.getSortTime();
+            queryWrapper.and(w -> w.lt("created_time", createdTime)
+                    .or(o -> o.eq("created_time", createdTime).lt("order_id", position.getId())));
+        }
+        queryWrapper.orderByDesc("created_time").orderByDesc("order_id");
+        queryWrapper.last("limit " + (size + 1));
+        return PageResponse.ofCursor(this.list(queryWrapper), size, total,
+                order -> CursorUtil.encode(order.getCreatedTime(), order.getOrderId()));
+    }
+
     @Override
     public BigDecimal calculateOrderAmount(Long orderId) {
         Order order = this.findById(orderId);
@@ -256,6 +440,14 @@ public class OrderServiceImpl extends ServiceImpl<OrdersMapper, Order> implement
      * 构建订单响应
      */
     private OrderResponse buildOrderResponse(Order order, List<OrderItem> orderItems) {
+        Set<Long> skuIds = orderItems.stream().map(OrderItem::getSkuId).collect(Collectors.toSet());
+        return buildOrderResponse(order, orderItems, productSkuService.findCachedByIds(skuIds));
+    }
+
+    /**
+     * 构建订单响应, SKU信息从预先批量加载的skuMap中取
+     */
+    private OrderResponse buildOrderResponse(Order order, List<OrderItem> orderItems, Map<Long, ProductSku> skuMap) {
         OrderResponse response = new OrderResponse();
         BeanUtil.copyProperties(order, response);
         // 设置订单状态描述
@@ -266,8 +458,7 @@ public class OrderServiceImpl extends ServiceImpl<OrdersMapper, Order> implement
         List<OrderItemResponse> itemResponses = orderItems.stream().map(item -> {
             OrderItemResponse itemResponse = new OrderItemResponse();
             BeanUtil.copyProperties(item, itemResponse);
-            // 查询SKU信息
-            ProductSku sku = productSkuService.findById(item.getSkuId());
+            ProductSku sku = skuMap.get(item.getSkuId());
             if (sku != null) {
                 itemResponse.setSkuCode(sku.getSkuCode());
                 itemResponse.setSkuName(sku.getSkuName());
@@ -290,4 +481,16 @@ public class OrderServiceImpl extends ServiceImpl<OrdersMapper, Order> implement
         response.setItemCount(itemCount);
         return response;
     }
-}
\ No newline at end of file
+
+    /** 等待校验结果, 校验抛出的业务异常原样抛出 */
+    private static <T> T joinValidation(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.shopping.service;
+
+import cn.hutool.core.collection.ListUtil;
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.shopping.entity.Order;
+import com.shopping.mapper.OrdersMapper;
+import com.shopping.utils.TimingWheel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 待支付订单超时取消
+ * 待支付订单按截止时间放入分层时间轮, 跟踪和移除都是O(1), 不轮询订单表; 启动时按索引分页加载待支付订单重建时间轮.
+ * 时间轮只由tick线程访问, 新订单先进入无锁队列, 每格开始时转入时间轮; 到期订单按批次CAS取消并归还库存.
+ * 多实例部署时各实例都会跟踪全部待支付订单, 由订单状态的CAS更新保证只取消一次.
+ * 其他实例创建的订单、事务提交前进程退出等原因未进入时间轮的订单, 由定期扫描订单表的兜底任务取消
+ */
+@Slf4j
+@Component
+public class OrderTimeoutManager {
+    /** 取消失败的订单延后重试的时间 */
+    private static final long RETRY_DELAY_MILLIS = 10000L;
+
+    @Autowired
+    private OrdersMapper ordersMapper;
+    @Lazy
+    @Autowired
+    private OrderService orderService;
+
+    @Value("${order.timeout.enabled:true}")
+    private boolean enabled;
+
+    /** 待支付订单的超时时间(分钟) */
+    @Value("${order.timeout.minutes:30}")
+    private long timeoutMinutes;
+
+    /** 时间轮每格时长(毫秒) */
+    @Value("${order.timeout.tick-ms:1000}")
+    private long tickMs;
+
+    /** 时间轮每层格子数 */
+    @Value("${order.timeout.wheel-size:60}")
+    private int wheelSize;
+
+    /** 每批取消的订单数, 重建和兜底扫描时每页加载的订单数 */
+    @Value("${order.timeout.batch-size:500}")
+    private int batchSize;
+
+    /** 兜底扫描订单表的间隔(毫秒), 0表示不扫描 */
+    @Value("${order.timeout.sweep-interval-ms:60000}")
+    private long sweepIntervalMs;
+
+    private final ZoneId zone = ZoneId.systemDefault();
+    /** 跟踪中的订单ID到截止时间(毫秒), 支付或删除后移除, 时间轮中的条目到期时直接丢弃 */
+    private final ConcurrentHashMap<Long, Long> deadlines = new ConcurrentHashMap<>();
+    /** 等待放入时间轮的订单ID */
+    private final Queue<Long> incoming = new ConcurrentLinkedQueue<>();
+    private TimingWheel<Long> wheel;
+    private ScheduledExecutorService ticker;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        wheel = new TimingWheel<>(tickMs, wheelSize, System.currentTimeMillis());
+        ticker = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("order-timeout-", true));
+        ticker.execute(this::rebuild);
+        ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        if (sweepIntervalMs > 0) {
+            ticker.scheduleWithFixedDelay(this::sweep, sweepIntervalMs, sweepIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (ticker != null) {
+            ticker.shutdown();
+        }
+    }
+
+    /** 跟踪新创建的待支付订单 */
+    public void track(Long orderId, LocalDateTime createdTime) {
+        if (!enabled) {
+            return;
+        }
+        long deadline = createdTime.atZone(zone).toInstant().toEpochMilli() + TimeUnit.MINUTES.toMillis(timeoutMinutes);
+        if (deadlines.putIfAbsent(orderId, deadline) == null) {
+            incoming.add(orderId);
+        }
+    }
+
+    /** 订单已支付或已删除, 不再跟踪; 若存在事务, 提交后才移除, 事务回滚时订单仍会超时取消 */
+    public void untrack(Long orderId) {
+        if (!enabled) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            deadlines.remove(orderId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                deadlines.remove(orderId);
+            }
+        });
+    }
+
+    /** 跟踪中的订单数 */
+    public int size() {
+        return deadlines.size();
+    }
+
+    /** 按(created_time, order_id)游标分页加载全部待支付订单 */
+    private void rebuild() {
+        LocalDateTime afterTime = null;
+        Long afterId = null;
+        int total = 0;
+        try {
+            while (true) {
+                List<Order> orders = ordersMapper.findPendingOrders(afterTime, afterId, batchSize);
+                for (Order order : orders) {
+                    track(order.getOrderId(), order.getCreatedTime());
+                }
+                total += orders.size();
+                if (orders.size() < batchSize) {
+                    break;
+                }
+                Order last = orders.get(orders.size() - 1);
+                afterTime = last.getCreatedTime();
+                afterId = last.getOrderId();
+            }
+            log.info("待支付订单超时时间轮重建完成, 订单数: {}", total);
+        } catch (Exception e) {
+            log.error("待支付订单超时时间轮重建失败, 已加载订单数: {}", total, e);
+        }
+    }
+
+    /** 兜底扫描: 按(created_time, order_id)游标分页查询已超时仍待支付的订单并取消, 遇到未超时的订单即停止 */
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(timeoutMinutes);
+        LocalDateTime afterTime = null;
+        Long afterId = null;
+        int total = 0;
+        try {
+            while (true) {
+                List<Order> orders = ordersMapper.findPendingOrders(afterTime, afterId, batchSize);
+                List<Long> expired = new ArrayList<>(orders.size());
+                for (Order order : orders) {
+                    if (!order.getCreatedTime().isBefore(cutoff)) {
+                        break;
+                    }
+                    // 时间轮中的旧条目到期时不在deadlines中, 直接丢弃
+                    deadlines.remove(order.getOrderId());
+                    expired.add(order.getOrderId());
+                }
+                if (!expired.isEmpty()) {
+                    cancel(expired, now);
+                    total += expired.size();
+                }
+                if (expired.size() < batchSize) {
+                    break;
+                }
+                Order last = orders.get(orders.size() - 1);
+                afterTime = last.getCreatedTime();
+                afterId = last.getOrderId();
+            }
+            if (total > 0) {
+                log.warn("兜底扫描发现未由时间轮取消的超时订单, 订单数: {}", total);
+            }
+        } catch (Exception e) {
+            log.error("待支付订单超时兜底扫描失败", e);
+        }
+    }
+
+    private void tick() {
+        try {
+            long now = System.currentTimeMillis();
+            List<Long> expired = new ArrayList<>();
+            Long orderId;
+            while ((orderId = incoming.poll()) != null) {
+                Long deadline = deadlines.get(orderId);
+                if (deadline != null && !wheel.add(orderId, deadline)) {
+                    expired.add(orderId);
+                }
+            }
+            wheel.advanceTo(now, expired::add);
+            List<Long> due = new ArrayList<>(expired.size());
+            for (Long id : expired) {
+                // 已支付或已删除的订单不在deadlines中; 截止时间晚于当前时间的是重试前的旧条目
+                Long deadline = deadlines.get(id);
+                if (deadline != null && deadline <= now && deadlines.remove(id, deadline)) {
+                    due.add(id);
+                }
+            }
+            for (List<Long> batch : ListUtil.partition(due, Math.max(1, batchSize))) {
+                cancel(batch, now);
+            }
+        } catch (Exception e) {
+            log.error("订单超时时间轮推进异常", e);
+        }
+    }
+
+    /** 按批次取消, 批次失败时改为逐单取消, 避免一个订单的问题使整批订单一直无法取消; 逐单仍失败的订单延后重试 */
+    private void cancel(List<Long> orderIds, long now) {
+        try {
+            int cancelled = orderService.cancelExpiredOrders(orderIds);
+            log.info("超时取消待支付订单, 到期订单数: {}, 取消订单数: {}", orderIds.size(), cancelled);
+            return;
+        } catch (Exception e) {
+            if (orderIds.size() == 1) {
+                retryLater(orderIds, now, e);
+                return;
+            }
+            log.warn("批次取消超时订单失败, 改为逐单取消, 订单数: {}, 首个订单ID: {}", orderIds.size(), orderIds.get(0), e);
+        }
+        int cancelled = 0;
+        for (Long orderId : orderIds) {
+            try {
+                cancelled += orderService.cancelExpiredOrders(Collections.singletonList(orderId));
+            } catch (Exception e) {
+                retryLater(Collections.singletonList(orderId), now, e);
+            }
+        }
+        log.info("逐单超时取消待支付订单, 到期订单数: {}, 取消订单数: {}", orderIds.size(), cancelled);
+    }
+
+    private void retryLater(List<Long> orderIds, long now, Exception e) {
+        log.error("超时取消待支付订单失败, {}毫秒后重试, 订单数: {}, 首个订单ID: {}",
+                RETRY_DELAY_MILLIS, orderIds.size(), orderIds.get(0), e);
+        for (Long orderId : orderIds) {
+            if (deadlines.putIfAbsent(orderId, now + RETRY_DELAY_MILLIS) == null) {
+                incoming.add(orderId);
+            }
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.shopping.dto.request.ProductCreateRequest;
 import com.shopping.dto.request.ProductUpdateRequest;
+import com.shopping.dto.response.PageResponse;
 import com.shopping.dto.response.ProductResponse;
 import com.shopping.entity.Product;
 import com.shopping.entity.User;
@@ -33,6 +34,9 @@ public interface ProductService extends IService<Product> {
     
     /** 分页查询商品 */
     Page<Product> findPage(int pageNum, int pageSize, Long merchantId);
+
+    /** 游标分页查询商品, 按(created_time, product_id)倒序; withTotal为false时不统计总数 */
+    PageResponse<Product> scroll(String cursor, int size, Long merchantId, boolean withTotal);
     
     /** 查询商品详情（包含SKU数量） */
     ProductResponse findDetailById(Long productId);
@@ -7,6 +7,7 @@ import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.shopping.constant.StatusEnum;
 import com.shopping.dto.request.ProductCreateRequest;
 import com.shopping.dto.request.ProductUpdateRequest;
+import com.shopping.dto.response.PageResponse;
 import com.shopping.dto.response.ProductResponse;
 import com.shopping.entity.Merchant;
 import com.shopping.entity.Product;
@@ -14,11 +15,13 @@ import com.shopping.entity.ProductSku;
 import com.shopping.exception.BusinessException;
 import com.shopping.exception.ErrorCode;
 import com.shopping.mapper.ProductMapper;
+import com.shopping.utils.CursorUtil;
 import com.shopping.utils.Validator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
 import java.util.List;
 
 /** 商品服务实现 */
@@ -189,6 +192,28 @@ public class ProductServiceImpl extends ServiceImpl<ProductMapper, Product> impl
         return this.page(page, queryWrapper);
     }
 
+    @Override
+    public PageResponse<Product> scroll(String cursor, int size, Long merchantId, boolean withTotal) {
+        QueryWrapper<Product> queryWrapper = new QueryWrapper<>();
+        if (merchantId != null) {
+            queryWrapper.eq("merchant_id", merchantId);
+        }
+        Long total = null;
+        if (withTotal) {
+            total = (long) this.count(queryWrapper);
+        }
+        if (cursor != null) {
+            CursorUtil.Cursor position = CursorUtil.decode(cursor);
+            LocalDateTime createdTime = position.getSortTime();
+            queryWrapper.and(w -> w.lt("created_time", createdTime)
+                    .or(o -> o.eq("created_time", createdTime).lt("product_id", position.getId())));
+        }
+        queryWrapper.orderByDesc("created_time").orderByDesc("product_id");
+        queryWrapper.last("limit " + (size + 1));
+        return PageResponse.ofCursor(this.list(queryWrapper), size, total,
+                product -> CursorUtil.encode(product.getCreatedTime(), product.getProductId()));
+    }
+
     @Override
     public ProductResponse findDetailById(Long productId) {
         Product product = this.findById(productId);
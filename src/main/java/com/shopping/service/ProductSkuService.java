@@ -1,10 +1,16 @@
 package com.shopping.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
+import com.shopping.dto.request.OrderItemRequest;
+import com.shopping.dto.response.CartSkuInfo;
 import com.shopping.entity.ProductSku;
 import org.apache.ibatis.annotations.Param;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /** 商品SKU服务接口 */
 public interface ProductSkuService extends IService<ProductSku> {
@@ -12,6 +18,12 @@ public interface ProductSkuService extends IService<ProductSku> {
     /** 根据ID查询SKU */
     ProductSku findById(Long skuId);
 
+    /** 根据ID查询SKU描述信息(优先读缓存), 不包含库存字段, 不可用于库存校验和扣减 */
+    ProductSku findCachedById(Long skuId);
+
+    /** 批量查询SKU描述信息(优先读缓存, 未命中的一次IN查询), 返回SKU ID到SKU的映射 */
+    Map<Long, ProductSku> findCachedByIds(Collection<Long> skuIds);
+
     /** todo 检查库存是否足够时,使用for update加锁来查询, 防止后面扣减库存时,出现并发更新覆盖,后期可以优化 */
     ProductSku selectSkuForUpdate(@Param("id") Long id);
     
@@ -20,14 +32,40 @@ public interface ProductSkuService extends IService<ProductSku> {
     
     /** 验证SKU库存是否足够 */
     ProductSku validateStock(Long skuId, Integer quantity);
+
+    /** 一次查询校验购物车: SKU存在且可用、商品已上架且属于该商家、库存足够; 返回SKU ID到SKU信息的映射 */
+    Map<Long, CartSkuInfo> checkCart(List<OrderItemRequest> items, Long merchantId);
     
-    /** 更新库存 */
+    /** 更新库存; 在调用方事务中调用时只尝试一次, 版本冲突不在事务内等待重试 */
     boolean subtractStock(Long skuId, Integer quantity, Long stockVersion,
                           Long relatedId, String relatedType, String remark);
+
+    /** 异步更新库存, 重试等待期间不阻塞调用线程 */
+    CompletableFuture<Boolean> subtractStockAsync(Long skuId, Integer quantity, Long stockVersion,
+                                                  Long relatedId, String relatedType, String remark);
+
+    /** 当前线程能否使用库存组提交: 已启用组提交、未启用内存预留且不在事务中 */
+    boolean isGroupCommitApplicable();
+
+    /**
+     * 组提交扣减单个SKU的库存, 同一SKU窗口内的请求合并到一个批次事务中, writer(如保存订单)在本请求的保存点中执行,
+     * 与库存扣减一起提交. 库存不足返回false, writer抛出的异常原样抛出; 不能在事务中调用
+     */
+    boolean subtractStockGrouped(Long skuId, Integer quantity, Long relatedId, String relatedType, String remark,
+                                 Runnable writer);
+
+    /** 批量扣减多个SKU的库存(key为SKU ID, value为扣减数量), 全部成功或全部不扣减 */
+    boolean subtractStockBatch(Map<Long, Integer> skuQuantities, Long relatedId, String relatedType, String remark);
     
     /** 增加库存 */
     boolean increaseStock(Long skuId, Integer quantity, Long relatedId, String relatedType, String remark);
     
+    /**
+     * 批量增加库存, key为关联ID(如订单ID), value为该关联ID下各SKU的增加数量;
+     * 各SKU合计后一条UPDATE完成, 库存变更记录按关联ID逐条写入; 已删除的SKU跳过
+     */
+    boolean increaseStockBatch(Map<Long, Map<Long, Integer>> quantitiesByRelatedId, String relatedType, String remark);
+
     /** 计算总价 */
     BigDecimal calculateTotalPrice(Long skuId, Integer quantity);
 }
\ No newline at end of file
@@ -6,8 +6,11 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.shopping.constant.InventoryChangeType;
 import com.shopping.constant.StatusEnum;
+import com.shopping.dto.request.OrderItemRequest;
 import com.shopping.dto.request.ProductSkuCreateRequest;
 import com.shopping.dto.request.ProductSkuUpdateRequest;
+import com.shopping.dto.response.CartSkuInfo;
+import com.shopping.dto.response.PageResponse;
 import com.shopping.dto.response.ProductSkuResponse;
 import com.shopping.entity.InventoryChange;
 import com.shopping.entity.Product;
@@ -15,17 +18,31 @@ import com.shopping.entity.ProductSku;
 import com.shopping.exception.BusinessException;
 import com.shopping.exception.ErrorCode;
 import com.shopping.mapper.ProductSkuMapper;
+import com.shopping.utils.CursorUtil;
 import com.shopping.utils.MoneyUtil;
+import com.shopping.utils.RetryExecutor;
 import com.shopping.utils.Validator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 /**
  * 商品SKU服务实现
@@ -37,12 +54,53 @@ public class ProductSkuServiceImpl extends ServiceImpl<ProductSkuMapper, Product
     private InventoryChangeService inventoryChangeService;
     @Autowired
     private ProductSkuMapper skuMapper;
+    @Autowired
+    private StockReservationEngine stockReservationEngine;
+    @Autowired
+    private StockGroupCommitter stockGroupCommitter;
+    @Autowired
+    private RetryExecutor stockRetryExecutor;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private SkuCache skuCache;
     @Override
     public ProductSku findById(Long skuId) {
         Validator.notNull(skuId, "SKU ID不能为空");
         return this.getById(skuId);
     }
     @Override
+    public ProductSku findCachedById(Long skuId) {
+        Validator.notNull(skuId, "SKU ID不能为空");
+        return skuCache.get(skuId, this::getById);
+    }
+    @Override
+    public Map<Long, ProductSku> findCachedByIds(Collection<Long> skuIds) {
+        Map<Long, ProductSku> skuMap = new HashMap<>();
+        if (skuIds == null || skuIds.isEmpty()) {
+            return skuMap;
+        }
+        List<Long> missedIds = new ArrayList<>();
+        for (Long skuId : new HashSet<>(skuIds)) {
+            ProductSku cached = skuCache.getIfPresent(skuId);
+            if (cached != null) {
+                skuMap.put(skuId, cached);
+            } else {
+                missedIds.add(skuId);
+            }
+        }
+        if (!missedIds.isEmpty()) {
+            Map<Long, Long> versions = new HashMap<>();
+            missedIds.forEach(skuId -> versions.put(skuId, skuCache.currentVersion(skuId)));
+            for (ProductSku sku : this.listByIds(missedIds)) {
+                skuCache.put(sku, versions.get(sku.getSkuId()));
+                // 与缓存命中的结果一致, 不返回库存字段
+                skuMap.put(sku.getSkuId(), SkuCache.withoutStock(sku));
+            }
+        }
+        return skuMap;
+    }
+    @Override
     public ProductSku selectSkuForUpdate(Long id) {
         return skuMapper.selectSkuForUpdate(id);
     }
@@ -76,36 +134,132 @@ public class ProductSkuServiceImpl extends ServiceImpl<ProductSkuMapper, Product
         return sku;
     }
 
-    /** 乐观锁扣减库存 */
+    /** 按购物车顺序校验, 同一SKU出现在多行时按合计数量校验库存, 多行不通过时抛出第一行的错误 */
+    @Override
+    public Map<Long, CartSkuInfo> checkCart(List<OrderItemRequest> items, Long merchantId) {
+        Map<Long, Integer> skuQuantities = new LinkedHashMap<>();
+        for (OrderItemRequest item : items) {
+            Validator.notNull(item.getSkuId(), "SKU ID不能为空");
+            Validator.notNull(item.getQuantity(), "数量不能为空");
+            Validator.isTrue(item.getQuantity() > 0, "数量必须大于0");
+            skuQuantities.merge(item.getSkuId(), item.getQuantity(), Integer::sum);
+        }
+        Map<Long, CartSkuInfo> skuMap = skuMapper.selectCartSkus(skuQuantities.keySet()).stream()
+                .collect(Collectors.toMap(CartSkuInfo::getSkuId, info -> info));
+        for (Map.Entry<Long, Integer> entry : skuQuantities.entrySet()) {
+            CartSkuInfo info = skuMap.get(entry.getKey());
+            if (info == null) {
+                throw new BusinessException(ErrorCode.NOT_FOUND_ERROR, "SKU不存在");
+            }
+            if (!StatusEnum.ENABLED.getCode().equals(info.getSkuStatus())) {
+                throw new BusinessException(ErrorCode.SKU_NOT_AVAILABLE, "SKU不可用");
+            }
+            if (!StatusEnum.ENABLED.getCode().equals(info.getProductStatus())) {
+                throw new BusinessException(ErrorCode.PRODUCT_DISABLED, "商品已下架");
+            }
+            if (!info.getMerchantId().equals(merchantId)) {
+                throw new BusinessException(ErrorCode.PARAMS_ERROR, "商品不属于该商家");
+            }
+            if (info.getStockQuantity() < entry.getValue()) {
+                throw new BusinessException(ErrorCode.STOCK_NOT_ENOUGH,
+                        String.format("库存不足，可用库存: %d，需要数量: %d", info.getStockQuantity(), entry.getValue()));
+            }
+        }
+        return skuMap;
+    }
+
+    /**
+     * 乐观锁扣减库存, 版本冲突时按重试策略退避重试, 每次尝试在独立的短事务中执行.
+     * 存在调用方事务时只在该事务中尝试一次, 不等待重试: 等待期间会一直占用事务的连接,
+     * 且可重复读隔离级别下每次重试读到的都是同一快照中的旧版本号, 重试不会成功; 冲突由调用方在事务外重试
+     */
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public boolean subtractStock(Long skuId, Integer quantity, Long stockVersion,
                                  Long relatedId, String relatedType, String remark) {
-        ProductSku sku = null;
-        for (int i=1; i<4; i++){
-            sku = skuMapper.subtractStockAndReturn(skuId, quantity, stockVersion);
-            if (sku != null && "success".equals(sku.getResultMessage())){
-                break;
-            }
+        if (stockReservationEngine.isEnabled()) {
+            return reserveStock(skuId, quantity, relatedId, relatedType, remark);
+        }
+        if (stockGroupCommitter.isApplicable()) {
+            return subtractStockGrouped(skuId, quantity, relatedId, relatedType, remark, null);
+        }
+        AtomicLong version = new AtomicLong(stockVersion);
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return isSubtracted(subtractStockOnce(skuId, quantity, version, 1, relatedId, relatedType, remark));
+        }
+        ProductSku sku = stockRetryExecutor.execute(
+                attempt -> subtractStockOnce(skuId, quantity, version, attempt, relatedId, relatedType, remark),
+                result -> isVersionConflict(result, quantity));
+        return isSubtracted(sku);
+    }
+
+    /** 异步乐观锁扣减库存, 重试等待期间不占用调用线程和数据库连接; 每次尝试在独立事务中执行, 不参与调用方事务 */
+    @Override
+    public CompletableFuture<Boolean> subtractStockAsync(Long skuId, Integer quantity, Long stockVersion,
+                                                         Long relatedId, String relatedType, String remark) {
+        if (stockReservationEngine.isEnabled() || stockGroupCommitter.isApplicable()) {
+            return CompletableFuture.completedFuture(
+                    subtractStock(skuId, quantity, stockVersion, relatedId, relatedType, remark));
+        }
+        AtomicLong version = new AtomicLong(stockVersion);
+        return stockRetryExecutor.executeAsync(
+                attempt -> subtractStockOnce(skuId, quantity, version, attempt, relatedId, relatedType, remark),
+                result -> isVersionConflict(result, quantity))
+                .thenApply(this::isSubtracted);
+    }
+
+    /** 执行一次乐观锁扣减, 成功时记录库存变更; 失败时记下最新版本号供下次重试使用 */
+    private ProductSku subtractStockOnce(Long skuId, Integer quantity, AtomicLong version, int attempt,
+                                         Long relatedId, String relatedType, String remark) {
+        return transactionTemplate.execute(status -> {
+            ProductSku sku = skuMapper.subtractStockAndReturn(skuId, quantity, version.get());
             if (sku == null) {
-                log.info("第{}次扣减库存失败, sku为null", i);
-                return false;
-            }else {
-                log.info("第{}次扣减库存失败, skuId:{}, 当前库存:{}, 需要库存:{}",
-                        i, skuId, sku.getStockQuantity(), quantity);
-                if (i == 3){
-                    return false;
-                }
+                log.info("第{}次扣减库存失败, sku为null", attempt);
+                return null;
             }
-            //随机等待一段时间，避免同时重试50-150ms
-            try {
-                Thread.sleep((50 + new Random().nextInt(100)) * i);
-            } catch (InterruptedException e) {
-                log.info("重试被中断", e);
-                return false;
+            if (!"success".equals(sku.getResultMessage())) {
+                log.info("第{}次扣减库存失败, skuId:{}, 当前库存:{}, 需要库存:{}",
+                        attempt, skuId, sku.getStockQuantity(), quantity);
+                version.set(sku.getStockVersion());
+                return sku;
             }
+            Integer currentStock = sku.getStockQuantity();
+            // 记录库存变更
+            InventoryChange inventoryChange = new InventoryChange();
+            inventoryChange.setSkuId(skuId);
+            inventoryChange.setChangeType(InventoryChangeType.REDUCE.getCode());
+            inventoryChange.setStockBefore(currentStock + quantity);
+            inventoryChange.setChangeQuantity(-quantity);
+            inventoryChange.setStockAfter(currentStock);
+            inventoryChange.setRelatedId(relatedId);
+            inventoryChange.setRelatedType(relatedType);
+            inventoryChange.setRemark(remark != null ? remark : "销售扣减库存");
+            inventoryChange.setCreatedTime(sku.getUpdatedTime());
+            // 存储过程返回的是更新后的行, 带上版本号使变更记录经过库存变更日志
+            inventoryChange.setStockVersion(sku.getStockVersion());
+
+            inventoryChangeService.record(inventoryChange);
+            log.info("扣减库存成功，SKU ID: {}, 扣减数量: {}, 原库存: {}, 新库存: {}",
+                    skuId, -quantity, currentStock + quantity, currentStock);
+            return sku;
+        });
+    }
+
+    /** 仅版本号冲突且库存仍然足够时才值得重试, 库存不足直接失败 */
+    private boolean isVersionConflict(ProductSku sku, Integer quantity) {
+        return sku != null && !"success".equals(sku.getResultMessage()) && sku.getStockQuantity() >= quantity;
+    }
+
+    private boolean isSubtracted(ProductSku sku) {
+        return sku != null && "success".equals(sku.getResultMessage());
+    }
+
+    /** 通过内存库存预留引擎扣减库存, 预留记录随调用方事务写入, 数据库库存由引擎异步回写 */
+    private boolean reserveStock(Long skuId, Integer quantity, Long relatedId, String relatedType, String remark) {
+        int currentStock = stockReservationEngine.reserve(skuId, quantity, relatedId, relatedType);
+        if (currentStock < 0) {
+            log.info("内存扣减库存失败, 库存不足或SKU不可用, skuId:{}, 需要库存:{}", skuId, quantity);
+            return false;
         }
-        Integer currentStock = sku.getStockQuantity();
         // 记录库存变更
         InventoryChange inventoryChange = new InventoryChange();
         inventoryChange.setSkuId(skuId);
@@ -116,14 +270,205 @@ public class ProductSkuServiceImpl extends ServiceImpl<ProductSkuMapper, Product
         inventoryChange.setRelatedId(relatedId);
         inventoryChange.setRelatedType(relatedType);
         inventoryChange.setRemark(remark != null ? remark : "销售扣减库存");
-        inventoryChange.setCreatedTime(sku.getUpdatedTime());
+        inventoryChange.setCreatedTime(LocalDateTime.now());
+
+        inventoryChangeService.record(inventoryChange);
+        log.info("内存扣减库存成功，SKU ID: {}, 扣减数量: {}, 剩余库存: {}", skuId, -quantity, currentStock);
+        return true;
+    }
+
+    @Override
+    public boolean isGroupCommitApplicable() {
+        return !stockReservationEngine.isEnabled() && stockGroupCommitter.isApplicable();
+    }
+
+    /** 合并同一SKU窗口内的扣减请求, 以一条UPDATE扣减总量; writer与库存变更记录在同一批次事务中写入 */
+    @Override
+    public boolean subtractStockGrouped(Long skuId, Integer quantity, Long relatedId, String relatedType, String remark,
+                                        Runnable writer) {
+        StockGroupCommitter.DeductResult result = stockGroupCommitter.deduct(skuId, quantity, (stockBefore, stockAfter) -> {
+            if (writer != null) {
+                writer.run();
+            }
+            return buildReduceChange(skuId, quantity, stockBefore, stockAfter, relatedId, relatedType, remark,
+                    LocalDateTime.now());
+        });
+        if (!result.isSuccess()) {
+            log.info("组提交扣减库存失败, 库存不足, skuId:{}, 需要库存:{}", skuId, quantity);
+            return false;
+        }
+        log.info("组提交扣减库存成功，SKU ID: {}, 扣减数量: {}, 原库存: {}, 新库存: {}",
+                skuId, -quantity, result.getStockBefore(), result.getStockAfter());
+        return true;
+    }
+
+    /**
+     * 批量扣减订单中所有SKU的库存: 按sku_id顺序加锁校验库存后, 一条UPDATE扣减全部SKU,
+     * 库存变更记录通过一条多行insert写入. 任一SKU库存不足时不做任何扣减并返回false
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean subtractStockBatch(Map<Long, Integer> skuQuantities, Long relatedId, String relatedType, String remark) {
+        Validator.isTrue(skuQuantities != null && !skuQuantities.isEmpty(), "扣减库存的SKU不能为空");
+        // 按sku_id排序, 保证加锁顺序一致
+        TreeMap<Long, Integer> sortedQuantities = new TreeMap<>(skuQuantities);
+        // 组提交由下单流程在事务外直接调用(subtractStockGrouped), 这里在调用方事务中加锁扣减
+        if (stockReservationEngine.isEnabled()) {
+            return subtractStockEach(sortedQuantities, relatedId, relatedType, remark);
+        }
+        List<ProductSku> lockedSkus = skuMapper.selectStocksForUpdate(sortedQuantities.keySet());
+        Map<Long, Integer> stockMap = lockedSkus.stream()
+                .collect(Collectors.toMap(ProductSku::getSkuId, ProductSku::getStockQuantity));
+        for (Map.Entry<Long, Integer> entry : sortedQuantities.entrySet()) {
+            Integer stock = stockMap.get(entry.getKey());
+            if (stock == null || stock < entry.getValue()) {
+                log.info("批量扣减库存失败, 库存不足, skuId:{}, 当前库存:{}, 需要库存:{}",
+                        entry.getKey(), stock, entry.getValue());
+                return false;
+            }
+        }
+        Integer rows = skuMapper.subtractStockBatch(sortedQuantities);
+        if (rows == null || rows != sortedQuantities.size()) {
+            throw new BusinessException(ErrorCode.OPERATION_FAILED, "批量扣减库存失败");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<InventoryChange> changes = new ArrayList<>(sortedQuantities.size());
+        for (Map.Entry<Long, Integer> entry : sortedQuantities.entrySet()) {
+            int stockBefore = stockMap.get(entry.getKey());
+            changes.add(buildReduceChange(entry.getKey(), entry.getValue(), stockBefore,
+                    stockBefore - entry.getValue(), relatedId, relatedType, remark, now));
+        }
+        setStockVersions(changes, lockedSkus);
+        inventoryChangeService.recordBatch(changes);
+        log.info("批量扣减库存成功, 关联ID: {}, SKU数量: {}", relatedId, sortedQuantities.size());
+        return true;
+    }
+
+    /** 按sku_id顺序加锁后一条UPDATE增加库存, 已删除的SKU记录日志后跳过; 内存预留模式下使计数器失效, 提交后按数据库库存和待回写记录重新加载 */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean increaseStockBatch(Map<Long, Map<Long, Integer>> quantitiesByRelatedId,
+                                      String relatedType, String remark) {
+        Validator.isTrue(quantitiesByRelatedId != null && !quantitiesByRelatedId.isEmpty(), "增加库存的SKU不能为空");
+        TreeMap<Long, Integer> sortedQuantities = new TreeMap<>();
+        for (Map<Long, Integer> skuQuantities : quantitiesByRelatedId.values()) {
+            for (Map.Entry<Long, Integer> entry : skuQuantities.entrySet()) {
+                Validator.isTrue(entry.getValue() != null && entry.getValue() > 0, "数量必须大于0");
+                sortedQuantities.merge(entry.getKey(), entry.getValue(), Integer::sum);
+            }
+        }
+        Validator.isTrue(!sortedQuantities.isEmpty(), "增加库存的SKU不能为空");
+        sortedQuantities.keySet().forEach(stockReservationEngine::invalidate);
+        List<ProductSku> lockedSkus = skuMapper.selectStocksForUpdate(sortedQuantities.keySet());
+        Map<Long, Integer> stockMap = lockedSkus.stream()
+                .collect(Collectors.toMap(ProductSku::getSkuId, ProductSku::getStockQuantity));
+        if (stockMap.size() != sortedQuantities.size()) {
+            // 已删除的SKU无处归还, 记录后跳过, 不影响其他SKU和订单状态的更新
+            for (Long skuId : new ArrayList<>(sortedQuantities.keySet())) {
+                if (!stockMap.containsKey(skuId)) {
+                    log.warn("SKU不存在, 跳过归还库存, skuId: {}, 数量: {}, 关联ID: {}", skuId,
+                            sortedQuantities.remove(skuId), relatedIdsOf(quantitiesByRelatedId, skuId));
+                }
+            }
+            if (sortedQuantities.isEmpty()) {
+                return true;
+            }
+        }
+        Integer rows = skuMapper.increaseStockBatch(sortedQuantities);
+        if (rows == null || rows != sortedQuantities.size()) {
+            throw new BusinessException(ErrorCode.OPERATION_FAILED, "批量增加库存失败");
+        }
+        // 同一SKU被多个关联ID归还时, 变更前后库存依次累加
+        LocalDateTime now = LocalDateTime.now();
+        List<InventoryChange> changes = new ArrayList<>();
+        for (Map.Entry<Long, Map<Long, Integer>> related : new TreeMap<>(quantitiesByRelatedId).entrySet()) {
+            for (Map.Entry<Long, Integer> entry : new TreeMap<>(related.getValue()).entrySet()) {
+                if (!stockMap.containsKey(entry.getKey())) {
+                    continue;
+                }
+                int stockBefore = stockMap.get(entry.getKey());
+                int stockAfter = stockBefore + entry.getValue();
+                stockMap.put(entry.getKey(), stockAfter);
+                changes.add(buildAddChange(entry.getKey(), entry.getValue(), stockBefore, stockAfter,
+                        related.getKey(), relatedType, remark, now));
+            }
+        }
+        setStockVersions(changes, lockedSkus);
+        inventoryChangeService.recordBatch(changes);
+        log.info("批量增加库存成功, 关联ID数量: {}, SKU数量: {}", quantitiesByRelatedId.size(), sortedQuantities.size());
+        return true;
+    }
 
-        inventoryChangeService.save(inventoryChange);
-        log.info("扣减库存成功，SKU ID: {}, 扣减数量: {}, 原库存: {}, 新库存: {}",
-                skuId, -quantity, currentStock + quantity, currentStock);
+    private static List<Long> relatedIdsOf(Map<Long, Map<Long, Integer>> quantitiesByRelatedId, Long skuId) {
+        return quantitiesByRelatedId.entrySet().stream()
+                .filter(e -> e.getValue().containsKey(skuId))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    /** 内存预留模式下逐个SKU扣减, 失败时标记事务回滚, 由回滚回调归还已扣减的库存 */
+    private boolean subtractStockEach(TreeMap<Long, Integer> sortedQuantities, Long relatedId,
+                                      String relatedType, String remark) {
+        LocalDateTime now = LocalDateTime.now();
+        List<InventoryChange> changes = new ArrayList<>(sortedQuantities.size());
+        for (Map.Entry<Long, Integer> entry : sortedQuantities.entrySet()) {
+            Long skuId = entry.getKey();
+            int quantity = entry.getValue();
+            int stockAfter = stockReservationEngine.reserve(skuId, quantity, relatedId, relatedType);
+            int stockBefore = stockAfter + quantity;
+            if (stockAfter < 0) {
+                log.info("批量扣减库存失败, 库存不足或SKU不可用, skuId:{}, 需要库存:{}", skuId, quantity);
+                TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                return false;
+            }
+            changes.add(buildReduceChange(skuId, quantity, stockBefore, stockAfter, relatedId, relatedType, remark, now));
+        }
+        inventoryChangeService.recordBatch(changes);
+        log.info("批量扣减库存成功, 关联ID: {}, SKU数量: {}", relatedId, sortedQuantities.size());
         return true;
     }
 
+    /** 批量更新语句使每个SKU的版本号加1, 变更记录带上更新后的版本号 */
+    private static void setStockVersions(List<InventoryChange> changes, List<ProductSku> lockedSkus) {
+        Map<Long, Long> versions = new HashMap<>();
+        for (ProductSku sku : lockedSkus) {
+            if (sku.getStockVersion() != null) {
+                versions.put(sku.getSkuId(), sku.getStockVersion() + 1);
+            }
+        }
+        changes.forEach(change -> change.setStockVersion(versions.get(change.getSkuId())));
+    }
+
+    private InventoryChange buildAddChange(Long skuId, int quantity, int stockBefore, int stockAfter,
+                                           Long relatedId, String relatedType, String remark, LocalDateTime time) {
+        InventoryChange inventoryChange = new InventoryChange();
+        inventoryChange.setSkuId(skuId);
+        inventoryChange.setChangeType(InventoryChangeType.ADD.getCode());
+        inventoryChange.setStockBefore(stockBefore);
+        inventoryChange.setChangeQuantity(quantity);
+        inventoryChange.setStockAfter(stockAfter);
+        inventoryChange.setRelatedId(relatedId);
+        inventoryChange.setRelatedType(relatedType);
+        inventoryChange.setRemark(remark != null ? remark : "增加库存");
+        inventoryChange.setCreatedTime(time);
+        return inventoryChange;
+    }
+
+    private InventoryChange buildReduceChange(Long skuId, int quantity, int stockBefore, int stockAfter,
+                                              Long relatedId, String relatedType, String remark, LocalDateTime time) {
+        InventoryChange inventoryChange = new InventoryChange();
+        inventoryChange.setSkuId(skuId);
+        inventoryChange.setChangeType(InventoryChangeType.REDUCE.getCode());
+        inventoryChange.setStockBefore(stockBefore);
+        inventoryChange.setChangeQuantity(-quantity);
+        inventoryChange.setStockAfter(stockAfter);
+        inventoryChange.setRelatedId(relatedId);
+        inventoryChange.setRelatedType(relatedType);
+        inventoryChange.setRemark(remark != null ? remark : "销售扣减库存");
+        inventoryChange.setCreatedTime(time);
+        return inventoryChange;
+    }
+
     @Override
     @Transactional(rollbackFor = Exception.class)
     public boolean increaseStock(Long skuId, Integer quantity, Long relatedId, String relatedType, String remark) {
@@ -131,10 +476,9 @@ public class ProductSkuServiceImpl extends ServiceImpl<ProductSkuMapper, Product
         Validator.notNull(quantity, "数量不能为空");
         Validator.isTrue(quantity > 0, "数量必须大于0");
 
-        ProductSku sku = this.findById(skuId);
-        if (sku == null) {
-            throw new BusinessException(ErrorCode.NOT_FOUND_ERROR, "SKU不存在");
-        }
+        // 内存计数器失效后按数据库库存重新加载; 加锁读取, 避免整行更新覆盖并发提交的预留回写
+        stockReservationEngine.invalidate(skuId);
+        ProductSku sku = lockSku(skuId);
 
         Integer oldStock = sku.getStockQuantity();
         Integer newStock = oldStock + quantity;
@@ -156,7 +500,7 @@ public class ProductSkuServiceImpl extends ServiceImpl<ProductSkuMapper, Product
             inventoryChange.setRemark(remark != null ? remark : "增加库存");
             inventoryChange.setCreatedTime(LocalDateTime.now());
 
-            inventoryChangeService.save(inventoryChange);
+            inventoryChangeService.record(inventoryChange);
 
             log.info("增加库存成功，SKU ID: {}, 增加数量: {}, 原库存: {}, 新库存: {}",
                     skuId, quantity, oldStock, newStock);
@@ -165,6 +509,16 @@ public class ProductSkuServiceImpl extends ServiceImpl<ProductSkuMapper, Product
         return updateSuccess;
     }
 
+    /** 加锁读取SKU, 之后的整行更新不会覆盖并发提交的相对库存更新(如内存预留的回写) */
+    private ProductSku lockSku(Long skuId) {
+        Validator.notNull(skuId, "SKU ID不能为空");
+        ProductSku sku = skuMapper.selectSkuForUpdate(skuId);
+        if (sku == null) {
+            throw new BusinessException(ErrorCode.NOT_FOUND_ERROR, "SKU不存在");
+        }
+        return sku;
+    }
+
     @Override
     public BigDecimal calculateTotalPrice(Long skuId, Integer quantity) {
         Validator.notNull(skuId, "SKU ID不能为空");
@@ -241,7 +595,8 @@ public class ProductSkuServiceImpl extends ServiceImpl<ProductSkuMapper, Product
         Validator.notNull(skuId, "SKU ID不能为空");
         Validator.notNull(quantity, "数量不能为空");
 
-        ProductSku sku = this.findById(skuId);
+        stockReservationEngine.invalidate(skuId);
+        ProductSku sku = lockSku(skuId);
         Integer oldStock = sku.getStockQuantity();
         Integer newStock = quantity; // 设置为指定数量
 
@@ -264,7 +619,7 @@ public class ProductSkuServiceImpl extends ServiceImpl<ProductSkuMapper, Product
             inventoryChange.setRemark(remark != null ? remark : "调整库存");
             inventoryChange.setCreatedTime(java.time.LocalDateTime.now());
 
-            inventoryChangeService.save(inventoryChange);
+            inventoryChangeService.record(inventoryChange);
 
             log.info("调整库存成功，SKU ID: {}, 原库存: {}, 新库存: {}, 变更数量: {}",
                     skuId, oldStock, newStock, newStock - oldStock);
@@ -279,7 +634,9 @@ public class ProductSkuServiceImpl extends ServiceImpl<ProductSkuMapper, Product
     @Transactional(rollbackFor = Exception.class)
     public ProductSkuResponse updateSku(Long skuId, ProductSkuUpdateRequest request) {
         log.info("更新SKU: skuId={}, request={}", skuId, request);
-        ProductSku sku = this.findById(skuId);
+        stockReservationEngine.invalidate(skuId);
+        skuCache.invalidate(skuId);
+        ProductSku sku = lockSku(skuId);
         // 更新字段
         if (request.getSkuName() != null) {
             sku.setSkuName(request.getSkuName());
@@ -327,7 +684,9 @@ public class ProductSkuServiceImpl extends ServiceImpl<ProductSkuMapper, Product
     public boolean deleteSku(Long skuId) {
         log.info("删除SKU: skuId={}", skuId);
 
-        ProductSku sku = this.findById(skuId);
+        stockReservationEngine.invalidate(skuId);
+        skuCache.invalidate(skuId);
+        ProductSku sku = lockSku(skuId);
 
         // 检查库存是否为0
         if (sku.getStockQuantity() > 0) {
@@ -371,6 +730,30 @@ public class ProductSkuServiceImpl extends ServiceImpl<ProductSkuMapper, Product
         return this.page(page, queryWrapper);
     }
 
+    /**
+     * 游标分页查询SKU, 按(created_time, sku_id)倒序; withTotal为false时不统计总数
+     */
+    public PageResponse<ProductSku> scroll(String cursor, int size, Long productId, boolean withTotal) {
+        QueryWrapper<ProductSku> queryWrapper = new QueryWrapper<>();
+        if (productId != null) {
+            queryWrapper.eq("product_id", productId);
+        }
+        Long total = null;
+        if (withTotal) {
+            total = (long) this.count(queryWrapper);
+        }
+        if (cursor != null) {
+            CursorUtil.Cursor position = CursorUtil.decode(cursor);
+            LocalDateTime createdTime = position.getSortTime();
+            queryWrapper.and(w -> w.lt("created_time", createdTime)
+                    .or(o -> o.eq("created_time", createdTime).lt("sku_id", position.getId())));
+        }
+        queryWrapper.orderByDesc("created_time").orderByDesc("sku_id");
+        queryWrapper.last("limit " + (size + 1));
+        return PageResponse.ofCursor(this.list(queryWrapper), size, total,
+                sku -> CursorUtil.encode(sku.getCreatedTime(), sku.getSkuId()));
+    }
+
     /**
      * 查询SKU详情
      */
@@ -394,7 +777,9 @@ public class ProductSkuServiceImpl extends ServiceImpl<ProductSkuMapper, Product
     @Transactional(rollbackFor = Exception.class)
     public boolean enableSku(Long skuId) {
         log.info("启用SKU: skuId={}", skuId);
-        ProductSku sku = this.findById(skuId);
+        stockReservationEngine.invalidate(skuId);
+        skuCache.invalidate(skuId);
+        ProductSku sku = lockSku(skuId);
         sku.setStatus(StatusEnum.ENABLED.getCode());
 
         boolean updateSuccess = this.updateById(sku);
@@ -410,7 +795,9 @@ public class ProductSkuServiceImpl extends ServiceImpl<ProductSkuMapper, Product
     @Transactional(rollbackFor = Exception.class)
     public boolean disableSku(Long skuId) {
         log.info("禁用SKU: skuId={}", skuId);
-        ProductSku sku = this.findById(skuId);
+        stockReservationEngine.invalidate(skuId);
+        skuCache.invalidate(skuId);
+        ProductSku sku = lockSku(skuId);
         sku.setStatus(StatusEnum.DISABLED.getCode());
 
         boolean updateSuccess = this.updateById(sku);
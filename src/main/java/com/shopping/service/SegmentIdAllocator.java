@@ -0,0 +1,188 @@
+package com.shopping.service;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.core.metadata.TableInfo;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.shopping.entity.IdSegment;
+import com.shopping.exception.BusinessException;
+import com.shopping.exception.ErrorCode;
+import com.shopping.mapper.IdSegmentMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 号段ID分配器
+ * 每次从id_segment表领取一段连续ID(如10000个)在内存中递增分配, 插入前即可拿到主键, 不依赖自增列回填.
+ * 当前号段用掉一定比例后异步预取下一段(双缓冲), 号段切换时不等待数据库.
+ * 启动时检查每个IdType.ASSIGN_ID实体的表都已在id_segment中配置号段, 避免首次插入时才报错
+ */
+@Slf4j
+@Component
+public class SegmentIdAllocator implements SmartInitializingSingleton {
+
+    @Autowired
+    private IdSegmentMapper idSegmentMapper;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /** 当前号段剩余比例低于该值时预取下一段 */
+    @Value("${app.id.segment.preload-ratio:0.1}")
+    private double preloadRatio;
+
+    private final ConcurrentHashMap<String, SegmentBuffer> buffers = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor preloadExecutor;
+    /** 领取号段使用独立事务, 立即提交释放id_segment的行锁 */
+    private TransactionTemplate segmentTemplate;
+
+    @PostConstruct
+    public void init() {
+        segmentTemplate = new TransactionTemplate(transactionManager);
+        segmentTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        preloadExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new NamedThreadFactory("id-segment-", true));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        preloadExecutor.shutdown();
+    }
+
+    /** 全部Mapper初始化完成后检查号段配置, 缺少号段的表直接阻止启动 */
+    @Override
+    public void afterSingletonsInstantiated() {
+        List<String> tables = TableInfoHelper.getTableInfos().stream()
+                .filter(tableInfo -> tableInfo.getIdType() == IdType.ASSIGN_ID)
+                .map(TableInfo::getTableName)
+                .sorted()
+                .collect(Collectors.toList());
+        Set<String> configured = new HashSet<>(idSegmentMapper.findAllTags());
+        List<String> missing = tables.stream().filter(table -> !configured.contains(table)).collect(Collectors.toList());
+        if (!missing.isEmpty()) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "未配置ID号段, 请先执行db/id_segment.sql或补充id_segment记录: " + missing);
+        }
+        log.info("ID号段配置检查通过, 业务标识: {}", tables);
+    }
+
+    /** 按实体对应的表名分配ID */
+    public long nextId(Class<?> entityClass) {
+        TableInfo tableInfo = TableInfoHelper.getTableInfo(entityClass);
+        if (tableInfo == null) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "未找到实体对应的表: " + entityClass.getName());
+        }
+        return nextId(tableInfo.getTableName());
+    }
+
+    /** 分配业务标识下的下一个ID */
+    public long nextId(String bizTag) {
+        SegmentBuffer buffer = buffers.computeIfAbsent(bizTag, SegmentBuffer::new);
+        while (true) {
+            Segment segment = buffer.current;
+            if (segment == null) {
+                switchSegment(buffer, null);
+                continue;
+            }
+            long id = segment.value.getAndIncrement();
+            if (id <= segment.max) {
+                if (segment.max - id < segment.step * preloadRatio) {
+                    preload(buffer);
+                }
+                return id;
+            }
+            switchSegment(buffer, segment);
+        }
+    }
+
+    /** 当前号段用完时切换到预取好的号段, 预取尚未完成时同步领取 */
+    private void switchSegment(SegmentBuffer buffer, Segment exhausted) {
+        synchronized (buffer) {
+            if (buffer.current != exhausted) {
+                return;
+            }
+            Segment next = buffer.next;
+            buffer.next = null;
+            buffer.current = next != null ? next : load(buffer.bizTag);
+        }
+    }
+
+    private void preload(SegmentBuffer buffer) {
+        if (buffer.next != null || !buffer.loading.compareAndSet(false, true)) {
+            return;
+        }
+        // 上一次预取可能在检查next之后、认领loading之前完成, 再检查一次, 避免覆盖尚未使用的号段
+        if (buffer.next != null) {
+            buffer.loading.set(false);
+            return;
+        }
+        preloadExecutor.execute(() -> {
+            try {
+                Segment segment = load(buffer.bizTag);
+                synchronized (buffer) {
+                    buffer.next = segment;
+                }
+            } catch (Exception e) {
+                log.error("预取ID号段失败, 业务标识: {}", buffer.bizTag, e);
+            } finally {
+                buffer.loading.set(false);
+            }
+        });
+    }
+
+    private Segment load(String bizTag) {
+        IdSegment segment = segmentTemplate.execute(status -> {
+            if (idSegmentMapper.increaseMaxId(bizTag) != 1) {
+                return null;
+            }
+            return idSegmentMapper.findByTag(bizTag);
+        });
+        if (segment == null) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "未配置ID号段: " + bizTag);
+        }
+        log.info("领取ID号段, 业务标识: {}, 区间: ({}, {}]", bizTag, segment.getMaxId() - segment.getStep(), segment.getMaxId());
+        return new Segment(segment.getMaxId() - segment.getStep() + 1, segment.getMaxId(), segment.getStep());
+    }
+
+    /** 单个业务标识的双缓冲 */
+    private static final class SegmentBuffer {
+        final String bizTag;
+        volatile Segment current;
+        volatile Segment next;
+        final AtomicBoolean loading = new AtomicBoolean();
+
+        SegmentBuffer(String bizTag) {
+            this.bizTag = bizTag;
+        }
+    }
+
+    /** 号段[start, max] */
+    private static final class Segment {
+        final AtomicLong value;
+        final long max;
+        final int step;
+
+        Segment(long start, long max, int step) {
+            this.value = new AtomicLong(start);
+            this.max = max;
+            this.step = step;
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.shopping.service;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.IService;
+import com.shopping.dto.response.PageResponse;
+import com.shopping.dto.response.ReconciliationResult;
 import com.shopping.dto.response.SettlementDetail;
 import com.shopping.dto.response.SettlementResult;
 import com.shopping.entity.DailySettlement;
@@ -16,6 +18,9 @@ public interface SettlementService extends IService<DailySettlement> {
     
     /** 执行每日结算 */
     SettlementResult executeDailySettlement(LocalDate settlementDate);
+
+    /** 结算指定分区的商家(merchant_id % shardCount == shardNo), 多实例按分区并行结算时使用 */
+    SettlementResult executeShardSettlement(LocalDate settlementDate, int shardNo, int shardCount);
     
     /** 根据ID查询结算记录 */
     DailySettlement findById(Long settlementId);
@@ -31,10 +36,17 @@ public interface SettlementService extends IService<DailySettlement> {
     /** 分页查询结算记录 */
     Page<DailySettlement> findPage(int pageNum, int pageSize, Long merchantId, LocalDate startDate, LocalDate endDate);
 
+    /** 游标分页查询结算记录, 按(settlement_date, settlement_id)倒序; withTotal为false时不统计总数 */
+    PageResponse<DailySettlement> scroll(String cursor, int size, Long merchantId, LocalDate startDate,
+                                         LocalDate endDate, boolean withTotal);
+
     /** 查询结算详情 */
     SettlementDetail findDetailById(Long settlementId);
     
     /** 计算指定日期的销售额 */
     BigDecimal calculateSalesAmount(Long merchantId, LocalDate settlementDate);
 
+    /** 逐笔对账: 流式读取当日支付的订单和收入流水、当日退款的订单和退款流水, 按订单ID归并比对, 内存占用与当日数据量无关 */
+    ReconciliationResult reconcile(Long merchantId, LocalDate settlementDate);
+
 }
\ No newline at end of file
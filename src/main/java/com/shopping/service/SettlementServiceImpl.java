@@ -1,33 +1,67 @@
 package com.shopping.service;
 
 import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.collection.ListUtil;
+import cn.hutool.core.thread.NamedThreadFactory;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.shopping.constant.OrderStatus;
+import com.shopping.constant.StatusEnum;
+import com.shopping.dto.response.MerchantAmount;
+import com.shopping.dto.response.OrderMismatch;
+import com.shopping.dto.response.PageResponse;
+import com.shopping.dto.response.ReconciliationResult;
 import com.shopping.dto.response.SettlementDetail;
 import com.shopping.dto.response.SettlementResult;
+import com.shopping.entity.AccountTransaction;
 import com.shopping.entity.DailySettlement;
 import com.shopping.entity.Merchant;
+import com.shopping.entity.MerchantDailyLedger;
 import com.shopping.entity.Order;
+import com.shopping.entity.SettlementCheckpoint;
 import com.shopping.exception.BusinessException;
 import com.shopping.exception.ErrorCode;
 import com.shopping.mapper.AccountTransactionMapper;
 import com.shopping.mapper.DailySettlementMapper;
 import com.shopping.mapper.OrdersMapper;
-import com.shopping.utils.DateUtil;
+import com.shopping.mapper.SettlementCheckpointMapper;
+import com.shopping.utils.CursorUtil;
 import com.shopping.utils.IdGenerator;
 import com.shopping.utils.Validator;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /** 结算服务实现 */
 @Slf4j
@@ -41,44 +75,103 @@ public class SettlementServiceImpl extends ServiceImpl<DailySettlementMapper, Da
     private IdGenerator idGenerator;
     @Autowired
     private AccountTransactionMapper transactionMapper;
+    @Autowired
+    private SettlementCheckpointMapper checkpointMapper;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+    @Autowired
+    private MerchantLedgerService merchantLedgerService;
+    @Autowired
+    private MerchantCreditOutboxService merchantCreditOutboxService;
+
+    /** 并行结算的线程数, 0表示使用CPU核数 */
+    @Value("${settlement.parallelism:4}")
+    private int parallelism;
+
+    /** 每个分片的商家数, 分片全部处理完成后记录检查点 */
+    @Value("${settlement.chunk-size:500}")
+    private int chunkSize;
+
+    /** 逐笔对账最多返回的不一致订单明细条数 */
+    @Value("${settlement.reconcile.max-mismatches:1000}")
+    private int maxMismatches;
+
+    private ExecutorService settlementExecutor;
+    /** 每个商家使用独立事务结算, 单个商家失败或回滚不影响其他商家 */
+    private TransactionTemplate merchantTemplate;
+
+    @PostConstruct
+    public void init() {
+        if (parallelism <= 0) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        merchantTemplate = new TransactionTemplate(transactionManager);
+        merchantTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        settlementExecutor = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new NamedThreadFactory("settlement-", false));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        settlementExecutor.shutdown();
+    }
+
+    /**
+     * 商家按ID排序后切分为分片, 在有界线程池中并行结算, 每个商家独立提交事务.
+     * 分片内没有出现异常时记录检查点, 中断后重新执行同一日期的结算会跳过已完成的分片
+     */
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public SettlementResult executeDailySettlement(LocalDate settlementDate) {
+        return executeShardSettlement(settlementDate, 0, 1);
+    }
+
+    @Override
+    public SettlementResult executeShardSettlement(LocalDate settlementDate, int shardNo, int shardCount) {
         LocalDateTime startTime = LocalDateTime.now();
-        log.info("执行每日结算: settlementDate={}", settlementDate);
+        log.info("执行每日结算: settlementDate={}, shardNo={}, shardCount={}", settlementDate, shardNo, shardCount);
         Validator.notNull(settlementDate, "结算日期不能为空");
-        // 获取所有商家
-        List<Merchant> merchants = merchantService.findAll();
-        SettlementResult result = new SettlementResult();
+        Validator.isTrue(shardCount > 0 && shardNo >= 0 && shardNo < shardCount, "结算分区参数错误");
+        // 结算日及之前支付的商家收入先从发件箱入账; 结算日仍有收入未入账的商家净收入不完整, 本次记为失败, 其他商家照常结算
+        Set<Long> unpostedMerchantIds = merchantCreditOutboxService.drainBefore(
+                settlementDate.atStartOfDay(), settlementDate.plusDays(1).atStartOfDay());
+        List<SettlementCheckpoint> checkpoints = findCheckpoints(settlementDate, shardNo, shardCount);
+        List<Long> merchantIds = findMerchantIds(shardNo, shardCount);
+        List<Long> pendingIds = merchantIds.stream()
+                .filter(merchantId -> checkpoints.stream().noneMatch(c -> covers(c, merchantId)))
+                .collect(Collectors.toList());
+        List<List<Long>> chunks = ListUtil.partition(pendingIds, Math.max(1, chunkSize));
+        log.info("待结算商家数: {}, 分片数: {}, 已完成分片数: {}", pendingIds.size(), chunks.size(), checkpoints.size());
+        // 每张表只做一次按商家分组的统计, 各分片在内存中取用
+        DailyAmounts amounts = chunks.isEmpty() ? null : loadDailyAmounts(settlementDate, shardNo, shardCount, merchantIds);
+        if (amounts != null) {
+            // 用源表统计结果核对白天累加的实时账本
+            merchantLedgerService.verify(settlementDate, amounts.toLedgers(settlementDate), shardNo, shardCount,
+                    merchantId -> loadMerchantLedger(merchantId, settlementDate));
+        }
+
+        List<CompletableFuture<ChunkResult>> futures = chunks.stream()
+                .map(chunk -> CompletableFuture.supplyAsync(
+                        () -> settleChunk(chunk, settlementDate, shardNo, shardCount, amounts, unpostedMerchantIds),
+                        settlementExecutor))
+                .collect(Collectors.toList());
         List<SettlementDetail> successDetails = new ArrayList<>();
         List<SettlementDetail> failDetails = new ArrayList<>();
-        boolean allSuccess = true;
-        int failCount = 0;
-        int successCount = 0;
-        for (Merchant merchant : merchants) {
-            SettlementDetail detail = null;
-            try {
-                detail = settleMerchant(merchant.getMerchantId(), settlementDate);
-                if (detail != null && detail.getIsSuccess()) {
-                    successCount++;
-                    successDetails.add(detail);
-                }else {
-                    failCount++;
-                    failDetails.add(detail);
-                    log.error("商家结算失败，商家ID: {}, 结算日期: {}", merchant.getMerchantId(), settlementDate);
-                }
-            } catch (Exception e) {
-                failCount++;
-                failDetails.add(detail);
-                log.error("商家结算异常，商家ID: {}, 结算日期: {}, 异常: {}", merchant.getMerchantId(), settlementDate, e.getMessage(), e);
-            }
-        }
-        if (successCount != merchants.size()){
-            allSuccess = false;
+        for (CompletableFuture<ChunkResult> future : futures) {
+            ChunkResult chunkResult = future.join();
+            successDetails.addAll(chunkResult.successDetails);
+            failDetails.addAll(chunkResult.failDetails);
         }
+        // 之前执行时已完成的分片只计入数量
+        int checkpointedCount = checkpoints.stream().mapToInt(SettlementCheckpoint::getMerchantCount).sum();
+        int successCount = successDetails.size() + checkpoints.stream().mapToInt(SettlementCheckpoint::getSuccessCount).sum();
+        int failCount = failDetails.size() + checkpoints.stream().mapToInt(SettlementCheckpoint::getFailedCount).sum();
+
+        SettlementResult result = new SettlementResult();
         result.setSettlementDate(settlementDate);
-        result.setAllSuccess(allSuccess);
-        result.setTotalMerchants(merchants.size());
+        result.setAllSuccess(failCount == 0);
+        result.setTotalMerchants(pendingIds.size() + checkpointedCount);
         result.setSuccessCount(successCount);
         result.setFailedCount(failCount);
         result.setSuccessDetails(successDetails);
@@ -98,28 +191,207 @@ public class SettlementServiceImpl extends ServiceImpl<DailySettlementMapper, Da
         return result;
     }
 
+    /** 结算一个分片内的商家, 已结算的商家批量预加载后跳过; 收入未全部入账的商家记为失败, 分片不记录检查点以便重新执行 */
+    private ChunkResult settleChunk(List<Long> merchantIds, LocalDate settlementDate, int shardNo, int shardCount,
+                                    DailyAmounts amounts, Set<Long> unpostedMerchantIds) {
+        ChunkResult chunkResult = new ChunkResult();
+        Map<Long, DailySettlement> existingMap = findSettledMap(merchantIds, settlementDate);
+        boolean hasException = false;
+        for (Long merchantId : merchantIds) {
+            try {
+                DailySettlement existing = existingMap.get(merchantId);
+                if (existing == null && unpostedMerchantIds.contains(merchantId)) {
+                    throw new BusinessException(ErrorCode.OPERATION_FAILED, "商家收入尚未全部入账, 请稍后重新执行");
+                }
+                SettlementDetail detail = existing != null ? toSettledDetail(existing)
+                        : merchantTemplate.execute(status -> saveSettlement(merchantId, settlementDate,
+                                amounts.paid(merchantId), amounts.refund(merchantId), amounts.netIncome(merchantId)));
+                if (detail != null && Boolean.TRUE.equals(detail.getIsSuccess())) {
+                    chunkResult.successDetails.add(detail);
+                } else {
+                    chunkResult.failDetails.add(detail);
+                    log.error("商家结算失败，商家ID: {}, 结算日期: {}", merchantId, settlementDate);
+                }
+            } catch (Exception e) {
+                hasException = true;
+                SettlementDetail detail = new SettlementDetail();
+                detail.setMerchantId(merchantId);
+                detail.setSettlementDate(settlementDate);
+                detail.setIsSuccess(false);
+                detail.setMatchDescription("结算异常: " + e.getMessage());
+                chunkResult.failDetails.add(detail);
+                log.error("商家结算异常，商家ID: {}, 结算日期: {}, 异常: {}", merchantId, settlementDate, e.getMessage(), e);
+            }
+        }
+        // 出现异常的分片不记录检查点, 重新执行时整个分片重试, 已结算的商家会被跳过
+        if (!hasException) {
+            saveCheckpoint(merchantIds, settlementDate, shardNo, shardCount, chunkResult);
+        }
+        return chunkResult;
+    }
+
+    private void saveCheckpoint(List<Long> merchantIds, LocalDate settlementDate, int shardNo, int shardCount,
+                                ChunkResult chunkResult) {
+        SettlementCheckpoint checkpoint = new SettlementCheckpoint();
+        checkpoint.setSettlementDate(settlementDate);
+        checkpoint.setShardNo(shardNo);
+        checkpoint.setShardCount(shardCount);
+        checkpoint.setStartMerchantId(merchantIds.get(0));
+        checkpoint.setEndMerchantId(merchantIds.get(merchantIds.size() - 1));
+        checkpoint.setMerchantCount(merchantIds.size());
+        checkpoint.setSuccessCount(chunkResult.successDetails.size());
+        checkpoint.setFailedCount(chunkResult.failDetails.size());
+        try {
+            checkpointMapper.insert(checkpoint);
+        } catch (DuplicateKeyException e) {
+            log.warn("结算分片检查点已存在, 结算日期: {}, 起始商家ID: {}", settlementDate, checkpoint.getStartMerchantId());
+        } catch (Exception e) {
+            // 检查点写入失败只影响断点续跑, 商家结算结果已提交
+            log.error("保存结算分片检查点失败, 结算日期: {}, 起始商家ID: {}", settlementDate, checkpoint.getStartMerchantId(), e);
+        }
+    }
+
+    /** 只查询分区内可用商家的ID, 按ID排序保证分片稳定 */
+    private List<Long> findMerchantIds(int shardNo, int shardCount) {
+        QueryWrapper<Merchant> queryWrapper = new QueryWrapper<>();
+        queryWrapper.select("merchant_id");
+        queryWrapper.eq("status", StatusEnum.ENABLED.getCode());
+        queryWrapper.apply(shardCount > 1, "merchant_id % {0} = {1}", shardCount, shardNo);
+        queryWrapper.orderByAsc("merchant_id");
+        return merchantService.list(queryWrapper).stream()
+                .map(Merchant::getMerchantId)
+                .collect(Collectors.toList());
+    }
+
+    /** 已支付金额按分区内的商家ID分批统计(包括已完成分片的商家, 核对账本时需要), 其余按分区条件统计 */
+    private DailyAmounts loadDailyAmounts(LocalDate settlementDate, int shardNo, int shardCount, List<Long> merchantIds) {
+        DailyAmounts amounts = new DailyAmounts();
+        amounts.paidMap = new HashMap<>();
+        for (List<Long> batch : ListUtil.partition(merchantIds, Math.max(1, chunkSize))) {
+            amounts.paidMap.putAll(toAmountMap(ordersMapper.sumPaidSalesGroupByMerchant(settlementDate, batch)));
+        }
+        amounts.refundMap = toAmountMap(ordersMapper.sumRefundSalesGroupByMerchant(settlementDate, shardNo, shardCount));
+        amounts.netIncomeMap = toAmountMap(
+                transactionMapper.sumMerchantNetIncomeGroupByMerchant(settlementDate, shardNo, shardCount));
+        log.info("商家金额统计完成, 有支付的商家数: {}, 有退款的商家数: {}, 有账户收入的商家数: {}",
+                amounts.paidMap.size(), amounts.refundMap.size(), amounts.netIncomeMap.size());
+        return amounts;
+    }
+
+    /** 重新统计单个商家指定日期的源表数据, 口径与loadDailyAmounts一致 */
+    private MerchantDailyLedger loadMerchantLedger(Long merchantId, LocalDate date) {
+        MerchantDailyLedger ledger = new MerchantDailyLedger();
+        ledger.setMerchantId(merchantId);
+        ledger.setLedgerDate(date);
+        ledger.setPaidAmount(ordersMapper.sumMerchantPaidSalesByDate(merchantId, date));
+        ledger.setRefundAmount(ordersMapper.sumMerchantRefundSalesByDate(merchantId, date));
+        ledger.setNetIncome(transactionMapper.calculateMerchantNetIncome(merchantId, date));
+        return ledger;
+    }
+
+    private static Map<Long, BigDecimal> toAmountMap(List<MerchantAmount> merchantAmounts) {
+        Map<Long, BigDecimal> amountMap = new HashMap<>();
+        for (MerchantAmount merchantAmount : merchantAmounts) {
+            if (merchantAmount.getAmount() != null) {
+                amountMap.put(merchantAmount.getMerchantId(), merchantAmount.getAmount());
+            }
+        }
+        return amountMap;
+    }
+
+    private Map<Long, DailySettlement> findSettledMap(List<Long> merchantIds, LocalDate settlementDate) {
+        QueryWrapper<DailySettlement> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("settlement_date", settlementDate);
+        queryWrapper.in("merchant_id", merchantIds);
+        return this.list(queryWrapper).stream()
+                .collect(Collectors.toMap(DailySettlement::getMerchantId, Function.identity()));
+    }
+
+    private List<SettlementCheckpoint> findCheckpoints(LocalDate settlementDate, int shardNo, int shardCount) {
+        QueryWrapper<SettlementCheckpoint> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("settlement_date", settlementDate);
+        queryWrapper.eq("shard_no", shardNo);
+        queryWrapper.eq("shard_count", shardCount);
+        return checkpointMapper.selectList(queryWrapper);
+    }
+
+    private static boolean covers(SettlementCheckpoint checkpoint, Long merchantId) {
+        return merchantId >= checkpoint.getStartMerchantId() && merchantId <= checkpoint.getEndMerchantId();
+    }
+
+    /** 结算日全部商家的分组统计金额, 没有记录的商家金额为0 */
+    private static final class DailyAmounts {
+        Map<Long, BigDecimal> paidMap;
+        Map<Long, BigDecimal> refundMap;
+        Map<Long, BigDecimal> netIncomeMap;
+
+        BigDecimal paid(Long merchantId) {
+            return paidMap.getOrDefault(merchantId, new BigDecimal("0.00"));
+        }
+
+        BigDecimal refund(Long merchantId) {
+            return refundMap.getOrDefault(merchantId, new BigDecimal("0.00"));
+        }
+
+        BigDecimal netIncome(Long merchantId) {
+            return netIncomeMap.getOrDefault(merchantId, new BigDecimal("0.00"));
+        }
+
+        Map<Long, MerchantDailyLedger> toLedgers(LocalDate settlementDate) {
+            Set<Long> merchantIds = new HashSet<>(paidMap.keySet());
+            merchantIds.addAll(refundMap.keySet());
+            merchantIds.addAll(netIncomeMap.keySet());
+            Map<Long, MerchantDailyLedger> ledgers = new HashMap<>();
+            for (Long merchantId : merchantIds) {
+                MerchantDailyLedger ledger = new MerchantDailyLedger();
+                ledger.setMerchantId(merchantId);
+                ledger.setLedgerDate(settlementDate);
+                ledger.setPaidAmount(paid(merchantId));
+                ledger.setRefundAmount(refund(merchantId));
+                ledger.setNetIncome(netIncome(merchantId));
+                ledgers.put(merchantId, ledger);
+            }
+            return ledgers;
+        }
+    }
+
+    /** 单个分片的结算结果 */
+    private static final class ChunkResult {
+        final List<SettlementDetail> successDetails = new ArrayList<>();
+        final List<SettlementDetail> failDetails = new ArrayList<>();
+    }
+
     /** 结算单个商家, 结果匹配,并且保存成功才是成功, 不匹配或异常都算失败 */
     @Transactional(rollbackFor = Exception.class)
     public SettlementDetail settleMerchant(Long merchantId, LocalDate settlementDate) {
         // 检查是否已结算
         DailySettlement existing = findByMerchantAndDate(merchantId, settlementDate);
-        SettlementDetail detail = null;
         if (existing != null) {
-            log.warn("商家已结算，商家ID: {}, 结算日期: {}, 结算单号: {}", 
-                    merchantId, settlementDate, existing.getSettlementNo());
-            detail = new SettlementDetail();
-            BeanUtil.copyProperties(existing, detail);
-            detail.setMatchDescription("已结算过");
-            detail.setIsSuccess(existing.getIsMatched() == 1);
-            return detail;
+            return toSettledDetail(existing);
         }
         // 从订单记录表里,计算指定日期的订单净销售额
         BigDecimal paidAmount = calculatePaidAmount(merchantId, settlementDate);
         BigDecimal refundAmount = calculateRefundAmount(merchantId, settlementDate);
-        BigDecimal soldAmount = paidAmount.subtract(refundAmount);
-        
         // 从商家余额流水记录表里, 统计商家同一日期内的订单净收入,交易类型为3和4的总金额(即订单收入和订单退款)
         BigDecimal netIncome = transactionMapper.calculateMerchantNetIncome(merchantId, settlementDate);
+        return saveSettlement(merchantId, settlementDate, paidAmount, refundAmount, netIncome);
+    }
+
+    private SettlementDetail toSettledDetail(DailySettlement existing) {
+        log.warn("商家已结算，商家ID: {}, 结算日期: {}, 结算单号: {}",
+                existing.getMerchantId(), existing.getSettlementDate(), existing.getSettlementNo());
+        SettlementDetail detail = new SettlementDetail();
+        BeanUtil.copyProperties(existing, detail);
+        detail.setMatchDescription("已结算过");
+        detail.setIsSuccess(existing.getIsMatched() == 1);
+        return detail;
+    }
+
+    /** 比对净销售额和账户净收入, 保存结算记录 */
+    private SettlementDetail saveSettlement(Long merchantId, LocalDate settlementDate, BigDecimal paidAmount,
+                                            BigDecimal refundAmount, BigDecimal netIncome) {
+        BigDecimal soldAmount = paidAmount.subtract(refundAmount);
+        SettlementDetail detail = null;
         // 验证是否匹配
         boolean isMatched = false;
         String matchDescription = "不匹配";
@@ -198,40 +470,16 @@ public class SettlementServiceImpl extends ServiceImpl<DailySettlementMapper, Da
     }
 
 
-    /** 计算已支付订单金额 */
+    /** 计算结算日支付的订单金额(不论之后是否退款, 退款在退款日扣减), 在数据库中通过覆盖索引求和 */
     private BigDecimal calculatePaidAmount(Long merchantId, LocalDate settlementDate) {
-        QueryWrapper<Order> queryWrapper = new QueryWrapper<>();
-        queryWrapper.eq("merchant_id", merchantId);
-        queryWrapper.eq("order_status", OrderStatus.PAID.getCode());
-        queryWrapper.between("payment_time", 
-                DateUtil.getDayStart(settlementDate), 
-                DateUtil.getDayEnd(settlementDate));
-        
-        List<Order> paidOrders = ordersMapper.selectList(queryWrapper);
-        if (paidOrders == null){
-            return new BigDecimal("0.00");
-        }
-        return paidOrders.stream()
-                .map(Order::getTotalAmount)
-                .reduce(new BigDecimal("0.00"), BigDecimal::add);
+        BigDecimal paidAmount = ordersMapper.sumMerchantPaidSalesByDate(merchantId, settlementDate);
+        return paidAmount == null ? new BigDecimal("0.00") : paidAmount;
     }
 
-    /** 计算已退款订单金额 */
+    /** 计算已退款订单金额, 在数据库中通过覆盖索引求和 */
     private BigDecimal calculateRefundAmount(Long merchantId, LocalDate settlementDate) {
-        QueryWrapper<Order> queryWrapper = new QueryWrapper<>();
-        queryWrapper.eq("merchant_id", merchantId);
-        queryWrapper.eq("order_status", OrderStatus.REFUNDED.getCode());
-        queryWrapper.between("updated_time", 
-                DateUtil.getDayStart(settlementDate), 
-                DateUtil.getDayEnd(settlementDate));
-        
-        List<Order> refundOrders = ordersMapper.selectList(queryWrapper);
-        if (refundOrders == null){
-            return new BigDecimal("0.00");
-        }
-        return refundOrders.stream()
-                .map(Order::getTotalAmount)
-                .reduce(new BigDecimal("0.00"), BigDecimal::add);
+        BigDecimal refundAmount = ordersMapper.sumMerchantRefundSalesByDate(merchantId, settlementDate);
+        return refundAmount == null ? new BigDecimal("0.00") : refundAmount;
     }
 
     @Override
@@ -288,6 +536,31 @@ public class SettlementServiceImpl extends ServiceImpl<DailySettlementMapper, Da
         return this.page(page, queryWrapper);
     }
 
+    @Override
+    public PageResponse<DailySettlement> scroll(String cursor, int size, Long merchantId, LocalDate startDate,
+                                                LocalDate endDate, boolean withTotal) {
+        QueryWrapper<DailySettlement> queryWrapper = new QueryWrapper<>();
+        if (merchantId != null) {
+            queryWrapper.eq("merchant_id", merchantId);
+        }
+        queryWrapper.ge(startDate != null, "settlement_date", startDate);
+        queryWrapper.le(endDate != null, "settlement_date", endDate);
+        Long total = null;
+        if (withTotal) {
+            total = (long) this.count(queryWrapper);
+        }
+        if (cursor != null) {
+            CursorUtil.Cursor position = CursorUtil.decode(cursor);
+            LocalDate settlementDate = position.getSortDate();
+            queryWrapper.and(w -> w.lt("settlement_date", settlementDate)
+                    .or(o -> o.eq("settlement_date", settlementDate).lt("settlement_id", position.getId())));
+        }
+        queryWrapper.orderByDesc("settlement_date").orderByDesc("settlement_id");
+        queryWrapper.last("limit " + (size + 1));
+        return PageResponse.ofCursor(this.list(queryWrapper), size, total,
+                settlement -> CursorUtil.encode(settlement.getSettlementDate(), settlement.getSettlementId()));
+    }
+
     @Override
     public SettlementDetail findDetailById(Long settlementId) {
         DailySettlement settlement = this.findById(settlementId);
@@ -330,4 +603,133 @@ public class SettlementServiceImpl extends ServiceImpl<DailySettlementMapper, Da
         
         return paidAmount.subtract(refundAmount);
     }
-}
\ No newline at end of file
+
+    /**
+     * 分两次归并比对: 当日支付的订单(不论之后是否发货、完成或退款)与当日的收入流水, 当日退款的订单与当日的退款流水.
+     * 每次的两个结果集分别使用独立的SqlSession流式读取, MySQL同一连接上同时只能有一个流式结果集.
+     * 不能在事务中调用, 否则两个SqlSession会复用事务绑定的同一连接
+     */
+    @Override
+    public ReconciliationResult reconcile(Long merchantId, LocalDate settlementDate) {
+        Validator.notNull(merchantId, "商家ID不能为空");
+        Validator.notNull(settlementDate, "结算日期不能为空");
+        ReconciliationResult result = new ReconciliationResult();
+        result.setMerchantId(merchantId);
+        result.setSettlementDate(settlementDate);
+        MergeTally paid = reconcileStreams(merchantId, settlementDate, false, result);
+        result.setOrderCount(paid.orderCount);
+        result.setTransactionCount(paid.transactionCount);
+        result.setMatchedCount(paid.matchedCount);
+        result.setOrderAmount(paid.orderAmount);
+        result.setIncomeAmount(paid.transactionAmount);
+        MergeTally refunded = reconcileStreams(merchantId, settlementDate, true, result);
+        result.setRefundOrderCount(refunded.orderCount);
+        result.setRefundTransactionCount(refunded.transactionCount);
+        result.setRefundMatchedCount(refunded.matchedCount);
+        result.setRefundOrderAmount(refunded.orderAmount);
+        result.setRefundAmount(refunded.transactionAmount);
+        log.info("逐笔对账完成, 商家ID: {}, 结算日期: {}, 订单数: {}, 流水数: {}, 退款订单数: {}, 退款流水数: {}, 不一致数: {}",
+                merchantId, settlementDate, paid.orderCount, paid.transactionCount,
+                refunded.orderCount, refunded.transactionCount, result.getMismatchCount());
+        return result;
+    }
+
+    /** 流式读取一组订单和对应的流水并归并比对, refund为true时比对退款订单和退款流水 */
+    private MergeTally reconcileStreams(Long merchantId, LocalDate settlementDate, boolean refund, ReconciliationResult result) {
+        try (SqlSession orderSession = sqlSessionFactory.openSession();
+             SqlSession transactionSession = sqlSessionFactory.openSession();
+             Cursor<Order> orders = refund
+                     ? orderSession.getMapper(OrdersMapper.class).streamRefundedOrdersByDate(merchantId, settlementDate)
+                     : orderSession.getMapper(OrdersMapper.class).streamPaidOrdersByDate(merchantId, settlementDate);
+             Cursor<AccountTransaction> transactions = refund
+                     ? transactionSession.getMapper(AccountTransactionMapper.class).streamMerchantRefundByDate(merchantId, settlementDate)
+                     : transactionSession.getMapper(AccountTransactionMapper.class).streamMerchantIncomeByDate(merchantId, settlementDate)) {
+            return mergeJoin(orders.iterator(), transactions.iterator(), refund, result);
+        } catch (IOException e) {
+            log.error("逐笔对账读取数据失败, 商家ID: {}, 结算日期: {}", merchantId, settlementDate, e);
+            throw new BusinessException(ErrorCode.OPERATION_FAILED, "逐笔对账读取数据失败");
+        }
+    }
+
+    /** 两个结果集都按订单ID升序, 归并比对; 退款流水金额为负数, 取反后与订单金额比较 */
+    private MergeTally mergeJoin(Iterator<Order> orderIterator, Iterator<AccountTransaction> transactionIterator,
+                                 boolean refund, ReconciliationResult result) {
+        String missingTransaction = refund ? "MISSING_REFUND" : "MISSING_INCOME";
+        String missingOrder = refund ? "MISSING_REFUND_ORDER" : "MISSING_ORDER";
+        String amountMismatch = refund ? "REFUND_AMOUNT_MISMATCH" : "AMOUNT_MISMATCH";
+        MergeTally tally = new MergeTally();
+        Order order = nextOrNull(orderIterator);
+        AccountTransaction transaction = nextOrNull(transactionIterator);
+        while (order != null || transaction != null) {
+            if (transaction != null && transaction.getRelatedId() == null) {
+                BigDecimal amount = refund ? transaction.getAmount().negate() : transaction.getAmount();
+                tally.transactionCount++;
+                tally.transactionAmount = tally.transactionAmount.add(amount);
+                addMismatch(result, null, null, null, amount, missingOrder);
+                transaction = nextOrNull(transactionIterator);
+                continue;
+            }
+            int compare = order == null ? 1 : transaction == null ? -1 : order.getOrderId().compareTo(transaction.getRelatedId());
+            if (compare < 0) {
+                tally.orderCount++;
+                tally.orderAmount = tally.orderAmount.add(order.getTotalAmount());
+                addMismatch(result, order.getOrderId(), order.getOrderNo(), order.getTotalAmount(), null, missingTransaction);
+                order = nextOrNull(orderIterator);
+                continue;
+            }
+            // 合并同一订单的多条流水
+            Long relatedId = transaction.getRelatedId();
+            BigDecimal orderTransactionAmount = new BigDecimal("0.00");
+            while (transaction != null && relatedId.equals(transaction.getRelatedId())) {
+                tally.transactionCount++;
+                orderTransactionAmount = orderTransactionAmount.add(
+                        refund ? transaction.getAmount().negate() : transaction.getAmount());
+                transaction = nextOrNull(transactionIterator);
+            }
+            tally.transactionAmount = tally.transactionAmount.add(orderTransactionAmount);
+            if (compare > 0) {
+                addMismatch(result, relatedId, null, null, orderTransactionAmount, missingOrder);
+                continue;
+            }
+            tally.orderCount++;
+            tally.orderAmount = tally.orderAmount.add(order.getTotalAmount());
+            if (order.getTotalAmount().compareTo(orderTransactionAmount) == 0) {
+                tally.matchedCount++;
+            } else {
+                addMismatch(result, order.getOrderId(), order.getOrderNo(), order.getTotalAmount(),
+                        orderTransactionAmount, amountMismatch);
+            }
+            order = nextOrNull(orderIterator);
+        }
+        return tally;
+    }
+
+    private void addMismatch(ReconciliationResult result, Long orderId, String orderNo,
+                             BigDecimal orderAmount, BigDecimal incomeAmount, String mismatchType) {
+        result.setMismatchCount(result.getMismatchCount() + 1);
+        if (result.getMismatches().size() >= maxMismatches) {
+            result.setTruncated(true);
+            return;
+        }
+        OrderMismatch mismatch = new OrderMismatch();
+        mismatch.setOrderId(orderId);
+        mismatch.setOrderNo(orderNo);
+        mismatch.setOrderAmount(orderAmount);
+        mismatch.setIncomeAmount(incomeAmount);
+        mismatch.setMismatchType(mismatchType);
+        result.getMismatches().add(mismatch);
+    }
+
+    private static <T> T nextOrNull(Iterator<T> iterator) {
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    /** 一次归并比对的统计 */
+    private static final class MergeTally {
+        long orderCount;
+        long transactionCount;
+        long matchedCount;
+        BigDecimal orderAmount = new BigDecimal("0.00");
+        BigDecimal transactionAmount = new BigDecimal("0.00");
+    }
+}
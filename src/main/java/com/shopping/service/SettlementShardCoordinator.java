@@ -0,0 +1,241 @@
+package com.shopping.service;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import com.shopping.dto.response.SettlementResult;
+import com.shopping.entity.SettlementShardLease;
+import com.shopping.mapper.SettlementShardLeaseMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * 多实例结算分区协调
+ * 商家按merchant_id % shardCount分区, 各实例通过settlement_shard_lease表认领分区并定期续约,
+ * 同一分区同一时间只有一个实例结算; 实例宕机后租约过期, 其他实例接管未完成的分区
+ */
+@Slf4j
+@Component
+public class SettlementShardCoordinator {
+    @Autowired
+    private SettlementShardLeaseMapper leaseMapper;
+    @Autowired
+    private SettlementService settlementService;
+
+    @Value("${settlement.distributed.enabled:false}")
+    private boolean enabled;
+
+    /** 分区总数, 一般设为实例数的数倍, 使各实例负载均匀 */
+    @Value("${settlement.distributed.shard-count:16}")
+    private int shardCount;
+
+    /** 租约时长(秒), 持有期间每1/3租约时长续约一次 */
+    @Value("${settlement.distributed.lease-seconds:300}")
+    private int leaseSeconds;
+
+    /** 没有可认领分区时, 等待其他实例完成或租约过期的轮询间隔(毫秒) */
+    @Value("${settlement.distributed.poll-interval-ms:5000}")
+    private long pollIntervalMillis;
+
+    /**
+     * 连续没有认领到分区时最多等待的租约时长倍数; 其他实例持有租约并持续续约但结算卡住时,
+     * 本实例等待超过该时长后停止, 返回未完成的分区, 不长期占用定时任务线程
+     */
+    @Value("${settlement.distributed.max-wait-leases:3}")
+    private int maxWaitLeases;
+
+    /** 同一分区在本实例上最多尝试的次数, 超过后留给其他实例或人工处理 */
+    @Value("${settlement.distributed.max-attempts:3}")
+    private int maxAttempts;
+
+    /** 实例标识, 为空时使用 进程号@主机名 加随机后缀 */
+    @Value("${settlement.distributed.instance-id:}")
+    private String instanceId;
+
+    private ScheduledExecutorService leaseRenewer;
+
+    @PostConstruct
+    public void init() {
+        if (StrUtil.isBlank(instanceId)) {
+            instanceId = ManagementFactory.getRuntimeMXBean().getName() + "-" + IdUtil.fastSimpleUUID().substring(0, 8);
+        }
+        leaseRenewer = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("settlement-lease-", true));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        leaseRenewer.shutdown();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 参与指定日期的分区结算, 直到全部分区完成或连续maxWaitLeases个租约时长没有认领到分区;
+     * 返回本实例结算的分区结果汇总, 仍有分区未完成(其他实例持有、等待重试或已失败)时列出分区号并标记为未全部成功
+     */
+    public SettlementResult run(LocalDate settlementDate) {
+        LocalDateTime startTime = LocalDateTime.now();
+        List<Integer> shardNos = IntStream.range(0, shardCount).boxed().collect(Collectors.toList());
+        leaseMapper.insertShards(settlementDate, shardCount, shardNos);
+        // 上次执行失败的分区重新参与认领
+        leaseMapper.resetFailed(settlementDate);
+        SettlementResult total = emptyResult(settlementDate);
+        Map<Integer, Integer> attempts = new HashMap<>();
+        long waitLimitMillis = TimeUnit.SECONDS.toMillis((long) leaseSeconds * maxWaitLeases);
+        long idleSince = System.currentTimeMillis();
+        while (true) {
+            List<SettlementShardLease> unfinished = leaseMapper.findByDate(settlementDate).stream()
+                    .filter(lease -> lease.getStatus() == 0)
+                    .filter(lease -> attempts.getOrDefault(lease.getShardNo(), 0) < maxAttempts)
+                    .collect(Collectors.toList());
+            if (unfinished.isEmpty()) {
+                break;
+            }
+            boolean claimed = false;
+            // 从随机位置开始认领, 减少多个实例争抢同一分区
+            int offset = ThreadLocalRandom.current().nextInt(unfinished.size());
+            for (int i = 0; i < unfinished.size(); i++) {
+                SettlementShardLease lease = unfinished.get((offset + i) % unfinished.size());
+                if (leaseMapper.claim(settlementDate, lease.getShardNo(), instanceId, leaseSeconds) != 1) {
+                    continue;
+                }
+                claimed = true;
+                int attempt = attempts.merge(lease.getShardNo(), 1, Integer::sum);
+                SettlementResult result = settleShard(settlementDate, lease.getShardNo(), lease.getShardCount(),
+                        attempt >= maxAttempts);
+                if (result != null) {
+                    merge(total, result);
+                }
+            }
+            if (claimed) {
+                idleSince = System.currentTimeMillis();
+                continue;
+            }
+            if (System.currentTimeMillis() - idleSince >= waitLimitMillis) {
+                log.warn("等待其他实例结算分区超时, 停止等待, 结算日期: {}, 实例: {}, 未认领的分区: {}", settlementDate, instanceId,
+                        unfinished.stream().map(lease -> lease.getShardNo() + "(" + lease.getOwner() + ", 租约至"
+                                + lease.getLeaseUntil() + ")").collect(Collectors.toList()));
+                break;
+            }
+            if (!sleep()) {
+                break;
+            }
+        }
+        List<Integer> unfinishedShards = leaseMapper.findByDate(settlementDate).stream()
+                .filter(lease -> lease.getStatus() != 1)
+                .map(SettlementShardLease::getShardNo)
+                .sorted()
+                .collect(Collectors.toList());
+        total.setUnfinishedShards(unfinishedShards);
+        if (!unfinishedShards.isEmpty()) {
+            total.setAllSuccess(false);
+            log.error("结算分区未全部完成, 结算日期: {}, 未完成的分区: {}", settlementDate, unfinishedShards);
+        }
+        total.setStartTime(startTime);
+        total.setEndTime(LocalDateTime.now());
+        total.setExecutionTime(String.format("%.3f", Duration.between(startTime, total.getEndTime()).toMillis() / 1000.0) + "秒");
+        log.info("分区结算完成, 结算日期: {}, 实例: {}, 成功商家数: {}, 失败商家数: {}",
+                settlementDate, instanceId, total.getSuccessCount(), total.getFailedCount());
+        return total;
+    }
+
+    /**
+     * 结算持有租约的分区, 结算期间定时续约. 全部商家结算成功才标记分区完成;
+     * 有商家失败或出现异常时释放租约等待重试, 本实例最后一次尝试仍失败时标记分区失败.
+     * 返回本次计入汇总的结果, 释放租约等待重试时返回null
+     */
+    private SettlementResult settleShard(LocalDate settlementDate, int shardNo, int count, boolean lastAttempt) {
+        log.info("认领结算分区, 结算日期: {}, 分区: {}/{}, 实例: {}", settlementDate, shardNo, count, instanceId);
+        long period = Math.max(1, leaseSeconds / 3);
+        ScheduledFuture<?> renewal = leaseRenewer.scheduleAtFixedRate(
+                () -> renew(settlementDate, shardNo), period, period, TimeUnit.SECONDS);
+        SettlementResult result = null;
+        try {
+            result = settlementService.executeShardSettlement(settlementDate, shardNo, count);
+        } catch (Exception e) {
+            log.error("分区结算异常, 结算日期: {}, 分区: {}/{}", settlementDate, shardNo, count, e);
+        } finally {
+            renewal.cancel(false);
+        }
+        try {
+            if (result != null && Boolean.TRUE.equals(result.getAllSuccess())) {
+                leaseMapper.complete(settlementDate, shardNo, instanceId);
+                return result;
+            }
+            if (lastAttempt) {
+                log.error("结算分区重试次数已用完, 标记为失败, 结算日期: {}, 分区: {}/{}", settlementDate, shardNo, count);
+                leaseMapper.fail(settlementDate, shardNo, instanceId);
+                return result;
+            }
+            log.warn("结算分区未全部成功, 释放租约等待重试, 结算日期: {}, 分区: {}/{}", settlementDate, shardNo, count);
+            leaseMapper.release(settlementDate, shardNo, instanceId);
+        } catch (Exception e) {
+            log.error("更新结算分区租约失败, 等待租约过期, 分区: {}", shardNo, e);
+        }
+        return null;
+    }
+
+    private void renew(LocalDate settlementDate, int shardNo) {
+        try {
+            if (leaseMapper.renew(settlementDate, shardNo, instanceId, leaseSeconds) != 1) {
+                // 租约已被接管, 已结算的商家由daily_settlement唯一键保证不会重复写入
+                log.warn("结算分区租约已失效, 结算日期: {}, 分区: {}, 实例: {}", settlementDate, shardNo, instanceId);
+            }
+        } catch (Exception e) {
+            log.error("结算分区续约失败, 结算日期: {}, 分区: {}", settlementDate, shardNo, e);
+        }
+    }
+
+    private boolean sleep() {
+        try {
+            Thread.sleep(pollIntervalMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static SettlementResult emptyResult(LocalDate settlementDate) {
+        SettlementResult result = new SettlementResult();
+        result.setSettlementDate(settlementDate);
+        result.setAllSuccess(true);
+        result.setTotalMerchants(0);
+        result.setSuccessCount(0);
+        result.setFailedCount(0);
+        result.setSuccessDetails(new ArrayList<>());
+        result.setFailDetails(new ArrayList<>());
+        return result;
+    }
+
+    private static void merge(SettlementResult total, SettlementResult shard) {
+        total.setAllSuccess(total.getAllSuccess() && shard.getAllSuccess());
+        total.setTotalMerchants(total.getTotalMerchants() + shard.getTotalMerchants());
+        total.setSuccessCount(total.getSuccessCount() + shard.getSuccessCount());
+        total.setFailedCount(total.getFailedCount() + shard.getFailedCount());
+        total.getSuccessDetails().addAll(shard.getSuccessDetails());
+        total.getFailDetails().addAll(shard.getFailDetails());
+    }
+}
@@ -0,0 +1,232 @@
+package com.shopping.service;
+
+import com.shopping.entity.ProductSku;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * SKU读穿透缓存
+ * 只缓存sku_code、sku_name、price、product_id、status等描述字段, 库存和stock_version不进入缓存, 扣减库存路径始终读数据库.
+ * 命中时不加锁, 只设置访问标记并逐字段复制描述字段返回, 不使用反射; 超出容量时按CLOCK算法淘汰: 按写入顺序巡检, 有访问标记的清除标记后放回队尾, 没有的淘汰.
+ * 失效版本号按SKU ID分段, 失效时只递增所在分段的版本号, 加载期间同一分段发生失效时不回填缓存, 其他SKU的回填不受影响
+ */
+@Slf4j
+@Component
+public class SkuCache {
+    /** 失效版本号分段数, 必须是2的幂 */
+    private static final int VERSION_STRIPES = 1024;
+
+    @Value("${sku.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${sku.cache.max-size:10000}")
+    private int maxSize;
+
+    private final ConcurrentHashMap<Long, Node> cache = new ConcurrentHashMap<>();
+    /** 按写入顺序排列的缓存项, 包括已失效但尚未巡检到的项 */
+    private final ConcurrentLinkedQueue<Node> clock = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger clockSize = new AtomicInteger();
+    private final Object evictionLock = new Object();
+    /** 分段失效版本号, 每次失效递增SKU所在分段 */
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        maxSize = Math.max(1, maxSize);
+    }
+
+    /** 查询SKU描述信息, 未命中时通过loader加载并回填; 返回的对象不包含库存字段 */
+    public ProductSku get(Long skuId, Function<Long, ProductSku> loader) {
+        if (!enabled) {
+            return withoutStock(loader.apply(skuId));
+        }
+        ProductSku cached = getIfPresent(skuId);
+        if (cached != null) {
+            return cached;
+        }
+        long version = currentVersion(skuId);
+        ProductSku sku = withoutStock(loader.apply(skuId));
+        if (sku != null) {
+            put(sku, version);
+        }
+        return sku == null ? null : withoutStock(sku);
+    }
+
+    /** 加载后回填缓存, version为加载前通过currentVersion(skuId)取得的版本号 */
+    public void put(ProductSku sku, long version) {
+        if (!enabled || sku == null) {
+            return;
+        }
+        Long skuId = sku.getSkuId();
+        if (currentVersion(skuId) != version) {
+            return;
+        }
+        Node node = new Node(skuId, withoutStock(sku));
+        Node previous = cache.put(skuId, node);
+        if (previous != null) {
+            previous.removed = true;
+        }
+        // 失效先递增版本号再删除: 写入后版本号已变化说明失效可能发生在写入之前, 撤销本次写入
+        if (currentVersion(skuId) != version) {
+            remove(node);
+            return;
+        }
+        clock.add(node);
+        clockSize.incrementAndGet();
+        if (cache.size() > maxSize || clockSize.get() > 2 * maxSize) {
+            evictIfNeeded();
+        }
+    }
+
+    /** 只查缓存, 未命中返回null */
+    public ProductSku getIfPresent(Long skuId) {
+        if (!enabled) {
+            return null;
+        }
+        Node node = cache.get(skuId);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        if (!node.referenced) {
+            node.referenced = true;
+        }
+        hits.increment();
+        return withoutStock(node.value);
+    }
+
+    /** 加载前取得SKU所在分段的失效版本号, 回填时传给put */
+    public long currentVersion(Long skuId) {
+        return versions.get(stripe(skuId));
+    }
+
+    /** SKU描述信息变更时失效缓存; 若存在事务, 提交后再失效一次, 防止提交前被旧数据回填 */
+    public void invalidate(Long skuId) {
+        if (!enabled) {
+            return;
+        }
+        evict(skuId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(skuId);
+                }
+            });
+        }
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("size", (long) cache.size());
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictions", evictions.sum());
+        return stats;
+    }
+
+    private void evict(Long skuId) {
+        versions.incrementAndGet(stripe(skuId));
+        Node node = cache.remove(skuId);
+        if (node != null) {
+            node.removed = true;
+        }
+    }
+
+    private void remove(Node node) {
+        if (cache.remove(node.skuId, node)) {
+            node.removed = true;
+        }
+    }
+
+    /**
+     * 超出容量时按CLOCK算法淘汰; 队列中已失效的项在巡检时丢弃, 队列长度超过容量两倍时也巡检一轮, 避免频繁失效后队列无限增长.
+     * 只在回填时执行, 命中路径不参与
+     */
+    private void evictIfNeeded() {
+        synchronized (evictionLock) {
+            // 一轮最多巡检队列长度的两倍: 第一遍清除访问标记, 第二遍一定能淘汰
+            int budget = 2 * clockSize.get();
+            for (int i = 0; i < budget && (cache.size() > maxSize || clockSize.get() > 2 * maxSize); i++) {
+                Node node = clock.poll();
+                if (node == null) {
+                    return;
+                }
+                if (node.removed) {
+                    clockSize.decrementAndGet();
+                    continue;
+                }
+                boolean full = cache.size() > maxSize;
+                if (!full || node.referenced) {
+                    // 只为清理已失效的项而巡检时, 未失效的项原样放回
+                    if (full) {
+                        node.referenced = false;
+                    }
+                    clock.add(node);
+                    continue;
+                }
+                clockSize.decrementAndGet();
+                if (cache.remove(node.skuId, node)) {
+                    node.removed = true;
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    private static int stripe(Long skuId) {
+        long h = skuId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (VERSION_STRIPES - 1);
+    }
+
+    /**
+     * 只含描述字段的副本, 库存、stock_version和resultMessage为空; 缓存未命中时从数据库加载的SKU也经由此处返回.
+     * 各字段都是不可变类型, 逐字段赋值即可与缓存隔离; ProductSku新增描述字段时需同步加到这里
+     */
+    static ProductSku withoutStock(ProductSku sku) {
+        if (sku == null) {
+            return null;
+        }
+        return new ProductSku()
+                .setSkuId(sku.getSkuId())
+                .setSkuCode(sku.getSkuCode())
+                .setProductId(sku.getProductId())
+                .setSkuName(sku.getSkuName())
+                .setPrice(sku.getPrice())
+                .setAttributes(sku.getAttributes())
+                .setStatus(sku.getStatus())
+                .setCreatedTime(sku.getCreatedTime())
+                .setUpdatedTime(sku.getUpdatedTime());
+    }
+
+    /** 缓存项, 在队列中的位置即写入顺序 */
+    private static final class Node {
+        final Long skuId;
+        final ProductSku value;
+        /** 上次巡检后是否被访问过 */
+        volatile boolean referenced;
+        /** 已失效、被替换或被淘汰, 巡检时丢弃 */
+        volatile boolean removed;
+
+        Node(Long skuId, ProductSku value) {
+            this.skuId = skuId;
+            this.value = value;
+        }
+    }
+}
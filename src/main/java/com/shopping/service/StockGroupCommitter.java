@@ -0,0 +1,293 @@
+package com.shopping.service;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.shopping.entity.InventoryChange;
+import com.shopping.entity.ProductSku;
+import com.shopping.mapper.ProductSkuMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 库存扣减组提交(group commit)
+ * 同一SKU在一个短时间窗口内到达的扣减请求合并到一个批次事务: 加锁读取库存后, 按到达顺序在各自的保存点中执行请求的写入动作
+ * (如保存订单), 最后以一条UPDATE扣减总量、一条多行insert写入库存变更记录, 各调用方在批次提交后分别得到自己的结果.
+ * 一个批次只提交一次, 热点行锁不再被大量事务排队争抢.
+ * 调用方的写入随批次提交, 因此只能在调用方没有事务时使用: 调用方持有连接等待批次会使连接池耗尽
+ */
+@Slf4j
+@Component
+public class StockGroupCommitter {
+    private static final DeductResult FAILURE = new DeductResult(false, 0, 0);
+
+    @Autowired
+    private ProductSkuMapper skuMapper;
+    @Autowired
+    private InventoryChangeService inventoryChangeService;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${stock.group-commit.enabled:false}")
+    private boolean enabled;
+
+    /** 合并窗口(毫秒) */
+    @Value("${stock.group-commit.window-ms:2}")
+    private long windowMillis;
+
+    /** 每批最多合并的请求数 */
+    @Value("${stock.group-commit.max-batch:200}")
+    private int maxBatch;
+
+    /** 执行批量扣减的线程数 */
+    @Value("${stock.group-commit.threads:4}")
+    private int threads;
+
+    /** 调用方等待批次结果的超时时间(毫秒) */
+    @Value("${stock.group-commit.timeout-ms:3000}")
+    private long timeoutMillis;
+
+    private final ConcurrentHashMap<Long, SkuQueue> queues = new ConcurrentHashMap<>();
+    private ScheduledExecutorService executor;
+    /** 批量扣减使用独立事务, 提交后立即释放行锁 */
+    private TransactionTemplate batchTemplate;
+    /** 每个请求的写入在批次事务的保存点中执行, 失败时只回滚该请求 */
+    private TransactionTemplate writerTemplate;
+
+    @PostConstruct
+    public void init() {
+        batchTemplate = new TransactionTemplate(transactionManager);
+        batchTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        writerTemplate = new TransactionTemplate(transactionManager);
+        writerTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+        if (enabled) {
+            executor = new ScheduledThreadPoolExecutor(threads, new NamedThreadFactory("stock-group-commit-", true));
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** 当前线程可以使用组提交: 已启用且不在事务中 */
+    public boolean isApplicable() {
+        return enabled && !TransactionSynchronizationManager.isActualTransactionActive();
+    }
+
+    /**
+     * 提交扣减请求, 阻塞等待所在批次提交后返回本请求的结果; 批次提交即扣减和写入生效, 不能在事务中调用.
+     * 库存不足或等待超时返回失败结果; 写入动作或批次事务抛出的异常原样抛出
+     */
+    public DeductResult deduct(Long skuId, int quantity, Writer writer) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("库存组提交不能在事务中调用");
+        }
+        SkuQueue queue = queues.computeIfAbsent(skuId, id -> new SkuQueue());
+        Request request = new Request(quantity, writer);
+        queue.requests.add(request);
+        if (queue.scheduled.compareAndSet(false, true)) {
+            executor.schedule(() -> drain(skuId, queue), windowMillis, TimeUnit.MILLISECONDS);
+        }
+        try {
+            try {
+                return request.future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (request.abandon()) {
+                    log.warn("库存组提交等待超时, skuId:{}, 数量:{}", skuId, quantity);
+                    return FAILURE;
+                }
+                // 请求已被批次认领, 必须等待批次结果, 否则调用方不知道订单是否已写入
+                return request.future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (request.abandon()) {
+                return FAILURE;
+            }
+            try {
+                return request.future.join();
+            } catch (CompletionException ex) {
+                throw unwrap(ex.getCause());
+            }
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new IllegalStateException("库存组提交异常", cause);
+    }
+
+    private void drain(Long skuId, SkuQueue queue) {
+        List<Request> batch = new ArrayList<>();
+        try {
+            Request request;
+            while (batch.size() < maxBatch && (request = queue.requests.poll()) != null) {
+                if (request.claim()) {
+                    batch.add(request);
+                }
+            }
+            if (!batch.isEmpty()) {
+                apply(skuId, batch);
+            }
+        } catch (Exception e) {
+            log.error("库存组提交批次执行异常, skuId:{}, 批次大小:{}", skuId, batch.size(), e);
+            batch.forEach(r -> r.future.completeExceptionally(e));
+        } finally {
+            queue.scheduled.set(false);
+            // 窗口内积压的请求立即开始下一批
+            if (!queue.requests.isEmpty() && queue.scheduled.compareAndSet(false, true)) {
+                executor.execute(() -> drain(skuId, queue));
+            }
+        }
+    }
+
+    /** 在一个事务中按到达顺序执行库存能满足的请求, 一条UPDATE扣减成功请求的总量; 提交后才通知各调用方 */
+    private void apply(Long skuId, List<Request> batch) {
+        batchTemplate.executeWithoutResult(status -> {
+            List<ProductSku> locked = skuMapper.selectStocksForUpdate(Collections.singletonList(skuId));
+            ProductSku sku = locked.isEmpty() ? null : locked.get(0);
+            int stock = sku == null ? 0 : sku.getStockQuantity();
+            int total = 0;
+            List<InventoryChange> changes = new ArrayList<>();
+            for (Request request : batch) {
+                request.result = FAILURE;
+                request.error = null;
+                if (total + request.quantity > stock) {
+                    continue;
+                }
+                int stockBefore = stock - total;
+                int stockAfter = stockBefore - request.quantity;
+                try {
+                    InventoryChange change = writerTemplate.execute(s -> request.writer.write(stockBefore, stockAfter));
+                    if (change != null) {
+                        changes.add(change);
+                    }
+                } catch (RuntimeException e) {
+                    // 写入失败已回滚到保存点, 只有本请求失败
+                    request.error = e;
+                    continue;
+                }
+                total += request.quantity;
+                request.result = new DeductResult(true, stockBefore, stockAfter);
+            }
+            if (total == 0) {
+                return;
+            }
+            Integer rows = skuMapper.updateStockById(skuId, total);
+            if (rows == null || rows != 1) {
+                throw new IllegalStateException("库存组提交扣减库存失败, skuId: " + skuId);
+            }
+            // 一条UPDATE使版本号加1, 本批次的变更记录共用更新后的版本号
+            Long stockVersion = sku.getStockVersion() == null ? null : sku.getStockVersion() + 1;
+            changes.forEach(change -> change.setStockVersion(stockVersion));
+            inventoryChangeService.recordBatch(changes);
+        });
+        int succeeded = 0;
+        for (Request request : batch) {
+            if (request.error != null) {
+                request.future.completeExceptionally(request.error);
+            } else {
+                request.future.complete(request.result);
+                succeeded += request.result.isSuccess() ? 1 : 0;
+            }
+        }
+        log.debug("库存组提交完成, skuId:{}, 合并请求数:{}, 成功请求数:{}", skuId, batch.size(), succeeded);
+    }
+
+    /** 单个SKU的合并队列 */
+    private static final class SkuQueue {
+        final ConcurrentLinkedQueue<Request> requests = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+    }
+
+    private static final class Request {
+        private static final int WAITING = 0;
+        private static final int CLAIMED = 1;
+        private static final int ABANDONED = 2;
+
+        final int quantity;
+        final Writer writer;
+        final CompletableFuture<DeductResult> future = new CompletableFuture<>();
+        final AtomicInteger state = new AtomicInteger(WAITING);
+        /** 批次执行中的结果, 批次提交后才交给调用方 */
+        DeductResult result;
+        RuntimeException error;
+
+        Request(int quantity, Writer writer) {
+            this.quantity = quantity;
+            this.writer = writer;
+        }
+
+        boolean claim() {
+            return state.compareAndSet(WAITING, CLAIMED);
+        }
+
+        boolean abandon() {
+            return state.compareAndSet(WAITING, ABANDONED);
+        }
+    }
+
+    /** 请求在批次事务中的写入动作 */
+    @FunctionalInterface
+    public interface Writer {
+        /** 按本请求扣减前后的库存写入业务数据, 返回需要记录的库存变更; 抛出异常时回滚到保存点, 本请求失败 */
+        InventoryChange write(int stockBefore, int stockAfter);
+    }
+
+    /** 单个扣减请求的结果 */
+    public static final class DeductResult {
+        private final boolean success;
+        private final int stockBefore;
+        private final int stockAfter;
+
+        DeductResult(boolean success, int stockBefore, int stockAfter) {
+            this.success = success;
+            this.stockBefore = stockBefore;
+            this.stockAfter = stockAfter;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        public int getStockBefore() {
+            return stockBefore;
+        }
+
+        public int getStockAfter() {
+            return stockAfter;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package com.shopping.service;
+
+import com.shopping.constant.StatusEnum;
+import com.shopping.entity.ProductSku;
+import com.shopping.entity.StockReservation;
+import com.shopping.mapper.ProductSkuMapper;
+import com.shopping.mapper.StockReservationMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 内存库存预留引擎
+ * SKU库存计数器按CPU核数拆分为多个分片, 扣减在内存中通过CAS完成, 不再产生版本号冲突.
+ * 每次预留在调用方事务中写入一条stock_reservation记录, 与订单一起提交或回滚; 定时任务按SKU汇总待回写记录,
+ * 在一个事务中扣减数据库库存并标记记录已回写(write-behind). 内存计数器 = 数据库库存 - 待回写记录 - 未提交的预留,
+ * 进程崩溃后按数据库库存和待回写记录重新加载, 已确认的扣减不会丢失.
+ * 数据库库存不足以回写的记录标记为回写失败并告警, 不再重试, 对应订单需人工处理.
+ * 注意: 计数器只在本进程内有效, 多个实例各自持有计数器会超卖, 启用时只能单实例部署
+ */
+@Slf4j
+@Component
+public class StockReservationEngine {
+    /** 已失效计数器的保留时间, 保证失效前开始的预留都已提交或回滚 */
+    private static final long RETIRED_GRACE_MILLIS = 5000L;
+
+    @Autowired
+    private ProductSkuMapper skuMapper;
+    @Autowired
+    private StockReservationMapper reservationMapper;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${stock.reservation.enabled:false}")
+    private boolean enabled;
+
+    @Value("${stock.reservation.preload:true}")
+    private boolean preload;
+
+    /** 每个SKU的分片数, 0表示使用CPU核数 */
+    @Value("${stock.reservation.shards:0}")
+    private int shardCount;
+
+    /** 每个SKU每次回写的最大记录数 */
+    @Value("${stock.reservation.flush-batch-size:1000}")
+    private int flushBatchSize;
+
+    /** 已回写记录的保留时间(小时) */
+    @Value("${stock.reservation.retention-hours:72}")
+    private long retentionHours;
+
+    private final ConcurrentHashMap<Long, StockCounter> counters = new ConcurrentHashMap<>();
+    /** 已失效但可能仍有未提交预留的计数器 */
+    private final Queue<StockCounter> retiredCounters = new ConcurrentLinkedQueue<>();
+    /** 回写使用独立事务, 不受调用方事务回滚影响 */
+    private TransactionTemplate writeBehindTemplate;
+
+    @PostConstruct
+    public void init() {
+        if (shardCount <= 0) {
+            shardCount = Runtime.getRuntime().availableProcessors();
+        }
+        writeBehindTemplate = new TransactionTemplate(transactionManager);
+        writeBehindTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        if (!enabled) {
+            return;
+        }
+        log.warn("已启用内存库存预留, 库存计数器只在本实例内有效, 只能单实例部署");
+        if (!preload) {
+            return;
+        }
+        // 预加载所有可用SKU的库存, 扣除上次运行留下的待回写预留
+        List<ProductSku> skus = reservationMapper.selectAvailableStocks(null, StatusEnum.ENABLED.getCode());
+        for (ProductSku sku : skus) {
+            counters.put(sku.getSkuId(), new StockCounter(sku.getSkuId(), Math.max(0, sku.getStockQuantity()), shardCount));
+        }
+        log.info("内存库存预加载完成, SKU数量: {}, 分片数: {}", skus.size(), shardCount);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 在内存中预留库存并写入预留记录, 成功返回预留后的剩余库存(近似值), 库存不足或SKU不存在返回-1.
+     * 若当前存在事务, 预留记录随事务提交, 事务回滚时记录一并回滚并归还内存库存; 写入记录失败时归还内存库存并抛出异常
+     */
+    public int reserve(Long skuId, int quantity, Long relatedId, String relatedType) {
+        while (true) {
+            StockCounter counter = getOrLoad(skuId);
+            if (counter == null) {
+                return -1;
+            }
+            if (counter.retired) {
+                // 计数器正在失效, 等待其从缓存中移除后重新加载
+                Thread.yield();
+                continue;
+            }
+            if (!counter.tryAcquire(quantity)) {
+                return -1;
+            }
+            counter.inflight.addAndGet(quantity);
+            if (counter.retired) {
+                // 预留过程中计数器失效, 撤销后使用新计数器重试
+                complete(counter, quantity, false);
+                continue;
+            }
+            try {
+                saveReservation(skuId, quantity, relatedId, relatedType);
+            } catch (RuntimeException e) {
+                complete(counter, quantity, false);
+                throw e;
+            }
+            completeAfterTransaction(counter, quantity);
+            return counter.available();
+        }
+    }
+
+    /**
+     * 使SKU的内存计数器失效, 下次访问时按数据库库存和待回写记录重新加载.
+     * 非预留路径修改库存(增加/调整库存)前调用; 若当前存在事务, 提交后会再次失效, 避免加载到未提交前的旧库存
+     */
+    public void invalidate(Long skuId) {
+        if (!enabled) {
+            return;
+        }
+        retire(skuId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    retire(skuId);
+                }
+            });
+        }
+    }
+
+    /** 定时按SKU回写待回写的预留记录 */
+    @Scheduled(fixedDelayString = "${stock.reservation.flush-interval-ms:200}")
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            for (Long skuId : reservationMapper.findPendingSkuIds()) {
+                flushSku(skuId);
+            }
+            reservationMapper.deleteAppliedBefore(LocalDateTime.now().minusHours(retentionHours), flushBatchSize);
+        } catch (Exception e) {
+            log.error("库存预留记录回写失败, 稍后重试", e);
+        }
+        long now = System.currentTimeMillis();
+        retiredCounters.removeIf(counter -> counter.inflight.get() == 0 && now - counter.retiredAt > RETIRED_GRACE_MILLIS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flush();
+    }
+
+    private StockCounter getOrLoad(Long skuId) {
+        StockCounter counter = counters.get(skuId);
+        if (counter != null) {
+            return counter;
+        }
+        return counters.computeIfAbsent(skuId, this::load);
+    }
+
+    private StockCounter load(Long skuId) {
+        // 先读未提交的预留量, 再读库存和待回写记录: 期间提交的预留最多被重复扣除, 不会漏扣
+        long inflight = retiredCounters.stream()
+                .filter(c -> c.skuId.equals(skuId))
+                .mapToLong(c -> c.inflight.get())
+                .sum();
+        List<ProductSku> skus = reservationMapper.selectAvailableStocks(skuId, StatusEnum.ENABLED.getCode());
+        if (skus.isEmpty()) {
+            return null;
+        }
+        int stock = (int) Math.max(0, skus.get(0).getStockQuantity() - inflight);
+        log.info("加载SKU内存库存, SKU ID: {}, 库存: {}", skuId, stock);
+        return new StockCounter(skuId, stock, shardCount);
+    }
+
+    private void retire(Long skuId) {
+        StockCounter counter = counters.get(skuId);
+        if (counter == null) {
+            return;
+        }
+        counter.retiredAt = System.currentTimeMillis();
+        counter.retired = true;
+        retiredCounters.add(counter);
+        counters.remove(skuId, counter);
+    }
+
+    private void saveReservation(Long skuId, int quantity, Long relatedId, String relatedType) {
+        StockReservation reservation = new StockReservation();
+        reservation.setSkuId(skuId);
+        reservation.setQuantity(quantity);
+        reservation.setRelatedId(relatedId);
+        reservation.setRelatedType(relatedType);
+        reservation.setStatus(0);
+        reservation.setCreatedTime(LocalDateTime.now());
+        reservationMapper.insert(reservation);
+    }
+
+    private void completeAfterTransaction(StockCounter counter, int quantity) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            complete(counter, quantity, true);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                complete(counter, quantity, status == STATUS_COMMITTED);
+            }
+        });
+    }
+
+    /**
+     * 预留结束: 提交后由预留记录代表这部分扣减; 回滚时归还内存库存.
+     * 计数器已失效时不归还, 新计数器加载时已扣除这部分, 库存暂时偏少, 下次重新加载时恢复
+     */
+    private void complete(StockCounter counter, int quantity, boolean committed) {
+        if (!committed && !counter.retired) {
+            counter.release(quantity);
+        }
+        counter.inflight.addAndGet(-quantity);
+    }
+
+    /**
+     * 在一个事务中加锁读取数据库库存, 按ID顺序回写库存足够的记录并标记已回写; 库存不足的记录及其后的记录标记为回写失败.
+     * 标记行数不符说明记录已被处理, 回滚后下次重试
+     */
+    private void flushSku(Long skuId) {
+        List<StockReservation> reservations;
+        boolean hasFailed = false;
+        while (!(reservations = reservationMapper.findPendingBySku(skuId, flushBatchSize)).isEmpty()) {
+            List<StockReservation> batch = reservations;
+            List<StockReservation> failed = new ArrayList<>();
+            boolean applied = Boolean.TRUE.equals(writeBehindTemplate.execute(status -> {
+                if (!applyBatch(skuId, batch, failed)) {
+                    status.setRollbackOnly();
+                    failed.clear();
+                    return false;
+                }
+                return true;
+            }));
+            if (!applied) {
+                break;
+            }
+            if (!failed.isEmpty()) {
+                hasFailed = true;
+                log.error("库存回写失败, 数据库库存不足, 已标记为回写失败, 需人工处理, SKU ID: {}, 预留记录ID: {}, 关联ID: {}",
+                        skuId,
+                        failed.stream().map(StockReservation::getReservationId).collect(Collectors.toList()),
+                        failed.stream().map(StockReservation::getRelatedId).collect(Collectors.toList()));
+            }
+            if (reservations.size() < flushBatchSize) {
+                break;
+            }
+        }
+        if (hasFailed) {
+            // 数据库库存被其他途径修改, 让计数器失效, 之后按数据库库存重新加载
+            retire(skuId);
+        }
+    }
+
+    /** 回写一批记录, 库存不足的记录放入failed; 标记行数不符时返回false */
+    private boolean applyBatch(Long skuId, List<StockReservation> batch, List<StockReservation> failed) {
+        ProductSku sku = skuMapper.selectSkuForUpdate(skuId);
+        int stock = sku == null ? 0 : sku.getStockQuantity();
+        List<Long> appliedIds = new ArrayList<>();
+        int total = 0;
+        for (StockReservation reservation : batch) {
+            // 按到达顺序回写, 一条不足后其余记录全部失败, 不跳过
+            if (failed.isEmpty() && total + reservation.getQuantity() <= stock) {
+                appliedIds.add(reservation.getReservationId());
+                total += reservation.getQuantity();
+            } else {
+                failed.add(reservation);
+            }
+        }
+        if (!appliedIds.isEmpty() && reservationMapper.markApplied(appliedIds) != appliedIds.size()) {
+            return false;
+        }
+        List<Long> failedIds = failed.stream().map(StockReservation::getReservationId).collect(Collectors.toList());
+        if (!failedIds.isEmpty() && reservationMapper.markFailed(failedIds) != failedIds.size()) {
+            return false;
+        }
+        if (total > 0) {
+            Integer rows = skuMapper.updateStockById(skuId, total);
+            if (rows == null || rows != 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** 分片库存计数器 */
+    static final class StockCounter {
+        final Long skuId;
+        final AtomicIntegerArray shards;
+        /** 已在内存中预留但调用方事务尚未提交或回滚的数量 */
+        final AtomicLong inflight = new AtomicLong();
+        volatile boolean retired;
+        volatile long retiredAt;
+
+        StockCounter(Long skuId, int stock, int shardCount) {
+            this.skuId = skuId;
+            this.shards = new AtomicIntegerArray(shardCount);
+            spread(stock);
+        }
+
+        /** 从当前线程对应的分片开始尝试扣减, 单个分片不足时再合并分片 */
+        boolean tryAcquire(int quantity) {
+            int n = shards.length();
+            int start = shardIndex();
+            for (int i = 0; i < n; i++) {
+                int index = (start + i) % n;
+                int current;
+                while ((current = shards.get(index)) >= quantity) {
+                    if (shards.compareAndSet(index, current, current - quantity)) {
+                        return true;
+                    }
+                }
+            }
+            return rebalanceAndAcquire(quantity);
+        }
+
+        void release(int quantity) {
+            shards.addAndGet(shardIndex(), quantity);
+        }
+
+        int available() {
+            int total = 0;
+            for (int i = 0; i < shards.length(); i++) {
+                total += shards.get(i);
+            }
+            return total;
+        }
+
+        /** 库存碎片化在各分片时, 合并所有分片后扣减, 剩余库存重新平均分配 */
+        private synchronized boolean rebalanceAndAcquire(int quantity) {
+            int total = 0;
+            for (int i = 0; i < shards.length(); i++) {
+                total += shards.getAndSet(i, 0);
+            }
+            boolean acquired = total >= quantity;
+            if (acquired) {
+                total -= quantity;
+            }
+            spread(total);
+            return acquired;
+        }
+
+        private void spread(int stock) {
+            int n = shards.length();
+            int base = stock / n;
+            int remainder = stock % n;
+            for (int i = 0; i < n; i++) {
+                shards.addAndGet(i, base + (i < remainder ? 1 : 0));
+            }
+        }
+
+        private int shardIndex() {
+            return (int) (Thread.currentThread().getId() % shards.length());
+        }
+    }
+}
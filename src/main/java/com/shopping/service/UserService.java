@@ -1,12 +1,15 @@
 package com.shopping.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
+import com.shopping.dto.request.UserBalanceCredit;
 import com.shopping.dto.request.UserRechargeRequest;
 import com.shopping.dto.response.UserResponse;
 import com.shopping.entity.ProductSku;
 import com.shopping.entity.User;
 
 import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 用户服务接口
@@ -44,6 +47,11 @@ public interface UserService extends IService<User> {
     User updateUserBalance(Long userId, BigDecimal amount, String operationType,
                               Long relatedId, Integer transactionType, String remark);
 
+    /**
+     * 批量增加用户余额: 一条UPDATE更新所有用户, 交易流水一条多行insert; 返回各用户更新后的余额
+     */
+    Map<Long, BigDecimal> creditUserBalances(List<UserBalanceCredit> credits);
+
 
     /**
      * 验证用户状态
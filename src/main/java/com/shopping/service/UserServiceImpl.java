@@ -1,11 +1,11 @@
 package com.shopping.service;
 
-import cn.hutool.core.util.IdUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.shopping.constant.AccountType;
 import com.shopping.constant.StatusEnum;
 import com.shopping.constant.TransactionType;
+import com.shopping.dto.request.UserBalanceCredit;
 import com.shopping.dto.request.UserRechargeRequest;
 import com.shopping.dto.response.UserResponse;
 import com.shopping.entity.AccountTransaction;
@@ -14,7 +14,9 @@ import com.shopping.entity.User;
 import com.shopping.exception.BusinessException;
 import com.shopping.exception.ErrorCode;
 import com.shopping.mapper.UserMapper;
+import com.shopping.utils.IdGenerator;
 import com.shopping.utils.MoneyUtil;
+import com.shopping.utils.Validator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,6 +25,12 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
 /**
  * 用户服务实现
@@ -34,6 +42,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
     private AccountTransactionService accountTransactionService;
     @Autowired
     private UserMapper userMapper;
+    @Autowired
+    private IdGenerator idGenerator;
 
     @Override
     public User getUserById(Long userId) {
@@ -125,7 +135,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
 
         // 记录交易流水
         AccountTransaction transaction = new AccountTransaction();
-        transaction.setTransactionNo("TRX" + IdUtil.getSnowflakeNextId());
+        transaction.setTransactionNo(idGenerator.generateTransactionNo());
         transaction.setAccountType(AccountType.USER_ACCOUNT.getCode());
         transaction.setAccountId(user.getUserId());
         transaction.setTransactionType(TransactionType.RECHARGE.getCode());
@@ -173,24 +183,19 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         if (amount.compareTo(new BigDecimal("0.00")) < 0) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR, "金额不能为负数");
         }
-        if ((operationType != "decrease" && operationType != "increase")){
+        if (!"decrease".equals(operationType) && !"increase".equals(operationType)) {
             log.info("更新操作类型需要是 decrease 或 increase");
             throw new BusinessException(ErrorCode.PARAMS_ERROR, "参数错误, 更新操作类型需要是 decrease 或 increase");
         }
-        // 验证用户
-        User user = this.getUserById(userId);
-        this.validateUserStatus(user);
-        // 验证用户余额
-        if (!MoneyUtil.isEnough(user.getAccountBalance(), amount)) {
-            throw new BusinessException(ErrorCode.BALANCE_NOT_ENOUGH, "用户余额不足");
-        }
-
-        user = userMapper.updateBalanceAndReturn(userId, amount, operationType);
+        // 用户状态和余额在存储过程的条件更新中校验, 一次调用完成校验、更新并返回新余额
+        User user = userMapper.updateBalanceAndReturn(userId, amount, operationType);
         if (user == null) {
-            log.info("扣减用户余额失败, user为null");
-            throw new BusinessException(ErrorCode.NOT_FOUND_ERROR, "扣减用户余额失败, user为null");
+            throw new BusinessException(ErrorCode.NOT_FOUND_ERROR, "用户不存在");
         }
         BigDecimal currentBalance = user.getAccountBalance();
+        if ("disabled".equals(user.getResultMessage())) {
+            throw new BusinessException(ErrorCode.USER_DISABLED, "用户已被禁用");
+        }
         if ("failure".equals(user.getResultMessage())) {
             if (amount.compareTo(currentBalance) > 0) {
                 log.info("用户余额不足, userId:{}, 当前余额:{}, 需要金额:{}", userId, currentBalance, amount);
@@ -222,6 +227,51 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         return user;
     }
 
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public Map<Long, BigDecimal> creditUserBalances(List<UserBalanceCredit> credits) {
+        Validator.notEmpty(credits, "入账明细不能为空");
+        // 同一用户的多笔入账合并为一个金额
+        Map<Long, BigDecimal> amounts = new TreeMap<>();
+        for (UserBalanceCredit credit : credits) {
+            Validator.notNull(credit.getUserId(), "用户ID不能为空");
+            Validator.isTrue(MoneyUtil.isValid(credit.getAmount()), "金额必须大于0");
+            amounts.merge(credit.getUserId(), credit.getAmount(), BigDecimal::add);
+        }
+        int rows = userMapper.increaseBalances(amounts);
+        if (rows != amounts.size()) {
+            throw new BusinessException(ErrorCode.OPERATION_FAILED, "批量增加用户余额失败, 部分用户不存在或已被禁用");
+        }
+        // 行锁由本事务持有, 读到的即更新后的余额
+        Map<Long, BigDecimal> balances = userMapper.selectBatchIds(amounts.keySet()).stream()
+                .collect(Collectors.toMap(User::getUserId, User::getAccountBalance));
+        // 按明细顺序从更新前余额推算每笔交易前后的余额
+        Map<Long, BigDecimal> runningBalances = new HashMap<>();
+        amounts.forEach((userId, total) -> runningBalances.put(userId, balances.get(userId).subtract(total)));
+        List<AccountTransaction> transactions = new ArrayList<>(credits.size());
+        for (UserBalanceCredit credit : credits) {
+            BigDecimal balanceBefore = runningBalances.get(credit.getUserId());
+            BigDecimal balanceAfter = balanceBefore.add(credit.getAmount());
+            runningBalances.put(credit.getUserId(), balanceAfter);
+            transactions.add(accountTransactionService.createTransaction(
+                    AccountType.USER_ACCOUNT.getCode(),
+                    credit.getUserId(),
+                    credit.getTransactionType(),
+                    balanceBefore,
+                    credit.getAmount(),
+                    balanceAfter,
+                    credit.getRelatedId(),
+                    credit.getRelatedType(),
+                    credit.getRemark()
+            ));
+        }
+        if (!accountTransactionService.saveTransactions(transactions)) {
+            throw new BusinessException(ErrorCode.OPERATION_FAILED, "记录交易流水失败");
+        }
+        log.info("批量增加用户余额成功, 用户数: {}, 入账笔数: {}", amounts.size(), credits.size());
+        return balances;
+    }
+
     @Override
     public void validateUserStatus(User user) {
         if (user == null) {
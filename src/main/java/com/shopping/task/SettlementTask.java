@@ -2,6 +2,7 @@ package com.shopping.task;
 
 import com.shopping.dto.response.SettlementResult;
 import com.shopping.service.SettlementService;
+import com.shopping.service.SettlementShardCoordinator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -16,6 +17,8 @@ public class SettlementTask {
 
     @Autowired
     private SettlementService settlementService;
+    @Autowired
+    private SettlementShardCoordinator shardCoordinator;
     
     @Value("${settlement.enabled:true}")
     private boolean settlementEnabled;
@@ -34,7 +37,10 @@ public class SettlementTask {
         try {
             log.info("开始执行每日结算定时任务");
             LocalDate settlementDate = LocalDate.now().minusDays(1); // 结算昨天
-            SettlementResult result = settlementService.executeDailySettlement(settlementDate);
+            // 多实例部署时各实例按分区认领, 否则单实例结算全部商家
+            SettlementResult result = shardCoordinator.isEnabled()
+                    ? shardCoordinator.run(settlementDate)
+                    : settlementService.executeDailySettlement(settlementDate);
             if (result.getAllSuccess()) {
                 log.info("每日结算定时任务执行成功，结算日期: {}", settlementDate);
             } else {
@@ -0,0 +1,75 @@
+package com.shopping.utils;
+
+import com.shopping.exception.BusinessException;
+import com.shopping.exception.ErrorCode;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * 游标分页工具类
+ * 游标由排序键和主键编码而成, 对客户端不透明; 下一页查询条件为 (排序键, 主键) 严格小于游标位置
+ */
+public class CursorUtil {
+    private static final String SEPARATOR = "|";
+
+    /** 编码游标 */
+    public static String encode(Object sortValue, Long id) {
+        String raw = sortValue + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** 解码游标, 格式不正确时抛出参数异常 */
+    public static Cursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int index = raw.lastIndexOf(SEPARATOR);
+            if (index <= 0) {
+                throw new IllegalArgumentException(raw);
+            }
+            return new Cursor(raw.substring(0, index), Long.parseLong(raw.substring(index + 1)));
+        } catch (IllegalArgumentException e) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "无效的分页游标");
+        }
+    }
+
+    /** 解码后的游标 */
+    public static class Cursor {
+        private final String sortValue;
+        private final Long id;
+
+        Cursor(String sortValue, Long id) {
+            this.sortValue = sortValue;
+            this.id = id;
+        }
+
+        public String getSortValue() {
+            return sortValue;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        /** 排序键为时间时使用 */
+        public LocalDateTime getSortTime() {
+            try {
+                return LocalDateTime.parse(sortValue);
+            } catch (DateTimeParseException e) {
+                throw new BusinessException(ErrorCode.PARAMS_ERROR, "无效的分页游标");
+            }
+        }
+
+        /** 排序键为日期时使用 */
+        public LocalDate getSortDate() {
+            try {
+                return LocalDate.parse(sortValue);
+            } catch (DateTimeParseException e) {
+                throw new BusinessException(ErrorCode.PARAMS_ERROR, "无效的分页游标");
+            }
+        }
+    }
+}
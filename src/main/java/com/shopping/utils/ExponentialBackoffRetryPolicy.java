@@ -0,0 +1,40 @@
+package com.shopping.utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/** 指数退避重试策略, 等待时间按倍数增长并叠加随机抖动, 避免并发请求同时重试 */
+public class ExponentialBackoffRetryPolicy implements RetryPolicy {
+    private final int maxAttempts;
+    private final long initialDelayMillis;
+    private final double multiplier;
+    private final long maxDelayMillis;
+    /** 抖动比例(0~1), 实际等待时间在 delay*(1-jitter) ~ delay*(1+jitter) 之间 */
+    private final double jitter;
+
+    public ExponentialBackoffRetryPolicy(int maxAttempts, long initialDelayMillis, double multiplier,
+                                         long maxDelayMillis, double jitter) {
+        Validator.isTrue(maxAttempts > 0, "最大尝试次数必须大于0");
+        Validator.isTrue(initialDelayMillis >= 0, "初始等待时间不能小于0");
+        Validator.isTrue(multiplier >= 1, "退避倍数不能小于1");
+        Validator.isTrue(jitter >= 0 && jitter <= 1, "抖动比例必须在0~1之间");
+        this.maxAttempts = maxAttempts;
+        this.initialDelayMillis = initialDelayMillis;
+        this.multiplier = multiplier;
+        this.maxDelayMillis = Math.max(maxDelayMillis, initialDelayMillis);
+        this.jitter = jitter;
+    }
+
+    @Override
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    @Override
+    public long nextDelayMillis(int attempt) {
+        double delay = Math.min(initialDelayMillis * Math.pow(multiplier, attempt - 1), maxDelayMillis);
+        if (jitter > 0) {
+            delay = delay * (1 - jitter + ThreadLocalRandom.current().nextDouble() * 2 * jitter);
+        }
+        return Math.max(0L, Math.round(delay));
+    }
+}
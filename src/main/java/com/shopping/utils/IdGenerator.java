@@ -1,17 +1,29 @@
 package com.shopping.utils;
 
-import cn.hutool.core.date.DatePattern;
-import cn.hutool.core.date.DateTime;
-import cn.hutool.core.date.DateUtil;
-import cn.hutool.core.util.IdUtil;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * ID生成器工具类
+ * 编号格式: 前缀 + 时间(yyyyMMddHHmmss) + 4位节点号 + 7位秒内序号.
+ * 序号每秒从0开始, 编号中必须带到秒才能保证不重复. 格式化后的时间每秒只生成一次并缓存; 秒内序号通过CAS递增, 不加锁;
+ * 各节点必须配置不同的节点号, 编号不会跨实例重复
  */
 @Component
 public class IdGenerator {
+    /** 秒内序号位数, 每个节点每秒最多生成 2^22 个编号 */
+    private static final int SEQUENCE_BITS = 22;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+    private static final int MAX_WORKER_ID = 9999;
+    private static final int DATETIME_LENGTH = 14;
+    private static final int WORKER_LENGTH = 4;
+    private static final int SEQUENCE_LENGTH = 7;
 
     @Value("${app.order.prefix:ORD}")
     private String orderPrefix;
@@ -25,43 +37,129 @@ public class IdGenerator {
     @Value("${app.order.refund-prefix:REF}")
     private String refundPrefix;
 
+    /** 节点号(0-9999), 多实例部署时每个实例必须不同; 未配置时启动失败 */
+    @Value("${app.id.worker-id:-1}")
+    private int workerId;
+
+    private final ZoneId zone = ZoneId.systemDefault();
+    /** 高位为秒级时间戳, 低SEQUENCE_BITS位为秒内序号 */
+    private final AtomicLong state = new AtomicLong();
+    /** 最近一秒格式化好的时间 */
+    private volatile SecondStamp stamp = new SecondStamp(-1, new char[DATETIME_LENGTH]);
+    private final ThreadLocal<char[]> buffers = ThreadLocal.withInitial(() -> new char[64]);
+    private char[] workerChars;
+
+    @PostConstruct
+    public void init() {
+        // 按进程信息推算的节点号在多实例间可能相同, 生成重复的编号, 因此必须显式配置
+        Validator.isTrue(workerId >= 0, "未配置app.id.worker-id, 请为每个实例配置不同的节点号");
+        Validator.isTrue(workerId <= MAX_WORKER_ID, "节点号必须在0-" + MAX_WORKER_ID + "之间");
+        workerChars = new char[WORKER_LENGTH];
+        writeDigits(workerChars, 0, workerId, WORKER_LENGTH);
+    }
+
     /**
-     * 生成订单号
+     * 生成订单号. 不使用订单ID, 订单ID基本连续, 出现在订单号中会暴露订单量
      */
     public String generateOrderNo() {
-        DateTime now = DateUtil.date();
-        String dateStr = now.toString(DatePattern.PURE_DATETIME_PATTERN);
-//        return orderPrefix + dateStr + IdUtil.getSnowflakeNextIdStr().substring(0, 6);
-        String orderNo = orderPrefix + dateStr + IdUtil.getSnowflakeNextIdStr();
-        return orderNo;
+        return generate(orderPrefix);
     }
 
     /**
      * 生成交易流水号
      */
     public String generateTransactionNo() {
-        return transactionPrefix + IdUtil.getSnowflakeNextId();
+        return generate(transactionPrefix);
     }
 
     /**
      * 生成结算单号
      */
     public String generateSettlementNo() {
-        DateTime now = DateUtil.date();
-        String dateStr = now.toString(DatePattern.PURE_DATE_PATTERN);
-//        return settlementPrefix + dateStr + IdUtil.getSnowflakeNextIdStr().substring(0, 8);
-        String res = settlementPrefix + dateStr + IdUtil.getSnowflakeNextIdStr();
-        return res;
+        return generate(settlementPrefix);
     }
 
     /**
      * 生成退款单号
      */
     public String generateRefundNo() {
-        DateTime now = DateUtil.date();
-        String dateStr = now.toString(DatePattern.PURE_DATETIME_PATTERN);
-//        return refundPrefix + dateStr + IdUtil.getSnowflakeNextIdStr().substring(0, 6);
-        String res = refundPrefix + dateStr + IdUtil.getSnowflakeNextIdStr();
-        return res;
+        return generate(refundPrefix);
+    }
+
+    private String generate(String prefix) {
+        long next = nextState();
+        long second = next >>> SEQUENCE_BITS;
+        long sequence = next & MAX_SEQUENCE;
+        char[] time = stampOf(second);
+        char[] buffer = buffers.get();
+        int pos = 0;
+        prefix.getChars(0, prefix.length(), buffer, pos);
+        pos += prefix.length();
+        System.arraycopy(time, 0, buffer, pos, DATETIME_LENGTH);
+        pos += DATETIME_LENGTH;
+        System.arraycopy(workerChars, 0, buffer, pos, WORKER_LENGTH);
+        pos += WORKER_LENGTH;
+        writeDigits(buffer, pos, sequence, SEQUENCE_LENGTH);
+        pos += SEQUENCE_LENGTH;
+        return new String(buffer, 0, pos);
+    }
+
+    /** CAS递增秒内序号; 序号用完时借用下一秒, 时钟回拨时继续使用已记录的秒, 保证编号单调不重复 */
+    private long nextState() {
+        while (true) {
+            long current = state.get();
+            long currentSecond = current >>> SEQUENCE_BITS;
+            long nowSecond = System.currentTimeMillis() / 1000;
+            long next;
+            if (nowSecond > currentSecond) {
+                next = nowSecond << SEQUENCE_BITS;
+            } else if ((current & MAX_SEQUENCE) < MAX_SEQUENCE) {
+                next = current + 1;
+            } else {
+                next = (currentSecond + 1) << SEQUENCE_BITS;
+            }
+            if (state.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    /** 返回指定秒格式化后的时间, 同一秒内复用缓存 */
+    private char[] stampOf(long second) {
+        SecondStamp current = stamp;
+        if (current.second == second) {
+            return current.chars;
+        }
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochSecond(second), zone);
+        char[] chars = new char[DATETIME_LENGTH];
+        writeDigits(chars, 0, time.getYear(), 4);
+        writeDigits(chars, 4, time.getMonthValue(), 2);
+        writeDigits(chars, 6, time.getDayOfMonth(), 2);
+        writeDigits(chars, 8, time.getHour(), 2);
+        writeDigits(chars, 10, time.getMinute(), 2);
+        writeDigits(chars, 12, time.getSecond(), 2);
+        // 多个线程同时更新时结果相同, 不需要加锁
+        if (second > current.second) {
+            stamp = new SecondStamp(second, chars);
+        }
+        return chars;
+    }
+
+    /** 把数字按固定位数(左补0)写入字符数组 */
+    private static void writeDigits(char[] target, int offset, long value, int length) {
+        for (int i = offset + length - 1; i >= offset; i--) {
+            target[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static final class SecondStamp {
+        final long second;
+        final char[] chars;
+
+        SecondStamp(long second, char[] chars) {
+            this.second = second;
+            this.chars = chars;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,165 @@
+package com.shopping.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+/**
+ * 重试执行器
+ * 每次尝试由调用方决定事务边界, 尝试之间不持有数据库连接, 同步方式不在调用方事务中等待重试;
+ * 异步方式的每次尝试在有界的工作线程池中执行, 调度线程池只负责延迟, 不执行可能阻塞的尝试, 等待期间不占用任何线程
+ */
+@Slf4j
+public class RetryExecutor {
+    private final String name;
+    private final RetryPolicy policy;
+    private final ScheduledExecutorService scheduler;
+    private final Executor workers;
+    private final RetryMetrics metrics = new RetryMetrics();
+
+    public RetryExecutor(String name, RetryPolicy policy, ScheduledExecutorService scheduler, Executor workers) {
+        this.name = name;
+        this.policy = policy;
+        this.scheduler = scheduler;
+        this.workers = workers;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public RetryMetrics getMetrics() {
+        return metrics;
+    }
+
+    /** 同步执行, 只按结果判断是否重试, 尝试抛出的异常直接抛出 */
+    public <T> T execute(IntFunction<T> action, Predicate<T> retryable) {
+        return execute(action, retryable, e -> false);
+    }
+
+    /**
+     * 同步执行, 返回最后一次尝试的结果或抛出最后一次尝试的异常. 当前线程存在事务时只尝试一次:
+     * 在事务中等待会占用连接, 且可重复读隔离级别下重试读到的仍是同一快照, 需要由调用方在事务外重试
+     * @param action 尝试动作, 参数为当前尝试次数(从1开始)
+     * @param retryable 结果是否需要重试
+     * @param retryableError 尝试抛出的异常是否需要重试, 不需要重试的异常直接抛出
+     */
+    public <T> T execute(IntFunction<T> action, Predicate<T> retryable, Predicate<RuntimeException> retryableError) {
+        int maxAttempts = policy.getMaxAttempts();
+        for (int attempt = 1; ; attempt++) {
+            metrics.recordAttempt(attempt);
+            T result = null;
+            RuntimeException error = null;
+            try {
+                result = action.apply(attempt);
+            } catch (RuntimeException e) {
+                if (!retryableError.test(e)) {
+                    throw e;
+                }
+                error = e;
+            }
+            if (error == null && !retryable.test(result)) {
+                return result;
+            }
+            if (attempt >= maxAttempts) {
+                metrics.recordGiveUp();
+                log.info("[{}] 重试{}次后放弃", name, attempt);
+                return resultOrThrow(result, error);
+            }
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                metrics.recordGiveUp();
+                log.info("[{}] 当前线程存在事务, 不在事务中等待重试", name);
+                return resultOrThrow(result, error);
+            }
+            long delay = policy.nextDelayMillis(attempt);
+            metrics.recordWait(delay);
+            if (error != null) {
+                log.info("[{}] 第{}次尝试失败, {}毫秒后重试: {}", name, attempt, delay, error.getMessage());
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                metrics.recordGiveUp();
+                log.info("[{}] 重试等待被中断", name);
+                return resultOrThrow(result, error);
+            }
+        }
+    }
+
+    /** 异步执行, 只按结果判断是否重试 */
+    public <T> CompletableFuture<T> executeAsync(IntFunction<T> action, Predicate<T> retryable) {
+        return executeAsync(action, retryable, e -> false);
+    }
+
+    /** 异步执行, 尝试在工作线程池中执行, 重试等待期间不占用任何线程; 工作线程池已满时以拒绝异常结束 */
+    public <T> CompletableFuture<T> executeAsync(IntFunction<T> action, Predicate<T> retryable,
+                                                 Predicate<RuntimeException> retryableError) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        submitAsync(1, action, retryable, retryableError, future);
+        return future;
+    }
+
+    private <T> void submitAsync(int attempt, IntFunction<T> action, Predicate<T> retryable,
+                                 Predicate<RuntimeException> retryableError, CompletableFuture<T> future) {
+        try {
+            workers.execute(() -> attemptAsync(attempt, action, retryable, retryableError, future));
+        } catch (RejectedExecutionException e) {
+            metrics.recordGiveUp();
+            log.warn("[{}] 重试工作线程池已满, 第{}次尝试被拒绝", name, attempt);
+            future.completeExceptionally(e);
+        }
+    }
+
+    private <T> void attemptAsync(int attempt, IntFunction<T> action, Predicate<T> retryable,
+                                  Predicate<RuntimeException> retryableError, CompletableFuture<T> future) {
+        T result = null;
+        RuntimeException error = null;
+        try {
+            metrics.recordAttempt(attempt);
+            result = action.apply(attempt);
+        } catch (RuntimeException e) {
+            if (!retryableError.test(e)) {
+                future.completeExceptionally(e);
+                return;
+            }
+            error = e;
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            return;
+        }
+        if (error == null && !retryable.test(result)) {
+            future.complete(result);
+            return;
+        }
+        if (attempt >= policy.getMaxAttempts()) {
+            metrics.recordGiveUp();
+            log.info("[{}] 异步重试{}次后放弃", name, attempt);
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(result);
+            }
+            return;
+        }
+        long delay = policy.nextDelayMillis(attempt);
+        metrics.recordWait(delay);
+        // 调度线程只负责到期后把下一次尝试交给工作线程池
+        scheduler.schedule(() -> submitAsync(attempt + 1, action, retryable, retryableError, future),
+                delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static <T> T resultOrThrow(T result, RuntimeException error) {
+        if (error != null) {
+            throw error;
+        }
+        return result;
+    }
+}
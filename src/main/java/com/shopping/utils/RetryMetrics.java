@@ -0,0 +1,57 @@
+package com.shopping.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/** 重试统计指标 */
+public class RetryMetrics {
+    /** 总尝试次数 */
+    private final LongAdder attempts = new LongAdder();
+    /** 重试次数(不含第一次尝试) */
+    private final LongAdder retries = new LongAdder();
+    /** 重试累计等待时间(毫秒) */
+    private final LongAdder waitMillis = new LongAdder();
+    /** 达到最大次数仍未成功而放弃的次数 */
+    private final LongAdder giveUps = new LongAdder();
+
+    void recordAttempt(int attempt) {
+        attempts.increment();
+        if (attempt > 1) {
+            retries.increment();
+        }
+    }
+
+    void recordWait(long millis) {
+        waitMillis.add(millis);
+    }
+
+    void recordGiveUp() {
+        giveUps.increment();
+    }
+
+    public long getAttempts() {
+        return attempts.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public long getWaitMillis() {
+        return waitMillis.sum();
+    }
+
+    public long getGiveUps() {
+        return giveUps.sum();
+    }
+
+    public Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        snapshot.put("attempts", getAttempts());
+        snapshot.put("retries", getRetries());
+        snapshot.put("waitMillis", getWaitMillis());
+        snapshot.put("giveUps", getGiveUps());
+        return snapshot;
+    }
+}
@@ -0,0 +1,11 @@
+package com.shopping.utils;
+
+/** 重试策略 */
+public interface RetryPolicy {
+
+    /** 最大尝试次数(含第一次) */
+    int getMaxAttempts();
+
+    /** 第attempt次尝试失败后, 距下一次尝试的等待时间(毫秒), attempt从1开始 */
+    long nextDelayMillis(int attempt);
+}
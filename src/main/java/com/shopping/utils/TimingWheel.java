@@ -0,0 +1,124 @@
+package com.shopping.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 分层时间轮
+ * 第0层每格tickMs, 共wheelSize格; 第n层每格等于第n-1层一整圈, 超出当前层范围的任务放入上一层(按需创建).
+ * 添加任务O(1), 每推进一格只检查各层对应的一个格子; 上层格子到期时把任务重新放入下层, 最终在第0层到期.
+ * 到期时间按tickMs向上取整, 任务不会提前到期, 最多延后一格. 非线程安全, 需由单个线程添加任务和推进时间
+ */
+public class TimingWheel<T> {
+    private final long tickMs;
+    private final int wheelSize;
+    /** 本层一整圈的时长 */
+    private final long interval;
+    private final Bucket<T>[] buckets;
+    /** 当前时间, 按tickMs向下取整 */
+    private long currentTime;
+    private TimingWheel<T> overflowWheel;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMs, int wheelSize, long startMs) {
+        Validator.isTrue(tickMs > 0, "时间轮格子时长必须大于0");
+        Validator.isTrue(wheelSize > 1, "时间轮格子数必须大于1");
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.interval = tickMs * wheelSize;
+        this.currentTime = startMs - startMs % tickMs;
+        this.buckets = new Bucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new Bucket<>();
+        }
+    }
+
+    /** 添加任务, 已到期时不添加并返回false, 由调用方立即处理 */
+    public boolean add(T value, long expirationMs) {
+        long remainder = expirationMs % tickMs;
+        long expiration = remainder == 0 ? expirationMs : expirationMs - remainder + tickMs;
+        if (!addEntry(new Entry<>(value, expiration))) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    /** 把时间推进到timeMs, 逐格处理到期的任务 */
+    public void advanceTo(long timeMs, Consumer<T> expiredHandler) {
+        while (currentTime + tickMs <= timeMs) {
+            tick(currentTime + tickMs, expiredHandler);
+        }
+    }
+
+    /** 时间轮中尚未到期的任务数 */
+    public int size() {
+        return size;
+    }
+
+    private boolean addEntry(Entry<T> entry) {
+        if (entry.expiration < currentTime + tickMs) {
+            return false;
+        }
+        if (entry.expiration < currentTime + interval) {
+            long virtualId = entry.expiration / tickMs;
+            Bucket<T> bucket = buckets[(int) (virtualId % wheelSize)];
+            bucket.expiration = virtualId * tickMs;
+            bucket.entries.add(entry);
+            return true;
+        }
+        return overflowWheel().addEntry(entry);
+    }
+
+    /** 第0层推进一格: 先推进并处理上层到期的格子, 任务降到下层或直接到期, 再处理本层当前格子 */
+    private void tick(long timeMs, Consumer<T> expiredHandler) {
+        List<TimingWheel<T>> wheels = new ArrayList<>();
+        for (TimingWheel<T> wheel = this; wheel != null; wheel = wheel.overflowWheel) {
+            if (timeMs % wheel.tickMs != 0) {
+                break;
+            }
+            wheel.currentTime = timeMs;
+            wheels.add(wheel);
+        }
+        for (int i = wheels.size() - 1; i >= 0; i--) {
+            TimingWheel<T> wheel = wheels.get(i);
+            Bucket<T> bucket = wheel.buckets[(int) ((timeMs / wheel.tickMs) % wheelSize)];
+            if (bucket.expiration != timeMs || bucket.entries.isEmpty()) {
+                continue;
+            }
+            List<Entry<T>> entries = bucket.entries;
+            bucket.entries = new ArrayList<>();
+            for (Entry<T> entry : entries) {
+                if (!addEntry(entry)) {
+                    size--;
+                    expiredHandler.accept(entry.value);
+                }
+            }
+        }
+    }
+
+    private TimingWheel<T> overflowWheel() {
+        if (overflowWheel == null) {
+            overflowWheel = new TimingWheel<>(interval, wheelSize, currentTime);
+        }
+        return overflowWheel;
+    }
+
+    /** 单个格子, expiration为格子的起始时间 */
+    private static final class Bucket<T> {
+        long expiration = -1;
+        List<Entry<T>> entries = new ArrayList<>();
+    }
+
+    private static final class Entry<T> {
+        final T value;
+        final long expiration;
+
+        Entry(T value, long expiration) {
+            this.value = value;
+            this.expiration = expiration;
+        }
+    }
+}
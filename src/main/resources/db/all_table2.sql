@@ -57,7 +57,7 @@ create table `product` (
   `updated_time` datetime not null default current_timestamp on update current_timestamp comment '更新时间',
   primary key (`product_id`),
   unique key `uk_product_code` (`product_code`),
-  key `idx_merchant_id` (`merchant_id`),
+  key `idx_merchant_created` (`merchant_id`, `created_time`),
   key `idx_product_name` (`product_name`)
 #   constraint `fk_product_merchant` foreign key (`merchant_id`) references `merchant` (`merchant_id`) on delete cascade
 ) engine=innodb default charset=utf8mb4 collate=utf8mb4_unicode_ci comment='商品表';
@@ -78,8 +78,8 @@ create table `product_sku` (
   `updated_time` datetime not null default current_timestamp on update current_timestamp comment '更新时间',
   primary key (`sku_id`),
   unique key `uk_sku_code` (`sku_code`),
-  key `idx_product_id` (`product_id`),
-  key `idx_sku_stock` (`stock_quantity`);
+  key `idx_product_created` (`product_id`, `created_time`),
+  key `idx_sku_stock` (`stock_quantity`),
   key `idx_sku_name` (`sku_name`)
 #   constraint `fk_product_sku_product` foreign key (`product_id`) references `product` (`product_id`) on delete cascade
 ) engine=innodb default charset=utf8mb4 collate=utf8mb4_unicode_ci comment='商品sku表';
@@ -94,12 +94,16 @@ create table `orders` (
   `total_amount` decimal(10,2) not null comment '订单总金额',
   `order_status` tinyint(1) not null default '0' comment '订单状态: 0-待支付, 1-已支付, 2-已发货, 3-已完成, 4-已取消, 5-已退款',
   `payment_time` datetime default null comment '支付时间',
+  `refund_time` datetime default null comment '退款时间',
   `created_time` datetime not null default current_timestamp comment '创建时间',
   `updated_time` datetime not null default current_timestamp on update current_timestamp comment '更新时间',
   primary key (`order_id`),
   unique key `uk_order_no` (`order_no`),
-  key `idx_user_id` (`user_id`),
-  key `idx_merchant_id` (`merchant_id`),
+  key `idx_user_created` (`user_id`, `created_time`),
+  key `idx_merchant_created` (`merchant_id`, `created_time`),
+  key `idx_merchant_status_paid` (`merchant_id`, `order_status`, `payment_time`, `total_amount`),
+  key `idx_refund_merchant` (`refund_time`, `merchant_id`, `total_amount`),
+  key `idx_status_created` (`order_status`, `created_time`),
   key `idx_created_time` (`created_time`)
 #   constraint `fk_orders_user` foreign key (`user_id`) references `user` (`user_id`) on delete cascade,
 #   constraint `fk_orders_merchant` foreign key (`merchant_id`) references `merchant` (`merchant_id`) on delete cascade
@@ -140,7 +144,8 @@ create table `account_transaction` (
   `created_time` datetime not null default current_timestamp comment '创建时间',
   primary key (`transaction_id`),
   unique key `uk_transaction_no` (`transaction_no`),
-  key `idx_account_settlement` (`account_id`, `created_time`,`transaction_type`),
+  key `idx_account_settlement` (`account_id`, `account_type`, `transaction_type`, `created_time`, `amount`),
+  key `idx_type_created_account` (`account_type`, `transaction_type`, `created_time`, `account_id`, `amount`),
   key `idx_created_time` (`created_time`),
   key `idx_related` (`related_type`, `related_id`)
 ) engine=innodb default charset=utf8mb4 collate=utf8mb4_unicode_ci comment='账户交易记录表';
@@ -181,9 +186,116 @@ create table `daily_settlement` (
   `created_time` datetime not null default current_timestamp comment '创建时间',
   primary key (`settlement_id`),
   unique key `uk_settlement_no` (`settlement_no`),
-  unique key `uk_merchant_settlement_date` (`merchant_id`, `settlement_date`)
+  unique key `uk_merchant_settlement_date` (`merchant_id`, `settlement_date`),
+  key `idx_settlement_date` (`settlement_date`)
 #   constraint `fk_daily_settlement_merchant` foreign key (`merchant_id`) references `merchant` (`merchant_id`)
 ) engine=innodb default charset=utf8mb4 collate=utf8mb4_unicode_ci comment='每日结算表';
 
--- 创建索引
-create index idx_order_status on orders(order_status);
\ No newline at end of file
+-- 10. 结算分片检查点表
+drop table if exists `settlement_checkpoint`;
+create table `settlement_checkpoint` (
+  `checkpoint_id` bigint(20) not null auto_increment comment '检查点id',
+  `settlement_date` date not null comment '结算日期',
+  `shard_no` int(11) not null default '0' comment '分区序号, 不分区结算时为0',
+  `shard_count` int(11) not null default '1' comment '分区总数, 不分区结算时为1',
+  `start_merchant_id` bigint(20) not null comment '分片起始商家id(包含)',
+  `end_merchant_id` bigint(20) not null comment '分片结束商家id(包含)',
+  `merchant_count` int(11) not null default '0' comment '分片商家数',
+  `success_count` int(11) not null default '0' comment '成功结算商家数',
+  `failed_count` int(11) not null default '0' comment '失败结算商家数',
+  `created_time` datetime not null default current_timestamp comment '创建时间',
+  primary key (`checkpoint_id`),
+  unique key `uk_settlement_chunk` (`settlement_date`, `shard_count`, `shard_no`, `start_merchant_id`)
+) engine=innodb default charset=utf8mb4 collate=utf8mb4_unicode_ci comment='结算分片检查点表';
+
+-- 11. 商家每日实时账本表
+drop table if exists `merchant_daily_ledger`;
+create table `merchant_daily_ledger` (
+  `merchant_id` bigint(20) not null comment '商家id',
+  `ledger_date` date not null comment '账本日期',
+  `stripe` tinyint(3) not null default '0' comment '分条序号, 同一商家同一天拆分为多行累加以减少行锁竞争',
+  `paid_amount` decimal(12,2) not null default '0.00' comment '当日支付的订单金额, 不论之后是否发货、完成或退款; 退款不扣回, 记在退款日的已退款金额中',
+  `refund_amount` decimal(12,2) not null default '0.00' comment '当日退款的订单金额',
+  `net_income` decimal(12,2) not null default '0.00' comment '商家账户当日净收入',
+  `updated_time` datetime not null default current_timestamp on update current_timestamp comment '更新时间',
+  primary key (`merchant_id`, `ledger_date`, `stripe`),
+  key `idx_ledger_date` (`ledger_date`)
+) engine=innodb default charset=utf8mb4 collate=utf8mb4_unicode_ci comment='商家每日实时账本表';
+
+-- 12. 结算分区租约表, 多实例按分区认领结算任务
+drop table if exists `settlement_shard_lease`;
+create table `settlement_shard_lease` (
+  `settlement_date` date not null comment '结算日期',
+  `shard_no` int(11) not null comment '分区序号, 商家按merchant_id % shard_count分区',
+  `shard_count` int(11) not null comment '分区总数',
+  `owner` varchar(100) default null comment '持有租约的实例',
+  `lease_until` datetime default null comment '租约到期时间, 到期未续约时其他实例可接管',
+  `status` tinyint(1) not null default '0' comment '状态: 0-未完成, 1-已完成, 2-失败',
+  `updated_time` datetime not null default current_timestamp on update current_timestamp comment '更新时间',
+  primary key (`settlement_date`, `shard_no`)
+) engine=innodb default charset=utf8mb4 collate=utf8mb4_unicode_ci comment='结算分区租约表';
+
+-- 13. ID号段表, 订单/订单明细/账户流水/库存变更/每日结算的主键由应用按号段预先分配
+drop table if exists `id_segment`;
+create table `id_segment` (
+  `biz_tag` varchar(64) not null comment '业务标识, 使用表名',
+  `max_id` bigint(20) not null default '0' comment '已分配出去的最大id',
+  `step` int(11) not null default '10000' comment '每次分配的号段长度',
+  `updated_time` datetime not null default current_timestamp on update current_timestamp comment '更新时间',
+  primary key (`biz_tag`)
+) engine=innodb default charset=utf8mb4 collate=utf8mb4_unicode_ci comment='id号段表';
+
+insert into `id_segment` (`biz_tag`, `max_id`, `step`) values
+  ('orders', 0, 10000),
+  ('order_item', 0, 10000),
+  ('account_transaction', 0, 10000),
+  ('inventory_change', 0, 10000),
+  ('daily_settlement', 0, 10000);
+
+-- 14. 商家子账户表, 支付收入分散记入多个子账户, 定时归集到商家余额
+drop table if exists `merchant_sub_account`;
+create table `merchant_sub_account` (
+  `merchant_id` bigint(20) not null comment '商家id',
+  `slot` int(11) not null comment '子账户序号, 按订单id取模选择',
+  `balance` decimal(12,2) not null default '0.00' comment '尚未归集到商家主账户的余额',
+  `updated_time` datetime not null default current_timestamp on update current_timestamp comment '更新时间',
+  primary key (`merchant_id`, `slot`)
+) engine=innodb default charset=utf8mb4 collate=utf8mb4_unicode_ci comment='商家子账户表';
+
+-- 15. 商家入账发件箱表, 支付事务只写发件箱, 后台任务按商家合并入账
+drop table if exists `merchant_credit_outbox`;
+create table `merchant_credit_outbox` (
+  `outbox_id` bigint(20) not null auto_increment comment '发件箱记录id',
+  `merchant_id` bigint(20) not null comment '商家id',
+  `amount` decimal(10,2) not null comment '入账金额',
+  `transaction_type` tinyint(1) not null comment '交易类型: 3-收入',
+  `related_id` bigint(20) default null comment '关联id(订单id)',
+  `remark` varchar(50) default null comment '备注',
+  `status` tinyint(1) not null default '0' comment '状态: 0-待入账, 1-已入账, 2-入账失败',
+  `attempts` int(11) not null default '0' comment '入账失败次数',
+  `lease_token` varchar(32) default null comment '认领记录的租约标识',
+  `lease_until` datetime default null comment '租约过期时间, 入账失败后为下次重试时间',
+  `last_error` varchar(255) default null comment '最近一次入账失败的原因',
+  `created_time` datetime not null default current_timestamp comment '创建时间(支付时间), 入账后作为交易流水时间',
+  `posted_time` datetime default null comment '入账时间',
+  primary key (`outbox_id`),
+  key `idx_status_outbox` (`status`, `outbox_id`),
+  key `idx_merchant_status` (`merchant_id`, `status`),
+  key `idx_posted_time` (`posted_time`)
+) engine=innodb default charset=utf8mb4 collate=utf8mb4_unicode_ci comment='商家入账发件箱表';
+
+-- 16. 库存预留记录表, 内存预留的扣减量随下单事务写入, 回写数据库库存后标记为已回写
+drop table if exists `stock_reservation`;
+create table `stock_reservation` (
+  `reservation_id` bigint(20) not null auto_increment comment '预留记录id',
+  `sku_id` bigint(20) not null comment 'sku id',
+  `quantity` int(11) not null comment '预留数量',
+  `related_id` bigint(20) default null comment '关联id(订单id)',
+  `related_type` varchar(50) default null comment '关联类型',
+  `status` tinyint(1) not null default '0' comment '状态: 0-待回写, 1-已回写, 2-回写失败',
+  `created_time` datetime not null default current_timestamp comment '创建时间',
+  `applied_time` datetime default null comment '回写时间',
+  primary key (`reservation_id`),
+  key `idx_status_sku` (`status`, `sku_id`, `reservation_id`),
+  key `idx_applied_time` (`applied_time`)
+) engine=innodb default charset=utf8mb4 collate=utf8mb4_unicode_ci comment='库存预留记录表';
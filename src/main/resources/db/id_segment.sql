@@ -0,0 +1,22 @@
+-- ID号段表(已有库执行, 新建库见all_table2.sql)
+-- 各业务的号段从现有最大主键之后开始分配, 执行期间应停止写入, 避免自增id与号段重叠
+use `shopping_db`;
+
+create table if not exists `id_segment` (
+  `biz_tag` varchar(64) not null comment '业务标识, 使用表名',
+  `max_id` bigint(20) not null default '0' comment '已分配出去的最大id',
+  `step` int(11) not null default '10000' comment '每次分配的号段长度',
+  `updated_time` datetime not null default current_timestamp on update current_timestamp comment '更新时间',
+  primary key (`biz_tag`)
+) engine=innodb default charset=utf8mb4 collate=utf8mb4_unicode_ci comment='id号段表';
+
+insert ignore into `id_segment` (`biz_tag`, `max_id`, `step`)
+select 'orders', ifnull(max(`order_id`), 0), 10000 from `orders`
+union all
+select 'order_item', ifnull(max(`item_id`), 0), 10000 from `order_item`
+union all
+select 'account_transaction', ifnull(max(`transaction_id`), 0), 10000 from `account_transaction`
+union all
+select 'inventory_change', ifnull(max(`change_id`), 0), 10000 from `inventory_change`
+union all
+select 'daily_settlement', ifnull(max(`settlement_id`), 0), 10000 from `daily_settlement`;
@@ -0,0 +1,20 @@
+-- 游标分页索引(已有库执行, 新建库见all_table2.sql)
+-- 索引列为 过滤条件 + 排序键, InnoDB二级索引自带主键, 可直接按 (排序键, 主键) 定位游标位置
+use `shopping_db`;
+
+alter table `orders`
+    drop index `idx_user_id`,
+    drop index `idx_merchant_id`,
+    add index `idx_user_created` (`user_id`, `created_time`),
+    add index `idx_merchant_created` (`merchant_id`, `created_time`);
+
+alter table `product`
+    drop index `idx_merchant_id`,
+    add index `idx_merchant_created` (`merchant_id`, `created_time`);
+
+alter table `product_sku`
+    drop index `idx_product_id`,
+    add index `idx_product_created` (`product_id`, `created_time`);
+
+alter table `daily_settlement`
+    add index `idx_settlement_date` (`settlement_date`);
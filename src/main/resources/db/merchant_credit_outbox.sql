@@ -0,0 +1,17 @@
+-- 商家入账发件箱表(已有库执行, 新建库见all_table2.sql)
+use `shopping_db`;
+
+create table if not exists `merchant_credit_outbox` (
+  `outbox_id` bigint(20) not null auto_increment comment '发件箱记录id',
+  `merchant_id` bigint(20) not null comment '商家id',
+  `amount` decimal(10,2) not null comment '入账金额',
+  `transaction_type` tinyint(1) not null comment '交易类型: 3-收入',
+  `related_id` bigint(20) default null comment '关联id(订单id)',
+  `remark` varchar(50) default null comment '备注',
+  `status` tinyint(1) not null default '0' comment '状态: 0-待入账, 1-已入账',
+  `created_time` datetime not null default current_timestamp comment '创建时间(支付时间), 入账后作为交易流水时间',
+  `posted_time` datetime default null comment '入账时间',
+  primary key (`outbox_id`),
+  key `idx_status_outbox` (`status`, `outbox_id`),
+  key `idx_posted_time` (`posted_time`)
+) engine=innodb default charset=utf8mb4 collate=utf8mb4_unicode_ci comment='商家入账发件箱表';
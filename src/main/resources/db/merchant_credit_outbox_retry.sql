@@ -0,0 +1,10 @@
+-- 商家入账发件箱认领租约和失败重试(已有库执行, 新建库见all_table2.sql)
+use `shopping_db`;
+
+alter table `merchant_credit_outbox`
+  modify column `status` tinyint(1) not null default '0' comment '状态: 0-待入账, 1-已入账, 2-入账失败',
+  add column `attempts` int(11) not null default '0' comment '入账失败次数' after `status`,
+  add column `lease_token` varchar(32) default null comment '认领记录的租约标识' after `attempts`,
+  add column `lease_until` datetime default null comment '租约过期时间, 入账失败后为下次重试时间' after `lease_token`,
+  add column `last_error` varchar(255) default null comment '最近一次入账失败的原因' after `lease_until`,
+  add key `idx_merchant_status` (`merchant_id`, `status`);
@@ -0,0 +1,14 @@
+-- 商家每日实时账本表(已有库执行, 新建库见all_table2.sql)
+use `shopping_db`;
+
+create table if not exists `merchant_daily_ledger` (
+  `merchant_id` bigint(20) not null comment '商家id',
+  `ledger_date` date not null comment '账本日期',
+  `stripe` tinyint(3) not null default '0' comment '分条序号, 同一商家同一天拆分为多行累加以减少行锁竞争',
+  `paid_amount` decimal(12,2) not null default '0.00' comment '当日支付的订单金额, 不论之后是否发货、完成或退款; 退款不扣回, 记在退款日的已退款金额中',
+  `refund_amount` decimal(12,2) not null default '0.00' comment '当日退款的订单金额',
+  `net_income` decimal(12,2) not null default '0.00' comment '商家账户当日净收入',
+  `updated_time` datetime not null default current_timestamp on update current_timestamp comment '更新时间',
+  primary key (`merchant_id`, `ledger_date`, `stripe`),
+  key `idx_ledger_date` (`ledger_date`)
+) engine=innodb default charset=utf8mb4 collate=utf8mb4_unicode_ci comment='商家每日实时账本表';
@@ -0,0 +1,10 @@
+-- 商家子账户表(已有库执行, 新建库见all_table2.sql)
+use `shopping_db`;
+
+create table if not exists `merchant_sub_account` (
+  `merchant_id` bigint(20) not null comment '商家id',
+  `slot` int(11) not null comment '子账户序号, 按订单id取模选择',
+  `balance` decimal(12,2) not null default '0.00' comment '尚未归集到商家主账户的余额',
+  `updated_time` datetime not null default current_timestamp on update current_timestamp comment '更新时间',
+  primary key (`merchant_id`, `slot`)
+) engine=innodb default charset=utf8mb4 collate=utf8mb4_unicode_ci comment='商家子账户表';
@@ -0,0 +1,20 @@
+-- 订单表索引精简(已有库执行, 新建库见all_table2.sql)
+-- 退款统计改按只写一次的refund_time统计, 不建包含updated_time的索引, 避免每次更新订单都改写索引;
+-- idx_order_status是idx_status_created的前缀, 一并删除
+use `shopping_db`;
+
+alter table `orders`
+    add column `refund_time` datetime default null comment '退款时间' after `payment_time`;
+
+-- 已退款订单的updated_time即退款时间
+update `orders` set `refund_time` = `updated_time` where `order_status` = 5 and `refund_time` is null;
+
+alter table `orders`
+    drop index `idx_order_status`,
+    add index `idx_refund_merchant` (`refund_time`, `merchant_id`, `total_amount`);
+
+-- 已按旧版settlement_index.sql建过以下索引的库, 再执行下面的语句删除(新版不再创建这些索引):
+-- alter table `orders`
+--     drop index `idx_merchant_status_updated`,
+--     drop index `idx_status_updated_merchant`,
+--     drop index `idx_status_paid_merchant`;
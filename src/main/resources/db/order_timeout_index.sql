@@ -0,0 +1,6 @@
+-- 订单超时取消索引(已有库执行, 新建库见all_table2.sql)
+-- 启动时按(created_time, order_id)游标分页加载待支付订单重建时间轮, InnoDB二级索引自带主键, 查询只走索引
+use `shopping_db`;
+
+alter table `orders`
+    add index `idx_status_created` (`order_status`, `created_time`);
@@ -0,0 +1,17 @@
+-- 结算分片检查点表(已有库执行, 新建库见all_table2.sql)
+use `shopping_db`;
+
+create table if not exists `settlement_checkpoint` (
+  `checkpoint_id` bigint(20) not null auto_increment comment '检查点id',
+  `settlement_date` date not null comment '结算日期',
+  `shard_no` int(11) not null default '0' comment '分区序号, 不分区结算时为0',
+  `shard_count` int(11) not null default '1' comment '分区总数, 不分区结算时为1',
+  `start_merchant_id` bigint(20) not null comment '分片起始商家id(包含)',
+  `end_merchant_id` bigint(20) not null comment '分片结束商家id(包含)',
+  `merchant_count` int(11) not null default '0' comment '分片商家数',
+  `success_count` int(11) not null default '0' comment '成功结算商家数',
+  `failed_count` int(11) not null default '0' comment '失败结算商家数',
+  `created_time` datetime not null default current_timestamp comment '创建时间',
+  primary key (`checkpoint_id`),
+  unique key `uk_settlement_chunk` (`settlement_date`, `shard_count`, `shard_no`, `start_merchant_id`)
+) engine=innodb default charset=utf8mb4 collate=utf8mb4_unicode_ci comment='结算分片检查点表';
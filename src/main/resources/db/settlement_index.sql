@@ -0,0 +1,16 @@
+-- 日结统计索引(已有库执行, 新建库见all_table2.sql)
+-- 日期条件改为左闭右开区间(>= 当天0点 且 < 次日0点), 不再对列使用DATE(), 可按范围扫描索引;
+-- 索引末尾包含total_amount/amount, SUM可直接在索引上完成, 无需回表.
+-- 订单表只加一个以merchant_id开头的索引: 单商家统计、商家召回分页和逐笔对账都按商家查询,
+-- 全量分组统计按商家ID分批传入IN列表, 在同一索引上按每个商家一段区间扫描;
+-- 退款统计见order_index_trim.sql中的idx_refund_merchant
+use `shopping_db`;
+
+alter table `orders`
+    add index `idx_merchant_status_paid` (`merchant_id`, `order_status`, `payment_time`, `total_amount`);
+
+-- 全量商家分组统计: 按 类型 + 时间 范围扫描, account_id和金额直接从索引读取
+alter table `account_transaction`
+    drop index `idx_account_settlement`,
+    add index `idx_account_settlement` (`account_id`, `account_type`, `transaction_type`, `created_time`, `amount`),
+    add index `idx_type_created_account` (`account_type`, `transaction_type`, `created_time`, `account_id`, `amount`);
@@ -0,0 +1,126 @@
+-- 日结统计查询对比脚本(仅用于测试库)
+-- 1. 生成测试数据; 2. 分别用旧写法(DATE(列) = 日期)和新写法(左闭右开区间)执行EXPLAIN和查询,
+-- 对比type/key/rows/Extra以及Handler_read_*计数. Extra出现Using index表示覆盖索引生效.
+-- 每条对比查询执行后调用record_handler_reads, 把本会话的Handler_read_*计数存入settlement_index_benchmark_result,
+-- 执行完整个脚本后一次查询即得到前后对比; EXPLAIN的rows需从各EXPLAIN输出中抄录.
+-- 注意: 本脚本尚未在MySQL上执行过, 下文"期望"均为按索引定义推断的结果, 不是实测数据;
+-- 在测试库执行后请把settlement_index_benchmark_result的内容和各EXPLAIN的type/key/rows/Extra补充到对应语句下方
+use `shopping_db`;
+
+drop procedure if exists generate_settlement_test_data;
+delimiter $$
+create procedure generate_settlement_test_data(in p_merchant_count int, in p_orders_per_merchant int, in p_days int)
+begin
+    declare m int default 1;
+    declare i int default 0;
+    declare v_time datetime;
+    declare v_status tinyint;
+    declare v_amount decimal(10, 2);
+    while m <= p_merchant_count do
+        set i = 0;
+        start transaction;
+        while i < p_orders_per_merchant do
+            set v_time = date_sub(curdate(), interval floor(rand() * p_days * 86400) second);
+            set v_status = elt(1 + floor(rand() * 4), 0, 1, 3, 5);
+            set v_amount = round(10 + rand() * 990, 2);
+            insert into `orders` (`order_no`, `user_id`, `merchant_id`, `total_amount`, `order_status`,
+                                  `payment_time`, `refund_time`, `created_time`, `updated_time`)
+            values (concat('BENCH', m, '_', i), 1, m, v_amount, v_status,
+                    if(v_status = 0, null, v_time), if(v_status = 5, v_time, null), v_time, v_time);
+            if v_status = 1 then
+                insert into `account_transaction` (`transaction_no`, `account_id`, `account_type`, `related_id`,
+                                                   `related_type`, `amount`, `balance_before`, `balance_after`,
+                                                   `transaction_type`, `created_time`)
+                values (concat('BENCH', m, '_', i), m, 2, m, 'order', v_amount, 0, 0, 3, v_time);
+            end if;
+            set i = i + 1;
+        end while;
+        commit;
+        set m = m + 1;
+    end while;
+end $$
+delimiter ;
+
+drop table if exists settlement_index_benchmark_result;
+create table settlement_index_benchmark_result (
+    `label` varchar(64) not null,
+    `variable_name` varchar(64) not null,
+    `variable_value` bigint not null,
+    primary key (`label`, `variable_name`)
+);
+
+drop procedure if exists record_handler_reads;
+delimiter $$
+create procedure record_handler_reads(in p_label varchar(64))
+begin
+    insert into settlement_index_benchmark_result (`label`, `variable_name`, `variable_value`)
+    select p_label, variable_name, variable_value
+    from performance_schema.session_status
+    where variable_name like 'Handler_read%';
+end $$
+delimiter ;
+
+-- 例: 100个商家, 每个商家2万订单, 分布在最近30天
+-- call generate_settlement_test_data(100, 20000, 30);
+analyze table `orders`, `account_transaction`;
+
+set @merchant_id = 1;
+set @settle_date = date_sub(curdate(), interval 1 day);
+
+-- 旧写法: 对列使用DATE(), 只能用到merchant_id前缀, 逐行回表计算
+explain select ifnull(sum(total_amount), 0) from `orders`
+where merchant_id = @merchant_id and order_status in (1, 2, 3, 5) and date(payment_time) = @settle_date;
+
+flush status;
+select ifnull(sum(total_amount), 0) from `orders` ignore index (`idx_merchant_status_paid`)
+where merchant_id = @merchant_id and order_status in (1, 2, 3, 5) and date(payment_time) = @settle_date;
+call record_handler_reads('paid_old');
+
+-- 新写法: 左闭右开区间, 期望 type=range, key=idx_merchant_status_paid, Extra=Using where; Using index
+explain select ifnull(sum(total_amount), 0) from `orders`
+where merchant_id = @merchant_id and order_status in (1, 2, 3, 5)
+  and payment_time >= @settle_date and payment_time < date_add(@settle_date, interval 1 day);
+
+flush status;
+select ifnull(sum(total_amount), 0) from `orders`
+where merchant_id = @merchant_id and order_status in (1, 2, 3, 5)
+  and payment_time >= @settle_date and payment_time < date_add(@settle_date, interval 1 day);
+call record_handler_reads('paid_new');
+
+-- 全量分组统计已支付金额: 分区内商家ID分批放入IN列表, 期望 type=range, key=idx_merchant_status_paid,
+-- Extra=Using where; Using index, rows约等于这些商家当天支付的订单数; 不再需要以order_status开头的idx_status_paid_merchant
+explain select merchant_id, sum(total_amount) from `orders`
+where merchant_id in (1, 2, 3, 4, 5, 6, 7, 8, 9, 10) and order_status in (1, 2, 3, 5)
+  and payment_time >= @settle_date and payment_time < date_add(@settle_date, interval 1 day)
+group by merchant_id;
+
+flush status;
+select merchant_id, sum(total_amount) from `orders`
+where merchant_id in (1, 2, 3, 4, 5, 6, 7, 8, 9, 10) and order_status in (1, 2, 3, 5)
+  and payment_time >= @settle_date and payment_time < date_add(@settle_date, interval 1 day)
+group by merchant_id;
+call record_handler_reads('paid_grouped');
+
+-- 已退款金额, 期望 type=range, key=idx_refund_merchant; 索引不含order_status, 需回表判断状态, Extra不会出现Using index
+explain select ifnull(sum(total_amount), 0) from `orders`
+where merchant_id = @merchant_id and order_status = 5
+  and refund_time >= @settle_date and refund_time < date_add(@settle_date, interval 1 day);
+
+-- 商家净收入: 旧写法
+explain select ifnull(sum(amount), 0) from `account_transaction`
+where account_id = @merchant_id and date(created_time) = @settle_date and transaction_type in (3, 4);
+
+-- 商家净收入: 新写法, 期望 key=idx_account_settlement, Extra包含Using index
+explain select ifnull(sum(amount), 0) from `account_transaction`
+where account_id = @merchant_id and account_type = 2 and transaction_type in (3, 4)
+  and created_time >= @settle_date and created_time < date_add(@settle_date, interval 1 day);
+
+-- 前后对比: 同一variable_name下paid_old与paid_new的差距即索引和区间写法减少的读取行数
+select * from settlement_index_benchmark_result order by `variable_name`, `label`;
+
+-- 清理测试数据
+-- delete from `account_transaction` where transaction_no like 'BENCH%';
+-- delete from `orders` where order_no like 'BENCH%';
+-- drop procedure if exists generate_settlement_test_data;
+-- drop procedure if exists record_handler_reads;
+-- drop table if exists settlement_index_benchmark_result;
@@ -0,0 +1,20 @@
+-- 结算分区租约表(已有库执行, 新建库见all_table2.sql)
+use `shopping_db`;
+
+create table if not exists `settlement_shard_lease` (
+  `settlement_date` date not null comment '结算日期',
+  `shard_no` int(11) not null comment '分区序号, 商家按merchant_id % shard_count分区',
+  `shard_count` int(11) not null comment '分区总数',
+  `owner` varchar(100) default null comment '持有租约的实例',
+  `lease_until` datetime default null comment '租约到期时间, 到期未续约时其他实例可接管',
+  `status` tinyint(1) not null default '0' comment '状态: 0-未完成, 1-已完成, 2-失败',
+  `updated_time` datetime not null default current_timestamp on update current_timestamp comment '更新时间',
+  primary key (`settlement_date`, `shard_no`)
+) engine=innodb default charset=utf8mb4 collate=utf8mb4_unicode_ci comment='结算分区租约表';
+
+-- 结算检查点增加分区字段
+alter table `settlement_checkpoint`
+    add column `shard_no` int(11) not null default '0' comment '分区序号, 不分区结算时为0' after `settlement_date`,
+    add column `shard_count` int(11) not null default '1' comment '分区总数, 不分区结算时为1' after `shard_no`,
+    drop index `uk_settlement_chunk`,
+    add unique key `uk_settlement_chunk` (`settlement_date`, `shard_count`, `shard_no`, `start_merchant_id`);
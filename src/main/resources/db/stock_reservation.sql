@@ -0,0 +1,16 @@
+-- 库存预留记录表(已有库执行, 新建库见all_table2.sql)
+use `shopping_db`;
+
+create table if not exists `stock_reservation` (
+  `reservation_id` bigint(20) not null auto_increment comment '预留记录id',
+  `sku_id` bigint(20) not null comment 'sku id',
+  `quantity` int(11) not null comment '预留数量',
+  `related_id` bigint(20) default null comment '关联id(订单id)',
+  `related_type` varchar(50) default null comment '关联类型',
+  `status` tinyint(1) not null default '0' comment '状态: 0-待回写, 1-已回写, 2-回写失败',
+  `created_time` datetime not null default current_timestamp comment '创建时间',
+  `applied_time` datetime default null comment '回写时间',
+  primary key (`reservation_id`),
+  key `idx_status_sku` (`status`, `sku_id`, `reservation_id`),
+  key `idx_applied_time` (`applied_time`)
+) engine=innodb default charset=utf8mb4 collate=utf8mb4_unicode_ci comment='库存预留记录表';
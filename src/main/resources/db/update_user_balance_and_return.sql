@@ -2,36 +2,38 @@ drop PROCEDURE if exists `update_user_balance_and_return`;
 DELIMITER $$
 CREATE PROCEDURE `update_user_balance_and_return`(
     IN userId BIGINT,
-    IN amount INT,
+    IN amount DECIMAL(10,2),
     IN operation_type VARCHAR(10)  -- 'decrease' 或 'increase'
 )
 proc_label:BEGIN
     DECLARE affected_rows INT DEFAULT 0;
-    DECLARE result_message VARCHAR(10) DEFAULT 'failure';
+    -- 用户状态和余额都在UPDATE条件中判断, 调用前不需要先查询用户
     if operation_type = 'decrease' then
         UPDATE `user`
         SET account_balance = account_balance - amount,
             balance_version = balance_version + 1
         WHERE user_id = userId
+          AND status = 1
           AND account_balance >= amount;
 
     elseif operation_type = 'increase' then
         UPDATE `user`
         SET account_balance = account_balance + amount,
             balance_version = balance_version + 1
-        WHERE user_id = userId;
+        WHERE user_id = userId
+          AND status = 1;
     else
-        SELECT u.*, result_message FROM `user` u WHERE 1=0;
+        SELECT u.*, 'failure' AS result_message FROM `user` u WHERE 1=0;
         leave proc_label;
     END IF;
 
-    -- 获取影响行数
+    -- 获取影响行数; 用户不存在时返回空结果, 未更新时区分用户已禁用(disabled)和余额不足(failure)
     SET affected_rows = ROW_COUNT();
-    IF affected_rows = 1 THEN
-        SET result_message = 'success';
-    ELSE
-        SET result_message = 'failure';
-    END IF;
-    SELECT u.*, result_message FROM `user` u WHERE u.user_id = userId;
+    SELECT u.*,
+           CASE WHEN affected_rows = 1 THEN 'success'
+                WHEN u.status <> 1 THEN 'disabled'
+                ELSE 'failure' END AS result_message
+    FROM `user` u
+    WHERE u.user_id = userId;
 END$$
-DELIMITER ;
\ No newline at end of file
+DELIMITER ;
@@ -0,0 +1,85 @@
+package com.shopping.benchmark;
+
+import cn.hutool.core.date.DatePattern;
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.util.IdUtil;
+import com.shopping.utils.IdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ID生成器基准测试: 对比原来每次格式化日期 + Hutool雪花ID的写法和IdGenerator的实现.
+ * 默认构建不编译本类, 运行: 先执行 mvn -Pjmh test-compile, 再以test classpath运行本类的main方法;
+ * 加 -prof gc 可对比每次调用的内存分配
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class IdGeneratorBenchmark {
+
+    private IdGenerator idGenerator;
+
+    @Setup
+    public void setUp() {
+        idGenerator = new IdGenerator();
+        ReflectionTestUtils.setField(idGenerator, "orderPrefix", "ORD");
+        ReflectionTestUtils.setField(idGenerator, "transactionPrefix", "TRX");
+        ReflectionTestUtils.setField(idGenerator, "settlementPrefix", "SET");
+        ReflectionTestUtils.setField(idGenerator, "refundPrefix", "REF");
+        ReflectionTestUtils.setField(idGenerator, "workerId", 1);
+        idGenerator.init();
+    }
+
+    /** 原实现: 每次创建DateTime并格式化, 再拼接雪花ID字符串 */
+    @Benchmark
+    public String legacyOrderNo() {
+        String dateStr = DateUtil.date().toString(DatePattern.PURE_DATETIME_PATTERN);
+        return "ORD" + dateStr + IdUtil.getSnowflakeNextIdStr();
+    }
+
+    /** 原实现: 前缀拼接雪花ID */
+    @Benchmark
+    public String legacyTransactionNo() {
+        return "TRX" + IdUtil.getSnowflakeNextId();
+    }
+
+    @Benchmark
+    public String orderNo() {
+        return idGenerator.generateOrderNo();
+    }
+
+    @Benchmark
+    public String transactionNo() {
+        return idGenerator.generateTransactionNo();
+    }
+
+    @Benchmark
+    public String settlementNo() {
+        return idGenerator.generateSettlementNo();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(IdGeneratorBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
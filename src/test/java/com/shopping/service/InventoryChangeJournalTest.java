@@ -0,0 +1,245 @@
+package com.shopping.service;
+
+import com.shopping.entity.InventoryChange;
+import com.shopping.entity.ProductSku;
+import com.shopping.mapper.InventoryChangeMapper;
+import com.shopping.mapper.ProductSkuMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class InventoryChangeJournalTest {
+    private static final Long SKU_ID = 1000L;
+
+    @TempDir
+    Path dir;
+
+    @Mock
+    private InventoryChangeMapper inventoryChangeMapper;
+    @Mock
+    private ProductSkuMapper skuMapper;
+
+    private final List<InventoryChangeJournal> journals = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        journals.forEach(j -> {
+            ((ScheduledExecutorService) ReflectionTestUtils.getField(j, "flusher")).shutdownNow();
+            ((ScheduledExecutorService) ReflectionTestUtils.getField(j, "forcer")).shutdownNow();
+        });
+    }
+
+    @Test
+    @DisplayName("事务提交 - 提交前写日志不入库, 提交后批量入库")
+    void stage_committed_flushedAfterCommit() throws Exception {
+        InventoryChangeJournal journal = journal();
+        TransactionSynchronizationManager.initSynchronization();
+
+        journal.stage(Collections.singletonList(change(1L, 5L)));
+        List<TransactionSynchronization> synchronizations = beforeCommit();
+        verify(inventoryChangeMapper, never()).insertBatch(anyList());
+        TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, TransactionSynchronization.STATUS_COMMITTED);
+        journal.flush();
+
+        ArgumentCaptor<List<InventoryChange>> captor = listCaptor();
+        verify(inventoryChangeMapper).insertBatchIgnore(captor.capture());
+        assertEquals(1L, captor.getValue().get(0).getChangeId());
+    }
+
+    @Test
+    @DisplayName("入库失败重试 - 按change_id忽略已入库的记录, 重试成功后归还缓冲区容量")
+    void flush_retryAfterFailure_ignoresDuplicatesAndReleasesCapacity() throws Exception {
+        InventoryChangeJournal journal = journal();
+        when(inventoryChangeMapper.insertBatchIgnore(anyList()))
+                .thenThrow(new RuntimeException("socket timeout"))
+                .thenReturn(0);
+
+        journal.append(Collections.singletonList(change(1L, 5L)));
+        journal.flush();
+        journal.flush();
+
+        verify(inventoryChangeMapper, times(2)).insertBatchIgnore(anyList());
+        verify(inventoryChangeMapper, never()).insertBatch(anyList());
+        assertTrue(((List<?>) ReflectionTestUtils.getField(journal, "pendingBatch")).isEmpty());
+        assertEquals(1000, ((Semaphore) ReflectionTestUtils.getField(journal, "capacity")).availablePermits());
+    }
+
+    @Test
+    @DisplayName("组落盘 - 同一窗口内并发写入的记录共用一次落盘, 全部写入后返回")
+    void append_concurrentWithinWindow_allForced() throws Exception {
+        InventoryChangeJournal journal = journal();
+        ReflectionTestUtils.setField(journal, "forceWindowMillis", 50L);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            long changeId = i + 1;
+            futures.add(executor.submit(() -> {
+                start.await();
+                journal.append(Collections.singletonList(change(changeId, changeId)));
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertNull(ReflectionTestUtils.getField(journal, "pendingForce"));
+        journal.flush();
+        ArgumentCaptor<List<InventoryChange>> captor = listCaptor();
+        verify(inventoryChangeMapper).insertBatchIgnore(captor.capture());
+        assertEquals(threads, captor.getValue().size());
+    }
+
+    @Test
+    @DisplayName("事务回滚 - 已写日志的记录不入库, 重启后也不重放")
+    void stage_rolledBack_neverInserted() throws Exception {
+        InventoryChangeJournal journal = journal();
+        TransactionSynchronizationManager.initSynchronization();
+
+        journal.stage(Collections.singletonList(change(1L, 5L)));
+        TransactionSynchronizationUtils.invokeAfterCompletion(beforeCommit(), TransactionSynchronization.STATUS_ROLLED_BACK);
+        journal.flush();
+        journal();
+
+        verify(inventoryChangeMapper, never()).insertBatch(anyList());
+        verify(inventoryChangeMapper, never()).insertBatchIgnore(anyList());
+    }
+
+    @Test
+    @DisplayName("提交中崩溃 - 数据库版本号已达到记录的版本号时视为已提交并重放")
+    void replay_unresolvedGroup_committedByVersion() throws Exception {
+        crashAfterPrepare(journal(), change(1L, 5L));
+        when(skuMapper.selectStockVersions(Collections.singleton(SKU_ID))).thenReturn(Collections.singletonList(version(5L)));
+
+        journal();
+
+        ArgumentCaptor<List<InventoryChange>> captor = listCaptor();
+        verify(inventoryChangeMapper).insertBatchIgnore(captor.capture());
+        assertEquals(1L, captor.getValue().get(0).getChangeId());
+        assertEquals(5L, captor.getValue().get(0).getStockVersion());
+    }
+
+    @Test
+    @DisplayName("提交中崩溃 - 数据库版本号小于记录的版本号时视为已回滚, 不重放")
+    void replay_unresolvedGroup_rolledBackByVersion() throws Exception {
+        crashAfterPrepare(journal(), change(1L, 5L));
+        when(skuMapper.selectStockVersions(Collections.singleton(SKU_ID))).thenReturn(Collections.singletonList(version(4L)));
+
+        journal();
+
+        verify(inventoryChangeMapper, never()).insertBatchIgnore(anyList());
+    }
+
+    @Test
+    @DisplayName("提交中崩溃 - 之后的组用到同一版本号时视为已回滚, 之后已提交的组正常重放")
+    void replay_unresolvedGroup_versionReusedByLaterGroup() throws Exception {
+        InventoryChangeJournal journal = journal();
+        TransactionSynchronizationManager.initSynchronization();
+        journal.stage(Collections.singletonList(change(1L, 5L)));
+        beforeCommit();
+        // 第一个事务实际已回滚, 第二个事务重新得到版本号5并提交
+        TransactionSynchronizationManager.initSynchronization();
+        journal.stage(Collections.singletonList(change(2L, 5L)));
+        TransactionSynchronizationUtils.invokeAfterCompletion(beforeCommit(), TransactionSynchronization.STATUS_COMMITTED);
+
+        journal();
+
+        ArgumentCaptor<List<InventoryChange>> captor = listCaptor();
+        verify(inventoryChangeMapper).insertBatchIgnore(captor.capture());
+        assertEquals(1, captor.getValue().size());
+        assertEquals(2L, captor.getValue().get(0).getChangeId());
+        verify(skuMapper, never()).selectStockVersions(anyCollection());
+    }
+
+    private void crashAfterPrepare(InventoryChangeJournal journal, InventoryChange change) {
+        TransactionSynchronizationManager.initSynchronization();
+        journal.stage(Collections.singletonList(change));
+        beforeCommit();
+    }
+
+    /** 执行提交前回调并结束当前事务的同步, 返回本事务的同步回调 */
+    private static List<TransactionSynchronization> beforeCommit() {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationUtils.triggerBeforeCommit(false);
+        TransactionSynchronizationManager.clearSynchronization();
+        return synchronizations;
+    }
+
+    private InventoryChangeJournal journal() throws Exception {
+        InventoryChangeJournal journal = new InventoryChangeJournal();
+        ReflectionTestUtils.setField(journal, "inventoryChangeMapper", inventoryChangeMapper);
+        ReflectionTestUtils.setField(journal, "skuMapper", skuMapper);
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "dir", dir.toString());
+        ReflectionTestUtils.setField(journal, "segmentSize", 1 << 20);
+        ReflectionTestUtils.setField(journal, "bufferCapacity", 1000);
+        ReflectionTestUtils.setField(journal, "bufferWaitMillis", 10L);
+        ReflectionTestUtils.setField(journal, "batchSize", 100);
+        // 测试中手动入库
+        ReflectionTestUtils.setField(journal, "flushIntervalMillis", 60_000L);
+        journal.init();
+        journals.add(journal);
+        return journal;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<InventoryChange>> listCaptor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+
+    private static InventoryChange change(Long changeId, Long stockVersion) {
+        InventoryChange change = new InventoryChange();
+        change.setChangeId(changeId);
+        change.setSkuId(SKU_ID);
+        change.setChangeType(2);
+        change.setStockBefore(10);
+        change.setChangeQuantity(-1);
+        change.setStockAfter(9);
+        change.setRelatedId(100L);
+        change.setRelatedType("createOrder");
+        change.setCreatedTime(LocalDateTime.now());
+        change.setStockVersion(stockVersion);
+        return change;
+    }
+
+    private static ProductSku version(Long stockVersion) {
+        ProductSku sku = new ProductSku();
+        sku.setSkuId(SKU_ID);
+        sku.setStockVersion(stockVersion);
+        return sku;
+    }
+}
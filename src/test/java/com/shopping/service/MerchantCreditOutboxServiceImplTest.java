@@ -0,0 +1,187 @@
+package com.shopping.service;
+
+import com.shopping.entity.AccountTransaction;
+import com.shopping.entity.Merchant;
+import com.shopping.entity.MerchantCreditOutbox;
+import com.shopping.exception.BusinessException;
+import com.shopping.exception.ErrorCode;
+import com.shopping.mapper.MerchantCreditOutboxMapper;
+import com.shopping.mapper.MerchantMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MerchantCreditOutboxServiceImplTest {
+    @Mock
+    private MerchantCreditOutboxMapper outboxMapper;
+    @Mock
+    private MerchantMapper merchantMapper;
+    @Mock
+    private MerchantSubAccountService merchantSubAccountService;
+    @Mock
+    private AccountTransactionService accountTransactionService;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private MerchantCreditOutboxServiceImpl outboxService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(outboxService, "transactionTemplate", new TransactionTemplate(transactionManager));
+        ReflectionTestUtils.setField(outboxService, "enabled", true);
+        ReflectionTestUtils.setField(outboxService, "batchSize", 1000);
+        ReflectionTestUtils.setField(outboxService, "leaseSeconds", 60);
+        ReflectionTestUtils.setField(outboxService, "maxAttempts", 5);
+        ReflectionTestUtils.setField(outboxService, "retryDelaySeconds", 30);
+    }
+
+    @Test
+    @DisplayName("批量入账 - 只处理认领成功的记录, 每个商家一个事务合并入账")
+    void postBatch_postsClaimedRecordsPerMerchant() {
+        List<MerchantCreditOutbox> records = Arrays.asList(
+                record(1L, 100L, "10.00", 0), record(2L, 100L, "20.00", 0), record(3L, 200L, "5.00", 0));
+        when(outboxMapper.findClaimable(1000)).thenReturn(records);
+        when(outboxMapper.claim(eq(Arrays.asList(1L, 2L, 3L)), anyString(), eq(60))).thenReturn(2);
+        // 记录3已被其他实例认领
+        when(outboxMapper.findClaimed(eq(Arrays.asList(1L, 2L, 3L)), anyString())).thenReturn(records.subList(0, 2));
+        stubTransactions();
+        when(merchantMapper.selectMerchantForUpdate(100L)).thenReturn(merchant(100L));
+        when(outboxMapper.markPosted(Arrays.asList(1L, 2L))).thenReturn(2);
+        when(merchantMapper.addMerchantBalance(100L, new BigDecimal("30.00"))).thenReturn(1);
+        when(accountTransactionService.saveTransactions(anyList())).thenReturn(true);
+
+        assertEquals(2, outboxService.postBatch());
+
+        verify(merchantMapper, never()).selectMerchantForUpdate(200L);
+    }
+
+    @Test
+    @DisplayName("批量入账 - 认领失败时不处理")
+    void postBatch_claimLost_skips() {
+        when(outboxMapper.findClaimable(1000)).thenReturn(Collections.singletonList(record(1L, 100L, "10.00", 0)));
+        when(outboxMapper.claim(anyCollection(), anyString(), anyInt())).thenReturn(0);
+
+        assertEquals(0, outboxService.postBatch());
+
+        verify(outboxMapper, never()).findClaimed(anyCollection(), anyString());
+    }
+
+    @Test
+    @DisplayName("批量入账 - 商家批量入账失败时逐条入账, 仍失败的记录延后重试或标记为入账失败")
+    void postBatch_merchantFails_fallsBackPerRecordAndDeadLetters() {
+        List<MerchantCreditOutbox> records = Arrays.asList(record(1L, 100L, "10.00", 0), record(2L, 100L, "20.00", 4));
+        when(outboxMapper.findClaimable(1000)).thenReturn(records);
+        when(outboxMapper.claim(anyCollection(), anyString(), anyInt())).thenReturn(2);
+        when(outboxMapper.findClaimed(anyCollection(), anyString())).thenReturn(records);
+        stubTransactions();
+        when(merchantMapper.selectMerchantForUpdate(100L)).thenReturn(merchant(100L));
+        when(outboxMapper.markPosted(anyCollection())).thenAnswer(invocation -> invocation.<List<Long>>getArgument(0).size());
+        when(accountTransactionService.saveTransactions(anyList())).thenReturn(true);
+        // 记录2使入账失败
+        when(merchantMapper.addMerchantBalance(100L, new BigDecimal("30.00")))
+                .thenThrow(new BusinessException(ErrorCode.OPERATION_FAILED, "更新商家余额失败"));
+        when(merchantMapper.addMerchantBalance(100L, new BigDecimal("10.00"))).thenReturn(1);
+        when(merchantMapper.addMerchantBalance(100L, new BigDecimal("20.00")))
+                .thenThrow(new BusinessException(ErrorCode.OPERATION_FAILED, "更新商家余额失败"));
+
+        assertEquals(2, outboxService.postBatch());
+
+        verify(outboxMapper).markFailed(eq(Collections.singletonList(2L)), eq(5), eq(30), anyString());
+        verify(outboxMapper, never()).markFailed(eq(Arrays.asList(1L, 2L)), anyInt(), anyInt(), anyString());
+    }
+
+    @Test
+    @DisplayName("扣减前并入 - 分批并入全部待入账记录, 后一批的流水余额接续前一批")
+    void postLocked_foldsAllPendingRecords() {
+        ReflectionTestUtils.setField(outboxService, "batchSize", 2);
+        when(outboxMapper.findPendingByMerchant(100L, 2))
+                .thenReturn(Arrays.asList(record(1L, 100L, "10.00", 0), record(2L, 100L, "20.00", 0)))
+                .thenReturn(Collections.singletonList(record(3L, 100L, "5.00", 0)));
+        when(outboxMapper.markPosted(anyCollection())).thenAnswer(invocation -> invocation.<List<Long>>getArgument(0).size());
+        stubTransactions();
+        when(accountTransactionService.saveTransactions(anyList())).thenReturn(true);
+
+        BigDecimal folded = outboxService.postLocked(100L, new BigDecimal("100.00"));
+
+        assertEquals(new BigDecimal("35.00"), folded);
+        verify(accountTransactionService).createTransaction(anyInt(), eq(100L), anyInt(),
+                eq(new BigDecimal("130.00")), eq(new BigDecimal("5.00")), eq(new BigDecimal("135.00")),
+                eq(3L), anyString(), any());
+        verify(outboxMapper, times(2)).findPendingByMerchant(100L, 2);
+    }
+
+    @Test
+    @DisplayName("待入账金额 - 启用时汇总待入账记录, 未启用时为0且不查询")
+    void sumPending_onlyWhenEnabled() {
+        when(outboxMapper.sumPendingByMerchant(100L)).thenReturn(new BigDecimal("35.00"));
+
+        assertEquals(new BigDecimal("35.00"), outboxService.sumPending(100L));
+        ReflectionTestUtils.setField(outboxService, "enabled", false);
+        assertEquals(new BigDecimal("0.00"), outboxService.sumPending(100L));
+
+        verify(outboxMapper, times(1)).sumPendingByMerchant(100L);
+    }
+
+    @Test
+    @DisplayName("结算前入账 - 等待超过重试周期仍未入账时返回受影响的商家, 不抛出异常")
+    void drainBefore_returnsMerchantsStillUnposted() {
+        ReflectionTestUtils.setField(outboxService, "leaseSeconds", 0);
+        ReflectionTestUtils.setField(outboxService, "retryDelaySeconds", 0);
+        LocalDateTime from = LocalDateTime.of(2025, 1, 1, 0, 0);
+        LocalDateTime before = from.plusDays(1);
+        when(outboxMapper.countPendingBefore(before)).thenReturn(1L);
+        when(outboxMapper.findClaimable(1000)).thenReturn(Collections.emptyList());
+        when(outboxMapper.findUnpostedMerchantIds(from, before)).thenReturn(Arrays.asList(200L, 100L));
+
+        Set<Long> merchantIds = outboxService.drainBefore(from, before);
+
+        assertEquals(Arrays.asList(100L, 200L), Arrays.asList(merchantIds.toArray()));
+    }
+
+    private void stubTransactions() {
+        lenient().when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+        when(accountTransactionService.createTransaction(anyInt(), anyLong(), anyInt(), any(), any(), any(),
+                any(), anyString(), any())).thenAnswer(invocation -> new AccountTransaction());
+    }
+
+    private static MerchantCreditOutbox record(Long outboxId, Long merchantId, String amount, int attempts) {
+        MerchantCreditOutbox record = new MerchantCreditOutbox();
+        record.setOutboxId(outboxId);
+        record.setMerchantId(merchantId);
+        record.setAmount(new BigDecimal(amount));
+        record.setTransactionType(3);
+        record.setRelatedId(outboxId);
+        record.setStatus(0);
+        record.setAttempts(attempts);
+        record.setCreatedTime(LocalDateTime.of(2025, 1, 1, 12, 0));
+        return record;
+    }
+
+    private static Merchant merchant(Long merchantId) {
+        Merchant merchant = new Merchant();
+        merchant.setMerchantId(merchantId);
+        merchant.setAccountBalance(new BigDecimal("100.00"));
+        return merchant;
+    }
+}
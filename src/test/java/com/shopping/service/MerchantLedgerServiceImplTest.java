@@ -0,0 +1,110 @@
+package com.shopping.service;
+
+import com.shopping.entity.MerchantDailyLedger;
+import com.shopping.mapper.MerchantDailyLedgerMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MerchantLedgerServiceImplTest {
+    private static final Long MERCHANT_ID = 100L;
+    private static final LocalDate DATE = LocalDate.of(2025, 1, 1);
+
+    @Mock
+    private MerchantDailyLedgerMapper ledgerMapper;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private MerchantLedgerServiceImpl ledgerService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(ledgerService, "transactionTemplate", new TransactionTemplate(transactionManager));
+        ReflectionTestUtils.setField(ledgerService, "enabled", true);
+        ReflectionTestUtils.setField(ledgerService, "stripes", 8);
+        lenient().when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+    }
+
+    @Test
+    @DisplayName("记录退款 - 只在退款日增加已退款金额、扣减净收入, 不扣回支付日的已支付金额")
+    void recordRefund_onlyRefundDateUpdated() {
+        LocalDate refundDate = DATE.plusDays(1);
+
+        ledgerService.recordRefund(MERCHANT_ID, new BigDecimal("30.00"), refundDate.atTime(9, 0));
+
+        ArgumentCaptor<MerchantDailyLedger> captor = ArgumentCaptor.forClass(MerchantDailyLedger.class);
+        verify(ledgerMapper).upsert(captor.capture());
+        assertEquals(refundDate, captor.getValue().getLedgerDate());
+        assertEquals(0, captor.getValue().getPaidAmount().signum());
+        assertEquals(new BigDecimal("30.00"), captor.getValue().getRefundAmount());
+        assertEquals(new BigDecimal("-30.00"), captor.getValue().getNetIncome());
+    }
+
+    @Test
+    @DisplayName("核对账本 - 锁定账本后重新统计源表, 与账本一致时不修正")
+    void verify_concurrentRefundSinceSnapshot_notOverwritten() {
+        // 统计源表后有一笔退款提交, 源表和账本同时变化
+        when(ledgerMapper.sumGroupByMerchant(DATE, 0, 1))
+                .thenReturn(Collections.singletonList(ledger("100.00", "30.00", "70.00")));
+        when(ledgerMapper.sumByMerchantAndDateForUpdate(MERCHANT_ID, DATE)).thenReturn(ledger("100.00", "30.00", "70.00"));
+        Map<Long, MerchantDailyLedger> expected = Collections.singletonMap(MERCHANT_ID, ledger("100.00", "0.00", "100.00"));
+
+        int mismatchCount = ledgerService.verify(DATE, expected, 0, 1, merchantId -> ledger("100.00", "30.00", "70.00"));
+
+        assertEquals(0, mismatchCount);
+        verify(ledgerMapper, never()).deleteByMerchantAndDate(anyLong(), any());
+        verify(ledgerMapper, never()).upsert(any());
+    }
+
+    @Test
+    @DisplayName("核对账本 - 重新统计后仍不一致时按锁定后的源表数据修正")
+    void verify_stillMismatched_repairsWithReloadedSource() {
+        when(ledgerMapper.sumGroupByMerchant(DATE, 0, 1))
+                .thenReturn(Collections.singletonList(ledger("90.00", "0.00", "90.00")));
+        when(ledgerMapper.sumByMerchantAndDateForUpdate(MERCHANT_ID, DATE)).thenReturn(ledger("90.00", "30.00", "60.00"));
+        Map<Long, MerchantDailyLedger> expected = Collections.singletonMap(MERCHANT_ID, ledger("100.00", "0.00", "100.00"));
+
+        int mismatchCount = ledgerService.verify(DATE, expected, 0, 1, merchantId -> ledger("100.00", "30.00", "70.00"));
+
+        assertEquals(1, mismatchCount);
+        InOrder inOrder = inOrder(ledgerMapper);
+        inOrder.verify(ledgerMapper).sumByMerchantAndDateForUpdate(MERCHANT_ID, DATE);
+        inOrder.verify(ledgerMapper).deleteByMerchantAndDate(MERCHANT_ID, DATE);
+        ArgumentCaptor<MerchantDailyLedger> captor = ArgumentCaptor.forClass(MerchantDailyLedger.class);
+        inOrder.verify(ledgerMapper).upsert(captor.capture());
+        assertEquals(new BigDecimal("30.00"), captor.getValue().getRefundAmount());
+        assertEquals(new BigDecimal("70.00"), captor.getValue().getNetIncome());
+        assertEquals(0, captor.getValue().getStripe());
+    }
+
+    private static MerchantDailyLedger ledger(String paid, String refund, String netIncome) {
+        MerchantDailyLedger ledger = new MerchantDailyLedger();
+        ledger.setMerchantId(MERCHANT_ID);
+        ledger.setLedgerDate(DATE);
+        ledger.setPaidAmount(new BigDecimal(paid));
+        ledger.setRefundAmount(new BigDecimal(refund));
+        ledger.setNetIncome(new BigDecimal(netIncome));
+        return ledger;
+    }
+}
@@ -0,0 +1,228 @@
+package com.shopping.service;
+
+import com.shopping.constant.OrderStatus;
+import com.shopping.dto.request.OrderRefundRequest;
+import com.shopping.dto.request.UserBalanceCredit;
+import com.shopping.dto.response.OrderResponse;
+import com.shopping.dto.response.RefundResult;
+import com.shopping.entity.Merchant;
+import com.shopping.entity.Order;
+import com.shopping.entity.OrderItem;
+import com.shopping.entity.User;
+import com.shopping.exception.BusinessException;
+import com.shopping.exception.ErrorCode;
+import com.shopping.mapper.OrdersMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OrderRefundServiceImplTest {
+    @Mock
+    private OrdersMapper ordersMapper;
+    @Mock
+    private OrderService orderService;
+    @Mock
+    private OrderItemService orderItemService;
+    @Mock
+    private UserService userService;
+    @Mock
+    private MerchantService merchantService;
+    @Mock
+    private ProductSkuService productSkuService;
+    @Mock
+    private MerchantLedgerService merchantLedgerService;
+
+    @InjectMocks
+    private OrderRefundServiceImpl orderRefundService;
+
+    /** 订单ID到订单, 模拟orders表 */
+    private final Map<Long, Order> orders = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(orderRefundService, "transactionTemplate",
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(orderRefundService, "batchSize", 500);
+    }
+
+    @Test
+    @DisplayName("单个订单退款 - 退回买家余额, 扣回商家收入, 归还库存")
+    void refundOrder_success() {
+        Order order = paidOrder(1L, 10L, 100L, "200.00");
+        when(orderService.findById(1L)).thenReturn(order);
+        stubRefundTransaction();
+        OrderItem item = new OrderItem();
+        item.setSkuId(1000L);
+        item.setQuantity(2);
+        when(orderItemService.findByOrderIds(Collections.singletonList(1L)))
+                .thenReturn(Collections.singletonMap(1L, Collections.singletonList(item)));
+        OrderResponse response = new OrderResponse();
+        when(orderService.findDetailById(1L)).thenReturn(response);
+
+        assertSame(response, orderRefundService.refundOrder(request(1L, "200.00")));
+
+        verify(ordersMapper).refundPaidOrders(eq(Collections.singletonList(1L)), any(LocalDateTime.class));
+        verify(userService).creditUserBalances(anyList());
+        verify(merchantService).debitBalance(eq(100L), eq(Collections.singletonMap(1L, new BigDecimal("200.00"))),
+                anyInt(), anyString(), anyString());
+        verify(merchantLedgerService).recordRefund(eq(100L), eq(new BigDecimal("200.00")), any(LocalDateTime.class));
+        verify(productSkuService).increaseStockBatch(
+                eq(Collections.singletonMap(1L, Collections.singletonMap(1000L, 2))), anyString(), anyString());
+    }
+
+    @Test
+    @DisplayName("单个订单退款 - 退款金额与订单金额不符, 不开启事务")
+    void refundOrder_amountMismatch_throwsException() {
+        when(orderService.findById(1L)).thenReturn(paidOrder(1L, 10L, 100L, "200.00"));
+
+        BusinessException ex = assertThrows(BusinessException.class,
+                () -> orderRefundService.refundOrder(request(1L, "100.00")));
+
+        assertEquals(ErrorCode.PARAMS_ERROR.getCode(), ex.getCode());
+        verify(ordersMapper, never()).selectPaidOrdersForUpdate(anyCollection());
+        verify(ordersMapper, never()).refundPaidOrders(anyCollection(), any());
+    }
+
+    @Test
+    @DisplayName("批量退款 - 金额不符和买家被禁用的订单逐单失败, 不影响同批其他订单")
+    void refundOrders_ineligibleOrdersFailIndividually() {
+        paidOrder(1L, 10L, 100L, "100.00");
+        paidOrder(2L, 11L, 100L, "50.00");
+        paidOrder(3L, 12L, 100L, "80.00");
+        when(ordersMapper.selectList(any())).thenReturn(Arrays.asList(orders.get(1L), orders.get(2L), orders.get(3L)));
+        // 买家12已被禁用
+        when(userService.list(any())).thenReturn(Arrays.asList(user(10L), user(11L)));
+        stubRefundTransaction();
+
+        RefundResult result = orderRefundService.refundOrders(Arrays.asList(
+                request(1L, null), request(2L, "60.00"), request(3L, null), request(4L, null)));
+
+        assertEquals(4, result.getRequestedCount());
+        assertEquals(Collections.singletonList(1L), result.getRefundedOrderIds());
+        assertEquals(Arrays.asList(2L, 3L), result.getFailedOrderIds());
+        // 订单4不是已支付状态
+        assertEquals(Collections.singletonList(4L), result.getSkippedOrderIds());
+        assertEquals(0, new BigDecimal("100.00").compareTo(result.getRefundedAmount()));
+        verify(ordersMapper).selectPaidOrdersForUpdate(Collections.singletonList(1L));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<UserBalanceCredit>> credits = ArgumentCaptor.forClass(List.class);
+        verify(userService).creditUserBalances(credits.capture());
+        assertEquals(1, credits.getValue().size());
+        assertEquals(10L, credits.getValue().get(0).getUserId());
+    }
+
+    @Test
+    @DisplayName("批量退款 - 批次事务失败时逐单退款, 只有出错的订单失败")
+    void refundOrders_batchFailure_fallsBackPerOrder() {
+        paidOrder(1L, 10L, 100L, "100.00");
+        paidOrder(2L, 11L, 200L, "50.00");
+        when(ordersMapper.selectList(any())).thenReturn(Arrays.asList(orders.get(1L), orders.get(2L)));
+        when(userService.list(any())).thenReturn(Arrays.asList(user(10L), user(11L)));
+        stubRefundTransaction();
+        // 商家200余额不足, 整批回滚
+        when(merchantService.debitBalance(anyLong(), anyMap(), anyInt(), anyString(), anyString())).thenAnswer(invocation -> {
+            if (invocation.<Long>getArgument(0) == 200L) {
+                throw new BusinessException(ErrorCode.BALANCE_NOT_ENOUGH, "商家余额不足");
+            }
+            return new BigDecimal("0.00");
+        });
+
+        RefundResult result = orderRefundService.refundOrders(Arrays.asList(request(1L, null), request(2L, null)));
+
+        assertEquals(Collections.singletonList(1L), result.getRefundedOrderIds());
+        assertEquals(Collections.singletonList(2L), result.getFailedOrderIds());
+        assertTrue(result.getSkippedOrderIds().isEmpty());
+        assertEquals(1, result.getRefundedCount());
+        // 一次整批 + 两次逐单
+        verify(ordersMapper).selectPaidOrdersForUpdate(Arrays.asList(1L, 2L));
+        verify(ordersMapper).selectPaidOrdersForUpdate(Collections.singletonList(1L));
+        verify(ordersMapper).selectPaidOrdersForUpdate(Collections.singletonList(2L));
+    }
+
+    @Test
+    @DisplayName("商家订单召回 - 按游标分批退款该商家的全部已支付订单")
+    void refundMerchantOrders_success() {
+        ReflectionTestUtils.setField(orderRefundService, "batchSize", 2);
+        when(merchantService.findById(100L)).thenReturn(new Merchant());
+        Order first = paidOrder(1L, 10L, 100L, "100.00");
+        Order second = paidOrder(2L, 11L, 100L, "50.00");
+        Order third = paidOrder(3L, 10L, 100L, "30.00");
+        when(ordersMapper.findPaidOrdersByMerchant(100L, null, null, 2)).thenReturn(Arrays.asList(first, second));
+        when(ordersMapper.findPaidOrdersByMerchant(100L, second.getPaymentTime(), 2L, 2))
+                .thenReturn(Collections.singletonList(third));
+        when(ordersMapper.selectList(any())).thenReturn(Arrays.asList(first, second), Collections.singletonList(third));
+        when(userService.list(any())).thenReturn(Arrays.asList(user(10L), user(11L)), Collections.singletonList(user(10L)));
+        stubRefundTransaction();
+
+        RefundResult result = orderRefundService.refundMerchantOrders(100L, "商家违规");
+
+        assertEquals(3, result.getRequestedCount());
+        assertEquals(Arrays.asList(1L, 2L, 3L), result.getRefundedOrderIds());
+        assertTrue(result.getFailedOrderIds().isEmpty());
+        assertEquals(0, new BigDecimal("180.00").compareTo(result.getRefundedAmount()));
+        verify(merchantService, times(2)).debitBalance(eq(100L), anyMap(), anyInt(), anyString(), anyString());
+    }
+
+    /** 事务中按订单ID锁定仍为已支付的订单, 退款更新行数等于订单数 */
+    private void stubRefundTransaction() {
+        when(ordersMapper.selectPaidOrdersForUpdate(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> orderIds = invocation.getArgument(0);
+            return orderIds.stream().map(orders::get).collect(Collectors.toList());
+        });
+        when(ordersMapper.refundPaidOrders(anyCollection(), any(LocalDateTime.class)))
+                .thenAnswer(invocation -> ((Collection<?>) invocation.getArgument(0)).size());
+    }
+
+    private Order paidOrder(Long orderId, Long userId, Long merchantId, String amount) {
+        Order order = new Order();
+        order.setOrderId(orderId);
+        order.setUserId(userId);
+        order.setMerchantId(merchantId);
+        order.setTotalAmount(new BigDecimal(amount));
+        order.setOrderStatus(OrderStatus.PAID.getCode());
+        order.setPaymentTime(LocalDate.of(2025, 12, 31).atTime(10, 0).plusMinutes(orderId));
+        orders.put(orderId, order);
+        return order;
+    }
+
+    private static User user(Long userId) {
+        User user = new User();
+        user.setUserId(userId);
+        user.setStatus(1);
+        return user;
+    }
+
+    private static OrderRefundRequest request(Long orderId, String refundAmount) {
+        OrderRefundRequest request = new OrderRefundRequest();
+        request.setOrderId(orderId);
+        request.setReason("测试退款");
+        if (refundAmount != null) {
+            request.setRefundAmount(new BigDecimal(refundAmount));
+        }
+        return request;
+    }
+}
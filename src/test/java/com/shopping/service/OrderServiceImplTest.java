@@ -6,25 +6,34 @@ import com.shopping.constant.OrderStatus;
 import com.shopping.dto.request.OrderCreateRequest;
 import com.shopping.dto.request.OrderItemRequest;
 import com.shopping.dto.request.OrderPayRequest;
+import com.shopping.dto.response.CartSkuInfo;
 import com.shopping.dto.response.OrderItemResponse;
 import com.shopping.dto.response.OrderResponse;
 import com.shopping.entity.*;
 import com.shopping.exception.BusinessException;
 import com.shopping.exception.ErrorCode;
 import com.shopping.mapper.OrdersMapper;
+import com.shopping.utils.ExponentialBackoffRetryPolicy;
 import com.shopping.utils.IdGenerator;
+import com.shopping.utils.RetryExecutor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -39,13 +48,17 @@ class OrderServiceImplTest {
     @Mock
     private MerchantService merchantService;
     @Mock
-    private ProductService productService;
-    @Mock
     private ProductSkuService productSkuService;
     @Mock
     private OrderItemService orderItemService;
     @Mock
     private IdGenerator idGenerator;
+    @Mock
+    private SegmentIdAllocator segmentIdAllocator;
+    @Mock
+    private MerchantLedgerService merchantLedgerService;
+    @Mock
+    private OrderTimeoutManager orderTimeoutManager;
 
     // === 被测类：真实实例，注入 mocks ===
     @InjectMocks
@@ -58,6 +71,12 @@ class OrderServiceImplTest {
     private Order order;
     @BeforeEach
     void setUp() {
+        // 校验在调用线程中同步执行, 便于按顺序断言
+        ReflectionTestUtils.setField(orderService, "orderValidationExecutor", (Executor) Runnable::run);
+        ReflectionTestUtils.setField(orderService, "transactionTemplate",
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(orderService, "stockRetryExecutor", new RetryExecutor("test",
+                new ExponentialBackoffRetryPolicy(3, 0, 1, 0, 0), null, Runnable::run));
         user = new User();
         user.setUserId(1L);
         user.setUsername("testUser");
@@ -104,9 +123,9 @@ class OrderServiceImplTest {
 
         when(userService.getUserById(1L)).thenReturn(user);
         when(merchantService.findById(100L)).thenReturn(merchant);
-        when(productSkuService.validateStock(1000L, 2)).thenReturn(sku);
-        when(productService.findById(10L)).thenReturn(product);
-        when(idGenerator.generateOrderNo()).thenReturn("ORD20251231001");
+        when(productSkuService.checkCart(request.getOrderItems(), 100L)).thenReturn(cartOf(sku, product));
+        when(segmentIdAllocator.nextId(Order.class)).thenReturn(10000L);
+        when(idGenerator.generateOrderNo()).thenReturn("ORD2025123112000000010000001");
 
         doAnswer(invocation -> {
             Order arg = invocation.getArgument(0);
@@ -114,21 +133,21 @@ class OrderServiceImplTest {
             return 1;
         }).when(ordersMapper).insert(any(Order.class));
 
-        when(productSkuService.subtractStock(eq(1000L), eq(2), eq(1L),
+        when(productSkuService.subtractStockBatch(eq(Collections.singletonMap(1000L, 2)),
                 eq(10000L), eq("createOrder"), anyString()))
                 .thenReturn(true);
 
-        when(orderItemService.saveBatch(anyList())).thenReturn(true);
+        when(orderItemService.saveItems(anyList())).thenReturn(true);
 
         // 调用被测方法（真实逻辑）
         OrderResponse response = orderService.createOrder(request);
 
         assertNotNull(response);
-        assertEquals("ORD20251231001", response.getOrderNo());
+        assertEquals("ORD2025123112000000010000001", response.getOrderNo());
         assertEquals(new BigDecimal("200.00"), response.getTotalAmount());
 
         verify(ordersMapper, times(1)).insert(any(Order.class));
-        verify(orderItemService, times(1)).saveBatch(anyList());
+        verify(orderItemService, times(1)).saveItems(anyList());
     }
 
     @Test @DisplayName("测试_库存不足")
@@ -148,8 +167,8 @@ class OrderServiceImplTest {
         when(merchantService.findById(100L)).thenReturn(merchant);
         doNothing().when(merchantService).validateMerchantStatus(any(Merchant.class));
 
-        // 模拟库存不足：validateStock 抛出异常
-        when(productSkuService.validateStock(1000L, 15))
+        // 模拟库存不足：checkCart 抛出异常
+        when(productSkuService.checkCart(request.getOrderItems(), 100L))
                 .thenThrow(new BusinessException(ErrorCode.STOCK_NOT_ENOUGH, "库存不足"));
 
         // 执行并验证：应该抛出库存不足的异常
@@ -161,8 +180,8 @@ class OrderServiceImplTest {
         assertTrue(ex.getMessage().contains("库存不足"));
         // 验证没有创建订单
         verify(ordersMapper, never()).insert(any(Order.class));
-        verify(productSkuService, never()).subtractStock(anyLong(), anyInt(), anyLong(), anyLong(), anyString(), anyString());
-        verify(orderItemService, never()).saveBatch(anyList());
+        verify(productSkuService, never()).subtractStockBatch(anyMap(), anyLong(), anyString(), anyString());
+        verify(orderItemService, never()).saveItems(anyList());
     }
     @Test @DisplayName("测试_SKU不存在")
     void createOrder_stockValidationFails_throwsBusinessException() {
@@ -181,7 +200,7 @@ class OrderServiceImplTest {
         doNothing().when(merchantService).validateMerchantStatus(any(Merchant.class));
 
         // 模拟库存验证失败（SKU不存在）
-        when(productSkuService.validateStock(1000L, 5))
+        when(productSkuService.checkCart(request.getOrderItems(), 100L))
                 .thenThrow(new BusinessException(ErrorCode.NOT_FOUND_ERROR, "SKU不存在"));
 
         // 执行并验证
@@ -208,9 +227,9 @@ class OrderServiceImplTest {
         doNothing().when(merchantService).validateMerchantStatus(any(Merchant.class));
 
         // 模拟库存验证通过
-        when(productSkuService.validateStock(1000L, 2)).thenReturn(sku);
-        when(productService.findById(10L)).thenReturn(product);
-        when(idGenerator.generateOrderNo()).thenReturn("ORD20251231001");
+        when(productSkuService.checkCart(request.getOrderItems(), 100L)).thenReturn(cartOf(sku, product));
+        when(segmentIdAllocator.nextId(Order.class)).thenReturn(10000L);
+        when(idGenerator.generateOrderNo()).thenReturn("ORD2025123112000000010000001");
 
         // 模拟保存订单成功
         doAnswer(invocation -> {
@@ -219,10 +238,11 @@ class OrderServiceImplTest {
             return 1;
         }).when(ordersMapper).insert(any(Order.class));
 
-        // 模拟扣减库存失败（例如版本号不一致，乐观锁失败）
-        when(productSkuService.subtractStock(eq(1000L), eq(2), eq(1L),
+        // 模拟扣减库存失败（例如并发下单导致库存不足）
+        when(productSkuService.subtractStockBatch(eq(Collections.singletonMap(1000L, 2)),
                 eq(10000L), eq("createOrder"), anyString()))
                 .thenReturn(false);
+        when(orderItemService.saveItems(anyList())).thenReturn(true);
 
         // 执行并验证：应该抛出扣减库存失败的异常
         BusinessException ex = assertThrows(BusinessException.class,
@@ -231,10 +251,73 @@ class OrderServiceImplTest {
         assertEquals(ErrorCode.OPERATION_FAILED.getCode(), ex.getCode());
         assertTrue(ex.getMessage().contains("扣减库存失败"));
 
-        // 验证订单虽然创建了，但事务应该回滚
+        // 库存最后扣减, 订单和明细虽然已写入, 但事务应该回滚
         verify(ordersMapper, times(1)).insert(any(Order.class));
-        verify(orderItemService, never()).saveBatch(anyList());
+        verify(orderItemService, times(1)).saveItems(anyList());
+    }
+    @Test @DisplayName("测试_写入阶段锁等待超时, 在新事务中重新写入")
+    void createOrder_lockWaitTimeout_retriesWriteTransaction() {
+        OrderItemRequest itemReq = new OrderItemRequest();
+        itemReq.setSkuId(1000L);
+        itemReq.setQuantity(2);
+        OrderCreateRequest request = new OrderCreateRequest();
+        request.setUserId(1L);
+        request.setMerchantId(100L);
+        request.setOrderItems(Collections.singletonList(itemReq));
+
+        when(userService.getUserById(1L)).thenReturn(user);
+        when(merchantService.findById(100L)).thenReturn(merchant);
+        when(productSkuService.checkCart(request.getOrderItems(), 100L)).thenReturn(cartOf(sku, product));
+        when(segmentIdAllocator.nextId(Order.class)).thenReturn(10000L);
+        when(idGenerator.generateOrderNo()).thenReturn("ORD2025123112000000010000001");
+        when(ordersMapper.insert(any(Order.class))).thenReturn(1);
+        when(orderItemService.saveItems(anyList())).thenReturn(true);
+        when(productSkuService.subtractStockBatch(eq(Collections.singletonMap(1000L, 2)),
+                eq(10000L), eq("createOrder"), anyString()))
+                .thenThrow(new CannotAcquireLockException("Lock wait timeout exceeded"))
+                .thenReturn(true);
+
+        OrderResponse response = orderService.createOrder(request);
+
+        assertEquals("ORD2025123112000000010000001", response.getOrderNo());
+        verify(ordersMapper, times(2)).insert(any(Order.class));
+        verify(orderTimeoutManager).track(eq(10000L), any(LocalDateTime.class));
     }
+
+    @Test @DisplayName("测试_单SKU订单走组提交, 订单在批次事务中写入")
+    void createOrder_singleSku_groupCommit() {
+        OrderItemRequest itemReq = new OrderItemRequest();
+        itemReq.setSkuId(1000L);
+        itemReq.setQuantity(2);
+        OrderCreateRequest request = new OrderCreateRequest();
+        request.setUserId(1L);
+        request.setMerchantId(100L);
+        request.setOrderItems(Collections.singletonList(itemReq));
+
+        when(userService.getUserById(1L)).thenReturn(user);
+        when(merchantService.findById(100L)).thenReturn(merchant);
+        when(productSkuService.checkCart(request.getOrderItems(), 100L)).thenReturn(cartOf(sku, product));
+        when(segmentIdAllocator.nextId(Order.class)).thenReturn(10000L);
+        when(idGenerator.generateOrderNo()).thenReturn("ORD2025123112000000010000001");
+        when(ordersMapper.insert(any(Order.class))).thenReturn(1);
+        when(orderItemService.saveItems(anyList())).thenReturn(true);
+        when(productSkuService.isGroupCommitApplicable()).thenReturn(true);
+        // 批次中执行写入动作
+        when(productSkuService.subtractStockGrouped(eq(1000L), eq(2), eq(10000L), eq("createOrder"), anyString(), any()))
+                .thenAnswer(invocation -> {
+                    invocation.<Runnable>getArgument(5).run();
+                    return true;
+                });
+
+        OrderResponse response = orderService.createOrder(request);
+
+        assertEquals("ORD2025123112000000010000001", response.getOrderNo());
+        verify(ordersMapper).insert(any(Order.class));
+        verify(orderItemService).saveItems(anyList());
+        verify(productSkuService, never()).subtractStockBatch(anyMap(), anyLong(), anyString(), anyString());
+        verify(orderTimeoutManager).track(eq(10000L), any(LocalDateTime.class));
+    }
+
     @Test @DisplayName("测试_多个商品,其中一个库存不足")
     void createOrder_multipleItems_oneItemInsufficientStock() {
         // 测试场景：多个商品，其中一个库存不足
@@ -257,39 +340,22 @@ class OrderServiceImplTest {
         when(merchantService.findById(100L)).thenReturn(merchant);
         doNothing().when(merchantService).validateMerchantStatus(any(Merchant.class));
 
-        // 模拟第一个SKU库存验证通过
-        when(productSkuService.validateStock(1000L, 5)).thenReturn(sku);
-        // 模拟第二个SKU
-        ProductSku sku2 = new ProductSku();
-        sku2.setSkuId(2000L);
-        sku2.setProductId(20L);
-        sku2.setPrice(new BigDecimal("50.00"));
-        sku2.setStockQuantity(10); // 库存只有10
-        sku2.setStockVersion(1L);
-
-        // 模拟第二个SKU库存不足
-        when(productSkuService.validateStock(2000L, 20))
+        // 模拟整车校验时第二个SKU库存不足
+        when(productSkuService.checkCart(items, 100L))
                 .thenThrow(new BusinessException(ErrorCode.STOCK_NOT_ENOUGH, "商品[2000]库存不足"));
 
-        // 模拟第一个SKU对应的商品
-        Product product1 = new Product();
-        product1.setProductId(10L);
-        product1.setMerchantId(100L);
-        when(productService.findById(10L)).thenReturn(product1);
-
         // 执行并验证
         BusinessException ex = assertThrows(BusinessException.class,
                 () -> orderService.createOrder(request));
 
         assertEquals(ErrorCode.STOCK_NOT_ENOUGH.getCode(), ex.getCode());
 
-        // 验证第一个SKU的库存验证被调用，但第二个失败后就停止了
-        verify(productSkuService, times(1)).validateStock(1000L, 5);
-        verify(productSkuService, times(1)).validateStock(2000L, 20);
+        // 验证整车只查询校验一次
+        verify(productSkuService, times(1)).checkCart(items, 100L);
 
         // 验证没有进行后续操作
         verify(ordersMapper, never()).insert(any(Order.class));
-        verify(productSkuService, never()).subtractStock(anyLong(), anyInt(), anyLong(), anyLong(), anyString(), anyString());
+        verify(productSkuService, never()).subtractStockBatch(anyMap(), anyLong(), anyString(), anyString());
     }
 
     @Test @DisplayName("测试_买数量为0或负数")
@@ -309,7 +375,7 @@ class OrderServiceImplTest {
         doNothing().when(merchantService).validateMerchantStatus(any(Merchant.class));
 
         // 模拟库存验证：数量为0应该抛出参数错误
-        when(productSkuService.validateStock(1000L, 0))
+        when(productSkuService.checkCart(request.getOrderItems(), 100L))
                 .thenThrow(new BusinessException(ErrorCode.PARAMS_ERROR, "购买数量必须大于0"));
 
         // 执行并验证
@@ -351,11 +417,11 @@ class OrderServiceImplTest {
                 eq("decrease"), eq(10000L), eq(2), anyString()))
                 .thenReturn(new User());
 
-        when(merchantService.updateBalance(eq(100L), eq(new BigDecimal("200.00")),
-                eq(true), eq(10000L), eq(3), anyString()))
+        when(merchantService.creditBalance(eq(100L), eq(new BigDecimal("200.00")),
+                eq(10000L), eq(3), anyString(), any(LocalDateTime.class)))
                 .thenReturn(true);
 
-        when(ordersMapper.updateOrderPaid(10000L)).thenReturn(1);
+        when(ordersMapper.updateOrderPaid(eq(10000L), any(LocalDateTime.class))).thenReturn(1);
         OrderPayRequest request = new OrderPayRequest();
         request.setOrderId(10000L);
 
@@ -363,6 +429,7 @@ class OrderServiceImplTest {
         assertNotNull(response);
         assertEquals(OrderStatus.PAID.getCode(), response.getOrderStatus());
         assertNotNull(response.getPaymentTime());
+        verify(merchantLedgerService).recordPayment(eq(100L), eq(new BigDecimal("200.00")), any(LocalDateTime.class));
     }
 
     @Test @DisplayName("测试_支付订单 用户余额不足")
@@ -389,10 +456,10 @@ class OrderServiceImplTest {
         assertTrue(ex.getMessage().contains("用户余额不足"));
 
         // 验证没有更新订单状态为已支付
-        verify(ordersMapper, never()).updateOrderPaid(anyLong());
+        verify(ordersMapper, never()).updateOrderPaid(anyLong(), any());
         // 验证没有增加商家余额
-        verify(merchantService, never()).updateBalance(anyLong(), any(BigDecimal.class), anyBoolean(),
-                anyLong(), anyInt(), anyString());
+        verify(merchantService, never()).creditBalance(anyLong(), any(BigDecimal.class),
+                anyLong(), anyInt(), anyString(), any());
     }
 
     @Test @DisplayName("测试_支付订单 扣减用户余额失败")
@@ -415,9 +482,9 @@ class OrderServiceImplTest {
         assertEquals(ErrorCode.OPERATION_FAILED.getCode(), ex.getCode());
         assertTrue(ex.getMessage().contains("扣减用户余额失败"));
         // 验证没有进行后续操作
-        verify(ordersMapper, never()).updateOrderPaid(anyLong());
-        verify(merchantService, never()).updateBalance(anyLong(), any(BigDecimal.class), anyBoolean(),
-                anyLong(), anyInt(), anyString());
+        verify(ordersMapper, never()).updateOrderPaid(anyLong(), any());
+        verify(merchantService, never()).creditBalance(anyLong(), any(BigDecimal.class),
+                anyLong(), anyInt(), anyString(), any());
     }
 
     @Test @DisplayName("测试_查询订单详情")
@@ -434,7 +501,8 @@ class OrderServiceImplTest {
         when(orderItemService.findByOrderId(10000L)).thenReturn(Collections.singletonList(item));
         when(userService.getUserById(1L)).thenReturn(user);
         when(merchantService.findById(100L)).thenReturn(merchant);
-        when(productSkuService.findById(1000L)).thenReturn(sku);
+        when(productSkuService.findCachedByIds(Collections.singleton(1000L)))
+                .thenReturn(Collections.singletonMap(1000L, sku));
 
         OrderResponse response = orderService.findDetailById(10000L);
         assertNotNull(response);
@@ -502,4 +570,18 @@ class OrderServiceImplTest {
                 () -> orderService.calculateOrderAmount(999L));
         assertEquals(ErrorCode.NOT_FOUND_ERROR.getCode(), ex.getCode());
     }
-}
\ No newline at end of file
+
+    /** 由SKU和商品构造下单校验结果 */
+    private static Map<Long, CartSkuInfo> cartOf(ProductSku sku, Product product) {
+        CartSkuInfo info = new CartSkuInfo();
+        info.setSkuId(sku.getSkuId());
+        info.setProductId(product.getProductId());
+        info.setMerchantId(product.getMerchantId());
+        info.setPrice(sku.getPrice());
+        info.setSkuStatus(sku.getStatus());
+        info.setProductStatus(product.getStatus());
+        info.setStockQuantity(sku.getStockQuantity());
+        info.setStockVersion(sku.getStockVersion());
+        return Collections.singletonMap(sku.getSkuId(), info);
+    }
+}
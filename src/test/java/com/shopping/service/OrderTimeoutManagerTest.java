@@ -0,0 +1,47 @@
+package com.shopping.service;
+
+import com.shopping.exception.BusinessException;
+import com.shopping.exception.ErrorCode;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OrderTimeoutManagerTest {
+    @Mock
+    private OrderService orderService;
+
+    @InjectMocks
+    private OrderTimeoutManager orderTimeoutManager;
+
+    @Test
+    @DisplayName("超时取消 - 批次失败时逐单取消, 只有失败的订单延后重试")
+    void cancel_batchFails_fallsBackToSingleOrders() {
+        List<Long> orderIds = Arrays.asList(1L, 2L, 3L);
+        when(orderService.cancelExpiredOrders(orderIds))
+                .thenThrow(new BusinessException(ErrorCode.OPERATION_FAILED, "批量增加库存失败"));
+        when(orderService.cancelExpiredOrders(Collections.singletonList(1L))).thenReturn(1);
+        when(orderService.cancelExpiredOrders(Collections.singletonList(2L)))
+                .thenThrow(new BusinessException(ErrorCode.OPERATION_FAILED, "批量增加库存失败"));
+        when(orderService.cancelExpiredOrders(Collections.singletonList(3L))).thenReturn(1);
+
+        ReflectionTestUtils.invokeMethod(orderTimeoutManager, "cancel", orderIds, 1000L);
+
+        @SuppressWarnings("unchecked")
+        Map<Long, Long> deadlines = (Map<Long, Long>) ReflectionTestUtils.getField(orderTimeoutManager, "deadlines");
+        assertEquals(Collections.singleton(2L), deadlines.keySet());
+        assertEquals(11000L, deadlines.get(2L));
+    }
+}
@@ -0,0 +1,74 @@
+package com.shopping.service;
+
+import com.shopping.entity.InventoryChange;
+import com.shopping.entity.ProductSku;
+import com.shopping.mapper.ProductSkuMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ProductSkuServiceImplTest {
+    @Mock
+    private ProductSkuMapper skuMapper;
+    @Mock
+    private InventoryChangeService inventoryChangeService;
+    @Mock
+    private StockReservationEngine stockReservationEngine;
+
+    @InjectMocks
+    private ProductSkuServiceImpl productSkuService;
+
+    @Test
+    @DisplayName("批量归还库存 - 已删除的SKU跳过, 其他SKU正常归还")
+    void increaseStockBatch_missingSku_skipped() {
+        Map<Long, Map<Long, Integer>> quantities = new TreeMap<>();
+        quantities.put(1L, Collections.singletonMap(1000L, 2));
+        quantities.put(2L, Collections.singletonMap(2000L, 3));
+        when(skuMapper.selectStocksForUpdate(anyCollection())).thenReturn(Collections.singletonList(sku(1000L, 10)));
+        when(skuMapper.increaseStockBatch(Collections.singletonMap(1000L, 2))).thenReturn(1);
+
+        assertTrue(productSkuService.increaseStockBatch(quantities, "cancelOrder", "订单超时取消归还库存"));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<InventoryChange>> captor = ArgumentCaptor.forClass(List.class);
+        verify(inventoryChangeService).recordBatch(captor.capture());
+        assertEquals(1, captor.getValue().size());
+        assertEquals(1000L, captor.getValue().get(0).getSkuId());
+        assertEquals(12, captor.getValue().get(0).getStockAfter());
+        assertEquals(6L, captor.getValue().get(0).getStockVersion());
+    }
+
+    @Test
+    @DisplayName("批量归还库存 - SKU全部已删除时不更新库存")
+    void increaseStockBatch_allMissing_noUpdate() {
+        when(skuMapper.selectStocksForUpdate(anyCollection())).thenReturn(Collections.emptyList());
+
+        assertTrue(productSkuService.increaseStockBatch(
+                Collections.singletonMap(1L, Collections.singletonMap(1000L, 2)), "cancelOrder", null));
+
+        verify(skuMapper, never()).increaseStockBatch(anyMap());
+        verify(inventoryChangeService, never()).recordBatch(anyList());
+    }
+
+    private static ProductSku sku(Long skuId, int stock) {
+        ProductSku sku = new ProductSku();
+        sku.setSkuId(skuId);
+        sku.setStockQuantity(stock);
+        sku.setStockVersion(5L);
+        return sku;
+    }
+}
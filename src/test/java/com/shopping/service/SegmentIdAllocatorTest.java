@@ -0,0 +1,154 @@
+package com.shopping.service;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfo;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.shopping.entity.IdSegment;
+import com.shopping.entity.Order;
+import com.shopping.entity.OrderItem;
+import com.shopping.exception.BusinessException;
+import com.shopping.mapper.IdSegmentMapper;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SegmentIdAllocatorTest {
+    private static final String TAG = "orders";
+    private static final int STEP = 50;
+
+    @Mock
+    private IdSegmentMapper idSegmentMapper;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private SegmentIdAllocator allocator;
+
+    /** 模拟id_segment.max_id, 同一事务内increaseMaxId和findByTag看到同一个值, 相当于数据库行锁 */
+    private final AtomicLong maxId = new AtomicLong();
+    private final ThreadLocal<Long> claimed = new ThreadLocal<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(allocator, "preloadRatio", 0.5);
+        allocator.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        allocator.destroy();
+    }
+
+    @Test
+    @DisplayName("号段分配 - 多线程并发跨越多次号段切换和预取, 分配的ID不重复且都在已领取的区间内")
+    void nextId_concurrentAcrossSegmentSwitches_unique() throws Exception {
+        stubSegments();
+        int threads = 8;
+        int perThread = 2000;
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    int duplicates = 0;
+                    for (int i = 0; i < perThread; i++) {
+                        if (!ids.add(allocator.nextId(TAG))) {
+                            duplicates++;
+                        }
+                    }
+                    return duplicates;
+                }));
+            }
+            start.countDown();
+            for (Future<Integer> future : futures) {
+                assertEquals(0, future.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(threads * perThread, ids.size());
+        assertTrue(ids.stream().allMatch(id -> id >= 1 && id <= maxId.get()));
+        // 号段切换了多次
+        verify(idSegmentMapper, atLeast(threads * perThread / STEP)).increaseMaxId(TAG);
+    }
+
+    @Test
+    @DisplayName("号段分配 - 业务标识未配置号段时报错")
+    void nextId_tagNotConfigured_throws() {
+        when(idSegmentMapper.increaseMaxId("unknown")).thenReturn(0);
+
+        BusinessException e = assertThrows(BusinessException.class, () -> allocator.nextId("unknown"));
+        assertTrue(e.getMessage().contains("未配置ID号段"));
+    }
+
+    @Test
+    @DisplayName("启动检查 - ASSIGN_ID实体的表缺少号段时阻止启动并列出表名")
+    void afterSingletonsInstantiated_missingSegment_throws() {
+        initTableInfo(Order.class, OrderItem.class);
+        when(idSegmentMapper.findAllTags()).thenReturn(Collections.singletonList("orders"));
+
+        BusinessException e = assertThrows(BusinessException.class, allocator::afterSingletonsInstantiated);
+        assertTrue(e.getMessage().contains("order_item"));
+        assertFalse(e.getMessage().contains("[orders"));
+    }
+
+    @Test
+    @DisplayName("启动检查 - 全部ASSIGN_ID实体的表都已配置号段时通过")
+    void afterSingletonsInstantiated_allConfigured_passes() {
+        initTableInfo(Order.class, OrderItem.class);
+        List<String> tables = TableInfoHelper.getTableInfos().stream()
+                .map(TableInfo::getTableName)
+                .collect(Collectors.toList());
+        when(idSegmentMapper.findAllTags()).thenReturn(tables);
+
+        assertDoesNotThrow(allocator::afterSingletonsInstantiated);
+    }
+
+    private void stubSegments() {
+        when(idSegmentMapper.increaseMaxId(anyString())).thenAnswer(invocation -> {
+            claimed.set(maxId.addAndGet(STEP));
+            return 1;
+        });
+        when(idSegmentMapper.findByTag(anyString())).thenAnswer(invocation -> new IdSegment()
+                .setBizTag(invocation.getArgument(0))
+                .setMaxId(claimed.get())
+                .setStep(STEP));
+    }
+
+    private static void initTableInfo(Class<?>... entityClasses) {
+        MapperBuilderAssistant assistant = new MapperBuilderAssistant(new MybatisConfiguration(), "");
+        for (Class<?> entityClass : entityClasses) {
+            TableInfoHelper.initTableInfo(assistant, entityClass);
+        }
+    }
+}
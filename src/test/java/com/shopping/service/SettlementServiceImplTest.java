@@ -0,0 +1,221 @@
+package com.shopping.service;
+
+import com.shopping.dto.response.OrderMismatch;
+import com.shopping.dto.response.ReconciliationResult;
+import com.shopping.dto.response.SettlementDetail;
+import com.shopping.entity.AccountTransaction;
+import com.shopping.entity.DailySettlement;
+import com.shopping.entity.Order;
+import com.shopping.mapper.AccountTransactionMapper;
+import com.shopping.mapper.DailySettlementMapper;
+import com.shopping.mapper.OrdersMapper;
+import com.shopping.utils.IdGenerator;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SettlementServiceImplTest {
+    private static final Long MERCHANT_ID = 100L;
+    private static final LocalDate DATE = LocalDate.of(2025, 1, 1);
+
+    @Mock
+    private SqlSessionFactory sqlSessionFactory;
+    @Mock
+    private SqlSession sqlSession;
+    @Mock
+    private OrdersMapper ordersMapper;
+    @Mock
+    private AccountTransactionMapper transactionMapper;
+    @Mock
+    private DailySettlementMapper baseMapper;
+    @Mock
+    private IdGenerator idGenerator;
+
+    @InjectMocks
+    private SettlementServiceImpl settlementService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(settlementService, "maxMismatches", 1000);
+        ReflectionTestUtils.setField(settlementService, "baseMapper", baseMapper);
+    }
+
+    @Test
+    @DisplayName("商家结算 - 当日支付并当日退款的订单计入已支付和已退款, 净销售额与收入加退款流水一致")
+    void settleMerchant_sameDayRefund_matched() {
+        // 当日支付300, 其中100当日退款: 收入流水+300, 退款流水-100
+        DailySettlement settlement = settle(DATE, "300.00", "100.00", "200.00");
+
+        assertEquals(new BigDecimal("300.00"), settlement.getPaidAmount());
+        assertEquals(new BigDecimal("100.00"), settlement.getRefundAmount());
+        assertEquals(new BigDecimal("200.00"), settlement.getSoldAmount());
+        assertEquals(1, settlement.getIsMatched());
+    }
+
+    @Test
+    @DisplayName("商家结算 - 跨日退款不改变支付日的已支付金额, 在退款日扣减后与当日净收入一致")
+    void settleMerchant_crossDayRefund_bothDaysMatched() {
+        LocalDate refundDate = DATE.plusDays(1);
+        // 订单100在DATE支付: 支付日收入流水+100; 次日退款并有新订单50支付: 收入流水+50, 退款流水-100
+        DailySettlement paidDay = settle(DATE, "100.00", "0.00", "100.00");
+        DailySettlement refundDay = settle(refundDate, "50.00", "100.00", "-50.00");
+
+        assertEquals(new BigDecimal("100.00"), paidDay.getSoldAmount());
+        assertEquals(1, paidDay.getIsMatched());
+        assertEquals(new BigDecimal("-50.00"), refundDay.getSoldAmount());
+        assertEquals(1, refundDay.getIsMatched());
+    }
+
+    @Test
+    @DisplayName("逐笔对账 - 当日支付后发货或退款的订单按收入流水比对, 不报缺少订单")
+    void reconcile_paidOrdersLaterShippedOrRefunded_matched() {
+        stream(Arrays.asList(order(1L, "100.00", 5), order(2L, "50.00", 3)),
+                Arrays.asList(transaction(1L, "100.00"), transaction(2L, "20.00"), transaction(2L, "30.00")),
+                Collections.emptyList(), Collections.emptyList());
+
+        ReconciliationResult result = settlementService.reconcile(MERCHANT_ID, DATE);
+
+        assertEquals(2, result.getOrderCount());
+        assertEquals(3, result.getTransactionCount());
+        assertEquals(2, result.getMatchedCount());
+        assertEquals(0, result.getMismatchCount());
+        assertEquals(new BigDecimal("150.00"), result.getOrderAmount());
+        assertEquals(new BigDecimal("150.00"), result.getIncomeAmount());
+    }
+
+    @Test
+    @DisplayName("逐笔对账 - 归并比对报告缺少流水、缺少订单和金额不一致")
+    void reconcile_mergeJoin_reportsEachMismatchType() {
+        stream(Arrays.asList(order(1L, "100.00", 1), order(3L, "30.00", 2), order(5L, "60.00", 1)),
+                Arrays.asList(transaction(null, "5.00"), transaction(1L, "100.00"), transaction(4L, "10.00"),
+                        transaction(5L, "50.00")),
+                Collections.emptyList(), Collections.emptyList());
+
+        ReconciliationResult result = settlementService.reconcile(MERCHANT_ID, DATE);
+
+        assertEquals(3, result.getOrderCount());
+        assertEquals(4, result.getTransactionCount());
+        assertEquals(1, result.getMatchedCount());
+        assertEquals(4, result.getMismatchCount());
+        assertEquals(new BigDecimal("190.00"), result.getOrderAmount());
+        assertEquals(new BigDecimal("165.00"), result.getIncomeAmount());
+        assertEquals(Arrays.asList("MISSING_ORDER", "MISSING_INCOME", "MISSING_ORDER", "AMOUNT_MISMATCH"), types(result));
+        assertEquals(Arrays.asList(null, 3L, 4L, 5L),
+                result.getMismatches().stream().map(OrderMismatch::getOrderId).collect(Collectors.toList()));
+    }
+
+    @Test
+    @DisplayName("逐笔对账 - 退款订单与退款流水单独比对, 退款流水取正数")
+    void reconcile_refunds_reportedSeparately() {
+        stream(Collections.emptyList(), Collections.emptyList(),
+                Arrays.asList(order(1L, "100.00", 5), order(6L, "40.00", 5), order(8L, "20.00", 5)),
+                Arrays.asList(transaction(1L, "-100.00"), transaction(7L, "-15.00"), transaction(8L, "-25.00")));
+
+        ReconciliationResult result = settlementService.reconcile(MERCHANT_ID, DATE);
+
+        assertEquals(0, result.getOrderCount());
+        assertEquals(3, result.getRefundOrderCount());
+        assertEquals(3, result.getRefundTransactionCount());
+        assertEquals(1, result.getRefundMatchedCount());
+        assertEquals(new BigDecimal("160.00"), result.getRefundOrderAmount());
+        assertEquals(new BigDecimal("140.00"), result.getRefundAmount());
+        assertEquals(Arrays.asList("MISSING_REFUND", "MISSING_REFUND_ORDER", "REFUND_AMOUNT_MISMATCH"), types(result));
+        assertEquals(new BigDecimal("15.00"), result.getMismatches().get(1).getIncomeAmount());
+    }
+
+    @Test
+    @DisplayName("逐笔对账 - 不一致明细超过上限时截断, 不一致数仍全部统计")
+    void reconcile_tooManyMismatches_truncated() {
+        ReflectionTestUtils.setField(settlementService, "maxMismatches", 2);
+        stream(Arrays.asList(order(1L, "10.00", 1), order(2L, "10.00", 1)), Collections.emptyList(),
+                Collections.singletonList(order(3L, "10.00", 5)), Collections.emptyList());
+
+        ReconciliationResult result = settlementService.reconcile(MERCHANT_ID, DATE);
+
+        assertEquals(3, result.getMismatchCount());
+        assertEquals(2, result.getMismatches().size());
+        assertTrue(result.isTruncated());
+        assertEquals(Arrays.asList(1L, 2L),
+                result.getMismatches().stream().map(OrderMismatch::getOrderId).collect(Collectors.toList()));
+    }
+
+    private void stream(List<Order> paidOrders, List<AccountTransaction> incomes,
+                        List<Order> refundedOrders, List<AccountTransaction> refunds) {
+        when(sqlSessionFactory.openSession()).thenReturn(sqlSession);
+        when(sqlSession.getMapper(OrdersMapper.class)).thenReturn(ordersMapper);
+        when(sqlSession.getMapper(AccountTransactionMapper.class)).thenReturn(transactionMapper);
+        Cursor<Order> paidCursor = cursor(paidOrders);
+        Cursor<AccountTransaction> incomeCursor = cursor(incomes);
+        Cursor<Order> refundedCursor = cursor(refundedOrders);
+        Cursor<AccountTransaction> refundCursor = cursor(refunds);
+        when(ordersMapper.streamPaidOrdersByDate(MERCHANT_ID, DATE)).thenReturn(paidCursor);
+        when(transactionMapper.streamMerchantIncomeByDate(MERCHANT_ID, DATE)).thenReturn(incomeCursor);
+        when(ordersMapper.streamRefundedOrdersByDate(MERCHANT_ID, DATE)).thenReturn(refundedCursor);
+        when(transactionMapper.streamMerchantRefundByDate(MERCHANT_ID, DATE)).thenReturn(refundCursor);
+    }
+
+    /** 按源表统计结果结算一个商家, 返回写入的结算记录 */
+    private DailySettlement settle(LocalDate date, String paid, String refund, String netIncome) {
+        when(ordersMapper.sumMerchantPaidSalesByDate(MERCHANT_ID, date)).thenReturn(new BigDecimal(paid));
+        when(ordersMapper.sumMerchantRefundSalesByDate(MERCHANT_ID, date)).thenReturn(new BigDecimal(refund));
+        when(transactionMapper.calculateMerchantNetIncome(MERCHANT_ID, date)).thenReturn(new BigDecimal(netIncome));
+        when(idGenerator.generateSettlementNo()).thenReturn("ST" + date);
+        when(baseMapper.insert(any(DailySettlement.class))).thenReturn(1);
+
+        SettlementDetail detail = settlementService.settleMerchant(MERCHANT_ID, date);
+
+        assertTrue(detail.getIsSuccess());
+        ArgumentCaptor<DailySettlement> captor = ArgumentCaptor.forClass(DailySettlement.class);
+        verify(baseMapper, atLeastOnce()).insert(captor.capture());
+        return captor.getValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Cursor<T> cursor(List<T> rows) {
+        Cursor<T> cursor = mock(Cursor.class);
+        when(cursor.iterator()).thenReturn(rows.iterator());
+        return cursor;
+    }
+
+    private static List<String> types(ReconciliationResult result) {
+        return result.getMismatches().stream().map(OrderMismatch::getMismatchType).collect(Collectors.toList());
+    }
+
+    private static Order order(Long orderId, String amount, int status) {
+        Order order = new Order();
+        order.setOrderId(orderId);
+        order.setOrderNo("NO" + orderId);
+        order.setMerchantId(MERCHANT_ID);
+        order.setTotalAmount(new BigDecimal(amount));
+        order.setOrderStatus(status);
+        return order;
+    }
+
+    private static AccountTransaction transaction(Long relatedId, String amount) {
+        AccountTransaction transaction = new AccountTransaction();
+        transaction.setAccountId(MERCHANT_ID);
+        transaction.setRelatedId(relatedId);
+        transaction.setAmount(new BigDecimal(amount));
+        return transaction;
+    }
+}
@@ -0,0 +1,163 @@
+package com.shopping.service;
+
+import com.shopping.dto.response.SettlementResult;
+import com.shopping.entity.SettlementShardLease;
+import com.shopping.mapper.SettlementShardLeaseMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SettlementShardCoordinatorTest {
+    private static final LocalDate DATE = LocalDate.of(2025, 1, 1);
+    private static final String INSTANCE = "instance-a";
+
+    @Mock
+    private SettlementShardLeaseMapper leaseMapper;
+    @Mock
+    private SettlementService settlementService;
+
+    @InjectMocks
+    private SettlementShardCoordinator coordinator;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(coordinator, "enabled", true);
+        ReflectionTestUtils.setField(coordinator, "shardCount", 1);
+        ReflectionTestUtils.setField(coordinator, "leaseSeconds", 300);
+        ReflectionTestUtils.setField(coordinator, "pollIntervalMillis", 1L);
+        ReflectionTestUtils.setField(coordinator, "maxWaitLeases", 3);
+        ReflectionTestUtils.setField(coordinator, "maxAttempts", 2);
+        ReflectionTestUtils.setField(coordinator, "instanceId", INSTANCE);
+        coordinator.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        coordinator.destroy();
+    }
+
+    @Test
+    @DisplayName("分区结算 - 认领成功且全部商家结算成功时标记分区完成")
+    void run_claimedAndAllSuccess_completesShard() {
+        when(leaseMapper.findByDate(DATE)).thenReturn(leases(0, null), leases(1, INSTANCE));
+        when(leaseMapper.claim(DATE, 0, INSTANCE, 300)).thenReturn(1);
+        when(settlementService.executeShardSettlement(DATE, 0, 1)).thenReturn(result(true));
+
+        SettlementResult result = coordinator.run(DATE);
+
+        verify(leaseMapper).complete(DATE, 0, INSTANCE);
+        verify(leaseMapper, never()).release(any(), anyInt(), any());
+        assertTrue(result.getAllSuccess());
+        assertEquals(1, result.getSuccessCount());
+        assertTrue(result.getUnfinishedShards().isEmpty());
+    }
+
+    @Test
+    @DisplayName("分区结算 - 有商家失败时释放租约重试, 最后一次仍失败时标记分区失败并报告")
+    void run_partialFailure_releasesThenFailsOnLastAttempt() {
+        when(leaseMapper.findByDate(DATE)).thenReturn(leases(0, null), leases(0, null), leases(2, INSTANCE));
+        when(leaseMapper.claim(DATE, 0, INSTANCE, 300)).thenReturn(1);
+        when(settlementService.executeShardSettlement(DATE, 0, 1)).thenReturn(result(false));
+
+        SettlementResult result = coordinator.run(DATE);
+
+        verify(settlementService, times(2)).executeShardSettlement(DATE, 0, 1);
+        verify(leaseMapper).release(DATE, 0, INSTANCE);
+        verify(leaseMapper).fail(DATE, 0, INSTANCE);
+        verify(leaseMapper, never()).complete(any(), anyInt(), any());
+        assertFalse(result.getAllSuccess());
+        assertEquals(1, result.getFailedCount());
+        assertEquals(Collections.singletonList(0), result.getUnfinishedShards());
+    }
+
+    @Test
+    @DisplayName("分区结算 - 结算异常时释放租约, 重试成功后标记完成")
+    void run_settlementThrows_releasesAndRetries() {
+        when(leaseMapper.findByDate(DATE)).thenReturn(leases(0, null), leases(0, null), leases(1, INSTANCE));
+        when(leaseMapper.claim(DATE, 0, INSTANCE, 300)).thenReturn(1);
+        when(settlementService.executeShardSettlement(DATE, 0, 1))
+                .thenThrow(new RuntimeException("db down"))
+                .thenReturn(result(true));
+
+        SettlementResult result = coordinator.run(DATE);
+
+        verify(leaseMapper).release(DATE, 0, INSTANCE);
+        verify(leaseMapper).complete(DATE, 0, INSTANCE);
+        verify(leaseMapper, never()).fail(any(), anyInt(), any());
+        assertTrue(result.getAllSuccess());
+        assertTrue(result.getUnfinishedShards().isEmpty());
+    }
+
+    @Test
+    @DisplayName("分区结算 - 分区被其他实例认领并完成时本实例不结算")
+    void run_claimedByOtherInstance_waitsUntilCompleted() {
+        when(leaseMapper.findByDate(DATE)).thenReturn(leases(0, "instance-b"), leases(1, "instance-b"));
+        when(leaseMapper.claim(DATE, 0, INSTANCE, 300)).thenReturn(0);
+
+        SettlementResult result = coordinator.run(DATE);
+
+        verify(settlementService, never()).executeShardSettlement(any(), anyInt(), anyInt());
+        assertTrue(result.getAllSuccess());
+        assertEquals(0, result.getTotalMerchants());
+        assertTrue(result.getUnfinishedShards().isEmpty());
+    }
+
+    @Test
+    @DisplayName("分区结算 - 其他实例持续持有租约时等待超过租约时长倍数后停止, 报告未完成的分区")
+    void run_leaseHeldByOtherInstance_stopsAfterWaitLimit() {
+        ReflectionTestUtils.setField(coordinator, "leaseSeconds", 1);
+        ReflectionTestUtils.setField(coordinator, "maxWaitLeases", 1);
+        ReflectionTestUtils.setField(coordinator, "pollIntervalMillis", 50L);
+        when(leaseMapper.findByDate(DATE)).thenReturn(leases(0, "instance-b"));
+        when(leaseMapper.claim(DATE, 0, INSTANCE, 1)).thenReturn(0);
+
+        long start = System.currentTimeMillis();
+        SettlementResult result = coordinator.run(DATE);
+
+        assertTrue(System.currentTimeMillis() - start >= 1000);
+        verify(leaseMapper, atLeast(2)).claim(DATE, 0, INSTANCE, 1);
+        verify(settlementService, never()).executeShardSettlement(any(), anyInt(), anyInt());
+        assertFalse(result.getAllSuccess());
+        assertEquals(Collections.singletonList(0), result.getUnfinishedShards());
+    }
+
+    private static List<SettlementShardLease> leases(int status, String owner) {
+        SettlementShardLease lease = new SettlementShardLease()
+                .setSettlementDate(DATE)
+                .setShardNo(0)
+                .setShardCount(1)
+                .setOwner(owner)
+                .setLeaseUntil(owner == null ? null : LocalDateTime.now().plusMinutes(5))
+                .setStatus(status);
+        return Collections.singletonList(lease);
+    }
+
+    private static SettlementResult result(boolean allSuccess) {
+        SettlementResult result = new SettlementResult();
+        result.setSettlementDate(DATE);
+        result.setAllSuccess(allSuccess);
+        result.setTotalMerchants(1);
+        result.setSuccessCount(allSuccess ? 1 : 0);
+        result.setFailedCount(allSuccess ? 0 : 1);
+        result.setSuccessDetails(new ArrayList<>());
+        result.setFailDetails(new ArrayList<>());
+        return result;
+    }
+}
@@ -0,0 +1,186 @@
+package com.shopping.service;
+
+import com.shopping.entity.ProductSku;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SkuCacheTest {
+    private SkuCache skuCache;
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        skuCache = cache(100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @DisplayName("读穿透 - 未命中和命中返回的SKU都不包含库存字段, 修改返回值不影响缓存")
+    void get_stripsStockFieldsOnMissAndHit() {
+        ProductSku miss = skuCache.get(1L, this::load);
+        assertStockStripped(miss);
+        assertEquals("SKU1", miss.getSkuName());
+
+        miss.setSkuName("changed");
+        ProductSku hit = skuCache.get(1L, this::load);
+
+        assertStockStripped(hit);
+        assertEquals("SKU1", hit.getSkuName());
+        assertEquals(1, loads.get());
+        assertEquals(1L, skuCache.stats().get("hits"));
+    }
+
+    @Test
+    @DisplayName("命中 - 返回的副本保留全部描述字段")
+    void getIfPresent_keepsDescriptiveFields() {
+        ProductSku source = sku(1L);
+        skuCache.get(1L, skuId -> source);
+
+        ProductSku hit = skuCache.getIfPresent(1L);
+
+        assertEquals(source.getSkuCode(), hit.getSkuCode());
+        assertEquals(source.getProductId(), hit.getProductId());
+        assertEquals(source.getSkuName(), hit.getSkuName());
+        assertEquals(source.getPrice(), hit.getPrice());
+        assertEquals(source.getAttributes(), hit.getAttributes());
+        assertEquals(source.getStatus(), hit.getStatus());
+        assertEquals(source.getCreatedTime(), hit.getCreatedTime());
+        assertEquals(source.getUpdatedTime(), hit.getUpdatedTime());
+        assertNotSame(hit, skuCache.getIfPresent(1L));
+    }
+
+    @Test
+    @DisplayName("批量回填 - 传入带库存的SKU时只缓存描述字段")
+    void put_stripsStockFields() {
+        skuCache.put(sku(1L), skuCache.currentVersion(1L));
+
+        assertStockStripped(skuCache.getIfPresent(1L));
+    }
+
+    @Test
+    @DisplayName("失效 - 删除缓存, 下次查询重新加载")
+    void invalidate_reloadsOnNextGet() {
+        skuCache.get(1L, this::load);
+
+        skuCache.invalidate(1L);
+
+        assertNull(skuCache.getIfPresent(1L));
+        skuCache.get(1L, this::load);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    @DisplayName("失效 - 加载期间同一SKU失效时不回填, 其他SKU失效不影响回填")
+    void get_invalidatedDuringLoad_onlySameSkuSkipsFill() {
+        skuCache.get(1L, skuId -> {
+            skuCache.invalidate(1L);
+            return load(skuId);
+        });
+        skuCache.get(2L, skuId -> {
+            skuCache.invalidate(1L);
+            return load(skuId);
+        });
+
+        assertNull(skuCache.getIfPresent(1L));
+        assertNotNull(skuCache.getIfPresent(2L));
+    }
+
+    @Test
+    @DisplayName("失效 - 事务中失效时提交后再失效一次, 提交前回填的旧数据被删除")
+    void invalidate_inTransaction_evictsAgainAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        skuCache.invalidate(1L);
+        // 事务提交前其他线程读到旧数据并回填
+        skuCache.get(1L, this::load);
+        assertNotNull(skuCache.getIfPresent(1L));
+
+        TransactionSynchronizationUtils.triggerAfterCommit();
+
+        assertNull(skuCache.getIfPresent(1L));
+    }
+
+    @Test
+    @DisplayName("容量 - 超出容量时淘汰最近未访问的SKU, 被访问过的保留")
+    void put_overCapacity_evictsUnreferenced() {
+        skuCache = cache(2);
+        skuCache.get(1L, this::load);
+        skuCache.get(2L, this::load);
+        skuCache.get(1L, this::load);
+
+        skuCache.get(3L, this::load);
+
+        assertEquals(2L, skuCache.stats().get("size"));
+        assertEquals(1L, skuCache.stats().get("evictions"));
+        assertNotNull(skuCache.getIfPresent(1L));
+        assertNull(skuCache.getIfPresent(2L));
+        assertNotNull(skuCache.getIfPresent(3L));
+    }
+
+    @Test
+    @DisplayName("容量 - 反复失效和回填时队列中的失效项被清理, 不无限增长")
+    void put_repeatedInvalidation_clockQueueBounded() {
+        skuCache = cache(2);
+        for (int i = 0; i < 100; i++) {
+            skuCache.get(1L, this::load);
+            skuCache.invalidate(1L);
+        }
+        skuCache.get(1L, this::load);
+
+        assertTrue(((AtomicInteger) ReflectionTestUtils.getField(skuCache, "clockSize")).get() <= 4);
+        assertNotNull(skuCache.getIfPresent(1L));
+    }
+
+    private SkuCache cache(int maxSize) {
+        SkuCache cache = new SkuCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxSize", maxSize);
+        cache.init();
+        return cache;
+    }
+
+    private ProductSku load(Long skuId) {
+        loads.incrementAndGet();
+        return sku(skuId);
+    }
+
+    private static ProductSku sku(Long skuId) {
+        ProductSku sku = new ProductSku();
+        sku.setSkuId(skuId);
+        sku.setSkuCode("CODE" + skuId);
+        sku.setProductId(10L);
+        sku.setSkuName("SKU" + skuId);
+        sku.setAttributes("{\"color\":\"red\"}");
+        sku.setCreatedTime(LocalDateTime.of(2025, 1, 1, 0, 0));
+        sku.setUpdatedTime(LocalDateTime.of(2025, 1, 2, 0, 0));
+        sku.setPrice(new BigDecimal("9.90"));
+        sku.setStatus(1);
+        sku.setStockQuantity(10);
+        sku.setStockVersion(3L);
+        sku.setResultMessage("success");
+        return sku;
+    }
+
+    private static void assertStockStripped(ProductSku sku) {
+        assertNotNull(sku);
+        assertNull(sku.getStockQuantity());
+        assertNull(sku.getStockVersion());
+        assertNull(sku.getResultMessage());
+    }
+}
@@ -0,0 +1,143 @@
+package com.shopping.service;
+
+import com.shopping.entity.InventoryChange;
+import com.shopping.entity.ProductSku;
+import com.shopping.exception.BusinessException;
+import com.shopping.exception.ErrorCode;
+import com.shopping.mapper.ProductSkuMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StockGroupCommitterTest {
+    private static final Long SKU_ID = 1000L;
+
+    @Mock
+    private ProductSkuMapper skuMapper;
+    @Mock
+    private InventoryChangeService inventoryChangeService;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private StockGroupCommitter committer;
+
+    private ExecutorService callers;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(committer, "enabled", true);
+        // 窗口足够长, 保证同时提交的请求进入同一批次
+        ReflectionTestUtils.setField(committer, "windowMillis", 300L);
+        ReflectionTestUtils.setField(committer, "maxBatch", 200);
+        ReflectionTestUtils.setField(committer, "threads", 1);
+        ReflectionTestUtils.setField(committer, "timeoutMillis", 5000L);
+        committer.init();
+        callers = Executors.newFixedThreadPool(3);
+        when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+    }
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+        committer.destroy();
+    }
+
+    @Test
+    @DisplayName("组提交 - 窗口内的请求合并为一条UPDATE, 库存变更记录一次写入")
+    void deduct_mergesRequestsIntoOneUpdate() throws Exception {
+        when(skuMapper.selectStocksForUpdate(Collections.singletonList(SKU_ID))).thenReturn(Collections.singletonList(sku(10)));
+        when(skuMapper.updateStockById(SKU_ID, 6)).thenReturn(1);
+
+        List<Future<StockGroupCommitter.DeductResult>> futures = new ArrayList<>();
+        for (int quantity = 1; quantity <= 3; quantity++) {
+            int q = quantity;
+            futures.add(callers.submit(() -> committer.deduct(SKU_ID, q, StockGroupCommitterTest::change)));
+        }
+
+        int minStockAfter = Integer.MAX_VALUE;
+        for (int i = 0; i < futures.size(); i++) {
+            StockGroupCommitter.DeductResult result = futures.get(i).get();
+            assertTrue(result.isSuccess());
+            assertEquals(i + 1, result.getStockBefore() - result.getStockAfter());
+            minStockAfter = Math.min(minStockAfter, result.getStockAfter());
+        }
+        assertEquals(4, minStockAfter);
+        verify(skuMapper).selectStocksForUpdate(Collections.singletonList(SKU_ID));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<InventoryChange>> changes = ArgumentCaptor.forClass(List.class);
+        verify(inventoryChangeService).recordBatch(changes.capture());
+        assertEquals(3, changes.getValue().size());
+    }
+
+    @Test
+    @DisplayName("组提交 - 库存只够部分请求时, 其余请求失败, 只扣减成功请求的数量")
+    void deduct_insufficientStock_failsRemainingRequests() throws Exception {
+        when(skuMapper.selectStocksForUpdate(Collections.singletonList(SKU_ID))).thenReturn(Collections.singletonList(sku(3)));
+        when(skuMapper.updateStockById(SKU_ID, 2)).thenReturn(1);
+
+        Future<StockGroupCommitter.DeductResult> first =
+                callers.submit(() -> committer.deduct(SKU_ID, 2, StockGroupCommitterTest::change));
+        Future<StockGroupCommitter.DeductResult> second =
+                callers.submit(() -> committer.deduct(SKU_ID, 2, StockGroupCommitterTest::change));
+
+        assertNotEquals(first.get().isSuccess(), second.get().isSuccess());
+    }
+
+    @Test
+    @DisplayName("组提交 - 写入失败只回滚该请求的保存点, 异常抛给该调用方, 其他请求正常提交")
+    void deduct_writerFails_onlyThatRequestFails() throws Exception {
+        when(skuMapper.selectStocksForUpdate(Collections.singletonList(SKU_ID))).thenReturn(Collections.singletonList(sku(10)));
+        when(skuMapper.updateStockById(SKU_ID, 1)).thenReturn(1);
+
+        Future<StockGroupCommitter.DeductResult> failing = callers.submit(() -> committer.deduct(SKU_ID, 2,
+                (before, after) -> {
+                    throw new BusinessException(ErrorCode.OPERATION_FAILED, "保存订单失败");
+                }));
+        Future<StockGroupCommitter.DeductResult> succeeding =
+                callers.submit(() -> committer.deduct(SKU_ID, 1, StockGroupCommitterTest::change));
+
+        ExecutionException ex = assertThrows(ExecutionException.class, failing::get);
+        assertTrue(ex.getCause() instanceof BusinessException);
+        assertTrue(succeeding.get().isSuccess());
+        // 保存点回滚一次, 批次事务提交
+        verify(transactionManager).rollback(any());
+    }
+
+    private static InventoryChange change(int stockBefore, int stockAfter) {
+        InventoryChange change = new InventoryChange();
+        change.setSkuId(SKU_ID);
+        change.setStockBefore(stockBefore);
+        change.setStockAfter(stockAfter);
+        return change;
+    }
+
+    private static ProductSku sku(int stock) {
+        ProductSku sku = new ProductSku();
+        sku.setSkuId(SKU_ID);
+        sku.setStockQuantity(stock);
+        return sku;
+    }
+}
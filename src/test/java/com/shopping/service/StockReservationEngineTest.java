@@ -0,0 +1,194 @@
+package com.shopping.service;
+
+import com.shopping.entity.ProductSku;
+import com.shopping.entity.StockReservation;
+import com.shopping.mapper.ProductSkuMapper;
+import com.shopping.mapper.StockReservationMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StockReservationEngineTest {
+    private static final Long SKU_ID = 1000L;
+
+    @Mock
+    private ProductSkuMapper skuMapper;
+    @Mock
+    private StockReservationMapper reservationMapper;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private StockReservationEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(engine, "enabled", true);
+        ReflectionTestUtils.setField(engine, "preload", false);
+        ReflectionTestUtils.setField(engine, "shardCount", 4);
+        ReflectionTestUtils.setField(engine, "flushBatchSize", 1000);
+        ReflectionTestUtils.setField(engine, "retentionHours", 72L);
+        engine.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @DisplayName("预留库存 - 事务提交后扣减生效, 预留记录随事务写入")
+    void reserve_committed() {
+        stubAvailableStock(10);
+        TransactionSynchronizationManager.initSynchronization();
+
+        assertEquals(7, engine.reserve(SKU_ID, 3, 1L, "createOrder"));
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+
+        ArgumentCaptor<StockReservation> captor = ArgumentCaptor.forClass(StockReservation.class);
+        verify(reservationMapper).insert(captor.capture());
+        assertEquals(SKU_ID, captor.getValue().getSkuId());
+        assertEquals(3, captor.getValue().getQuantity());
+        assertEquals(1L, captor.getValue().getRelatedId());
+        assertEquals(0, captor.getValue().getStatus());
+        // 只剩7件
+        assertEquals(-1, engine.reserve(SKU_ID, 8, 2L, "createOrder"));
+    }
+
+    @Test
+    @DisplayName("预留库存 - 事务回滚后归还内存库存")
+    void reserve_rolledBack_releasesStock() {
+        stubAvailableStock(10);
+        TransactionSynchronizationManager.initSynchronization();
+
+        assertEquals(6, engine.reserve(SKU_ID, 4, 1L, "createOrder"));
+        completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertEquals(0, engine.reserve(SKU_ID, 10, 2L, "createOrder"));
+    }
+
+    @Test
+    @DisplayName("预留库存 - 写入预留记录失败时归还内存库存并抛出异常")
+    void reserve_insertFails_releasesStock() {
+        stubAvailableStock(10);
+        when(reservationMapper.insert(any(StockReservation.class)))
+                .thenThrow(new IllegalStateException("db down"))
+                .thenReturn(1);
+
+        assertThrows(IllegalStateException.class, () -> engine.reserve(SKU_ID, 4, 1L, "createOrder"));
+
+        assertEquals(0, engine.reserve(SKU_ID, 10, 2L, "createOrder"));
+    }
+
+    @Test
+    @DisplayName("回写 - 汇总待回写记录, 在一个事务中扣减数据库库存并标记已回写")
+    void flush_appliesPendingReservations() {
+        stubTransaction();
+        when(reservationMapper.findPendingSkuIds()).thenReturn(Collections.singletonList(SKU_ID));
+        when(reservationMapper.findPendingBySku(SKU_ID, 1000))
+                .thenReturn(Arrays.asList(reservation(1L, 2), reservation(2L, 3)));
+        when(skuMapper.selectSkuForUpdate(SKU_ID)).thenReturn(sku(10));
+        when(reservationMapper.markApplied(Arrays.asList(1L, 2L))).thenReturn(2);
+        when(skuMapper.updateStockById(SKU_ID, 5)).thenReturn(1);
+
+        engine.flush();
+
+        verify(reservationMapper, never()).markFailed(anyCollection());
+        verify(reservationMapper).deleteAppliedBefore(any(), eq(1000));
+    }
+
+    @Test
+    @DisplayName("回写 - 数据库库存不足时按顺序回写能满足的记录, 其余标记为回写失败并重新加载计数器")
+    void flush_insufficientStock_marksRemainingFailed() {
+        stubAvailableStock(10);
+        stubTransaction();
+        assertEquals(9, engine.reserve(SKU_ID, 1, 1L, "createOrder"));
+        when(reservationMapper.findPendingSkuIds()).thenReturn(Collections.singletonList(SKU_ID));
+        // 记录2需要3件, 库存只剩4-3=1件; 记录3虽然只要1件也不跳过
+        when(reservationMapper.findPendingBySku(SKU_ID, 1000))
+                .thenReturn(Arrays.asList(reservation(1L, 3), reservation(2L, 3), reservation(3L, 1)));
+        when(skuMapper.selectSkuForUpdate(SKU_ID)).thenReturn(sku(4));
+        when(reservationMapper.markApplied(Collections.singletonList(1L))).thenReturn(1);
+        when(reservationMapper.markFailed(Arrays.asList(2L, 3L))).thenReturn(2);
+        when(skuMapper.updateStockById(SKU_ID, 3)).thenReturn(1);
+
+        engine.flush();
+
+        // 计数器失效, 下次预留按数据库库存重新加载
+        engine.reserve(SKU_ID, 1, 4L, "createOrder");
+        verify(reservationMapper, times(2)).selectAvailableStocks(SKU_ID, 1);
+    }
+
+    @Test
+    @DisplayName("回写 - 记录已被处理时回滚, 不扣减库存也不标记失败")
+    void flush_alreadyProcessed_rollsBack() {
+        stubTransaction();
+        when(reservationMapper.findPendingSkuIds()).thenReturn(Collections.singletonList(SKU_ID));
+        when(reservationMapper.findPendingBySku(SKU_ID, 1000))
+                .thenReturn(Collections.singletonList(reservation(1L, 2)));
+        when(skuMapper.selectSkuForUpdate(SKU_ID)).thenReturn(sku(10));
+        when(reservationMapper.markApplied(Collections.singletonList(1L))).thenReturn(0);
+
+        engine.flush();
+
+        verify(transactionManager).commit(argThat(TransactionStatus::isRollbackOnly));
+        verify(skuMapper, never()).updateStockById(anyLong(), anyInt());
+        verify(reservationMapper, never()).markFailed(anyCollection());
+    }
+
+    private void stubAvailableStock(int stock) {
+        when(reservationMapper.selectAvailableStocks(SKU_ID, 1)).thenReturn(Collections.singletonList(sku(stock)));
+    }
+
+    private void stubTransaction() {
+        when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+    }
+
+    private static void completeTransaction(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, status);
+    }
+
+    private static ProductSku sku(int stock) {
+        ProductSku sku = new ProductSku();
+        sku.setSkuId(SKU_ID);
+        sku.setStockQuantity(stock);
+        sku.setStatus(1);
+        return sku;
+    }
+
+    private static StockReservation reservation(Long reservationId, int quantity) {
+        StockReservation reservation = new StockReservation();
+        reservation.setReservationId(reservationId);
+        reservation.setSkuId(SKU_ID);
+        reservation.setQuantity(quantity);
+        reservation.setRelatedId(reservationId * 10);
+        reservation.setStatus(0);
+        return reservation;
+    }
+}
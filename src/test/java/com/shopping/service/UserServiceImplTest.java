@@ -1,11 +1,11 @@
 package com.shopping.service;
 
-import cn.hutool.core.util.IdUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import com.shopping.constant.AccountType;
 import com.shopping.constant.StatusEnum;
 import com.shopping.constant.TransactionType;
+import com.shopping.dto.request.UserBalanceCredit;
 import com.shopping.dto.request.UserRechargeRequest;
 import com.shopping.dto.response.UserResponse;
 import com.shopping.entity.AccountTransaction;
@@ -13,7 +13,7 @@ import com.shopping.entity.User;
 import com.shopping.exception.BusinessException;
 import com.shopping.exception.ErrorCode;
 import com.shopping.mapper.UserMapper;
-import com.shopping.utils.MoneyUtil;
+import com.shopping.utils.IdGenerator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -23,11 +23,13 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
-import org.mockito.MockedStatic;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -40,6 +42,8 @@ class UserServiceImplTest {
     private UserMapper userMapper;
     @Mock
     private AccountTransactionService accountTransactionService;
+    @Mock
+    private IdGenerator idGenerator;
     @InjectMocks
     private UserServiceImpl userService;
     private User validUser;
@@ -226,30 +230,30 @@ class UserServiceImplTest {
         @Test
         @DisplayName("should recharge successfully")
         void recharge_success() throws Exception {
-            try (MockedStatic<IdUtil> mockedIdUtil = mockStatic(IdUtil.class)) {
-                UserRechargeRequest request = new UserRechargeRequest();
-                request.setUserId(1L);
-                request.setAmount(new BigDecimal("50.00"));
+            UserRechargeRequest request = new UserRechargeRequest();
+            request.setUserId(1L);
+            request.setAmount(new BigDecimal("50.00"));
 
-                User updatedUser = new User();
-                updatedUser.setUserId(1L);
-                updatedUser.setAccountBalance(new BigDecimal("150.00"));
+            User updatedUser = new User();
+            updatedUser.setUserId(1L);
+            updatedUser.setAccountBalance(new BigDecimal("150.00"));
 
-                when(userMapper.selectById(1L)).thenReturn(validUser);
-                when(userMapper.updateById(any(User.class))).thenReturn(1);
-                when(accountTransactionService.saveTransaction(any(AccountTransaction.class))).thenReturn(true);
-                mockedIdUtil.when(IdUtil::getSnowflakeNextId).thenReturn(12345L);
+            when(userMapper.selectById(1L)).thenReturn(validUser);
+            when(userMapper.updateById(any(User.class))).thenReturn(1);
+            when(accountTransactionService.saveTransaction(any(AccountTransaction.class))).thenReturn(true);
+            when(idGenerator.generateTransactionNo()).thenReturn("TRX20251231000000000000001");
 
-                UserResponse response = userService.recharge(request);
+            UserResponse response = userService.recharge(request);
 
-                assertNotNull(response);
-                assertEquals(new BigDecimal("150.00"), response.getNewBalance());
-                assertEquals(new BigDecimal("100.00"), response.getOldBalance());
-                assertEquals(new BigDecimal("50.00"), response.getRechargeAmount());
+            assertNotNull(response);
+            assertEquals(new BigDecimal("150.00"), response.getNewBalance());
+            assertEquals(new BigDecimal("100.00"), response.getOldBalance());
+            assertEquals(new BigDecimal("50.00"), response.getRechargeAmount());
 
-                verify(userMapper, times(1)).updateById(any(User.class));
-                verify(accountTransactionService, times(1)).saveTransaction(any(AccountTransaction.class));
-            }
+            verify(userMapper, times(1)).updateById(any(User.class));
+            verify(accountTransactionService, times(1)).saveTransaction(any(AccountTransaction.class));
+            verify(accountTransactionService).saveTransaction(argThat(t ->
+                    "TRX20251231000000000000001".equals(t.getTransactionNo())));
         }
 
         @Test
@@ -344,50 +348,45 @@ class UserServiceImplTest {
         @Test
         @DisplayName("should throw exception when update balance fails")
         void recharge_updateBalanceFailed() throws Exception {
-            try (MockedStatic<IdUtil> mockedIdUtil = mockStatic(IdUtil.class)) {
-                UserRechargeRequest request = new UserRechargeRequest();
-                request.setUserId(1L);
-                request.setAmount(new BigDecimal("50.00"));
+            UserRechargeRequest request = new UserRechargeRequest();
+            request.setUserId(1L);
+            request.setAmount(new BigDecimal("50.00"));
 
-                when(userMapper.selectById(1L)).thenReturn(validUser);
-                when(userMapper.updateById(any(User.class))).thenReturn(0); // 更新失败，返回0
-                mockedIdUtil.when(IdUtil::getSnowflakeNextId).thenReturn(12345L);
+            when(userMapper.selectById(1L)).thenReturn(validUser);
+            when(userMapper.updateById(any(User.class))).thenReturn(0); // 更新失败，返回0
 
-                BusinessException exception = assertThrows(BusinessException.class, () -> {
-                    userService.recharge(request);
-                });
+            BusinessException exception = assertThrows(BusinessException.class, () -> {
+                userService.recharge(request);
+            });
 
-                assertEquals(ErrorCode.OPERATION_FAILED.getCode(), exception.getCode());
-                assertEquals("更新用户余额失败", exception.getMessage());
-                verify(userMapper, times(1)).updateById(any(User.class));
-            }
+            assertEquals(ErrorCode.OPERATION_FAILED.getCode(), exception.getCode());
+            assertEquals("更新用户余额失败", exception.getMessage());
+            verify(userMapper, times(1)).updateById(any(User.class));
         }
 
         @Test
         @DisplayName("should throw exception when save transaction fails")
         void recharge_saveTransactionFailed() throws Exception {
-            try (MockedStatic<IdUtil> mockedIdUtil = mockStatic(IdUtil.class)) {
-                UserRechargeRequest request = new UserRechargeRequest();
-                request.setUserId(1L);
-                request.setAmount(new BigDecimal("50.00"));
+            UserRechargeRequest request = new UserRechargeRequest();
+            request.setUserId(1L);
+            request.setAmount(new BigDecimal("50.00"));
 
-                User updatedUser = new User();
-                updatedUser.setUserId(1L);
-                updatedUser.setAccountBalance(new BigDecimal("150.00"));
+            User updatedUser = new User();
+            updatedUser.setUserId(1L);
+            updatedUser.setAccountBalance(new BigDecimal("150.00"));
 
-                when(userMapper.selectById(1L)).thenReturn(validUser);
-                when(userMapper.updateById(any(User.class))).thenReturn(1);
-                when(accountTransactionService.saveTransaction(any(AccountTransaction.class))).thenReturn(false);
-                mockedIdUtil.when(IdUtil::getSnowflakeNextId).thenReturn(12345L);
+            when(userMapper.selectById(1L)).thenReturn(validUser);
+            when(userMapper.updateById(any(User.class))).thenReturn(1);
+            when(accountTransactionService.saveTransaction(any(AccountTransaction.class))).thenReturn(false);
+            when(idGenerator.generateTransactionNo()).thenReturn("TRX20251231000000000000001");
 
-                BusinessException exception = assertThrows(BusinessException.class, () -> {
-                    userService.recharge(request);
-                });
+            BusinessException exception = assertThrows(BusinessException.class, () -> {
+                userService.recharge(request);
+            });
 
-                assertEquals(ErrorCode.OPERATION_FAILED.getCode(), exception.getCode());
-                assertEquals("记录交易流水失败", exception.getMessage());
-                verify(accountTransactionService, times(1)).saveTransaction(any(AccountTransaction.class));
-            }
+            assertEquals(ErrorCode.OPERATION_FAILED.getCode(), exception.getCode());
+            assertEquals("记录交易流水失败", exception.getMessage());
+            verify(accountTransactionService, times(1)).saveTransaction(any(AccountTransaction.class));
         }
     }
 
@@ -432,7 +431,6 @@ class UserServiceImplTest {
             updatedUser.setAccountBalance(new BigDecimal("150.00"));
             updatedUser.setResultMessage("success");
 
-            when(userMapper.selectById(1L)).thenReturn(validUser);
             when(userMapper.updateBalanceAndReturn(eq(1L), eq(new BigDecimal("50.00")), eq("increase"))).thenReturn(updatedUser);
             when(accountTransactionService.createTransaction(anyInt(), anyLong(), anyInt(), any(), any(), any(), anyLong(), anyString(), anyString()))
                     .thenReturn(new AccountTransaction());
@@ -461,7 +459,6 @@ class UserServiceImplTest {
             updatedUser.setAccountBalance(new BigDecimal("50.00"));
             updatedUser.setResultMessage("success");
 
-            when(userMapper.selectById(1L)).thenReturn(validUser);
             when(userMapper.updateBalanceAndReturn(eq(1L), eq(new BigDecimal("50.00")), eq("decrease"))).thenReturn(updatedUser);
             when(accountTransactionService.createTransaction(anyInt(), anyLong(), anyInt(), any(), any(), any(), anyLong(), anyString(), anyString()))
                     .thenReturn(new AccountTransaction());
@@ -557,7 +554,7 @@ class UserServiceImplTest {
         @Test
         @DisplayName("should throw exception when user not found")
         void updateUserBalance_userNotFound() {
-            when(userMapper.selectById(999L)).thenReturn(null);
+            when(userMapper.updateBalanceAndReturn(eq(999L), eq(new BigDecimal("50.00")), eq("increase"))).thenReturn(null);
 
             BusinessException exception = assertThrows(BusinessException.class, () -> {
                 userService.updateUserBalance(
@@ -577,7 +574,8 @@ class UserServiceImplTest {
         @Test
         @DisplayName("should throw exception when user is disabled")
         void updateUserBalance_userDisabled() {
-            when(userMapper.selectById(2L)).thenReturn(disabledUser);
+            disabledUser.setResultMessage("disabled");
+            when(userMapper.updateBalanceAndReturn(eq(2L), eq(new BigDecimal("50.00")), eq("increase"))).thenReturn(disabledUser);
 
             BusinessException exception = assertThrows(BusinessException.class, () -> {
                 userService.updateUserBalance(
@@ -597,45 +595,23 @@ class UserServiceImplTest {
         @Test
         @DisplayName("should throw exception when balance is not enough")
         void updateUserBalance_notEnoughBalance() {
-            try (MockedStatic<MoneyUtil> mockedMoneyUtil = mockStatic(MoneyUtil.class)) {
-                when(userMapper.selectById(1L)).thenReturn(validUser);
-                mockedMoneyUtil.when(() -> MoneyUtil.isEnough(any(BigDecimal.class), any(BigDecimal.class))).thenReturn(false);
-
-                BusinessException exception = assertThrows(BusinessException.class, () -> {
-                    userService.updateUserBalance(
-                            1L,
-                            new BigDecimal("150.00"),
-                            "decrease",
-                            1001L,
-                            TransactionType.CONSUME.getCode(),
-                            "测试"
-                    );
-                });
-
-                assertEquals(ErrorCode.BALANCE_NOT_ENOUGH.getCode(), exception.getCode());
-                assertEquals("用户余额不足", exception.getMessage());
-            }
-        }
-
-        @Test
-        @DisplayName("should throw exception when update fails")
-        void updateUserBalance_updateFailed() {
-            when(userMapper.selectById(1L)).thenReturn(validUser);
-            when(userMapper.updateBalanceAndReturn(eq(1L), eq(new BigDecimal("50.00")), eq("increase"))).thenReturn(null);
+            validUser.setResultMessage("failure");
+            when(userMapper.updateBalanceAndReturn(eq(1L), eq(new BigDecimal("150.00")), eq("decrease"))).thenReturn(validUser);
 
             BusinessException exception = assertThrows(BusinessException.class, () -> {
                 userService.updateUserBalance(
                         1L,
-                        new BigDecimal("50.00"),
-                        "increase",
+                        new BigDecimal("150.00"),
+                        "decrease",
                         1001L,
                         TransactionType.CONSUME.getCode(),
                         "测试"
                 );
             });
 
-            assertEquals(ErrorCode.NOT_FOUND_ERROR.getCode(), exception.getCode());
-            assertEquals("扣减用户余额失败, user为null", exception.getMessage());
+            assertEquals(ErrorCode.BALANCE_NOT_ENOUGH.getCode(), exception.getCode());
+            assertEquals("扣减用户余额失败,当前余额:100.00,需要金额:150.00", exception.getMessage());
+            verify(accountTransactionService, never()).saveTransaction(any(AccountTransaction.class));
         }
 
         @Test
@@ -646,7 +622,6 @@ class UserServiceImplTest {
             updatedUser.setAccountBalance(new BigDecimal("40.00"));
             updatedUser.setResultMessage("failure");
 
-            when(userMapper.selectById(1L)).thenReturn(validUser);
             when(userMapper.updateBalanceAndReturn(eq(1L), eq(new BigDecimal("60.00")), eq("decrease"))).thenReturn(updatedUser);
 
             BusinessException exception = assertThrows(BusinessException.class, () -> {
@@ -663,6 +638,39 @@ class UserServiceImplTest {
             assertEquals(ErrorCode.BALANCE_NOT_ENOUGH.getCode(), exception.getCode());
             assertTrue(exception.getMessage().startsWith("扣减用户余额失败,当前余额:"));
         }
+    
+        @Test
+        @DisplayName("should credit many users in one update")
+        void creditUserBalances_success() {
+            UserBalanceCredit first = new UserBalanceCredit();
+            first.setUserId(1L);
+            first.setAmount(new BigDecimal("30.00"));
+            first.setTransactionType(TransactionType.REFUND.getCode());
+            first.setRelatedId(1001L);
+            UserBalanceCredit second = new UserBalanceCredit();
+            second.setUserId(1L);
+            second.setAmount(new BigDecimal("20.00"));
+            second.setTransactionType(TransactionType.REFUND.getCode());
+            second.setRelatedId(1002L);
+
+            User updatedUser = new User();
+            updatedUser.setUserId(1L);
+            updatedUser.setAccountBalance(new BigDecimal("150.00"));
+            when(userMapper.increaseBalances(eq(Collections.singletonMap(1L, new BigDecimal("50.00"))))).thenReturn(1);
+            when(userMapper.selectBatchIds(anyCollection())).thenReturn(Collections.singletonList(updatedUser));
+            when(accountTransactionService.createTransaction(anyInt(), anyLong(), anyInt(), any(), any(), any(), anyLong(), any(), any()))
+                    .thenReturn(new AccountTransaction());
+            when(accountTransactionService.saveTransactions(anyList())).thenReturn(true);
+
+            Map<Long, BigDecimal> balances = userService.creditUserBalances(Arrays.asList(first, second));
+
+            assertEquals(new BigDecimal("150.00"), balances.get(1L));
+            // 同一用户的两笔入账按顺序推算交易前后余额
+            verify(accountTransactionService).createTransaction(eq(AccountType.USER_ACCOUNT.getCode()), eq(1L), anyInt(),
+                    eq(new BigDecimal("100.00")), eq(new BigDecimal("30.00")), eq(new BigDecimal("130.00")), eq(1001L), any(), any());
+            verify(accountTransactionService).createTransaction(eq(AccountType.USER_ACCOUNT.getCode()), eq(1L), anyInt(),
+                    eq(new BigDecimal("130.00")), eq(new BigDecimal("20.00")), eq(new BigDecimal("150.00")), eq(1002L), any(), any());
+        }
     }
 
     @Nested
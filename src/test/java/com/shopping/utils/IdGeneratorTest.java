@@ -0,0 +1,154 @@
+package com.shopping.utils;
+
+import com.shopping.exception.BusinessException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdGeneratorTest {
+    private static final int THREADS = 8;
+
+    private IdGenerator idGenerator;
+
+    @BeforeEach
+    void setUp() {
+        idGenerator = newGenerator(1);
+    }
+
+    @Test
+    @DisplayName("结算单号 - 格式为前缀 + 14位时间 + 4位节点号 + 7位序号")
+    void testSettlementNoFormat() {
+        String settlementNo = idGenerator.generateSettlementNo();
+
+        assertEquals(3 + 14 + 4 + 7, settlementNo.length());
+        assertTrue(settlementNo.startsWith("SET"));
+        assertEquals("0001", settlementNo.substring(17, 21));
+        assertTrue(settlementNo.substring(3).chars().allMatch(Character::isDigit));
+    }
+
+    @Test
+    @DisplayName("订单号 - 后缀为节点号和序号, 不包含订单ID")
+    void testOrderNoFormat() {
+        String first = idGenerator.generateOrderNo();
+        String second = idGenerator.generateOrderNo();
+
+        assertEquals(3 + 14 + 4 + 7, first.length());
+        assertTrue(first.startsWith("ORD"));
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    @DisplayName("结算单号 - 多线程跨秒生成不重复")
+    void testSettlementNoUniqueAcrossSeconds() throws Exception {
+        assertUniqueAcrossSeconds(idGenerator::generateSettlementNo);
+    }
+
+    @Test
+    @DisplayName("交易流水号 - 多线程跨秒生成不重复")
+    void testTransactionNoUniqueAcrossSeconds() throws Exception {
+        assertUniqueAcrossSeconds(idGenerator::generateTransactionNo);
+    }
+
+    @Test
+    @DisplayName("秒内序号用完 - 借用下一秒, 编号不重复")
+    void testSequenceExhausted() {
+        long maxSequence = (1L << 22) - 1;
+        long second = System.currentTimeMillis() / 1000;
+        AtomicLong state = (AtomicLong) ReflectionTestUtils.getField(idGenerator, "state");
+        state.set((second << 22) | (maxSequence - 1));
+
+        Set<String> numbers = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            assertTrue(numbers.add(idGenerator.generateRefundNo()));
+        }
+        assertEquals(second + 1, state.get() >>> 22);
+    }
+
+    @Test
+    @DisplayName("不同节点 - 同一时刻生成的编号不重复")
+    void testDifferentWorkers() {
+        IdGenerator other = newGenerator(2);
+
+        Set<String> numbers = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(numbers.add(idGenerator.generateTransactionNo()));
+            assertTrue(numbers.add(other.generateTransactionNo()));
+        }
+    }
+
+    @Test
+    @DisplayName("未配置节点号 - 启动失败")
+    void testMissingWorkerId() {
+        IdGenerator generator = new IdGenerator();
+        ReflectionTestUtils.setField(generator, "workerId", -1);
+
+        assertThrows(BusinessException.class, generator::init);
+    }
+
+    @Test
+    @DisplayName("节点号超出范围 - 启动失败")
+    void testWorkerIdOutOfRange() {
+        IdGenerator generator = new IdGenerator();
+        ReflectionTestUtils.setField(generator, "workerId", 10000);
+
+        assertThrows(BusinessException.class, generator::init);
+    }
+
+    /** 多个线程持续生成编号, 直到跨过至少一个整秒(序号从0重新开始), 检查没有重复 */
+    private void assertUniqueAcrossSeconds(Supplier<String> generator) throws Exception {
+        long endSecond = System.currentTimeMillis() / 1000 + 2;
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                Callable<List<String>> task = () -> {
+                    List<String> numbers = new ArrayList<>();
+                    while (System.currentTimeMillis() / 1000 < endSecond) {
+                        for (int i = 0; i < 100; i++) {
+                            numbers.add(generator.get());
+                        }
+                        Thread.sleep(1);
+                    }
+                    return numbers;
+                };
+                futures.add(executor.submit(task));
+            }
+            Set<String> all = new HashSet<>();
+            int total = 0;
+            for (Future<List<String>> future : futures) {
+                List<String> numbers = future.get();
+                total += numbers.size();
+                all.addAll(numbers);
+            }
+            assertTrue(total > 0);
+            assertEquals(total, all.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static IdGenerator newGenerator(int workerId) {
+        IdGenerator generator = new IdGenerator();
+        ReflectionTestUtils.setField(generator, "orderPrefix", "ORD");
+        ReflectionTestUtils.setField(generator, "transactionPrefix", "TRX");
+        ReflectionTestUtils.setField(generator, "settlementPrefix", "SET");
+        ReflectionTestUtils.setField(generator, "refundPrefix", "REF");
+        ReflectionTestUtils.setField(generator, "workerId", workerId);
+        generator.init();
+        return generator;
+    }
+}
@@ -0,0 +1,112 @@
+package com.shopping.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryExecutorTest {
+    private ScheduledExecutorService scheduler;
+    private ThreadPoolExecutor workers;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "test-scheduler"));
+        workers = new ThreadPoolExecutor(2, 2, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1),
+                r -> new Thread(r, "test-worker"), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("同步执行 - 可重试异常退避后重试, 成功后返回结果")
+    void execute_retryableError_retries() {
+        RetryExecutor executor = executor(3);
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = executor.execute(attempt -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("lock wait timeout");
+            }
+            return "ok";
+        }, r -> false, e -> e instanceof IllegalStateException);
+
+        assertEquals("ok", result);
+        assertEquals(3, attempts.get());
+        assertEquals(2, executor.getMetrics().getRetries());
+    }
+
+    @Test
+    @DisplayName("同步执行 - 不可重试的异常直接抛出, 达到最大次数后抛出最后一次的异常")
+    void execute_errors_thrown() {
+        RetryExecutor executor = executor(2);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(IllegalArgumentException.class, () -> executor.execute(attempt -> {
+            attempts.incrementAndGet();
+            throw new IllegalArgumentException("bad");
+        }, r -> false, e -> e instanceof IllegalStateException));
+        assertEquals(1, attempts.get());
+
+        assertThrows(IllegalStateException.class, () -> executor.execute(attempt -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("lock wait timeout");
+        }, r -> false, e -> e instanceof IllegalStateException));
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    @DisplayName("异步执行 - 每次尝试都在工作线程池中执行, 不占用调度线程")
+    void executeAsync_attemptsRunOnWorkers() throws Exception {
+        RetryExecutor executor = executor(3);
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        CompletableFuture<Integer> future = executor.executeAsync(attempt -> {
+            threads.add(Thread.currentThread().getName());
+            return attempt;
+        }, attempt -> attempt < 3);
+
+        assertEquals(3, future.get(5, TimeUnit.SECONDS));
+        assertEquals(Set.of("test-worker"), threads);
+    }
+
+    @Test
+    @DisplayName("异步执行 - 工作线程池已满时以拒绝异常结束")
+    void executeAsync_workersFull_rejected() throws Exception {
+        RetryExecutor executor = executor(3);
+        CompletableFuture<Void> blocker = new CompletableFuture<>();
+        // 占满2个工作线程和1个队列位置
+        for (int i = 0; i < 3; i++) {
+            workers.execute(blocker::join);
+        }
+
+        CompletableFuture<Integer> future = executor.executeAsync(attempt -> attempt, attempt -> false);
+
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertTrue(ex.getCause() instanceof RejectedExecutionException);
+        blocker.complete(null);
+    }
+
+    private RetryExecutor executor(int maxAttempts) {
+        return new RetryExecutor("test", new ExponentialBackoffRetryPolicy(maxAttempts, 1, 1, 1, 0),
+                scheduler, workers);
+    }
+}
@@ -0,0 +1,115 @@
+package com.shopping.utils;
+
+import com.shopping.exception.BusinessException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+    private static final long START = 1_000_000L;
+
+    @Test
+    @DisplayName("第0层 - 到期时间在第一圈内, 按格到期")
+    void testExpireInFirstLevel() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, START);
+        assertTrue(wheel.add("a", START + 30));
+        assertTrue(wheel.add("b", START + 50));
+        List<String> expired = new ArrayList<>();
+
+        wheel.advanceTo(START + 29, expired::add);
+        assertTrue(expired.isEmpty());
+        wheel.advanceTo(START + 30, expired::add);
+        assertEquals(Collections.singletonList("a"), expired);
+        wheel.advanceTo(START + 60, expired::add);
+        assertEquals(Arrays.asList("a", "b"), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    @DisplayName("上层时间轮 - 超出第一圈的任务逐层降级, 不提前到期")
+    void testExpireThroughOverflowWheels() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 4, START);
+        // 第0层一圈40ms, 第1层一圈160ms, 第2层一圈640ms
+        assertTrue(wheel.add("level1", START + 100));
+        assertTrue(wheel.add("level2", START + 500));
+        assertEquals(2, wheel.size());
+        List<String> expired = new ArrayList<>();
+
+        wheel.advanceTo(START + 99, expired::add);
+        assertTrue(expired.isEmpty());
+        wheel.advanceTo(START + 100, expired::add);
+        assertEquals(Collections.singletonList("level1"), expired);
+        wheel.advanceTo(START + 499, expired::add);
+        assertEquals(1, expired.size());
+        wheel.advanceTo(START + 500, expired::add);
+        assertEquals(Arrays.asList("level1", "level2"), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    @DisplayName("到期时间不是整格 - 向上取整, 最多延后一格")
+    void testExpirationRoundedUp() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, START);
+        assertTrue(wheel.add("a", START + 21));
+        List<String> expired = new ArrayList<>();
+
+        wheel.advanceTo(START + 29, expired::add);
+        assertTrue(expired.isEmpty());
+        wheel.advanceTo(START + 30, expired::add);
+        assertEquals(Collections.singletonList("a"), expired);
+    }
+
+    @Test
+    @DisplayName("已到期的任务 - 不添加, 由调用方立即处理")
+    void testAddExpired() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, START);
+
+        assertFalse(wheel.add("past", START - 100));
+        assertFalse(wheel.add("current", START));
+        assertEquals(0, wheel.size());
+        // 当前格内未到期的任务向上取整到下一格
+        assertTrue(wheel.add("next", START + 5));
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    @DisplayName("随机到期时间 - 每个任务恰好到期一次, 且不早于到期时间、不晚于一格")
+    void testRandomExpirations() {
+        long tickMs = 10;
+        TimingWheel<Long> wheel = new TimingWheel<>(tickMs, 16, START);
+        Random random = new Random(42);
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            long deadline = START + tickMs + random.nextInt(100_000);
+            deadlines.add(deadline);
+            assertTrue(wheel.add(deadline, deadline));
+        }
+        List<Long> expired = new ArrayList<>();
+        for (long now = START; now <= START + 100_000 + 2 * tickMs; now += 7) {
+            long current = now;
+            wheel.advanceTo(now, deadline -> {
+                assertTrue(deadline <= current, "任务提前到期");
+                assertTrue(current - deadline < tickMs + 7, "任务延后超过一格");
+                expired.add(deadline);
+            });
+        }
+        Collections.sort(deadlines);
+        Collections.sort(expired);
+        assertEquals(deadlines, expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    @DisplayName("参数校验 - 格子时长和格子数非法")
+    void testInvalidArguments() {
+        assertThrows(BusinessException.class, () -> new TimingWheel<String>(0, 8, START));
+        assertThrows(BusinessException.class, () -> new TimingWheel<String>(10, 1, START));
+    }
+}